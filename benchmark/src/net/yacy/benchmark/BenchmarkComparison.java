@@ -0,0 +1,154 @@
+/**
+ *  BenchmarkComparison
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compare two JMH result files written in the JSON format (java -jar benchmarks.jar -rf json -rff result.json)
+ * and report the benchmarks slower in the second file than in the first one by more than a given percentage.
+ * The exit code is 1 when at least one regression is found, so that this can be used in a build script.
+ */
+public class BenchmarkComparison {
+
+    /** default tolerated slowdown in percent */
+    private static final double DEFAULT_THRESHOLD = 10.0d;
+
+    /**
+     * The primary metric of one benchmark with one set of parameters
+     */
+    private static class Score {
+        private final String mode;
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        private Score(final String mode, final double score, final double error, final String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = Double.isNaN(error) ? 0.0d : error;
+            this.unit = unit;
+        }
+
+        /**
+         * @return true when a higher score is better, as for throughput measurements
+         */
+        private boolean higherIsBetter() {
+            return "thrpt".equals(this.mode);
+        }
+    }
+
+    /**
+     * @param file a JMH JSON result file
+     * @return the primary metrics by benchmark name and parameters
+     * @throws IOException
+     * @throws ParseException
+     */
+    private static Map<String, Score> read(final File file) throws IOException, ParseException {
+        final Map<String, Score> scores = new TreeMap<String, Score>();
+        try (final Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            final JSONArray results = (JSONArray) new JSONParser().parse(reader);
+            for (final Object o : results) {
+                final JSONObject result = (JSONObject) o;
+                final StringBuilder key = new StringBuilder((String) result.get("benchmark"));
+                final JSONObject params = (JSONObject) result.get("params");
+                if (params != null) {
+                    for (final Object param : new TreeMap<Object, Object>(params).entrySet()) {
+                        key.append(' ').append(((Map.Entry<?, ?>) param).getKey()).append('=').append(((Map.Entry<?, ?>) param).getValue());
+                    }
+                }
+                final JSONObject metric = (JSONObject) result.get("primaryMetric");
+                scores.put(key.toString(), new Score(
+                        (String) result.get("mode"),
+                        toDouble(metric.get("score")),
+                        toDouble(metric.get("scoreError")),
+                        (String) metric.get("scoreUnit")));
+            }
+        }
+        return scores;
+    }
+
+    private static double toDouble(final Object value) {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value == null) return Double.NaN;
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @param args baseline result file, current result file and optionally the tolerated slowdown in percent
+     */
+    public static void main(final String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage : java -cp benchmarks.jar " + BenchmarkComparison.class.getName() + " <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        final double threshold = args.length >= 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        final Map<String, Score> baseline;
+        final Map<String, Score> current;
+        try {
+            baseline = read(new File(args[0]));
+            current = read(new File(args[1]));
+        } catch (final IOException | ParseException | ClassCastException e) {
+            System.out.println("Could not read the result files : " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        int regressions = 0;
+        for (final Map.Entry<String, Score> entry : current.entrySet()) {
+            final Score now = entry.getValue();
+            final Score before = baseline.get(entry.getKey());
+            if (before == null || before.score == 0.0d || !before.unit.equals(now.unit)) {
+                System.out.println(String.format(Locale.ROOT, "%-100s %14.3f %-8s (new)", entry.getKey(), now.score, now.unit));
+                continue;
+            }
+            // positive change means slower
+            final double change = (now.higherIsBetter() ? before.score - now.score : now.score - before.score) * 100.0d / before.score;
+            // a difference within the measurement errors is not a regression
+            final boolean significant = Math.abs(now.score - before.score) > before.error + now.error;
+            final boolean regression = significant && change > threshold;
+            if (regression) regressions++;
+            System.out.println(String.format(Locale.ROOT, "%-100s %14.3f -> %14.3f %-8s %+7.1f%%%s",
+                    entry.getKey(), before.score, now.score, now.unit, change, regression ? "  REGRESSION" : ""));
+        }
+        for (final String key : baseline.keySet()) {
+            if (!current.containsKey(key)) System.out.println(String.format(Locale.ROOT, "%-100s (missing)", key));
+        }
+        System.out.println(regressions + " regression(s) above " + threshold + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+}
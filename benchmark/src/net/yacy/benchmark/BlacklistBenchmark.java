@@ -0,0 +1,129 @@
+/**
+ *  BlacklistBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.repository.Blacklist;
+import net.yacy.repository.Blacklist.BlacklistType;
+
+/**
+ * Checks of urls against a crawler blacklist with {@link Blacklist#isListed(BlacklistType, String, String)},
+ * as done for each link found by the crawler. The blacklist file is generated with host entries, wildcard
+ * host entries and regular expression host entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlacklistBenchmark {
+
+    private static final String BLACKLIST_FILE = "benchmark.black";
+
+    /** the number of entries of the blacklist */
+    @Param({"1000", "10000"})
+    public int entries;
+
+    /** the number of entries with a regular expression as host */
+    @Param({"20"})
+    public int regexEntries;
+
+    private File directory;
+    private Blacklist blacklist;
+    private String[] hosts;
+    private String[] paths;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = Fixtures.tempDirectory("yacy-blacklist-benchmark");
+        final Random random = new Random(Fixtures.SEED);
+        try (final PrintWriter out = new PrintWriter(new File(this.directory, BLACKLIST_FILE), StandardCharsets.UTF_8.name())) {
+            for (int i = 0; i < this.entries; i++) {
+                final String host = Fixtures.host(random);
+                switch (i % 4) {
+                case 0:
+                    out.println(host + "/.*");
+                    break;
+                case 1:
+                    out.println("*." + host.substring(host.indexOf('.') + 1) + "/.*");
+                    break;
+                case 2:
+                    out.println(host + "/" + Fixtures.word(random) + "/.*");
+                    break;
+                default:
+                    out.println(host + "/.*\\." + (random.nextBoolean() ? "js" : "gif"));
+                }
+            }
+            for (int i = 0; i < this.regexEntries; i++) {
+                out.println(Fixtures.word(random) + "[0-9]+\\..*\\." + (i % 2 == 0 ? "com" : "net") + "/.*");
+            }
+        }
+        this.blacklist = new Blacklist(this.directory);
+        this.blacklist.loadList(BlacklistType.CRAWLER, BLACKLIST_FILE, "/");
+
+        // check a mix of blacklisted and not blacklisted urls
+        final List<String> urls = Fixtures.urls(10000, 5000, Fixtures.SEED);
+        this.hosts = new String[urls.size()];
+        this.paths = new String[urls.size()];
+        for (int i = 0; i < urls.size(); i++) {
+            final MultiProtocolURL url = new MultiProtocolURL(urls.get(i));
+            this.hosts[i] = url.getHost().toLowerCase(Locale.ROOT);
+            this.paths[i] = url.getFile();
+        }
+        this.next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.blacklist != null) this.blacklist.close();
+        Fixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public boolean isListed() {
+        this.next = (this.next + 1) % this.hosts.length;
+        return this.blacklist.isListed(BlacklistType.CRAWLER, this.hosts[this.next], this.paths[this.next]);
+    }
+}
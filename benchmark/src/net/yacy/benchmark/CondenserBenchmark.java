@@ -0,0 +1,77 @@
+/**
+ *  CondenserBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.document.Condenser;
+import net.yacy.document.Document;
+import net.yacy.document.Parser;
+import net.yacy.document.TextParser;
+import net.yacy.document.VocabularyScraper;
+
+/**
+ * Condensing of a parsed html document into words and their references with {@link Condenser},
+ * as done for each indexed document. The documents are parsed once per trial from generated pages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CondenserBenchmark {
+
+    /** the number of paragraphs of a page, each with about 80 words */
+    @Param({"10", "100"})
+    public int paragraphs;
+
+    private Document document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MalformedURLException, Parser.Failure {
+        final DigestURL location = new DigestURL("http://benchmark.yacy.net/condenser/page.html");
+        final byte[] page = UTF8.getBytes(Fixtures.htmlPage(this.paragraphs, this.paragraphs * 2, Fixtures.SEED));
+        final Document[] documents = TextParser.parseSource(location, "text/html", "UTF-8", new HashSet<String>(), new VocabularyScraper(), 0, 0, page);
+        this.document = documents[0];
+    }
+
+    @Benchmark
+    public Condenser condense() {
+        return new Condenser(this.document, null, true, true, null, false, false, 0);
+    }
+}
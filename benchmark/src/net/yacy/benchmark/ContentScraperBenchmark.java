@@ -0,0 +1,85 @@
+/**
+ *  ContentScraperBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.document.VocabularyScraper;
+import net.yacy.document.parser.html.ContentScraper;
+import net.yacy.document.parser.html.TransformerWriter;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Scraping of generated html pages with {@link ContentScraper} through a {@link TransformerWriter},
+ * as done by the html parser for each crawled page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentScraperBenchmark {
+
+    /** the number of paragraphs of a page, each with about 80 words */
+    @Param({"10", "100"})
+    public int paragraphs;
+
+    /** the number of links of a page */
+    @Param({"50", "500"})
+    public int links;
+
+    private DigestURL root;
+    private String page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MalformedURLException {
+        this.root = new DigestURL("http://benchmark.yacy.net/scraper/page.html");
+        this.page = Fixtures.htmlPage(this.paragraphs, this.links, Fixtures.SEED);
+    }
+
+    @Benchmark
+    public ContentScraper scrape() throws IOException {
+        final ContentScraper scraper = new ContentScraper(this.root, Integer.MAX_VALUE, new HashSet<String>(), new VocabularyScraper(), 0);
+        try (final Writer writer = new TransformerWriter(null, null, scraper, false)) {
+            FileUtils.copy(new StringReader(this.page), writer);
+        }
+        return scraper;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ *  Fixtures
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Generator of the benchmark input data. All data is generated locally from a seed,
+ * so that two runs of a benchmark on different builds work on the same input and
+ * their results can be compared.
+ */
+public class Fixtures {
+
+    /** the default seed of the generators */
+    public static final long SEED = 20181018L;
+
+    private static final String[] WORDS = {
+        "search", "engine", "peer", "network", "index", "crawler", "document", "web", "page", "link",
+        "free", "software", "decentralized", "privacy", "query", "result", "ranking", "word", "text", "server",
+        "suche", "netzwerk", "dokument", "seite", "freie", "recherche", "moteur", "réseau", "données", "büro",
+        "the", "a", "of", "and", "to", "in", "is", "for", "on", "with", "das", "die", "der", "und", "le", "la"
+    };
+
+    private static final String[] TLDS = {"com", "net", "org", "de", "fr", "uk", "info", "eu"};
+
+    private static final String[] EXTENSIONS = {".html", ".htm", ".php", "/", ".pdf", ".jpg", ""};
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param count the number of hashes
+     * @param length the length of a hash
+     * @param seed the random generator seed
+     * @return random base64 encoded hashes
+     */
+    public static byte[][] hashes(final int count, final int length, final long seed) {
+        final Random random = new Random(seed);
+        final byte[][] hashes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            final byte[] hash = new byte[length];
+            for (int p = 0; p < length; p += 10) {
+                Base64Order.enhancedCoder.encodeLong(random.nextLong() & Long.MAX_VALUE, hash, p, Math.min(10, length - p));
+            }
+            hashes[i] = hash;
+        }
+        return hashes;
+    }
+
+    /**
+     * @param random a random generator
+     * @return a random host name
+     */
+    public static String host(final Random random) {
+        final StringBuilder host = new StringBuilder(32);
+        if (random.nextInt(3) > 0) host.append(random.nextBoolean() ? "www." : word(random) + '.');
+        host.append(word(random)).append(random.nextInt(1000)).append('.').append(TLDS[random.nextInt(TLDS.length)]);
+        return host.toString();
+    }
+
+    /**
+     * @param count the number of urls
+     * @param hosts the number of different hosts
+     * @param seed the random generator seed
+     * @return random absolute urls with paths and queries of different lengths
+     */
+    public static List<String> urls(final int count, final int hosts, final long seed) {
+        final Random random = new Random(seed);
+        final String[] hostNames = new String[Math.max(1, hosts)];
+        for (int i = 0; i < hostNames.length; i++) hostNames[i] = host(random);
+        final List<String> urls = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            final StringBuilder url = new StringBuilder(100);
+            url.append(random.nextInt(4) == 0 ? "https://" : "http://");
+            url.append(hostNames[random.nextInt(hostNames.length)]);
+            if (random.nextInt(20) == 0) url.append(':').append(8080 + random.nextInt(10));
+            url.append(path(random));
+            if (random.nextInt(3) == 0) url.append("?id=").append(random.nextInt(100000)).append("&q=").append(word(random));
+            if (random.nextInt(10) == 0) url.append('#').append(word(random));
+            urls.add(url.toString());
+        }
+        return urls;
+    }
+
+    /**
+     * @param random a random generator
+     * @return a random absolute url path
+     */
+    public static String path(final Random random) {
+        final StringBuilder path = new StringBuilder(64);
+        final int depth = random.nextInt(5);
+        for (int d = 0; d < depth; d++) path.append('/').append(word(random));
+        path.append('/').append(word(random)).append(random.nextInt(100)).append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+        return path.toString();
+    }
+
+    /**
+     * @param random a random generator
+     * @return a random word of the fixtures vocabulary
+     */
+    public static String word(final Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * @param words the number of words
+     * @param seed the random generator seed
+     * @return a random text with sentences of the fixtures vocabulary
+     */
+    public static String text(final int words, final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder text = new StringBuilder(words * 8);
+        int sentence = 0;
+        for (int i = 0; i < words; i++) {
+            final String word = word(random);
+            if (sentence == 0) {
+                text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                text.append(word);
+            }
+            if (++sentence > 5 + random.nextInt(15)) {
+                text.append(". ");
+                sentence = 0;
+            } else {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param paragraphs the number of text paragraphs
+     * @param links the number of links
+     * @param seed the random generator seed
+     * @return a random html page with title, metadata, headlines, paragraphs, links and images
+     */
+    public static String htmlPage(final int paragraphs, final int links, final long seed) {
+        final Random random = new Random(seed);
+        final List<String> urls = urls(links, Math.max(1, links / 10), seed);
+        final StringBuilder page = new StringBuilder(paragraphs * 700 + links * 100);
+        page.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<meta charset=\"UTF-8\">\n");
+        page.append("<title>").append(text(8, seed)).append("</title>\n");
+        page.append("<meta name=\"description\" content=\"").append(text(25, seed + 1)).append("\">\n");
+        page.append("<meta name=\"keywords\" content=\"").append(word(random)).append(", ").append(word(random)).append("\">\n");
+        page.append("<link rel=\"canonical\" href=\"").append(urls.isEmpty() ? "http://yacy.net/" : urls.get(0)).append("\">\n");
+        page.append("<style>body {font-family: sans-serif;}</style>\n<script>var x = 1;</script>\n</head>\n<body>\n");
+        page.append("<div class=\"navigation\"><ul>");
+        int link = 0;
+        for (int i = 0; i < Math.min(10, links); i++) {
+            page.append("<li><a href=\"").append(urls.get(link++)).append("\">").append(word(random)).append("</a></li>");
+        }
+        page.append("</ul></div>\n");
+        for (int p = 0; p < paragraphs; p++) {
+            if (p % 4 == 0) page.append("<h2>").append(text(4, seed + p)).append("</h2>\n");
+            page.append("<p>").append(text(80, seed + 100 + p));
+            if (link < links) {
+                page.append(" <a href=\"").append(urls.get(link++)).append("\" title=\"").append(word(random)).append("\">");
+                page.append(text(3, seed + 200 + p)).append("</a>");
+            }
+            page.append(" <b>").append(word(random)).append("</b></p>\n");
+            if (p % 5 == 2) page.append("<img src=\"/images/").append(word(random)).append(p).append(".png\" alt=\"").append(text(3, seed + p)).append("\">\n");
+        }
+        page.append("<div class=\"footer\">");
+        while (link < links) {
+            page.append("<a href=\"").append(urls.get(link++)).append("\">").append(word(random)).append("</a> ");
+        }
+        page.append("</div>\n</body>\n</html>\n");
+        return page.toString();
+    }
+
+    /**
+     * @param word the word of the container
+     * @param urlHashes the url hashes of the references
+     * @param seed the random generator seed
+     * @return a sorted reference container with one reference with random properties for each url hash
+     * @throws SpaceExceededException
+     */
+    public static ReferenceContainer<WordReference> referenceContainer(final String word, final byte[][] urlHashes, final long seed) throws SpaceExceededException {
+        final Random random = new Random(seed);
+        final ReferenceContainer<WordReference> container = new ReferenceContainer<WordReference>(new WordReferenceFactory(), Word.word2hash(word), urlHashes.length);
+        final long now = System.currentTimeMillis();
+        final byte[] language = UTF8.getBytes("en");
+        for (final byte[] urlHash : urlHashes) {
+            final WordReferenceRow reference = new WordReferenceRow(
+                    urlHash,
+                    20 + random.nextInt(80),        // urlLength
+                    1 + random.nextInt(6),          // urlComps
+                    random.nextInt(10),             // titlewordcount
+                    50 + random.nextInt(5000),      // wordcount
+                    5 + random.nextInt(500),        // phrasecount
+                    now - random.nextInt(1000000) * 1000L, // lastmodified
+                    now,                            // updatetime
+                    language,
+                    Response.DT_TEXT,
+                    random.nextInt(50),             // outlinksSame
+                    random.nextInt(50));            // outlinksOther
+            final Word w = new Word(1 + random.nextInt(100), 1 + random.nextInt(10), 1 + random.nextInt(100));
+            w.flags = new Bitfield(4);
+            reference.setWord(w);
+            container.add(reference);
+        }
+        container.sort();
+        return container;
+    }
+
+    /**
+     * @param prefix the directory name prefix
+     * @return a new empty temporary directory
+     * @throws IOException
+     */
+    public static File tempDirectory(final String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Delete a temporary directory created with {@link #tempDirectory(String)}
+     * @param directory the directory to delete, may be null
+     */
+    public static void delete(final File directory) {
+        if (directory != null) FileUtils.deletedelete(directory);
+    }
+}
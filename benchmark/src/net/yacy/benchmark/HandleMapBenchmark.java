@@ -0,0 +1,97 @@
+/**
+ *  HandleMapBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.storage.HandleMap;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.RowHandleMap;
+
+/**
+ * Puts and gets of a {@link RowHandleMap} as used for the BLOB heap indexes,
+ * mapping 12-byte keys to file positions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleMapBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private byte[][] keys;
+    private byte[][] newKeys;
+    private HandleMap map;
+    private HandleMap emptyMap;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SpaceExceededException {
+        this.keys = Fixtures.hashes(this.size, 12, Fixtures.SEED);
+        this.newKeys = Fixtures.hashes(this.size, 12, Fixtures.SEED + 1);
+        this.map = new RowHandleMap(12, Base64Order.enhancedCoder, 8, this.size, "benchmark");
+        for (int i = 0; i < this.keys.length; i++) this.map.putUnique(this.keys[i], i);
+        this.next = 0;
+    }
+
+    /**
+     * A new empty map for each iteration, so that the put benchmark always inserts new keys
+     */
+    @Setup(Level.Iteration)
+    public void setUpEmpty() {
+        this.emptyMap = new RowHandleMap(12, Base64Order.enhancedCoder, 8, this.size, "benchmark-put");
+    }
+
+    @Benchmark
+    public long get() {
+        this.next = (this.next + 1) % this.keys.length;
+        return this.map.get(this.keys[this.next]);
+    }
+
+    @Benchmark
+    public long put() throws SpaceExceededException {
+        this.next = (this.next + 1) % this.newKeys.length;
+        return this.emptyMap.put(this.newKeys[this.next], this.next);
+    }
+
+    @Benchmark
+    public long update() throws SpaceExceededException {
+        this.next = (this.next + 1) % this.keys.length;
+        return this.map.put(this.keys[this.next], this.next);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ *  HeapReaderBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.blob.Heap;
+import net.yacy.kelondro.blob.HeapReader;
+
+/**
+ * Reads of records from a BLOB heap file with {@link HeapReader#get(byte[])}.
+ * The heap file is written once per trial into a temporary directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeapReaderBenchmark {
+
+    @Param({"10000", "100000"})
+    public int records;
+
+    /** maximum size of a record value in bytes; the sizes are distributed from 1 to this value */
+    @Param({"2048"})
+    public int maxRecordSize;
+
+    private File directory;
+    private byte[][] keys;
+    private HeapReader reader;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = Fixtures.tempDirectory("yacy-heapreader-benchmark");
+        final File heapFile = new File(this.directory, "benchmark.heap");
+        this.keys = Fixtures.hashes(this.records, 12, Fixtures.SEED);
+        final Random random = new Random(Fixtures.SEED);
+        final Heap heap = new Heap(heapFile, 12, NaturalOrder.naturalOrder, 1024 * 1024);
+        try {
+            for (final byte[] key : this.keys) {
+                final byte[] value = new byte[1 + random.nextInt(this.maxRecordSize)];
+                random.nextBytes(value);
+                heap.insert(key, value);
+            }
+        } finally {
+            heap.close(true);
+        }
+        this.reader = new HeapReader(heapFile, 12, NaturalOrder.naturalOrder);
+        this.next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.reader != null) this.reader.close(false);
+        Fixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public byte[] get() throws IOException, SpaceExceededException {
+        this.next = (this.next + 1) % this.keys.length;
+        return this.reader.get(this.keys[this.next]);
+    }
+}
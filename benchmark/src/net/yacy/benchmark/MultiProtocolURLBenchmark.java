@@ -0,0 +1,99 @@
+/**
+ *  MultiProtocolURLBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.document.id.MultiProtocolURL;
+
+/**
+ * Parsing of absolute and relative urls with {@link MultiProtocolURL}, normal form generation and
+ * url hash computation with {@link DigestURL}, as done for each link of each parsed document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiProtocolURLBenchmark {
+
+    private String[] urls;
+    private String[] relativePaths;
+    private MultiProtocolURL base;
+    private MultiProtocolURL[] parsed;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MalformedURLException {
+        final List<String> list = Fixtures.urls(10000, 1000, Fixtures.SEED);
+        this.urls = list.toArray(new String[list.size()]);
+        this.parsed = new MultiProtocolURL[this.urls.length];
+        for (int i = 0; i < this.urls.length; i++) this.parsed[i] = new MultiProtocolURL(this.urls[i]);
+        final Random random = new Random(Fixtures.SEED);
+        this.relativePaths = new String[1000];
+        for (int i = 0; i < this.relativePaths.length; i++) {
+            final String path = Fixtures.path(random);
+            this.relativePaths[i] = i % 3 == 0 ? path : i % 3 == 1 ? path.substring(1) : "../" + path.substring(1);
+        }
+        this.base = new MultiProtocolURL("http://www.yacy.net/documentation/pages/index.html");
+        this.next = 0;
+    }
+
+    @Benchmark
+    public MultiProtocolURL parse() throws MalformedURLException {
+        this.next = (this.next + 1) % this.urls.length;
+        return new MultiProtocolURL(this.urls[this.next]);
+    }
+
+    @Benchmark
+    public MultiProtocolURL parseRelative() throws MalformedURLException {
+        this.next = (this.next + 1) % this.relativePaths.length;
+        return new MultiProtocolURL(this.base, this.relativePaths[this.next]);
+    }
+
+    @Benchmark
+    public String toNormalform() {
+        this.next = (this.next + 1) % this.parsed.length;
+        return this.parsed[this.next].toNormalform(true);
+    }
+
+    @Benchmark
+    public byte[] parseAndHash() throws MalformedURLException {
+        this.next = (this.next + 1) % this.urls.length;
+        return new DigestURL(this.urls[this.next]).hash();
+    }
+}
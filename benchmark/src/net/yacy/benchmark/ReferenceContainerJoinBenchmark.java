@@ -0,0 +1,85 @@
+/**
+ *  ReferenceContainerJoinBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+
+/**
+ * Join of two word reference containers with {@link ReferenceContainer#joinConstructive},
+ * as done for each search with more than one word. The containers have different sizes,
+ * so that both the enumeration and the test join methods are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceContainerJoinBenchmark {
+
+    /** the size of the larger container */
+    @Param({"10000", "100000"})
+    public int largeSize;
+
+    /** the size of the smaller container */
+    @Param({"100", "10000"})
+    public int smallSize;
+
+    /** the percentage of references of the smaller container also in the larger container */
+    @Param({"50"})
+    public int overlap;
+
+    private final WordReferenceFactory factory = new WordReferenceFactory();
+    private ReferenceContainer<WordReference> large;
+    private ReferenceContainer<WordReference> small;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SpaceExceededException {
+        final byte[][] largeHashes = Fixtures.hashes(this.largeSize, 12, Fixtures.SEED);
+        final byte[][] smallHashes = Fixtures.hashes(this.smallSize, 12, Fixtures.SEED + 1);
+        final int common = Math.min(this.largeSize, this.smallSize * this.overlap / 100);
+        for (int i = 0; i < common; i++) smallHashes[i] = largeHashes[i * (this.largeSize / Math.max(1, common))];
+        this.large = Fixtures.referenceContainer("search", largeHashes, Fixtures.SEED);
+        this.small = Fixtures.referenceContainer("engine", smallHashes, Fixtures.SEED + 1);
+    }
+
+    @Benchmark
+    public ReferenceContainer<WordReference> joinConstructive() throws SpaceExceededException {
+        return ReferenceContainer.joinConstructive(this.factory, this.large, this.small, Integer.MAX_VALUE);
+    }
+}
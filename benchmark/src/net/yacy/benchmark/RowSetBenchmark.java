@@ -0,0 +1,114 @@
+/**
+ *  RowSetBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Column;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowSet;
+
+/**
+ * Sorting of a {@link RowSet} and lookups of primary keys in a sorted {@link RowSet},
+ * with rows made of a url hash and a long value like in the reference containers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowSetBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Row rowdef;
+    private byte[][] keys;
+    private byte[][] missingKeys;
+    private RowSet sorted;
+    private RowSet unsorted;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SpaceExceededException {
+        this.rowdef = new Row(new Column[]{
+                new Column("key", Column.celltype_binary, Column.encoder_bytes, 12, "key"),
+                new Column("long c-8 {b256}")}, Base64Order.enhancedCoder);
+        this.keys = Fixtures.hashes(this.size, 12, Fixtures.SEED);
+        this.missingKeys = Fixtures.hashes(this.size, 12, Fixtures.SEED + 1);
+        this.sorted = fill();
+        this.sorted.sort();
+        this.next = 0;
+    }
+
+    /**
+     * A new unsorted set for each sort, as a sorted set is not sorted again
+     */
+    @Setup(Level.Invocation)
+    public void setUpUnsorted() throws SpaceExceededException {
+        this.unsorted = fill();
+    }
+
+    private RowSet fill() throws SpaceExceededException {
+        final RowSet set = new RowSet(this.rowdef, this.size);
+        for (int i = 0; i < this.keys.length; i++) {
+            final Row.Entry entry = this.rowdef.newEntry();
+            entry.setCol(0, this.keys[i]);
+            entry.setCol(1, i);
+            set.addUnique(entry);
+        }
+        return set;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public RowSet sort() {
+        this.unsorted.sort();
+        return this.unsorted;
+    }
+
+    @Benchmark
+    public Row.Entry getExisting() {
+        this.next = (this.next + 1) % this.keys.length;
+        return this.sorted.get(this.keys[this.next], false);
+    }
+
+    @Benchmark
+    public boolean hasMissing() {
+        this.next = (this.next + 1) % this.missingKeys.length;
+        return this.sorted.has(this.missingKeys[this.next]);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *  TemplateEngineBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.server.serverObjects;
+import net.yacy.server.http.TemplateEngine;
+
+/**
+ * Rendering of a search result like page with {@link TemplateEngine}, with replacements,
+ * alternatives and a loop over the result items, as done for each servlet response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateEngineBenchmark {
+
+    private static final String TEMPLATE =
+            "<!DOCTYPE html>\n<html>\n<head><title>#[promoteSearchPageGreeting]# - #[query]#</title></head>\n<body>\n"
+            + "<h1>#[query]#</h1>\n"
+            + "#(resultsFound)#<p>No results</p>::<p>#[count]# results in #[time]# ms</p>#(/resultsFound)#\n"
+            + "<ul class=\"results\">\n"
+            + "#{items}#<li class=\"#(odd)#even::odd#(/odd)#\">\n"
+            + "  <a href=\"#[url]#\" title=\"#[title]#\">#[title]#</a>\n"
+            + "  <p>#[description]#</p>\n"
+            + "  <span class=\"url\">#[urlname]#</span> #(date)#::<span class=\"date\">#[date]#</span>#(/date)# <span class=\"size\">#[size]#</span>\n"
+            + "</li>\n#{/items}#"
+            + "</ul>\n"
+            + "<div class=\"navigation\">#{pages}#<a href=\"?query=#[query]#&amp;offset=#[offset]#\">#[page]#</a> #{/pages}#</div>\n"
+            + "</body>\n</html>\n";
+
+    /** the number of items of the loop */
+    @Param({"10", "100"})
+    public int items;
+
+    private byte[] template;
+    private serverObjects pattern;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.template = UTF8.getBytes(TEMPLATE);
+        final List<String> urls = Fixtures.urls(this.items, Math.max(1, this.items / 5), Fixtures.SEED);
+        this.pattern = new serverObjects();
+        this.pattern.put("promoteSearchPageGreeting", "YaCy P2P Web Search");
+        this.pattern.put("query", "free software");
+        this.pattern.put("resultsFound", 1);
+        this.pattern.put("count", this.items);
+        this.pattern.put("time", 42);
+        this.pattern.put("items", this.items);
+        for (int i = 0; i < this.items; i++) {
+            final String prefix = "items_" + i + "_";
+            this.pattern.put(prefix + "odd", i % 2);
+            this.pattern.put(prefix + "url", urls.get(i));
+            this.pattern.put(prefix + "urlname", urls.get(i));
+            this.pattern.put(prefix + "title", Fixtures.text(8, Fixtures.SEED + i));
+            this.pattern.put(prefix + "description", Fixtures.text(40, Fixtures.SEED + 1000 + i));
+            this.pattern.put(prefix + "date", i % 3);
+            this.pattern.put(prefix + "date_date", "2018/10/18");
+            this.pattern.put(prefix + "size", 1000 + i);
+        }
+        this.pattern.put("pages", 10);
+        for (int i = 0; i < 10; i++) {
+            this.pattern.put("pages_" + i + "_query", "free software");
+            this.pattern.put("pages_" + i + "_offset", i * this.items);
+            this.pattern.put("pages_" + i + "_page", i + 1);
+        }
+        this.out = new ByteArrayOutputStream(this.template.length + this.items * 1000);
+    }
+
+    @Benchmark
+    public int render() throws IOException {
+        this.out.reset();
+        TemplateEngine.writeTemplate("benchmark", new ByteArrayInputStream(this.template), this.out, this.pattern);
+        return this.out.size();
+    }
+}
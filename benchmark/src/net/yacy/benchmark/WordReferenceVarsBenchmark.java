@@ -0,0 +1,89 @@
+/**
+ *  WordReferenceVarsBenchmark
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.benchmark;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+
+/**
+ * Decoding of the rows of a word reference container into {@link WordReferenceVars},
+ * as done for the ranking of the local search results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordReferenceVarsBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private ReferenceContainer<WordReference> container;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SpaceExceededException {
+        this.container = Fixtures.referenceContainer("search", Fixtures.hashes(this.size, 12, Fixtures.SEED), Fixtures.SEED);
+    }
+
+    /**
+     * Decoding in the calling thread
+     */
+    @Benchmark
+    public void decode(final Blackhole blackhole) {
+        final Iterator<WordReference> i = this.container.entries();
+        while (i.hasNext()) {
+            blackhole.consume(new WordReferenceVars(i.next(), true));
+        }
+    }
+
+    /**
+     * Decoding with {@link WordReferenceVars#transform(ReferenceContainer, long, boolean)}, concurrent for large containers
+     */
+    @Benchmark
+    public void transform(final Blackhole blackhole) throws InterruptedException {
+        final BlockingQueue<WordReferenceVars> vars = WordReferenceVars.transform(this.container, Long.MAX_VALUE, true);
+        WordReferenceVars entry;
+        while ((entry = vars.take()) != WordReferenceVars.poison) {
+            blackhole.consume(entry);
+        }
+    }
+}
@@ -114,6 +114,7 @@ public class IndexExport_p {
             final String filter = post.get("exportfilter", ".*");
             final String query = post.get("exportquery", "*:*");
             final int maxseconds = post.getInt("exportmaxseconds", -1);
+            final int parts = post.getInt("exportparts", 1);
             final String path = post.get("exportfilepath", "");
 
             // store this call as api call: we do this even if there is a chance that it fails because recurring calls may do not fail
@@ -121,7 +122,7 @@ public class IndexExport_p {
             
             // start the export
             try {
-                export = sb.index.fulltext().export(format, filter, query, maxseconds, new File(path), dom, text);
+                export = sb.index.fulltext().export(format, filter, query, maxseconds, new File(path), dom, text, parts);
             } catch (IOException e) {
                 prop.put("lurlexporterror", 1);
                 prop.put("lurlexporterror_exportfile", "-no export-");
@@ -44,6 +44,7 @@ import net.yacy.data.TransactionManager;
 import net.yacy.data.WorkTables;
 import net.yacy.document.importer.MediawikiImporter;
 import net.yacy.kelondro.blob.Tables.Row;
+import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.search.Switchboard;
 import net.yacy.server.serverObjects;
 import net.yacy.server.serverSwitch;
@@ -64,6 +65,8 @@ public class IndexImportMediawiki_p {
 	 *            <li>iffresh : when set to true, the dump file is imported only if its last modified date is unknown or after the last import trial date on this same file.  </li>
 	 *            <li>report : when set, display the currently running thread monitoring info, or the last import report when no one is running.
 	 *            Ignored when no import thread is known.</li>
+	 *            <li>direct : when set to true, the pages are indexed directly by a pool of threads instead of being written to surrogate files</li>
+	 *            <li>abort : when set, stop the running direct import; it can be resumed later</li>
 	 *            </ul>
 	 * @param env server environment
 	 * @return the servlet answer object
@@ -74,6 +77,9 @@ public class IndexImportMediawiki_p {
 
         if (MediawikiImporter.job != null && (MediawikiImporter.job.isAlive() || (post != null && post.containsKey("report")))) {
             /* one import is running, or report was explicitly requested : no option to insert anything */
+            if (post != null && post.containsKey("abort") && MediawikiImporter.job.isDirect()) {
+                MediawikiImporter.job.quit();
+            }
             prop.put("import", 1);
             /* Only refresh automatically when the job is running */
             prop.put("refresh", MediawikiImporter.job.isAlive() ? 1 : 0);
@@ -83,6 +89,7 @@ public class IndexImportMediawiki_p {
             	prop.put("import_status_message", jobErrorMessage);
             }
             prop.put("import_thread", MediawikiImporter.job.isAlive() ? 2 : 0);
+            prop.put("import_stop", MediawikiImporter.job.isAlive() && MediawikiImporter.job.isDirect() ? 1 : 0);
             prop.put("import_dump", MediawikiImporter.job.source());
             prop.put("import_count", MediawikiImporter.job.count());
             prop.put("import_speed", MediawikiImporter.job.speed());
@@ -130,7 +137,10 @@ public class IndexImportMediawiki_p {
 							}
 						}
 						
-						if (status == 0 && post.getBoolean("iffresh")) {
+						/* an interrupted direct import of a local file is resumed even when the file is not modified */
+						final boolean resume = status == 0 && post.getBoolean("direct") && sourceURL.isFile()
+								&& MediawikiImporter.readCheckpoint(sourceURL.getFSFile()) > 0;
+						if (status == 0 && post.getBoolean("iffresh") && !resume) {
 							long lastModified = getLastModified(sourceURL);
 							if (lastExecutionDate != null && lastModified != 0L && Instant.ofEpochMilli(lastModified)
 									.isBefore(lastExecutionDate.toInstant())) {
@@ -164,10 +174,16 @@ public class IndexImportMediawiki_p {
 							sb.tables.recordAPICall(post, "IndexImportMediawiki_p.html", WorkTables.TABLE_API_TYPE_DUMP, "MediaWiki Dump Import for " + sourceURL);
 						}
 						
-						MediawikiImporter.job = new MediawikiImporter(sourceURL, sb.surrogatesInPath);
+						if (post.getBoolean("direct")) {
+							/* parse and index the pages in parallel, without intermediate surrogate files */
+							MediawikiImporter.job = new MediawikiImporter(sourceURL, WorkflowProcessor.availableCPU);
+						} else {
+							MediawikiImporter.job = new MediawikiImporter(sourceURL, sb.surrogatesInPath);
+						}
 						MediawikiImporter.job.start();
 						prop.put("import_dump", MediawikiImporter.job.source());
 						prop.put("import_thread", 1);
+						prop.put("import_stop", MediawikiImporter.job.isDirect() ? 1 : 0);
 						prop.put("import", 1);
 						prop.put("refresh", 1);
 					} else {
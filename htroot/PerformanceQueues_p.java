@@ -26,8 +26,11 @@
 
 import java.io.File;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.pool.PoolStats;
 
 import net.yacy.cora.federate.solr.instance.RemoteInstance;
@@ -42,6 +45,7 @@ import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.OS;
 import net.yacy.kelondro.workflow.BusyThread;
+import net.yacy.search.SurrogateIngestion;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 import net.yacy.search.index.Segment;
@@ -50,6 +54,27 @@ import net.yacy.server.serverSwitch;
 
 public class PerformanceQueues_p {
 
+	/** The outgoing HTTP client connection pools configurable from this page */
+	private static final HTTPClient.Pool[] HTTP_CLIENT_POOLS = { HTTPClient.Pool.GENERAL, HTTPClient.Pool.CRAWLER,
+			HTTPClient.Pool.PEERS, HTTPClient.Pool.PROXY };
+
+	/** The configuration keys of the maximum total connections of each pool in HTTP_CLIENT_POOLS */
+	private static final String[] HTTP_CLIENT_POOLS_MAX_TOTAL_KEYS = {
+			SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL,
+			SwitchboardConstants.HTTP_OUTGOING_POOL_CRAWLER_MAX_TOTAL,
+			SwitchboardConstants.HTTP_OUTGOING_POOL_PEERS_MAX_TOTAL,
+			SwitchboardConstants.HTTP_OUTGOING_POOL_PROXY_MAX_TOTAL };
+
+	/** The default maximum total connections of each pool in HTTP_CLIENT_POOLS */
+	private static final int[] HTTP_CLIENT_POOLS_MAX_TOTAL_DEFAULTS = {
+			SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL_DEFAULT,
+			SwitchboardConstants.HTTP_OUTGOING_POOL_CRAWLER_MAX_TOTAL_DEFAULT,
+			SwitchboardConstants.HTTP_OUTGOING_POOL_PEERS_MAX_TOTAL_DEFAULT,
+			SwitchboardConstants.HTTP_OUTGOING_POOL_PROXY_MAX_TOTAL_DEFAULT };
+
+	/** Maximum number of hosts to display in the crawler connection pool statistics */
+	private static final int MAX_ROUTES_STATS = 20;
+
     public static serverObjects respond(final RequestHeader header, final serverObjects post, final serverSwitch env) {
         // return variable that accumulates replacements
         final Switchboard sb = (Switchboard) env;
@@ -314,16 +339,17 @@ public class PerformanceQueues_p {
         
 		if ((post != null) && (post.containsKey("connectionPoolConfig"))) {
 
-			/* Configure the general outgoing HTTP connection pool */
-			int maxTotal = post.getInt(SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL,
-					SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL_DEFAULT);
-			if (maxTotal > 0) {
-				sb.setConfig(SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL, maxTotal);
-				HTTPClient.initPoolMaxConnections(HTTPClient.CONNECTION_MANAGER, maxTotal);
+			/* Configure the general, crawler, peer-to-peer and proxy outgoing HTTP connection pools */
+			for (int i = 0; i < HTTP_CLIENT_POOLS.length; i++) {
+				final int maxTotal = post.getInt(HTTP_CLIENT_POOLS_MAX_TOTAL_KEYS[i], HTTP_CLIENT_POOLS_MAX_TOTAL_DEFAULTS[i]);
+				if (maxTotal > 0) {
+					sb.setConfig(HTTP_CLIENT_POOLS_MAX_TOTAL_KEYS[i], maxTotal);
+					HTTPClient.initPoolMaxConnections(HTTPClient.getConnectionManager(HTTP_CLIENT_POOLS[i]), maxTotal);
+				}
 			}
 
 			/* Configure the remote Solr outgoing HTTP connection pool */
-			maxTotal = post.getInt(SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL,
+			final int maxTotal = post.getInt(SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL,
 					SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL_DEFAULT);
 			if (maxTotal > 0) {
 				sb.setConfig(SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL, maxTotal);
@@ -367,18 +393,53 @@ public class PerformanceQueues_p {
 
         prop.put("pool", "3");
         
-        /* Connection pools settings */
-		prop.put(SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL,
-				sb.getConfigInt(SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL,
-						SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL_DEFAULT));
+        /* Connection pools settings and stats */
+		PoolStats stats;
+		for (int i = 0; i < HTTP_CLIENT_POOLS.length; i++) {
+			prop.put(HTTP_CLIENT_POOLS_MAX_TOTAL_KEYS[i],
+					sb.getConfigInt(HTTP_CLIENT_POOLS_MAX_TOTAL_KEYS[i], HTTP_CLIENT_POOLS_MAX_TOTAL_DEFAULTS[i]));
+			stats = HTTPClient.getConnectionManager(HTTP_CLIENT_POOLS[i]).getTotalStats();
+			final String poolName = HTTP_CLIENT_POOLS[i].name().toLowerCase(Locale.ROOT);
+			prop.put("pool." + poolName + ".leased", stats.getLeased());
+			prop.put("pool." + poolName + ".available", stats.getAvailable());
+			prop.put("pool." + poolName + ".pending", stats.getPending());
+		}
 		prop.put(SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL,
 				sb.getConfigInt(SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL,
 						SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL_DEFAULT));
-		/* Connection pools stats */
-		PoolStats stats = HTTPClient.CONNECTION_MANAGER.getTotalStats();
-		prop.put("pool.general.leased", stats.getLeased());
-		prop.put("pool.general.available", stats.getAvailable());
-		prop.put("pool.general.pending", stats.getPending());
+		
+		/* Crawler pool stats per host */
+		int routeCount = 0;
+		for (final Map.Entry<HttpRoute, PoolStats> routeStats : HTTPClient
+				.getRoutesStats(HTTPClient.Pool.CRAWLER, MAX_ROUTES_STATS).entrySet()) {
+			final HttpHost target = routeStats.getKey().getTargetHost();
+			prop.put("crawlerRoutes_" + routeCount + "_host", target.toHostString());
+			prop.put("crawlerRoutes_" + routeCount + "_scheme", target.getSchemeName());
+			prop.put("crawlerRoutes_" + routeCount + "_max", routeStats.getValue().getMax());
+			prop.put("crawlerRoutes_" + routeCount + "_leased", routeStats.getValue().getLeased());
+			prop.put("crawlerRoutes_" + routeCount + "_available", routeStats.getValue().getAvailable());
+			prop.put("crawlerRoutes_" + routeCount + "_pending", routeStats.getValue().getPending());
+			routeCount++;
+		}
+		prop.put("crawlerRoutes", routeCount);
+		
+		/* Surrogate ingestion statistics, aggregated and per source */
+		prop.put("surrogates.filesMax", sb.getConfigInt(SwitchboardConstants.SURROGATES_MAX_FILES, SwitchboardConstants.SURROGATES_MAX_FILES_DEFAULT));
+		prop.put("surrogates.files", sb.surrogateIngestion.filesInProgress().size());
+		prop.put("surrogates.docsPerSecond", sb.surrogateIngestion.docsPerSecond());
+		prop.put("surrogates.averageDocsPerSecond", sb.surrogateIngestion.averageDocsPerSecond());
+		prop.putNum("surrogates.totalIndexed", sb.surrogateIngestion.totalIndexed());
+		prop.putNum("surrogates.totalSources", sb.surrogateIngestion.totalSources());
+		int sourceCount = 0;
+		for (final SurrogateIngestion.Source source : sb.surrogateIngestion.activeSources()) {
+			prop.putHTML("surrogateSources_" + sourceCount + "_name", source.getName());
+			prop.putNum("surrogateSources_" + sourceCount + "_indexed", source.getIndexed());
+			prop.put("surrogateSources_" + sourceCount + "_pending", source.getPending());
+			prop.put("surrogateSources_" + sourceCount + "_docsPerSecond", source.getDocsPerSecond());
+			prop.put("surrogateSources_" + sourceCount + "_runningTime", source.getRunningTime() / 1000);
+			sourceCount++;
+		}
+		prop.put("surrogateSources", sourceCount);
 		
 		stats = RemoteInstance.CONNECTION_MANAGER.getTotalStats();
 		prop.put("pool.remoteSolr.leased", stats.getLeased());
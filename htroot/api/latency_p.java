@@ -54,6 +54,9 @@ public class latency_p {
             prop.put("domains_" + c + "_average", host.average());
             prop.put("domains_" + c + "_robots", host.robotsDelay());
             prop.put("domains_" + c + "_flux", host.flux(agent.minimumDelta));
+            prop.put("domains_" + c + "_ewma", host.ewma());
+            prop.put("domains_" + c + "_rate", Double.toString(host.rate()));
+            prop.put("domains_" + c + "_retryAfter", host.retryAfterRemaining());
             c++;
         }
         prop.put("domains", c);
@@ -91,6 +91,7 @@ public class status_p {
         prop.putNum("citationSegmentCount", segment.citationSegmentCount());
         prop.putNum("rwipublictextSize", segment.RWICount());
         prop.putNum("rwipublictextSegmentCount", segment.RWISegmentCount());
+        prop.put("indexReady", segment.ready() ? "1" : "0");
 
         // loader queue
         prop.putNum("loaderSize", sb.crawlQueues.activeWorkerEntries().size());
@@ -33,6 +33,8 @@ import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.order.Digest;
 import net.yacy.cora.protocol.Domains;
+import net.yacy.cora.storage.ARC;
+import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.util.ByteArray;
 import net.yacy.cora.util.CommonPattern;
 
@@ -49,6 +51,39 @@ public class DigestURL extends MultiProtocolURL implements Serializable {
     
     private static final long serialVersionUID = -1173233022912141885L;
 
+    /**
+     * Per-thread buffers for the url hash computation
+     */
+    private static final class HashBuffers {
+        private final StringBuilder chars = new StringBuilder(256);
+        private final byte[] md5 = new byte[16];
+    }
+
+    private static final ThreadLocal<HashBuffers> hashBuffers = new ThreadLocal<HashBuffers>() {
+        @Override
+        protected HashBuffers initialValue() {
+            return new HashBuffers();
+        }
+    };
+
+    /**
+     * The 'global' 5-byte host hash fragment of a host, for one protocol and port
+     */
+    private static final class HostHash5 {
+        private final String protocol;
+        private final int port;
+        private final byte[] hash;
+
+        private HostHash5(final String protocol, final int port, final byte[] hash) {
+            this.protocol = protocol;
+            this.port = port;
+            this.hash = hash;
+        }
+    }
+
+    /** host hash fragments of recently hashed hosts; the links of a page mostly point to a few hosts */
+    private static final ARC<String, HostHash5> hostHashCache = new ConcurrentARC<String, HostHash5>(10000, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()));
+
     // class variables
     private byte[] hash;
 
@@ -234,84 +269,104 @@ public class DigestURL extends MultiProtocolURL implements Serializable {
 
         final int id = Domains.getDomainID(this.host, this.hostAddress); // id=7: tld is local
         final boolean isHTTP = isHTTP();
-        int p = (this.host == null || this.host.indexOf(':') >= 0) ? -1 : this.host.lastIndexOf('.');
-        String dom = (p > 0) ? dom = this.host.substring(0, p) : "";
-        p = dom.lastIndexOf('.'); // locate subdomain
-        final String subdom;
-        if (p <= 0) {
-            subdom = "";
-        } else {
-            subdom = dom.substring(0, p);
-            dom = dom.substring(p + 1);
-        }
 
-        // find rootpath
-        final String normalizedPath;
-        if (this.isFile() && this.path.indexOf('\\') >= 0) // for file protocol normalize path to java notation
-            normalizedPath = this.path.replace('\\','/'); // replace possible Windows pathseparator
-        else
-            normalizedPath = this.path;
+        // locate domain and subdomain as index ranges of the host name
+        final int p = (this.host == null || this.host.indexOf(':') >= 0) ? -1 : this.host.lastIndexOf('.');
+        final int domEnd = (p > 0) ? p : 0;
+        final int p2 = (domEnd > 0) ? this.host.lastIndexOf('.', domEnd - 1) : -1; // locate subdomain
+        final int subdomEnd = (p2 <= 0) ? 0 : p2;
+        final int domStart = (p2 <= 0) ? 0 : p2 + 1;
 
+        // find rootpath; for file protocol the path is normalized to java notation
+        final String path = this.path;
+        final boolean normalize = this.isFile() && path.indexOf('\\') >= 0;
         int rootpathStart = 0;
-        int rootpathEnd = normalizedPath.length() - 1;
-        if (!normalizedPath.isEmpty() && (normalizedPath.charAt(0) == '/'))
+        int rootpathEnd = path.length() - 1;
+        if (!path.isEmpty() && isSlash(path.charAt(0), normalize))
             rootpathStart = 1;
-        if (normalizedPath.endsWith("/"))
-            rootpathEnd = normalizedPath.length() - 2;
-        p = normalizedPath.indexOf('/', rootpathStart);
-        // following doesn't recognize mixed notation e.g. c:\\tmp/test.html correct -> solved by using normalized path
-        //if (this.isFile() && p < 0) p = this.path.indexOf('\\', rootpathStart); // double-check for windows path (if it's a file url)
-        String rootpath = "";
-        if (p > 0 && p < rootpathEnd) {
-            rootpath = normalizedPath.substring(rootpathStart, p);
-        }
+        if (!path.isEmpty() && isSlash(path.charAt(path.length() - 1), normalize))
+            rootpathEnd = path.length() - 2;
+        int r = rootpathStart;
+        while (r < path.length() && !isSlash(path.charAt(r), normalize)) r++;
+        if (r >= path.length()) r = -1;
+        if (!(r > 0 && r < rootpathEnd)) r = rootpathStart; // empty rootpath
 
         // we collected enough information to compute the fragments that are
         // basis for hashes
-        final int l = dom.length();
+        final int l = domEnd - domStart;
         final int domlengthKey = (l <= 8) ? 0 : (l <= 12) ? 1 : (l <= 16) ? 2 : 3;
         final byte flagbyte = (byte) (((isHTTP) ? 0 : 32) | (id << 2) | domlengthKey);
 
-        // combine the attributes
-        final StringBuilder hashs = new StringBuilder(12);
-        assert hashs.length() == 0;
-        // form the 'local' part of the hash
-        final String normalform = toNormalform(true, true); // normalizes also Windows backslash in path to '/' for file url
-        final String b64l = Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(normalform));
-        if (b64l.length() < 5) return null;
-        hashs.append(b64l.substring(0, 5)); // 5 chars
-        assert hashs.length() == 5;
-        hashs.append(subdomPortPath(subdom, this.port, rootpath)); // 1 char
-        assert hashs.length() == 6;
+        final HashBuffers buffers = hashBuffers.get();
+        final StringBuilder chars = buffers.chars;
+        final byte[] md5 = buffers.md5;
+        final byte[] b = new byte[12];
+
+        // form the 'local' part of the hash: the first 5 base64 chars of the md5 of the normal form
+        chars.setLength(0);
+        appendNormalform(chars, true, true); // normalizes also Windows backslash in path to '/' for file url
+        Digest.encodeMD5Raw(chars, md5);
+        Base64Order.enhancedCoder.encodeLong(((md5[0] & 0xffL) << 16) | ((md5[1] & 0xffL) << 8) | (md5[2] & 0xffL), b, 0, 4); // 4 chars
+        b[4] = (byte) Base64Order.enhancedCoder.encodeByte((byte) ((md5[3] & 0xff) >> 2)); // 1 char
+
+        // one char for subdomain, port and rootpath
+        chars.setLength(0);
+        if (this.host != null) chars.append(this.host, 0, subdomEnd);
+        chars.append(':').append(this.port).append(':');
+        for (int i = rootpathStart; i < r; i++) {
+            final char c = path.charAt(i);
+            chars.append(normalize && c == '\\' ? '/' : c);
+        }
+        Digest.encodeMD5Raw(chars, md5);
+        b[5] = (byte) Base64Order.enhancedCoder.encodeByte((byte) ((md5[0] & 0xff) >> 2)); // 1 char
+
         // form the 'global' part of the hash
-        hashs.append(hosthash5(this.protocol, this.host, this.port)); // 5 chars
-        assert hashs.length() == 11;
-        hashs.append(Base64Order.enhancedCoder.encodeByte(flagbyte)); // 1 char
-        assert hashs.length() == 12;
+        System.arraycopy(hosthash5(this.protocol, this.host, this.port), 0, b, 6, 5); // 5 chars
+        b[11] = (byte) Base64Order.enhancedCoder.encodeByte(flagbyte); // 1 char
 
         // return result hash
-        final byte[] b = ASCII.getBytes(hashs.toString());
-        assert b.length == 12;
         return b;
     }
 
-    private static char subdomPortPath(final String subdom, final int port, final String rootpath) {
-        final StringBuilder sb = new StringBuilder(subdom.length() + rootpath.length() + 8);
-        sb.append(subdom).append(':').append(Integer.toString(port)).append(':').append(rootpath);
-        return Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(sb.toString())).charAt(0);
+    private static boolean isSlash(final char c, final boolean normalize) {
+        return c == '/' || (normalize && c == '\\');
     }
 
-
-    private static final String hosthash5(final String protocol, final String host, final int port) {
+    /**
+     * compute the 'global' 5-byte hash fragment of a host; it is cached for the recently hashed hosts
+     * @param protocol
+     * @param host
+     * @param port
+     * @return 5 bytes base64 encoded hash fragment, must not be modified
+     */
+    private static final byte[] hosthash5(final String protocol, final String host, final int port) {
+        final HashBuffers buffers = hashBuffers.get();
+        final StringBuilder chars = buffers.chars;
+        final byte[] md5 = buffers.md5;
+        final byte[] h = new byte[5];
         if (host == null) {
-            return Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(protocol)).substring(0, 5);
+            chars.setLength(0);
+            chars.append(protocol);
+            Digest.encodeMD5Raw(chars, md5);
+            encodeHash5(md5, h);
+            return h;
         }
-        boolean isIPv6HostIP = host.indexOf(':') >= 0;
-        final StringBuilder sb = new StringBuilder(host.length() + 15);
-        sb.append(protocol).append(':');
-        if (isIPv6HostIP) {sb.append('[').append(host).append(']');} else sb.append(host);
-        sb.append(':').append(Integer.toString(port));
-        return Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(sb.toString())).substring(0, 5);
+        HostHash5 cached = hostHashCache.get(host);
+        if (cached != null && cached.port == port && cached.protocol.equals(protocol)) return cached.hash;
+        final boolean isIPv6HostIP = host.indexOf(':') >= 0;
+        chars.setLength(0);
+        chars.append(protocol).append(':');
+        if (isIPv6HostIP) {chars.append('[').append(host).append(']');} else chars.append(host);
+        chars.append(':').append(port);
+        Digest.encodeMD5Raw(chars, md5);
+        encodeHash5(md5, h);
+        hostHashCache.insert(host, new HostHash5(protocol, port, h));
+        return h;
+    }
+
+    private static void encodeHash5(final byte[] md5, final byte[] h) {
+        Base64Order.enhancedCoder.encodeLong(((md5[0] & 0xffL) << 16) | ((md5[1] & 0xffL) << 8) | (md5[2] & 0xffL), h, 0, 4);
+        h[4] = (byte) Base64Order.enhancedCoder.encodeByte((byte) ((md5[3] & 0xff) >> 2));
     }
 
     /**
@@ -331,7 +386,7 @@ public class DigestURL extends MultiProtocolURL implements Serializable {
         final int l = dom.length();
         final int domlengthKey = (l <= 8) ? 0 : (l <= 12) ? 1 : (l <= 16) ? 2 : 3;
         final byte flagbyte = (byte) (((protocol.equals("http")) ? 0 : 32) | (id << 2) | domlengthKey);
-        hash.append(hosthash5(protocol, host, port)); // 5 chars
+        hash.append(ASCII.String(hosthash5(protocol, host, port))); // 5 chars
         hash.append(Base64Order.enhancedCoder.encodeByte(flagbyte)); // 1 char
 
         // return result hash
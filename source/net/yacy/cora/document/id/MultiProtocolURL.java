@@ -1311,9 +1311,25 @@ public class MultiProtocolURL implements Serializable, Comparable<MultiProtocolU
      * @return
      */
     public String toNormalform(final boolean excludeAnchor, final boolean removeSessionID) {
-        boolean defaultPort = false;
         if (this.protocol.equals("mailto")) {
             return this.protocol + ":" + this.userInfo + "@" + this.host;
+        }
+        final StringBuilder u = new StringBuilder(20 + (this.path == null ? 0 : this.path.length()) + ((this.host == null) ? 0 : this.host.length()));
+        appendNormalform(u, excludeAnchor, removeSessionID);
+        return u.toString();
+    }
+
+    /**
+     * Append the normal form of the URL to a given buffer, as generated by {@link #toNormalform(boolean, boolean)}.
+     * @param u the buffer to append to
+     * @param excludeAnchor
+     * @param removeSessionID
+     */
+    protected void appendNormalform(final StringBuilder u, final boolean excludeAnchor, final boolean removeSessionID) {
+        boolean defaultPort = false;
+        if (this.protocol.equals("mailto")) {
+            u.append(this.protocol).append(':').append(this.userInfo).append('@').append(this.host);
+            return;
         } else if (isHTTP()) {
             if (this.port < 0 || this.port == 80)  { defaultPort = true; }
         } else if (isHTTPS()) {
@@ -1327,7 +1343,6 @@ public class MultiProtocolURL implements Serializable, Comparable<MultiProtocolU
         }
         String urlPath = this.getFile(excludeAnchor, removeSessionID);
         String h = getHost();
-        final StringBuilder u = new StringBuilder(20 + (urlPath == null ? 0 : urlPath.length()) + ((h == null) ? 0 : h.length()));
         u.append(this.protocol);
         u.append("://");
         if (h != null) {
@@ -1345,9 +1360,6 @@ public class MultiProtocolURL implements Serializable, Comparable<MultiProtocolU
             urlPath = urlPath.replace('\\', '/');
         }
         u.append(urlPath);
-        String result = u.toString();
-        
-        return result;
     }
 
     /**
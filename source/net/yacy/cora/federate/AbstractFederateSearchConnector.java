@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -64,6 +65,9 @@ abstract public class AbstractFederateSearchConnector implements FederateSearchC
     protected SchemaConfiguration localcfg; // the schema conversion cfg for each fieldname, yacyname = remote fieldname
     public long lastaccesstime = -1; // last time accessed, used for search delay calculation
     protected String baseurl;
+    private volatile long latency = -1; // moving average of the query time in milliseconds, -1 if unknown
+    private volatile long lastfailuretime = -1; // time of the last failed query
+    private final AtomicInteger failures = new AtomicInteger(); // number of consecutive failed queries
 
     /**
      * Inits the connector with the remote field names and matches to yacy
@@ -114,34 +118,90 @@ abstract public class AbstractFederateSearchConnector implements FederateSearchC
                 ConcurrentLog.info("YACY SEARCH (federated)", "Send search query to " +  instancename);
                 theSearch.oneFeederStarted();
                 List<URIMetadataNode> doclist = query(theSearch.getQuery());
-                if (doclist != null) {
-                    ConcurrentLog.info("YACY SEARCH (federated)", "Got " + doclist.size() + " documents from " +  instancename);
-                    Map<String, LinkedHashSet<String>> snippets = new HashMap<String, LinkedHashSet<String>>(); // add nodes doesn't allow null
-                    theSearch.addNodes(doclist, null, snippets, false, instancename, doclist.size(), true);
-                    
-                    for (URIMetadataNode doc : doclist) {
-                        theSearch.addHeuristic(doc.hash(), instancename, false);
-                    }
-                } else {
-                	ConcurrentLog.info("YACY SEARCH (federated)", "Got no results from " +  instancename);
-                }
+                addResults(theSearch, doclist);
                 // that's all we need to display serach result
                 theSearch.oneFeederTerminated();
-
-                // optional: add to crawler to get the full resource (later)
-                if (doclist != null && !doclist.isEmpty() && theSearch.addResultsToLocalIndex) {
-                    Collection<DigestURL> urls = new ArrayList<DigestURL>();
-                    for (URIMetadataNode doc : doclist) {
-                        urls.add(doc.url());
-                    }
-                    Switchboard.getSwitchboard().addToCrawler(urls, false);
-
-                }
+                addToCrawler(theSearch, doclist);
             }
         };
         job.start();
     }
 
+    /**
+     * adds the results of a query to the search event
+     *
+     * @param theSearch receiving the results
+     * @param doclist the query results, may be null
+     */
+    public void addResults(final SearchEvent theSearch, final List<URIMetadataNode> doclist) {
+        if (doclist != null) {
+            ConcurrentLog.info("YACY SEARCH (federated)", "Got " + doclist.size() + " documents from " +  instancename);
+            Map<String, LinkedHashSet<String>> snippets = new HashMap<String, LinkedHashSet<String>>(); // add nodes doesn't allow null
+            theSearch.addNodes(doclist, null, snippets, false, instancename, doclist.size(), true);
+
+            for (URIMetadataNode doc : doclist) {
+                theSearch.addHeuristic(doc.hash(), instancename, false);
+            }
+        } else {
+            ConcurrentLog.info("YACY SEARCH (federated)", "Got no results from " +  instancename);
+        }
+    }
+
+    /**
+     * optional: add the results of a query to the crawler to get the full resource (later)
+     * if SearchEvent.addResultsToLocalIndex is set
+     *
+     * @param theSearch the search event of the query
+     * @param doclist the query results, may be null
+     */
+    public void addToCrawler(final SearchEvent theSearch, final List<URIMetadataNode> doclist) {
+        if (doclist != null && !doclist.isEmpty() && theSearch.addResultsToLocalIndex) {
+            Collection<DigestURL> urls = new ArrayList<DigestURL>();
+            for (URIMetadataNode doc : doclist) {
+                urls.add(doc.url());
+            }
+            Switchboard.getSwitchboard().addToCrawler(urls, false);
+        }
+    }
+
+    /**
+     * records the outcome of a query, used to select the connectors for a search
+     *
+     * @param time the query time in milliseconds
+     * @param success false if the remote system could not be queried
+     */
+    public void recordQuery(final long time, final boolean success) {
+        final long l = this.latency;
+        this.latency = l < 0 ? time : (3 * l + time) / 4;
+        if (success) {
+            this.failures.set(0);
+        } else {
+            this.failures.incrementAndGet();
+            this.lastfailuretime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the moving average of the query time in milliseconds, -1 if unknown
+     */
+    public long latency() {
+        return this.latency;
+    }
+
+    /**
+     * @return the number of consecutive failed queries
+     */
+    public int failures() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return the time of the last failed query, -1 if no query failed
+     */
+    public long lastFailureTime() {
+        return this.lastfailuretime;
+    }
+
     /**
      * Converts a remote schema result to YaCy schema using the fieldname
      * mapping provided as config file
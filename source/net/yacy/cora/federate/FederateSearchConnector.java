@@ -55,7 +55,7 @@ public interface FederateSearchConnector {
      * according to YaCy schema.
      *
      * @param query
-     * @return result (metadata) in YaCy schema format
+     * @return result (metadata) in YaCy schema format, or null when the remote system could not be queried
      */
     abstract List<URIMetadataNode> query(QueryParams query);
 
@@ -24,10 +24,22 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
@@ -47,6 +59,7 @@ import net.yacy.document.parser.xml.opensearchdescriptionReader;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.util.Bitfield;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 import net.yacy.search.query.QueryGoal;
@@ -57,12 +70,28 @@ import net.yacy.search.schema.WebgraphSchema;
 
 /**
  * Handling of queries to configured remote OpenSearch systems.
+ * All selected systems are queried in parallel; the results of a query are collected until
+ * the deadline given by the maximum time of the query. The query time and the failures of each
+ * system are recorded and used to select and order the systems for the next queries.
  */
 public class FederateSearchManager {
 
 	/** Delay between connects (in ms) */
     private final int accessDelay = 15000;
 
+    /** Minimum time (in ms) given to the remote systems when the time of the query is already used up */
+    private static final long MIN_QUERY_TIME = 1000;
+
+    /** Number of consecutive failures after which a system is not queried for some time */
+    private static final int MAX_FAILURES = 3;
+
+    /** Maximum delay (in ms) before a failing system is queried again */
+    private static final long MAX_FAILURE_DELAY = 600000;
+
+    /** Threads querying the remote systems */
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            new NamePrefixThreadFactory(FederateSearchManager.class.getSimpleName() + ".query"));
+
     private File confFile = null; // later initialized to DATA/SETTINGS/heuristicopensearch.conf
     
     /** Connectors list */
@@ -157,35 +186,138 @@ public class FederateSearchManager {
      *
      * @param theSearch
      */
-    public void search(SearchEvent theSearch) {
+    public void search(final SearchEvent theSearch) {
         if (theSearch != null) {
             if (!theSearch.query.isLocal() && !MemoryControl.shortStatus()) {
-                Set<AbstractFederateSearchConnector> picklist = getBest(theSearch.getQuery());
-                for (AbstractFederateSearchConnector fsc : picklist) {
-                    fsc.search(theSearch);
+                final QueryParams query = theSearch.getQuery();
+                final long deadline = deadline(query);
+                Set<AbstractFederateSearchConnector> picklist = getBest(query);
+                for (final AbstractFederateSearchConnector fsc : picklist) {
+                    ConcurrentLog.info("YACY SEARCH (federated)", "Send search query to " +  fsc.instancename);
+                    theSearch.oneFeederStarted();
+                    this.executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            List<URIMetadataNode> doclist = null;
+                            final Future<List<URIMetadataNode>> result = FederateSearchManager.this.executor.submit(new Callable<List<URIMetadataNode>>() {
+                                @Override
+                                public List<URIMetadataNode> call() {
+                                    return query(fsc, query, deadline);
+                                }
+                            });
+                            try {
+                                doclist = result.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                                fsc.addResults(theSearch, doclist);
+                            } catch (final TimeoutException e) {
+                                result.cancel(true); // results arriving now would not be used
+                                ConcurrentLog.info("YACY SEARCH (federated)", "No results from " + fsc.instancename + " before the deadline, query cancelled");
+                            } catch (final InterruptedException e) {
+                                result.cancel(true);
+                            } catch (final ExecutionException e) {
+                                ConcurrentLog.logException(e.getCause());
+                            } finally {
+                                theSearch.oneFeederTerminated();
+                            }
+                            fsc.addToCrawler(theSearch, doclist);
+                        }
+                    });
                 }
             }
         }
     }
 
     /**
-     * Sends a query to configured remote systems.
+     * Sends a query to configured remote systems in parallel and collects the results
+     * which arrive within the maximum time of the query.
      *
      * @param query
      * @return list of results according to YaCy schema
      */
-    public List<URIMetadataNode> query(QueryParams query) {
+    public List<URIMetadataNode> query(final QueryParams query) {
         if (!query.isLocal() && !MemoryControl.shortStatus()) {
             List<URIMetadataNode> sdl = new ArrayList<URIMetadataNode>();
+            final long deadline = deadline(query);
+            final CompletionService<List<URIMetadataNode>> results = new ExecutorCompletionService<List<URIMetadataNode>>(this.executor);
+            final List<Future<List<URIMetadataNode>>> futures = new ArrayList<Future<List<URIMetadataNode>>>();
             Set<AbstractFederateSearchConnector> picklist = getBest(query);
-            for (AbstractFederateSearchConnector fsc : picklist) {
-                sdl.addAll(fsc.query(query));
+            for (final AbstractFederateSearchConnector fsc : picklist) {
+                futures.add(results.submit(new Callable<List<URIMetadataNode>>() {
+                    @Override
+                    public List<URIMetadataNode> call() {
+                        return query(fsc, query, deadline);
+                    }
+                }));
+            }
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    final long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) break;
+                    final Future<List<URIMetadataNode>> result = results.poll(wait, TimeUnit.MILLISECONDS);
+                    if (result == null) break; // deadline reached
+                    try {
+                        final List<URIMetadataNode> docs = result.get();
+                        if (docs != null) sdl.addAll(docs);
+                    } catch (final ExecutionException e) {
+                        ConcurrentLog.logException(e.getCause());
+                    }
+                }
+            } catch (final InterruptedException e) {
+                // return what we have
+            } finally {
+                for (final Future<List<URIMetadataNode>> future : futures) {
+                    future.cancel(true); // does nothing on finished queries
+                }
             }
             return sdl;
         }
         return null;
     }
 
+    /**
+     * @return the time when the results of the query must be available
+     */
+    private static long deadline(final QueryParams query) {
+        return Math.max(query.starttime + query.maxtime, System.currentTimeMillis() + MIN_QUERY_TIME);
+    }
+
+    /**
+     * Queries one remote system and records the query time and failure. A failed query is retried
+     * once when the access delay to the remote system has passed and there is still time to get
+     * an answer before the deadline. Slow queries are not duplicated.
+     *
+     * @return the results or null when the remote system could not be queried
+     */
+    private List<URIMetadataNode> query(final AbstractFederateSearchConnector fsc, final QueryParams query, final long deadline) {
+        List<URIMetadataNode> docs = queryOnce(fsc, query);
+        if (docs == null && !Thread.currentThread().isInterrupted()) {
+            final long retryTime = Math.max(System.currentTimeMillis(), fsc.lastaccesstime + this.accessDelay);
+            if (retryTime + Math.max(0, fsc.latency()) < deadline) {
+                try {
+                    final long wait = retryTime - System.currentTimeMillis();
+                    if (wait > 0) Thread.sleep(wait);
+                } catch (final InterruptedException e) {
+                    return null; // cancelled at the deadline
+                }
+                ConcurrentLog.info("YACY SEARCH (federated)", "Retry search query to " + fsc.instancename);
+                docs = queryOnce(fsc, query);
+            }
+        }
+        return docs;
+    }
+
+    private static List<URIMetadataNode> queryOnce(final AbstractFederateSearchConnector fsc, final QueryParams query) {
+        final long start = System.currentTimeMillis();
+        List<URIMetadataNode> docs = null;
+        try {
+            docs = fsc.query(query);
+        } catch (final RuntimeException e) {
+            ConcurrentLog.warn("FederateSearchManager", "Search query to " + fsc.instancename + " failed: " + e.getMessage());
+        } finally {
+            fsc.recordQuery(System.currentTimeMillis() - start, docs != null);
+        }
+        return docs;
+    }
+
     /**
      * Takes a search string, converts it to queryparams and calls the
      * query(queryparams)
@@ -276,15 +408,22 @@ public class FederateSearchManager {
     }
 
     /**
-     * Get best systems from configured targets for this search
+     * Get best systems from configured targets for this search: systems which failed repeatedly
+     * are paused with an increasing delay, and the other systems are ordered by their query time.
      *
      * @param theSearch
      * @return list of searchtargetconnectors
      */
     protected Set<AbstractFederateSearchConnector> getBest(final QueryParams query) {
-        HashSet<AbstractFederateSearchConnector> retset = new HashSet<AbstractFederateSearchConnector>();
+        List<AbstractFederateSearchConnector> retlist = new ArrayList<AbstractFederateSearchConnector>();
         MultiProtocolURL connectorURL;
         for (AbstractFederateSearchConnector fsc : conlist) {
+            // pause systems which failed repeatedly
+            final int failures = fsc.failures();
+            if (failures >= MAX_FAILURES) {
+                final long delay = Math.min(MAX_FAILURE_DELAY, ((long) accessDelay) << Math.min(16, failures - MAX_FAILURES));
+                if (fsc.lastFailureTime() + delay > System.currentTimeMillis()) continue;
+            }
         	try {
 				connectorURL = new MultiProtocolURL(fsc.baseurl);
 			} catch (MalformedURLException e) {
@@ -308,7 +447,7 @@ public class FederateSearchManager {
             	// enforce 15 sec delay between searches to same system, and also check any eventual robots.txt Crawl-delay directive
     			if (robotsEntry == null || !robotsEntry.isDisallowed(connectorURL)) {
                     // also check robots.txt exclusion
-    				retset.add(fsc);
+    				retlist.add(fsc);
     			} else {
     				ConcurrentLog.warn("FederateSearchManager",
     						"Connector URL is disallowed by robots.txt : " + fsc.baseurl);
@@ -316,7 +455,14 @@ public class FederateSearchManager {
             }
 
         }
-        return retset;
+        // the fastest systems first (systems without statistics are tried first)
+        Collections.sort(retlist, new Comparator<AbstractFederateSearchConnector>() {
+            @Override
+            public int compare(final AbstractFederateSearchConnector o1, final AbstractFederateSearchConnector o2) {
+                return Long.compare(o1.latency(), o2.latency());
+            }
+        });
+        return new LinkedHashSet<AbstractFederateSearchConnector>(retlist);
     }
 
     /**
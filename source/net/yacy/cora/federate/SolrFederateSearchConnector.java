@@ -84,7 +84,7 @@ public class SolrFederateSearchConnector extends AbstractFederateSearchConnector
      * all query and search routines will use this routine to query the remote system
      *
      * @param query
-     * @return list of solr documents (metadata) accordng to local YaCy internal schema
+     * @return list of solr documents (metadata) accordng to local YaCy internal schema, or null when the remote system could not be queried
      */
     @Override
     public List<URIMetadataNode> query(QueryParams query) {
@@ -123,14 +123,17 @@ public class SolrFederateSearchConnector extends AbstractFederateSearchConnector
                         } catch (MalformedURLException ex) { }
                     }
                 } catch (IOException | SolrException e) {
+                    return null;
                 } finally {
                     solrConnector.close();
                 }
             } catch (Throwable ee) {
+                return null;
             } finally {
                 instance.close();
             }
         } catch (IOException eee) {
+            return null;
         }
         return docs;
     }
@@ -275,12 +275,12 @@ public class OpenSearchConnector extends AbstractFederateSearchConnector impleme
      * search and query operation For internal access delay time, also the
      * this.lastaccessed time needs to be set here.
      *
-     * @return query results (metadata) with fields according to YaCy schema
+     * @return query results (metadata) with fields according to YaCy schema, or null when the remote system could not be queried
      */
     @Override
     public List<URIMetadataNode> query(QueryParams query) {
 
-        return query(query.getQueryGoal().getQueryString(false), 0, query.itemsPerPage);
+        return queryOrNull(query.getQueryGoal().getQueryString(false), 0, query.itemsPerPage);
     }
     
     /**
@@ -291,6 +291,15 @@ public class OpenSearchConnector extends AbstractFederateSearchConnector impleme
      * @return a result list eventually empty when no results where found or when an error occured
      */
     public List<URIMetadataNode> query(final String searchTerms, final int startIndex, final int count) {
+        final List<URIMetadataNode> docs = queryOrNull(searchTerms, startIndex, count);
+        return docs == null ? new ArrayList<URIMetadataNode>() : docs;
+    }
+
+    /**
+     * Query the remote system at baseurl with the specified search terms
+     * @return a result list eventually empty when no results where found, or null when an error occured
+     */
+    private List<URIMetadataNode> queryOrNull(final String searchTerms, final int startIndex, final int count) {
     	List<URIMetadataNode> docs = new ArrayList<URIMetadataNode>();
     	
         // see http://www.loc.gov/standards/sru/
@@ -373,9 +382,11 @@ public class OpenSearchConnector extends AbstractFederateSearchConnector impleme
             } catch (IOException ex) {
                 ConcurrentLog.logException(ex);
                 ConcurrentLog.info("OpenSearchConnector." + this.instancename, "no connection to " + searchurl);
+                return null;
             }
         } catch (MalformedURLException ee) {
             ConcurrentLog.warn("OpenSearchConnector." + this.instancename, "malformed url " + searchurl);
+            return null;
         }
         return docs;
     }
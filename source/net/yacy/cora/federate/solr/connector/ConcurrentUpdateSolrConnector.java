@@ -0,0 +1,624 @@
+/**
+ *  ConcurrentUpdateSolrConnector
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.federate.solr.connector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+import net.yacy.cora.sorting.ReversibleScoreMap;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * A connector buffering document additions and partial updates in front of
+ * another connector, to write them in batches from a background thread instead
+ * of one Solr request per document.
+ * <ul>
+ * <li>The buffer is flushed when it holds a given number of documents or when
+ * its oldest document reaches a given age. When the buffer is full and a batch
+ * is still being written, adding threads wait : the buffer is bounded.</li>
+ * <li>Documents with the same id are merged : a new document replaces a
+ * buffered one, and a partial update is applied to a buffered document or
+ * merged with a buffered partial update.</li>
+ * <li>Soft commits are coalesced : at most one is sent during a minimum
+ * interval, the last requested one being deferred to the background
+ * thread.</li>
+ * <li>Buffered and currently written documents are returned by
+ * {@link #getDocumentById(String, String...)} and
+ * {@link #getLoadTimeURL(String)}, which also apply buffered partial updates to
+ * the written document. Other queries only see written documents, as with a
+ * Solr index which is not yet committed.</li>
+ * <li>The buffer holds copies of the given documents, so callers may reuse
+ * their documents.</li>
+ * </ul>
+ */
+public class ConcurrentUpdateSolrConnector extends AbstractSolrConnector implements SolrConnector {
+
+    private final static ConcurrentLog log = new ConcurrentLog(ConcurrentUpdateSolrConnector.class.getSimpleName());
+
+    /** Minimum time in milliseconds between two soft commits */
+    public static final long SOFT_COMMIT_MIN_INTERVAL = 1000;
+
+    /** The wrapped connector */
+    private final SolrConnector connector;
+
+    /** Number of documents triggering a flush */
+    private final int bufferMaxSize;
+
+    /** Maximum time in milliseconds a document stays in the buffer */
+    private final long bufferMaxAge;
+
+    /** Buffered documents, by id */
+    private Map<String, SolrInputDocument> docBuffer;
+
+    /** Buffered partial updates, by id */
+    private Map<String, SolrInputDocument> updateBuffer;
+
+    /** Documents currently written by the flusher thread, by id. Null when no batch is being written. */
+    private Map<String, SolrInputDocument> docsInFlight;
+
+    /** Partial updates currently written by the flusher thread, by id. Null when no batch is being written. */
+    private Map<String, SolrInputDocument> updatesInFlight;
+
+    /** Number of the batch which is collected in the buffer; the batches are written in the order of their numbers */
+    private long bufferGeneration;
+
+    /** Number of the last written batch */
+    private long writtenGeneration;
+
+    /** Time when the oldest document in the buffer was added */
+    private long bufferOldest;
+
+    /** Set to true when a flush has been requested before the buffer is full */
+    private boolean flushRequested;
+
+    /** Set to true when a soft commit has been deferred */
+    private boolean softCommitPending;
+
+    /** Time of the last commit */
+    private long lastCommit;
+
+    /** Set to true once the flusher thread has been stopped */
+    private boolean stopped;
+
+    /** The background thread writing the buffer */
+    private final Thread flusher;
+
+    /**
+     * @param connector the connector to write to. Must not be null.
+     * @param bufferMaxSize the number of documents triggering a flush. Must be greater than zero.
+     * @param bufferMaxAge the maximum time in milliseconds a document stays in the buffer
+     */
+    public ConcurrentUpdateSolrConnector(final SolrConnector connector, final int bufferMaxSize, final long bufferMaxAge) {
+        if (connector == null) {
+            throw new IllegalArgumentException("connector parameter must not be null");
+        }
+        if (bufferMaxSize <= 0) {
+            throw new IllegalArgumentException("bufferMaxSize parameter must be greater than zero");
+        }
+        this.connector = connector;
+        this.bufferMaxSize = bufferMaxSize;
+        this.bufferMaxAge = Math.max(1, bufferMaxAge);
+        this.docBuffer = new LinkedHashMap<String, SolrInputDocument>();
+        this.updateBuffer = new LinkedHashMap<String, SolrInputDocument>();
+        this.docsInFlight = null;
+        this.updatesInFlight = null;
+        this.bufferGeneration = 1;
+        this.writtenGeneration = 0;
+        this.bufferOldest = 0;
+        this.flushRequested = false;
+        this.softCommitPending = false;
+        this.lastCommit = 0;
+        this.stopped = false;
+        this.flusher = new Thread(ConcurrentUpdateSolrConnector.class.getSimpleName() + ".flusher") {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        };
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * @return the wrapped connector
+     */
+    public SolrConnector getConnector() {
+        return this.connector;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.connector.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConcurrentUpdateSolrConnector && this.connector.equals(((ConcurrentUpdateSolrConnector) o).connector);
+    }
+
+    private static String getId(final SolrInputDocument doc) {
+        return (String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+    }
+
+    private int bufferCount() {
+        return this.docBuffer.size() + this.updateBuffer.size();
+    }
+
+    private boolean isFlushDue(final long now) {
+        final int count = bufferCount();
+        return count >= this.bufferMaxSize || (count > 0 && (this.flushRequested || now - this.bufferOldest >= this.bufferMaxAge));
+    }
+
+    private boolean isSoftCommitDue(final long now) {
+        return this.softCommitPending && now - this.lastCommit >= SOFT_COMMIT_MIN_INTERVAL;
+    }
+
+    /**
+     * Loop of the flusher thread : wait for a full or old enough buffer, then write it as one batch.
+     */
+    private void flushLoop() {
+        while (true) {
+            final Map<String, SolrInputDocument> docs, updates;
+            final boolean softCommit;
+            final long generation;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                while (!this.stopped && !isFlushDue(now) && !isSoftCommitDue(now)) {
+                    long timeout = Long.MAX_VALUE;
+                    if (bufferCount() > 0) timeout = this.bufferOldest + this.bufferMaxAge - now;
+                    if (this.softCommitPending) timeout = Math.min(timeout, this.lastCommit + SOFT_COMMIT_MIN_INTERVAL - now);
+                    try {
+                        if (timeout == Long.MAX_VALUE) {
+                            this.wait();
+                        } else {
+                            this.wait(Math.max(1, timeout));
+                        }
+                    } catch (final InterruptedException e) {
+                        this.stopped = true;
+                    }
+                    now = System.currentTimeMillis();
+                }
+                if (this.stopped && bufferCount() == 0) {
+                    this.notifyAll();
+                    return;
+                }
+                docs = this.docsInFlight = this.docBuffer;
+                updates = this.updatesInFlight = this.updateBuffer;
+                generation = this.bufferGeneration++;
+                this.docBuffer = new LinkedHashMap<String, SolrInputDocument>();
+                this.updateBuffer = new LinkedHashMap<String, SolrInputDocument>();
+                this.bufferOldest = 0;
+                this.flushRequested = false;
+                softCommit = isSoftCommitDue(now);
+                if (softCommit) {
+                    this.softCommitPending = false;
+                    this.lastCommit = now;
+                }
+                this.notifyAll(); // wake up threads waiting for space in the buffer
+            }
+            try {
+                write(docs, updates);
+                if (softCommit) this.connector.commit(true);
+            } finally {
+                synchronized (this) {
+                    this.docsInFlight = null;
+                    this.updatesInFlight = null;
+                    this.writtenGeneration = generation;
+                    this.notifyAll(); // wake up threads waiting for the end of this batch
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a batch to the wrapped connector. When the batch fails, the documents are written one by one
+     * so that only the faulty ones are lost.
+     */
+    private void write(final Map<String, SolrInputDocument> docs, final Map<String, SolrInputDocument> updates) {
+        if (!docs.isEmpty()) {
+            try {
+                this.connector.add(new ArrayList<SolrInputDocument>(docs.values()));
+            } catch (final Throwable e) {
+                log.warn("failed to write a batch of " + docs.size() + " documents, writing them one by one: " + e.getMessage());
+                for (final SolrInputDocument doc: docs.values()) {
+                    try {
+                        this.connector.add(doc);
+                    } catch (final Throwable ee) {
+                        log.warn("failed to write document " + getId(doc) + ": " + ee.getMessage());
+                    }
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            try {
+                this.connector.update(new ArrayList<SolrInputDocument>(updates.values()));
+            } catch (final Throwable e) {
+                log.warn("failed to write a batch of " + updates.size() + " partial updates, writing them one by one: " + e.getMessage());
+                for (final SolrInputDocument doc: updates.values()) {
+                    try {
+                        this.connector.update(doc);
+                    } catch (final Throwable ee) {
+                        log.warn("failed to write partial update of document " + getId(doc) + ": " + ee.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait while the buffer is full, then mark the buffer start time when it was empty.
+     * Must be called while holding the lock of this connector.
+     */
+    private void waitForSpace() throws IOException {
+        if (this.stopped) throw new IOException("connector is closed");
+        while (bufferCount() >= this.bufferMaxSize && !this.stopped) {
+            this.notifyAll();
+            try {
+                this.wait(100);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for buffer space", e);
+            }
+        }
+        if (bufferCount() == 0) this.bufferOldest = System.currentTimeMillis();
+    }
+
+    /**
+     * Wait until the batch currently written by the flusher thread is completed.
+     * Must be called while holding the lock of this connector.
+     * @throws IOException when the wait was interrupted; the batch may still be written
+     */
+    private void waitInFlight() throws IOException {
+        while (this.docsInFlight != null) {
+            try {
+                this.wait(100);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for a batch being written", e);
+            }
+        }
+    }
+
+    /**
+     * Write the documents buffered at the time of the call and wait until they are written.
+     * Documents added meanwhile are written with a later batch, so this does not wait for a continuous indexing.
+     * @return false when the wait was interrupted and the documents may not be written yet;
+     * the interrupt flag of the current thread is then set again
+     */
+    public boolean flush() {
+        final Map<String, SolrInputDocument> docs, updates;
+        synchronized (this) {
+            // the batch containing the currently buffered documents, or the batch being written
+            final long target = bufferCount() > 0 ? this.bufferGeneration : this.bufferGeneration - 1;
+            if (bufferCount() > 0) {
+                this.flushRequested = true;
+                this.notifyAll();
+            }
+            while (this.writtenGeneration < target && this.flusher.isAlive()) {
+                try {
+                    this.wait(100);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (this.flusher.isAlive() || bufferCount() == 0) return true;
+            // the flusher thread is not running anymore: write in the current thread
+            docs = this.docBuffer;
+            updates = this.updateBuffer;
+            this.docBuffer = new LinkedHashMap<String, SolrInputDocument>();
+            this.updateBuffer = new LinkedHashMap<String, SolrInputDocument>();
+        }
+        write(docs, updates);
+        return true;
+    }
+
+    /**
+     * Write all buffered documents and stop the flusher thread, without closing the wrapped connector.
+     * Further additions are rejected.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (this.stopped) return;
+            this.stopped = true;
+            this.notifyAll();
+        }
+        try {
+            this.flusher.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // write remaining documents if the flusher thread has died
+        if (!flush()) log.warn("interrupted while the flusher thread writes the remaining documents");
+    }
+
+    @Override
+    public void add(final SolrInputDocument solrdoc) throws IOException, SolrException {
+        final String id = getId(solrdoc);
+        if (id == null) {
+            this.connector.add(solrdoc);
+            return;
+        }
+        synchronized (this) {
+            waitForSpace();
+            // a document replaces all fields of a document with the same id, including buffered partial updates
+            this.updateBuffer.remove(id);
+            this.docBuffer.remove(id); // keep the insertion order of the last version
+            this.docBuffer.put(id, solrdoc.deepCopy());
+            if (bufferCount() >= this.bufferMaxSize) this.notifyAll();
+        }
+    }
+
+    @Override
+    public void add(final Collection<SolrInputDocument> solrdocs) throws IOException, SolrException {
+        for (final SolrInputDocument solrdoc: solrdocs) this.add(solrdoc);
+    }
+
+    /**
+     * Buffer a partial update: the fields of the given document are set on a buffered document with the same id,
+     * or merged with a buffered partial update of the same id.
+     */
+    @Override
+    public void update(final SolrInputDocument solrdoc) throws IOException, SolrException {
+        final String id = getId(solrdoc);
+        if (id == null) {
+            this.connector.update(solrdoc);
+            return;
+        }
+        final SolrInputDocument copy = solrdoc.deepCopy();
+        synchronized (this) {
+            final SolrInputDocument buffered = this.docBuffer.get(id);
+            if (buffered != null) {
+                for (final SolrInputField field: copy) buffered.setField(field.getName(), field.getValue());
+                return;
+            }
+            final SolrInputDocument bufferedUpdate = this.updateBuffer.get(id);
+            if (bufferedUpdate != null) {
+                for (final SolrInputField field: copy) bufferedUpdate.setField(field.getName(), field.getValue());
+                return;
+            }
+            waitForSpace();
+            this.updateBuffer.put(id, copy);
+            if (bufferCount() >= this.bufferMaxSize) this.notifyAll();
+        }
+    }
+
+    @Override
+    public void update(final Collection<SolrInputDocument> solrdocs) throws IOException, SolrException {
+        for (final SolrInputDocument solrdoc: solrdocs) this.update(solrdoc);
+    }
+
+    /**
+     * @return the buffered or currently written document with the given id, or null
+     */
+    private synchronized SolrInputDocument getBufferedDocument(final String id) {
+        SolrInputDocument doc = this.docBuffer.get(id);
+        if (doc == null && this.docsInFlight != null) doc = this.docsInFlight.get(id);
+        return doc;
+    }
+
+    /**
+     * @return the fields of the buffered and currently written partial updates of the document with the given id, or null
+     */
+    private synchronized SolrInputDocument getBufferedUpdate(final String id) {
+        final SolrInputDocument inFlight = this.updatesInFlight == null ? null : this.updatesInFlight.get(id);
+        final SolrInputDocument buffered = this.updateBuffer.get(id);
+        if (inFlight == null && buffered == null) return null;
+        final SolrInputDocument update = new SolrInputDocument();
+        if (inFlight != null) for (final SolrInputField field: inFlight) update.setField(field.getName(), field.getValue());
+        if (buffered != null) for (final SolrInputField field: buffered) update.setField(field.getName(), field.getValue());
+        return update;
+    }
+
+    /**
+     * Set the requested fields of a buffered document or partial update on a document.
+     */
+    private static void setFields(final SolrDocument doc, final SolrInputDocument buffered, final String ... fields) {
+        final Set<String> fieldSet = new HashSet<String>();
+        for (final String field: fields) fieldSet.add(field);
+        final boolean allFields = fieldSet.isEmpty() || fieldSet.contains("*");
+        for (final SolrInputField field: buffered) {
+            if (allFields || fieldSet.contains(field.getName())) doc.setField(field.getName(), field.getValue());
+        }
+    }
+
+    @Override
+    public SolrDocument getDocumentById(final String id, final String ... fields) throws IOException {
+        final SolrInputDocument buffered = getBufferedDocument(id);
+        if (buffered != null) {
+            final SolrDocument doc = new SolrDocument();
+            setFields(doc, buffered, fields);
+            return doc;
+        }
+        final SolrInputDocument update = getBufferedUpdate(id);
+        final SolrDocument doc = this.connector.getDocumentById(id, fields);
+        // apply a partial update which is not yet written, instead of waiting for its write
+        if (doc != null && update != null) setFields(doc, update, fields);
+        return doc;
+    }
+
+    @Override
+    public LoadTimeURL getLoadTimeURL(final String id) throws IOException {
+        final SolrInputDocument buffered = getBufferedDocument(id);
+        if (buffered != null) return getLoadTimeURL(buffered);
+        if (getBufferedUpdate(id) != null) return getLoadTimeURL(getDocumentById(id, CollectionSchema.load_date_dt.getSolrFieldName(), CollectionSchema.sku.getSolrFieldName()));
+        return this.connector.getLoadTimeURL(id);
+    }
+
+    @Override
+    public void deleteById(final String id) throws IOException {
+        synchronized (this) {
+            this.docBuffer.remove(id);
+            this.updateBuffer.remove(id);
+            if ((this.docsInFlight != null && this.docsInFlight.containsKey(id)) || (this.updatesInFlight != null && this.updatesInFlight.containsKey(id))) waitInFlight();
+        }
+        this.connector.deleteById(id);
+    }
+
+    @Override
+    public void deleteByIds(final Collection<String> ids) throws IOException {
+        synchronized (this) {
+            for (final String id: ids) {
+                this.docBuffer.remove(id);
+                this.updateBuffer.remove(id);
+            }
+            waitInFlight();
+        }
+        this.connector.deleteByIds(ids);
+    }
+
+    @Override
+    public void deleteByQuery(final String querystring) throws IOException {
+        // buffered documents may match the query
+        if (!flush()) throw new IOException("interrupted while writing the buffered documents");
+        this.connector.deleteByQuery(querystring);
+    }
+
+    @Override
+    public void clear() throws IOException {
+        synchronized (this) {
+            this.docBuffer.clear();
+            this.updateBuffer.clear();
+            waitInFlight();
+        }
+        this.connector.clear();
+    }
+
+    /**
+     * Write the buffered documents, then commit. Soft commits are coalesced: when the last commit is more recent
+     * than {@link #SOFT_COMMIT_MIN_INTERVAL}, the soft commit is deferred to the flusher thread.
+     */
+    @Override
+    public void commit(final boolean softCommit) {
+        if (!flush()) {
+            log.warn("commit interrupted before the buffered documents were written");
+            return;
+        }
+        if (softCommit) {
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                if (now - this.lastCommit < SOFT_COMMIT_MIN_INTERVAL && !this.stopped) {
+                    this.softCommitPending = true;
+                    this.notifyAll();
+                    return;
+                }
+                this.softCommitPending = false;
+                this.lastCommit = now;
+            }
+        } else {
+            synchronized (this) {
+                this.softCommitPending = false;
+                this.lastCommit = System.currentTimeMillis();
+            }
+        }
+        this.connector.commit(softCommit);
+    }
+
+    @Override
+    public void optimize(final int maxSegments) {
+        if (!flush()) {
+            log.warn("optimize interrupted before the buffered documents were written");
+            return;
+        }
+        this.connector.optimize(maxSegments);
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return this.connector.getSegmentCount();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.connector.isClosed();
+    }
+
+    @Override
+    public void close() {
+        stop();
+        this.connector.close();
+    }
+
+    @Override
+    public void clearCaches() {
+        this.connector.clearCaches();
+    }
+
+    /**
+     * @return the number of buffered documents and partial updates, plus the buffer size of the wrapped connector
+     */
+    @Override
+    public int bufferSize() {
+        synchronized (this) {
+            return bufferCount() + this.connector.bufferSize();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return this.connector.getSize();
+    }
+
+    @Override
+    public QueryResponse getResponseByParams(final ModifiableSolrParams query) throws IOException, SolrException {
+        return this.connector.getResponseByParams(query);
+    }
+
+    @Override
+    public SolrDocumentList getDocumentListByParams(final ModifiableSolrParams params) throws IOException, SolrException {
+        return this.connector.getDocumentListByParams(params);
+    }
+
+    @Override
+    public SolrDocumentList getDocumentListByQuery(final String querystring, final String sort, final int offset, final int count, final String ... fields) throws IOException {
+        return this.connector.getDocumentListByQuery(querystring, sort, offset, count, fields);
+    }
+
+    @Override
+    public long getCountByQuery(final String querystring) throws IOException {
+        return this.connector.getCountByQuery(querystring);
+    }
+
+    @Override
+    public LinkedHashMap<String, ReversibleScoreMap<String>> getFacets(final String query, final int maxresults, final String ... fields) throws IOException {
+        return this.connector.getFacets(query, maxresults, fields);
+    }
+
+    @Override
+    public BlockingQueue<String> concurrentIDsByQuery(final String querystring, final String sort, final int offset, final int maxcount, final long maxtime, final int buffersize, final int concurrency) {
+        return this.connector.concurrentIDsByQuery(querystring, sort, offset, maxcount, maxtime, buffersize, concurrency);
+    }
+
+}
@@ -26,6 +26,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,6 +48,7 @@ import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
@@ -377,7 +379,158 @@ public class EmbeddedSolrConnector extends SolrServerConnector implements SolrCo
         }
     }
 
-    
+    /**
+     * start a paged query
+     * @return a paged query which should be closed after usage
+     */
+    public PagedQuery pagedQuery() {
+        return new PagedQuery();
+    }
+
+    /**
+     * A query whose result pages are fetched one after another. A page which continues the previous page is located
+     * with a Solr cursor instead of a start offset, so that the documents of the previous pages are not collected and
+     * skipped again. The documents are read directly from the searcher, without the binary response serialization of
+     * the embedded Solr server.
+     * Only the cursor is kept between two pages: each page is read from the current index searcher, which is released
+     * after the page, so that a paged query does not pin an old searcher across commits. A cursor stays valid when the
+     * index changes.
+     */
+    public class PagedQuery implements AutoCloseable {
+        private boolean closed;
+        private String cursorMark; // the cursor after the last page or null
+        private int nextStart; // the offset of the first document after the cursor
+
+        private PagedQuery() {
+            this.closed = false;
+            this.cursorMark = null;
+            this.nextStart = -1;
+        }
+
+        /**
+         * fetch a result page
+         * @param query the query; must be the same for all pages of this paged query, except for facet and highlighting parameters
+         * @param start the offset of the first document of the page
+         * @param rows the number of documents of the page
+         * @return the response with documents, facets and highlighting as they would be returned from getResponseByParams
+         * @throws IOException if the query fails or if this paged query is closed
+         */
+        public synchronized QueryResponse page(final SolrParams query, final int start, final int rows) throws IOException {
+            if (this.closed) throw new IOException("paged query is closed");
+            final ModifiableSolrParams params = new ModifiableSolrParams(query);
+            params.set(CommonParams.ROWS, rows);
+            // a cursor requires a total order of the documents, the unique key is the tie breaker
+            final String id = CollectionSchema.id.getSolrFieldName();
+            final String sort = params.get(CommonParams.SORT);
+            if (sort == null || sort.trim().isEmpty()) {
+                params.set(CommonParams.SORT, "score desc," + id + " asc");
+            } else if (!sort.trim().startsWith(id + " ") && !sort.contains("," + id + " ")) {
+                params.set(CommonParams.SORT, sort + "," + id + " asc");
+            }
+            final boolean continued = start == this.nextStart && this.cursorMark != null;
+            final boolean useCursor = start == 0 || continued;
+            if (useCursor) {
+                params.set(CommonParams.START, 0);
+                params.set(CursorMarkParams.CURSOR_MARK_PARAM, continued ? this.cursorMark : CursorMarkParams.CURSOR_MARK_START);
+            } else {
+                params.set(CommonParams.START, start);
+                params.remove(CursorMarkParams.CURSOR_MARK_PARAM);
+            }
+
+            final SolrQueryRequest req = new SolrQueryRequestBase(EmbeddedSolrConnector.this.core, params) {}; // the searcher is released by close()
+            req.getContext().put("path", SELECT);
+            req.getContext().put("webapp", CONTEXT);
+            try {
+                final SolrQueryResponse rsp = query(req);
+                if (rsp.getException() != null) throw new IOException(rsp.getException().getMessage(), rsp.getException());
+                final NamedList<?> rspValues = rsp.getValues();
+                final NamedList<Object> values = new NamedList<Object>();
+                SolrDocumentList documents = null;
+                for (final Map.Entry<String, ?> entry: rspValues) {
+                    if ("response".equals(entry.getKey())) {
+                        documents = toSolrDocumentList(req, (ResultContext) entry.getValue());
+                        values.add(entry.getKey(), documents);
+                    } else if ("highlighting".equals(entry.getKey())) {
+                        values.add(entry.getKey(), highlightingLists((NamedList<?>) entry.getValue()));
+                    } else {
+                        values.add(entry.getKey(), entry.getValue());
+                    }
+                }
+                final Object next = rspValues.get(CursorMarkParams.CURSOR_MARK_NEXT);
+                if (useCursor && next != null && documents != null) {
+                    this.cursorMark = next.toString();
+                    this.nextStart = start + documents.size();
+                } else {
+                    this.cursorMark = null;
+                    this.nextStart = -1;
+                }
+                final QueryResponse response = new QueryResponse();
+                response.setResponse(values);
+                return response;
+            } finally {
+                req.close();
+                SolrRequestInfo.clearRequestInfo();
+            }
+        }
+
+        /**
+         * @return the version of the current index reader, which changes with each commit, or -1 if closed
+         */
+        public synchronized long indexVersion() {
+            if (this.closed) return -1;
+            final RefCounted<SolrIndexSearcher> searcher = EmbeddedSolrConnector.this.core.getSearcher();
+            try {
+                return searcher.get().getIndexReader().getVersion();
+            } finally {
+                searcher.decref();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            this.closed = true;
+            this.cursorMark = null;
+        }
+    }
+
+    /**
+     * read the documents of a solr-internal result directly from the searcher, including the score if it was computed
+     */
+    private SolrDocumentList toSolrDocumentList(final SolrQueryRequest req, final ResultContext resultContext) throws IOException {
+        final SolrDocumentList sdl = new SolrDocumentList();
+        final DocList response = resultContext == null ? null : resultContext.getDocList();
+        if (response == null) return sdl;
+        sdl.setNumFound(response.matches());
+        sdl.setStart(response.offset());
+        if (response.hasScores()) sdl.setMaxScore(response.maxScore());
+        final SolrIndexSearcher searcher = req.getSearcher();
+        final DocIterator iterator = response.iterator();
+        for (int i = 0; i < response.size(); i++) {
+            final int docid = iterator.nextDoc();
+            final SolrDocument doc = doc2SolrDoc(searcher.doc(docid, (Set<String>) null));
+            if (response.hasScores()) doc.setField("score", iterator.score());
+            sdl.add(doc);
+        }
+        return sdl;
+    }
+
+    /**
+     * the highlighter returns the snippets of each field as array, but solrj clients expect lists
+     */
+    private static NamedList<Object> highlightingLists(final NamedList<?> highlighting) {
+        final NamedList<Object> result = new SimpleOrderedMap<Object>();
+        if (highlighting == null) return result;
+        for (final Map.Entry<String, ?> doc: highlighting) {
+            final NamedList<Object> fields = new SimpleOrderedMap<Object>();
+            for (final Map.Entry<String, ?> field: (NamedList<?>) doc.getValue()) {
+                final Object snippets = field.getValue();
+                fields.add(field.getKey(), snippets instanceof String[] ? Arrays.asList((String[]) snippets) : snippets);
+            }
+            result.add(doc.getKey(), fields);
+        }
+        return result;
+    }
+
     private class DocListSearcher implements AutoCloseable {
         private SolrQueryRequest request;
         private DocList response;
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import net.yacy.cora.federate.solr.connector.ConcurrentUpdateSolrConnector;
 import net.yacy.cora.federate.solr.connector.EmbeddedSolrConnector;
 import net.yacy.cora.federate.solr.connector.MirrorSolrConnector;
 import net.yacy.cora.federate.solr.connector.RemoteSolrConnector;
@@ -64,7 +65,7 @@ public class InstanceMirror {
     }
 
     public void disconnectEmbedded() {
-        mirrorConnectorCache.clear();
+        stopMirrorConnectors();
         if (this.embeddedSolrInstance == null) return;
         Set<SolrConnector> connectors = new HashSet<SolrConnector>();
         connectors.addAll(this.embeddedConnectorCache.values());
@@ -88,7 +89,7 @@ public class InstanceMirror {
     }
 
     public void disconnectRemote() {
-        mirrorConnectorCache.clear();
+        stopMirrorConnectors();
         if (this.remoteSolrInstance == null) return;
         for (RemoteSolrConnector connector: this.remoteConnectorCache.values()) connector.close();
         this.remoteConnectorCache.clear();
@@ -96,6 +97,17 @@ public class InstanceMirror {
         this.remoteSolrInstance = null;
     }
 
+    /**
+     * Write the buffered documents of the mirror connectors before they are dropped from the cache.
+     * The embedded and remote connectors are closed by the caller.
+     */
+    private void stopMirrorConnectors() {
+        for (SolrConnector connector: this.mirrorConnectorCache.values()) {
+            if (connector instanceof ConcurrentUpdateSolrConnector) ((ConcurrentUpdateSolrConnector) connector).stop();
+        }
+        this.mirrorConnectorCache.clear();
+    }
+
     /**
      * Close this instance and it's connectors and cores
      */
@@ -180,6 +192,13 @@ public class InstanceMirror {
         EmbeddedSolrConnector esc = getEmbeddedConnector(corename);
         RemoteSolrConnector rsc = getRemoteConnector(corename);
         msc = new MirrorSolrConnector(esc, rsc);
+        int bufferSize = SwitchboardConstants.SOLR_INDEXING_BUFFER_SIZE_DEFAULT;
+        long bufferMaxAge = SwitchboardConstants.SOLR_INDEXING_BUFFER_MAXAGE_DEFAULT;
+        if (Switchboard.getSwitchboard() != null) {
+            bufferSize = Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.SOLR_INDEXING_BUFFER_SIZE, bufferSize);
+            bufferMaxAge = Switchboard.getSwitchboard().getConfigLong(SwitchboardConstants.SOLR_INDEXING_BUFFER_MAXAGE, bufferMaxAge);
+        }
+        if (bufferSize > 0) msc = new ConcurrentUpdateSolrConnector(msc, bufferSize, bufferMaxAge);
         this.mirrorConnectorCache.put(corename, msc);
         return msc;
     }
@@ -25,7 +25,6 @@ import java.io.Writer;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
@@ -151,24 +150,49 @@ public class FlatJSONResponseWriter implements QueryResponseWriter, EmbeddedSolr
         }
     }
     
+    /**
+     * write a document as one line of JSON; the document is written directly to the writer
+     * without creating a JSON object or a string of the document
+     */
     public static final void writeDoc(final Writer writer, final SolrDocument doc) throws IOException {
-        JSONObject json = new JSONObject(true);
-        final Map<String, Object> fields = doc.getFieldValueMap();
-        for (String key: fields.keySet()) {
+        writer.write('{');
+        boolean first = true;
+        for (final String key: doc.getFieldNames()) {
             if (key == null)  continue;
-            Object value = doc.get(key);
-            if (value == null) {
-            } else if (value instanceof Collection<?>) {
-                JSONArray a = new JSONArray();
-                json.put(key, a);
-                for (Object o: ((Collection<?>) value)) {
-                    a.add(o);
+            final Object value = doc.get(key);
+            if (value == null) continue;
+            if (!first) writer.write(',');
+            first = false;
+            JSONObject.quote(key, writer);
+            writer.write(':');
+            if (value instanceof Collection<?>) {
+                writer.write('[');
+                boolean firstValue = true;
+                for (final Object o: ((Collection<?>) value)) {
+                    if (!firstValue) writer.write(',');
+                    firstValue = false;
+                    writeValue(writer, o);
                 }
+                writer.write(']');
             } else {
-                json.put(key, value);
+                writeValue(writer, value);
             }
         }
-        writer.write(json.toString());
+        writer.write('}');
         writer.write(lb);
     }
+
+    private static final void writeValue(final Writer writer, final Object value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+        } else if (value instanceof Number) {
+            writer.write(JSONObject.numberToString((Number) value));
+        } else if (value instanceof Boolean) {
+            writer.write(value.toString());
+        } else if (value instanceof Date) {
+            JSONObject.quote(((Date) value).toInstant().toString(), writer);
+        } else {
+            JSONObject.quote(value.toString(), writer);
+        }
+    }
 }
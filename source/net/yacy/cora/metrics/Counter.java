@@ -0,0 +1,54 @@
+/**
+ *  Counter
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing counter. Increments are striped over cells of a {@link LongAdder}
+ * so that recording from many threads does not contend on a single memory location.
+ */
+public class Counter implements Metrics.LongValue {
+
+    private final LongAdder value = new LongAdder();
+
+    public void inc() {
+        this.value.increment();
+    }
+
+    /**
+     * @param amount a non-negative amount to add to the counter
+     */
+    public void add(final long amount) {
+        this.value.add(amount);
+    }
+
+    /**
+     * reset the counter to zero; only for counters which are also shown as statistics that can be cleared
+     */
+    public void reset() {
+        this.value.reset();
+    }
+
+    @Override
+    public long get() {
+        return this.value.sum();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *  Histogram
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative long values with a fixed relative precision, in the manner of a HDR histogram:
+ * values are counted in buckets that are exact for values below 16 and cover 1/16 of a power of two above,
+ * so that any recorded value is known within about 6%. Recording is a single atomic increment without locks
+ * and without allocation.
+ * Values are recorded in an integer unit (i.e. milliseconds or nanoseconds) and exported multiplied with a
+ * scale factor (i.e. 0.001 to export milliseconds as seconds).
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count, sum;
+    private final double scale;
+    private final int highestExponent;
+
+    /**
+     * @param scale the factor to convert recorded values to the exported unit
+     * @param highestTrackableValue the highest value that shall be shown as upper bucket bound in exported metrics;
+     *        higher values are still recorded and counted in the +Inf bucket
+     */
+    public Histogram(final double scale, final long highestTrackableValue) {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.scale = scale;
+        this.highestExponent = Math.min(62, 64 - Long.numberOfLeadingZeros(Math.max(1, highestTrackableValue)));
+    }
+
+    private static int index(final long value) {
+        if (value < SUB_COUNT) return (int) Math.max(0, value);
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @param index a bucket index
+     * @return the highest value which is counted in the bucket
+     */
+    private static long upperBound(final int index) {
+        if (index < SUB_COUNT) return index;
+        final int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        final int sub = index % SUB_COUNT;
+        final long lower = ((long) (SUB_COUNT + sub)) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * record a value; negative values are counted as zero
+     * @param value
+     */
+    public void record(final long value) {
+        this.buckets.incrementAndGet(index(value));
+        this.count.increment();
+        this.sum.add(Math.max(0, value));
+    }
+
+    public long count() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the sum of all recorded values in the exported unit
+     */
+    public double sum() {
+        return this.sum.sum() * this.scale;
+    }
+
+    public double scale() {
+        return this.scale;
+    }
+
+    /**
+     * @param quantile a value between 0 and 1
+     * @return the value at the given quantile in the exported unit, within the precision of the buckets, or 0 if nothing was recorded
+     */
+    public double quantile(final double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += this.buckets.get(i);
+        if (total == 0) return 0.0d;
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long c = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c += this.buckets.get(i);
+            if (c >= rank) return upperBound(i) * this.scale;
+        }
+        return upperBound(BUCKETS - 1) * this.scale;
+    }
+
+    /**
+     * compute the cumulative bucket counts at the exported bucket bounds, which are 0 and 2^k - 1 for k up
+     * to the highest trackable value; these bounds are exact bucket limits
+     * @return the bounds in the recorded unit in [0][] and the cumulative counts in [1][]; the last entry is the +Inf bucket
+     */
+    long[][] cumulativeBuckets() {
+        final int n = this.highestExponent + 2;
+        final long[] bounds = new long[n];
+        final long[] counts = new long[n];
+        for (int k = 0; k < n - 1; k++) bounds[k] = (1L << k) - 1;
+        bounds[n - 1] = Long.MAX_VALUE;
+        long c = 0;
+        int k = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            final long upper = upperBound(i);
+            while (k < n - 1 && upper > bounds[k]) counts[k++] = c;
+            c += this.buckets.get(i);
+        }
+        while (k < n) counts[k++] = c;
+        return new long[][]{bounds, counts};
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ *  Metrics
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The process-wide registry of operational metrics. Subsystems register counters, gauges and histograms
+ * here once and record into the returned objects on their hot paths; the registry itself is only read
+ * when the metrics are exported in the OpenMetrics text format (i.e. by the MetricsServlet).
+ * Each metric is identified by a family name and a (possibly empty) list of label name/value pairs.
+ */
+public final class Metrics {
+
+    /**
+     * a value which is read when the metrics are exported
+     */
+    public interface LongValue {
+        public long get();
+    }
+
+    public enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String name;
+
+        private Type(final String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Family {
+        private final String name, help;
+        private final Type type;
+        private final ConcurrentMap<String, Object> series; // label string to a LongValue or a Histogram
+
+        private Family(final String name, final String help, final Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.series = new ConcurrentHashMap<String, Object>();
+        }
+    }
+
+    private final static ConcurrentMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+
+    static {
+        register("jvm_memory_used_bytes", "used heap memory of the java virtual machine", Type.GAUGE, new LongValue() {
+            @Override
+            public long get() {
+                return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+            }
+        });
+        register("jvm_memory_max_bytes", "maximum heap memory of the java virtual machine", Type.GAUGE, new LongValue() {
+            @Override
+            public long get() {
+                return Runtime.getRuntime().maxMemory();
+            }
+        });
+        register("jvm_threads", "number of live threads", Type.GAUGE, new LongValue() {
+            @Override
+            public long get() {
+                return ManagementFactory.getThreadMXBean().getThreadCount();
+            }
+        });
+    }
+
+    private Metrics() {
+    }
+
+    private static Family family(final String name, final String help, final Type type) {
+        Family family = families.get(name);
+        if (family == null) {
+            if (!validName(name)) throw new IllegalArgumentException("invalid metric name: " + name);
+            final Family f = new Family(name, help, type);
+            family = families.putIfAbsent(name, f);
+            if (family == null) family = f;
+        }
+        if (family.type != type) throw new IllegalArgumentException("metric " + name + " is already registered as " + family.type.name);
+        return family;
+    }
+
+    private static boolean validName(final String name) {
+        if (name == null || name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (!(c == '_' || c == ':' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (i > 0 && c >= '0' && c <= '9'))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param labels label names and values in alternating order
+     * @return the label string in exposition format without braces
+     */
+    private static String labelString(final String... labels) {
+        if (labels == null || labels.length == 0) return "";
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("labels must be given as name/value pairs");
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!validName(labels[i])) throw new IllegalArgumentException("invalid label name: " + labels[i]);
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"");
+            final String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                final char c = value.charAt(j);
+                if (c == '\\') sb.append("\\\\");
+                else if (c == '"') sb.append("\\\"");
+                else if (c == '\n') sb.append("\\n");
+                else sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * get a counter, which is created and registered if it does not exist
+     * @param name the family name without the _total suffix
+     * @param help a description of the metric
+     * @param labels label names and values in alternating order
+     * @return the counter for the given labels
+     */
+    public static Counter counter(final String name, final String help, final String... labels) {
+        final Family family = family(name, help, Type.COUNTER);
+        final String key = labelString(labels);
+        Object counter = family.series.get(key);
+        if (counter == null) {
+            final Counter c = new Counter();
+            counter = family.series.putIfAbsent(key, c);
+            if (counter == null) counter = c;
+        }
+        if (!(counter instanceof Counter)) throw new IllegalArgumentException("metric " + name + "{" + key + "} is not a counter object");
+        return (Counter) counter;
+    }
+
+    /**
+     * get a histogram, which is created and registered if it does not exist
+     * @param name the family name
+     * @param help a description of the metric
+     * @param scale the factor to convert recorded values to the exported unit
+     * @param highestTrackableValue the highest recorded value which shall get an own bucket bound in the export
+     * @param labels label names and values in alternating order
+     * @return the histogram for the given labels
+     */
+    public static Histogram histogram(final String name, final String help, final double scale, final long highestTrackableValue, final String... labels) {
+        final Family family = family(name, help, Type.HISTOGRAM);
+        final String key = labelString(labels);
+        Histogram histogram = (Histogram) family.series.get(key);
+        if (histogram == null) {
+            final Histogram h = new Histogram(scale, highestTrackableValue);
+            histogram = (Histogram) family.series.putIfAbsent(key, h);
+            if (histogram == null) histogram = h;
+        }
+        return histogram;
+    }
+
+    /**
+     * register a value which is read at export time, replacing a value that had been registered with the same name and labels.
+     * This can be used for gauges and for counters which are maintained elsewhere.
+     * @param name the family name, for counters without the _total suffix
+     * @param help a description of the metric
+     * @param type the metric type, either COUNTER or GAUGE
+     * @param value the value source
+     * @param labels label names and values in alternating order
+     */
+    public static void register(final String name, final String help, final Type type, final LongValue value, final String... labels) {
+        if (type == Type.HISTOGRAM) throw new IllegalArgumentException("histograms must be created with histogram()");
+        family(name, help, type).series.put(labelString(labels), value);
+    }
+
+    /**
+     * remove a metric, i.e. when the object which it describes is closed
+     * @param name the family name
+     * @param labels label names and values in alternating order
+     */
+    public static void remove(final String name, final String... labels) {
+        final Family family = families.get(name);
+        if (family == null) return;
+        family.series.remove(labelString(labels));
+    }
+
+    /**
+     * write all metrics in the text exposition format, sorted by family and label names
+     * @param writer the target
+     * @param openMetrics if true, then the OpenMetrics format is written, otherwise the Prometheus text format 0.0.4
+     * @throws IOException
+     */
+    public static void write(final Writer writer, final boolean openMetrics) throws IOException {
+        for (final Family family: new TreeMap<String, Family>(families).values()) {
+            final Map<String, Object> series = new TreeMap<String, Object>(family.series);
+            if (series.isEmpty()) continue;
+            final String typeName = family.type == Type.COUNTER && !openMetrics ? family.name + "_total" : family.name;
+            writer.write("# TYPE " + typeName + " " + family.type.name + "\n");
+            writer.write("# HELP " + typeName + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            for (final Map.Entry<String, Object> entry: series.entrySet()) {
+                final String labels = entry.getKey();
+                if (entry.getValue() instanceof Histogram) {
+                    writeHistogram(writer, family.name, labels, (Histogram) entry.getValue());
+                    continue;
+                }
+                final long value;
+                try {
+                    value = ((LongValue) entry.getValue()).get();
+                } catch (final RuntimeException e) {
+                    continue; // the source of this value is not available any more
+                }
+                writer.write(family.type == Type.COUNTER ? family.name + "_total" : family.name);
+                if (!labels.isEmpty()) writer.write("{" + labels + "}");
+                writer.write(" " + value + "\n");
+            }
+        }
+        if (openMetrics) writer.write("# EOF\n");
+    }
+
+    private static void writeHistogram(final Writer writer, final String name, final String labels, final Histogram histogram) throws IOException {
+        final long[][] buckets = histogram.cumulativeBuckets();
+        final String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+        for (int i = 0; i < buckets[0].length; i++) {
+            final String le = buckets[0][i] == Long.MAX_VALUE ? "+Inf" : format(buckets[0][i] * histogram.scale());
+            writer.write(name + "_bucket" + prefix + "le=\"" + le + "\"} " + buckets[1][i] + "\n");
+        }
+        final String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        writer.write(name + "_count" + suffix + " " + buckets[1][buckets[1].length - 1] + "\n");
+        writer.write(name + "_sum" + suffix + " " + format(histogram.sum()) + "\n");
+    }
+
+    private static String format(final double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        // remove rounding artifacts of scaled values like 1.0230000000000001
+        return new BigDecimal(value).round(MathContext.DECIMAL64).stripTrailingZeros().toPlainString();
+    }
+}
@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Queue;
@@ -58,6 +59,31 @@ public class Digest {
         }
     }
 
+    /**
+     * Per-thread MD5 digest and input buffer, used to compute digests of char sequences
+     * without allocating a digest or an intermediate byte array
+     */
+    private static final class MD5Buffer {
+        private final MessageDigest digest;
+        private byte[] input;
+
+        private MD5Buffer() throws NoSuchAlgorithmException {
+            this.digest = MessageDigest.getInstance("MD5");
+            this.input = new byte[256];
+        }
+    }
+
+    private static final ThreadLocal<MD5Buffer> md5Buffer = new ThreadLocal<MD5Buffer>() {
+        @Override
+        protected MD5Buffer initialValue() {
+            try {
+                return new MD5Buffer();
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
     /**
      * clean the md5 cache
      */
@@ -144,6 +170,51 @@ public class Digest {
         return result;
     }
 
+    /**
+     * Compute the md5 digest of the UTF-8 encoding of a char sequence, writing it into a given buffer.
+     * This uses a per-thread digest and input buffer and neither the md5 cache : it is intended for
+     * frequent computations on keys that are rarely repeated, like the normalized urls for the url hashes.
+     * The result is the same as with {@link #encodeMD5Raw(String)}.
+     * @param key the chars to digest
+     * @param result the buffer to write the digest to, of at least 16 bytes
+     */
+    public static void encodeMD5Raw(final CharSequence key, final byte[] result) {
+        final MD5Buffer buffer = md5Buffer.get();
+        final int length = key.length();
+        if (buffer.input.length < length * 3) buffer.input = new byte[length * 3];
+        final byte[] in = buffer.input;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = key.charAt(i);
+            if (c < 0x80) {
+                in[n++] = (byte) c;
+            } else if (c < 0x800) {
+                in[n++] = (byte) (0xc0 | (c >> 6));
+                in[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                // a surrogate pair is encoded with 4 bytes, in the place of the 6 bytes reserved for its 2 chars
+                final int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                in[n++] = (byte) (0xf0 | (codePoint >> 18));
+                in[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                in[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                in[n++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                in[n++] = '?'; // malformed surrogate : replaced like in String.getBytes
+            } else {
+                in[n++] = (byte) (0xe0 | (c >> 12));
+                in[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                in[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buffer.digest.update(in, 0, n);
+        try {
+            buffer.digest.digest(result, 0, 16);
+        } catch (final DigestException e) {
+            buffer.digest.reset();
+            throw new IllegalArgumentException("result buffer must have at least 16 bytes", e);
+        }
+    }
+
     public static byte[] encodeMD5Raw(final File file) throws IOException {
         FileInputStream in = null;
         try {
@@ -58,12 +58,13 @@ import net.yacy.cora.plugin.ClassProvider;
 import net.yacy.cora.protocol.tld.GenericTLD;
 import net.yacy.cora.protocol.tld.InternationalizedCountryCodeTLD;
 import net.yacy.cora.protocol.tld.SponsoredTLD;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.storage.ARC;
 import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.storage.KeyList;
 import net.yacy.cora.util.CommonPattern;
 import net.yacy.cora.util.ConcurrentLog;
-import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
 import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
 import com.google.common.net.InetAddresses;
@@ -100,6 +101,68 @@ public class Domains {
     private static       List<Pattern> nameCacheNoCachingPatterns = Collections.synchronizedList(new LinkedList<Pattern>());
     public static long cacheHit_Hit = 0, cacheHit_Miss = 0, cacheHit_Insert = 0; // for statistics only; do not write
     public static long cacheMiss_Hit = 0, cacheMiss_Miss = 0, cacheMiss_Insert = 0; // for statistics only; do not write
+    static {
+        Metrics.register("yacy_dns_cache_hits", "host name lookups found in the dns cache", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cacheHit_Hit;
+            }
+        }, "cache", "resolved");
+        Metrics.register("yacy_dns_cache_misses", "host name lookups not found in the dns cache", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cacheHit_Miss;
+            }
+        }, "cache", "resolved");
+        Metrics.register("yacy_dns_cache_hits", "host name lookups found in the dns cache", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cacheMiss_Hit;
+            }
+        }, "cache", "unresolved");
+        Metrics.register("yacy_dns_cache_misses", "host name lookups not found in the dns cache", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cacheMiss_Miss;
+            }
+        }, "cache", "unresolved");
+        // under memory pressure release cached names instead of clearing the caches
+        MemoryGovernor.register("Domains.NAME_CACHE_HIT", 50, new MemoryGovernor.Reclaimable() {
+            @Override
+            public int reclaim(final double fraction) {
+                return reclaimNameCache(NAME_CACHE_HIT, fraction);
+            }
+        });
+        MemoryGovernor.register("Domains.NAME_CACHE_MISS", 100, new MemoryGovernor.Reclaimable() {
+            @Override
+            public int reclaim(final double fraction) {
+                return reclaimNameCache(NAME_CACHE_MISS, fraction);
+            }
+        });
+    }
+
+    /**
+     * remove a fraction of the entries of a name cache
+     * @param cache
+     * @param fraction
+     * @return the number of removed entries
+     */
+    private static int reclaimNameCache(final ARC<String, ?> cache, final double fraction) {
+        final int size = cache.size();
+        if (fraction >= 1.0d) {
+            cache.clear();
+            return size;
+        }
+        final int n = (int) (size * fraction);
+        if (n <= 0) return 0;
+        final List<String> keys = new ArrayList<String>(n);
+        for (final Map.Entry<String, ?> entry: cache) {
+            if (keys.size() >= n) break;
+            keys.add(entry.getKey());
+        }
+        for (final String key: keys) cache.remove(key);
+        return keys.size();
+    }
 
     private static Set<InetAddress> myHostAddresses = new HashSet<InetAddress>();
     private static Set<InetAddress> localHostAddresses = new HashSet<InetAddress>(); // subset of myHostAddresses
@@ -921,11 +984,6 @@ public class Domains {
         if (host0 == null || host0.isEmpty()) return null;
         final String host = host0.toLowerCase(Locale.ROOT).trim();
 
-        if (MemoryControl.shortStatus()) {
-            NAME_CACHE_HIT.clear();
-            NAME_CACHE_MISS.clear();
-        }
-        
         if (host0.endsWith(".yacyh")) {
             // that should not happen here
             return null;
@@ -115,6 +115,7 @@ public class HeaderFramework extends TreeMap<String, String> implements Map<Stri
     public static final String SET_COOKIE = "Set-Cookie";
     public static final String SET_COOKIE2 = "Set-Cookie2";
     public static final String EXPIRES = "Expires";
+    public static final String RETRY_AFTER = "Retry-After";
 
     public static final String CORS_ALLOW_ORIGIN = "Access-Control-Allow-Origin"; // Cross-Origin Resource Sharing properties (http://www.w3.org/TR/cors/)
 
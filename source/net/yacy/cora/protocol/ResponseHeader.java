@@ -110,6 +110,21 @@ public class ResponseHeader extends HeaderFramework {
         return now.getTime() - lm.getTime();
     }
 
+    /**
+     * get the delay demanded by the http field Retry-After, given either as a number of seconds or as a date
+     * @return the delay in milliseconds, or -1 when the field is missing or malformed
+     */
+    public long retryAfter() {
+        final String retryAfter = get(HeaderFramework.RETRY_AFTER);
+        if (retryAfter == null) return -1;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000L);
+        } catch (final NumberFormatException e) {
+            final Date d = parseHTTPDate(retryAfter);
+            return d == null ? -1 : Math.max(0, d.getTime() - System.currentTimeMillis());
+        }
+    }
+
     public boolean gzip() {
         return ((containsKey(HeaderFramework.CONTENT_ENCODING)) &&
         ((get(HeaderFramework.CONTENT_ENCODING)).toUpperCase().startsWith("GZIP")));
@@ -34,11 +34,19 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -52,6 +60,7 @@ import javax.net.ssl.X509TrustManager;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -91,6 +100,7 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.client.IdleConnectionEvictor;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.ByteArrayBuffer;
@@ -127,26 +137,85 @@ public class HTTPClient {
 	/** Default maximum time in seconds to keep alive an idle connection in the pool */
 	private static final int DEFAULT_POOLED_CONNECTION_TIME_TO_LIVE = 30;
 	
+	/** Default maximum number of simultaneously open connections in the peer-to-peer and proxy pools */
+	private final static int maxconPeersProxy = 100;
+	
+	/** Default maximum number of connections per host in the crawler pool, used until the host latency is known */
+	public static final int CRAWLER_DEFAULT_MAX_PER_ROUTE = 2;
+	
+	/** Upper limit of the maximum number of connections per host in the crawler pool */
+	public static final int CRAWLER_MAX_PER_ROUTE = (int) (2 * Memory.cores());
+	
+	/** Maximum number of crawler routes with a specific connections limit */
+	private static final int CRAWLER_ROUTE_LIMITS_MAX_SIZE = 1000;
+	
+	/** Maximum number of TLS sessions kept for resumption */
+	private static final int TLS_SESSION_CACHE_SIZE = 10000;
+	
+	/** Maximum time in seconds to keep a TLS session for resumption */
+	private static final int TLS_SESSION_TIMEOUT = 3600;
+	
+	/**
+	 * The partitions of the outgoing connections : each one has its own
+	 * connection pool, so that for example peer-to-peer requests do not have to
+	 * wait for crawler connections.
+	 */
+	public static enum Pool {
+		/** general purpose requests */
+		GENERAL(false),
+		/** crawler loader requests : connections are kept alive to be reused on the same host */
+		CRAWLER(true),
+		/** peer-to-peer protocol requests */
+		PEERS(false),
+		/** requests forwarded by the proxy */
+		PROXY(false);
+		
+		/** When true, connections are kept alive in the pool after each request */
+		private final boolean keepAlive;
+		
+		private Pool(final boolean keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+	}
+	
 	private final static RequestConfig dfltReqConf = initRequestConfig();
 	
-	/** The connection manager holding the configured connection pool for this client */
+	/** The SSL socket factory shared by all pools : its context caches TLS sessions for resumption on new connections */
+	private static final SSLConnectionSocketFactory SSL_SOCKET_FACTORY = getSSLSocketFactory();
+	
+	/** The connection manager holding the configured general purpose connection pool */
 	public static final PoolingHttpClientConnectionManager CONNECTION_MANAGER = initPoolingConnectionManager();
 	
+	/** The connection manager holding the connection pool dedicated to the crawler */
+	public static final PoolingHttpClientConnectionManager CRAWLER_CONNECTION_MANAGER = initPoolingConnectionManager();
+	
+	/** The connection manager holding the connection pool dedicated to peer-to-peer requests */
+	public static final PoolingHttpClientConnectionManager PEERS_CONNECTION_MANAGER = initPoolingConnectionManager();
+	
+	/** The connection manager holding the connection pool dedicated to the proxy */
+	public static final PoolingHttpClientConnectionManager PROXY_CONNECTION_MANAGER = initPoolingConnectionManager();
+	
+	/** The crawler routes with a specific connections limit */
+	private static final Map<HttpRoute, Integer> crawlerRouteLimits = new ConcurrentHashMap<HttpRoute, Integer>();
+	
+	static {
+		initPoolMaxConnections(CONNECTION_MANAGER, maxcon);
+		initPoolMaxConnections(CRAWLER_CONNECTION_MANAGER, maxcon);
+		initPoolMaxConnections(PEERS_CONNECTION_MANAGER, maxconPeersProxy);
+		initPoolMaxConnections(PROXY_CONNECTION_MANAGER, maxconPeersProxy);
+	}
+	
 	/**
-	 * Background daemon thread evicting expired idle connections from the pool.
+	 * Background daemon threads evicting expired idle connections from each pool.
 	 * This may be eventually already done by the pool itself on connection request,
 	 * but this background task helps when no request is made to the pool for a long
 	 * time period.
 	 */
-	private static final IdleConnectionEvictor EXPIRED_CONNECTIONS_EVICTOR = new IdleConnectionEvictor(
-			CONNECTION_MANAGER, DEFAULT_CONNECTION_EVICTOR_SLEEP_TIME, TimeUnit.SECONDS,
-			DEFAULT_POOLED_CONNECTION_TIME_TO_LIVE, TimeUnit.SECONDS);
-	
-	static {
-		EXPIRED_CONNECTIONS_EVICTOR.start();
-	}
+	private static final IdleConnectionEvictor[] EXPIRED_CONNECTIONS_EVICTORS = initConnectionEvictors();
 	
-	private final static HttpClientBuilder clientBuilder = initClientBuilder();
+	private final static Map<Pool, HttpClientBuilder> clientBuilders = initClientBuilders();
+	private final HttpClientBuilder clientBuilder;
+	private final Pool pool;
 	private final RequestConfig.Builder reqConfBuilder;
 	private Set<Entry<String, String>> headers = null;
 	private CloseableHttpResponse httpResponse = null;
@@ -158,23 +227,57 @@ public class HTTPClient {
 			.newCachedThreadPool(new NamePrefixThreadFactory(HTTPClient.class.getSimpleName() + ".execute"));
 
     public HTTPClient(final ClientIdentification.Agent agent) {
-        super();
-        this.timeout = agent.clientTimeout;
-        clientBuilder.setUserAgent(agent.userAgent);
-        reqConfBuilder = RequestConfig.copy(dfltReqConf);
-        setTimout(agent.clientTimeout);
+        this(agent, Pool.GENERAL);
     }
     
     public HTTPClient(final ClientIdentification.Agent agent, final int timeout) {
+        this(agent, timeout, Pool.GENERAL);
+    }
+    
+    /**
+     * @param agent the client identification
+     * @param pool the connection pool to use. Must not be null.
+     */
+    public HTTPClient(final ClientIdentification.Agent agent, final Pool pool) {
+        this(agent, agent.clientTimeout, pool);
+    }
+    
+    /**
+     * @param agent the client identification
+     * @param timeout the connection and socket timeout in milliseconds
+     * @param pool the connection pool to use. Must not be null.
+     */
+    public HTTPClient(final ClientIdentification.Agent agent, final int timeout, final Pool pool) {
         super();
         this.timeout = timeout;
-        clientBuilder.setUserAgent(agent.userAgent);
+        this.pool = pool;
+        this.clientBuilder = clientBuilders.get(pool);
+        this.clientBuilder.setUserAgent(agent.userAgent);
         reqConfBuilder = RequestConfig.copy(dfltReqConf);
         setTimout(timeout);
     }
 
     public static void setDefaultUserAgent(final String defaultAgent) {
-    	clientBuilder.setUserAgent(defaultAgent);
+    	for (final HttpClientBuilder builder : clientBuilders.values()) {
+    		builder.setUserAgent(defaultAgent);
+    	}
+    }
+    
+    /**
+     * @param pool a connection pool partition. Must not be null.
+     * @return the connection manager holding the pool
+     */
+    public static PoolingHttpClientConnectionManager getConnectionManager(final Pool pool) {
+    	switch (pool) {
+    	case CRAWLER:
+    		return CRAWLER_CONNECTION_MANAGER;
+    	case PEERS:
+    		return PEERS_CONNECTION_MANAGER;
+    	case PROXY:
+    		return PROXY_CONNECTION_MANAGER;
+    	default:
+    		return CONNECTION_MANAGER;
+    	}
     }
     
     private static RequestConfig initRequestConfig() {
@@ -193,10 +296,18 @@ public class HTTPClient {
         return builder.build();
     }
     
-    private static HttpClientBuilder initClientBuilder() {
+    private static Map<Pool, HttpClientBuilder> initClientBuilders() {
+    	final Map<Pool, HttpClientBuilder> builders = new EnumMap<Pool, HttpClientBuilder>(Pool.class);
+    	for (final Pool pool : Pool.values()) {
+    		builders.put(pool, initClientBuilder(getConnectionManager(pool)));
+    	}
+    	return builders;
+    }
+    
+    private static HttpClientBuilder initClientBuilder(final PoolingHttpClientConnectionManager connectionManager) {
     	final HttpClientBuilder builder = HttpClientBuilder.create();
     	
-    	builder.setConnectionManager(CONNECTION_MANAGER);
+    	builder.setConnectionManager(connectionManager);
 		builder.setDefaultRequestConfig(dfltReqConf);
 		
     	// UserAgent
@@ -226,7 +337,7 @@ public class HTTPClient {
     	final PlainConnectionSocketFactory plainsf = PlainConnectionSocketFactory.getSocketFactory();
     	final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
     	        .register("http", plainsf)
-    	        .register("https", getSSLSocketFactory())
+    	        .register("https", SSL_SOCKET_FACTORY)
     	        .build();
     	final PoolingHttpClientConnectionManager pooling = new PoolingHttpClientConnectionManager(registry, null, null, new DnsResolver(){
 			@Override
@@ -235,7 +346,6 @@ public class HTTPClient {
 				if (ip == null) throw new UnknownHostException(host0);
 				return new InetAddress[]{ip};
 			}}, DEFAULT_POOLED_CONNECTION_TIME_TO_LIVE, TimeUnit.SECONDS);
-        initPoolMaxConnections(pooling, maxcon);
         
         pooling.setValidateAfterInactivity(default_timeout); // on init set to default 5000ms
         final SocketConfig socketConfig = SocketConfig.custom()
@@ -269,35 +379,142 @@ public class HTTPClient {
 			throw new IllegalArgumentException("maxConnections parameter must be greater than zero");
 		}
 		pool.setMaxTotal(maxConnections);
-		// for statistics same value should also be set here
-		ConnectionInfo.setMaxcount(maxConnections);
+		// for statistics the total of all pools should also be set here
+		int total = 0;
+		for (final Pool partition : Pool.values()) {
+			final PoolingHttpClientConnectionManager manager = getConnectionManager(partition);
+			if (manager != null) {
+				total += manager.getMaxTotal();
+			}
+		}
+		ConnectionInfo.setMaxcount(total);
 		
-        // connections per host (2 default)
-        pool.setDefaultMaxPerRoute((int) (2 * Memory.cores()));
+		if (pool == CRAWLER_CONNECTION_MANAGER) {
+			// connections per host are adjusted to each host latency, start low
+			pool.setDefaultMaxPerRoute(Math.min(maxConnections, CRAWLER_DEFAULT_MAX_PER_ROUTE));
+		} else {
+			// connections per host (2 default)
+			pool.setDefaultMaxPerRoute((int) (2 * Memory.cores()));
+		}
 		
 		// Increase max connections for localhost
 		final HttpHost localhost = new HttpHost(Domains.LOCALHOST);
 		pool.setMaxPerRoute(new HttpRoute(localhost), maxConnections);
 	}
+	
+	/**
+	 * Set the maximum number of simultaneous connections to the host of the
+	 * given URL in the crawler pool. The limit is applied to at most
+	 * {@link #CRAWLER_ROUTE_LIMITS_MAX_SIZE} hosts, others keep the crawler pool
+	 * default limit, as limits are never removed from the pool.
+	 * 
+	 * @param url
+	 *            the URL to load. Must not be null.
+	 * @param maxConnections
+	 *            the maximum number of connections, bounded between 1 and
+	 *            {@link #CRAWLER_MAX_PER_ROUTE}
+	 */
+	public static void setCrawlerMaxPerRoute(final MultiProtocolURL url, final int maxConnections) {
+		final String host = url.getHost();
+		if (host == null || Domains.isLocalhost(host)) {
+			return;
+		}
+		final HttpRoute route;
+		try {
+			route = ProxySettings.RoutePlanner.determineRoute(new HttpHost(host, url.getPort(), url.getProtocol()),
+					null, null);
+		} catch (final HttpException e) {
+			return;
+		}
+		final int max = Math.max(1, Math.min(CRAWLER_MAX_PER_ROUTE, maxConnections));
+		final Integer current = crawlerRouteLimits.get(route);
+		if (current == null) {
+			if (max == CRAWLER_CONNECTION_MANAGER.getDefaultMaxPerRoute()
+					|| crawlerRouteLimits.size() >= CRAWLER_ROUTE_LIMITS_MAX_SIZE) {
+				return;
+			}
+		} else if (current.intValue() == max) {
+			return;
+		}
+		crawlerRouteLimits.put(route, max);
+		CRAWLER_CONNECTION_MANAGER.setMaxPerRoute(route, max);
+	}
+	
+	/**
+	 * @param pool
+	 *            a connection pool partition. Must not be null.
+	 * @param maxRoutes
+	 *            the maximum number of routes to return
+	 * @return the statistics of the pool routes currently holding the most
+	 *         connections, sorted by decreasing number of leased then pending
+	 *         connections
+	 */
+	public static Map<HttpRoute, PoolStats> getRoutesStats(final Pool pool, final int maxRoutes) {
+		final PoolingHttpClientConnectionManager manager = getConnectionManager(pool);
+		final List<Map.Entry<HttpRoute, PoolStats>> entries = new ArrayList<Map.Entry<HttpRoute, PoolStats>>();
+		for (final HttpRoute route : manager.getRoutes()) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<HttpRoute, PoolStats>(route, manager.getStats(route)));
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<HttpRoute, PoolStats>>() {
+			@Override
+			public int compare(final Map.Entry<HttpRoute, PoolStats> e1, final Map.Entry<HttpRoute, PoolStats> e2) {
+				final PoolStats s1 = e1.getValue(), s2 = e2.getValue();
+				if (s1.getLeased() != s2.getLeased()) {
+					return s2.getLeased() - s1.getLeased();
+				}
+				if (s1.getPending() != s2.getPending()) {
+					return s2.getPending() - s1.getPending();
+				}
+				return s2.getAvailable() - s1.getAvailable();
+			}
+		});
+		final Map<HttpRoute, PoolStats> result = new LinkedHashMap<HttpRoute, PoolStats>();
+		for (final Map.Entry<HttpRoute, PoolStats> entry : entries) {
+			if (result.size() >= maxRoutes) {
+				break;
+			}
+			result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+	
+	private static IdleConnectionEvictor[] initConnectionEvictors() {
+		final Pool[] pools = Pool.values();
+		final IdleConnectionEvictor[] evictors = new IdleConnectionEvictor[pools.length];
+		for (int i = 0; i < pools.length; i++) {
+			evictors[i] = new IdleConnectionEvictor(getConnectionManager(pools[i]),
+					DEFAULT_CONNECTION_EVICTOR_SLEEP_TIME, TimeUnit.SECONDS, DEFAULT_POOLED_CONNECTION_TIME_TO_LIVE,
+					TimeUnit.SECONDS);
+			evictors[i].start();
+		}
+		return evictors;
+	}
 
 	/**
 	 * This method should be called just before shutdown to stop the
-	 * ConnectionManager and the idle connections evictor.
+	 * ConnectionManagers and the idle connections evictors.
 	 *
 	 * @throws InterruptedException
 	 *             when the current thread is interrupted before the idle
-	 *             connections evictor thread termination.
+	 *             connections evictor threads termination.
 	 */
 	public static void closeConnectionManager() throws InterruptedException {
 		try {
-			if (EXPIRED_CONNECTIONS_EVICTOR != null) {
-				// Shut down the evictor thread
-				EXPIRED_CONNECTIONS_EVICTOR.shutdown();
-				EXPIRED_CONNECTIONS_EVICTOR.awaitTermination(1L, TimeUnit.SECONDS);
+			if (EXPIRED_CONNECTIONS_EVICTORS != null) {
+				// Shut down the evictor threads
+				for (final IdleConnectionEvictor evictor : EXPIRED_CONNECTIONS_EVICTORS) {
+					evictor.shutdown();
+				}
+				for (final IdleConnectionEvictor evictor : EXPIRED_CONNECTIONS_EVICTORS) {
+					evictor.awaitTermination(1L, TimeUnit.SECONDS);
+				}
 			}
 		} finally {
-			if (CONNECTION_MANAGER != null) {
-				CONNECTION_MANAGER.shutdown();
+			for (final Pool pool : Pool.values()) {
+				final PoolingHttpClientConnectionManager manager = getConnectionManager(pool);
+				if (manager != null) {
+					manager.shutdown();
+				}
 			}
 		}
 	}
@@ -1041,7 +1258,9 @@ public class HTTPClient {
             }
     	}
     	if (this.host != null) httpUriRequest.setHeader(HTTP.TARGET_HOST, this.host);
-        httpUriRequest.setHeader(HTTP.CONN_DIRECTIVE, "close"); // don't keep alive, prevent CLOSE_WAIT state
+        if (!this.pool.keepAlive) {
+        	httpUriRequest.setHeader(HTTP.CONN_DIRECTIVE, "close"); // don't keep alive, prevent CLOSE_WAIT state
+        }
     }
 
     private void storeConnectionInfo(final HttpUriRequest httpUriRequest) {
@@ -1078,6 +1297,9 @@ public class HTTPClient {
     	try {
             sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, new TrustManager[] { trustManager }, null);
+            // keep sessions to resume them on new connections to the same hosts without a full handshake
+            sslContext.getClientSessionContext().setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+            sslContext.getClientSessionContext().setSessionTimeout(TLS_SESSION_TIMEOUT);
         } catch (final NoSuchAlgorithmException e) {
             // should not happen
             // e.printStackTrace();
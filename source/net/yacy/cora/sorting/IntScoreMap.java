@@ -0,0 +1,624 @@
+/**
+ *  IntScoreMap
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.sorting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent score map with primitive int scores. The entries are distributed over a number of stripes,
+ * each one an open addressing hash table with linear probing and its own lock, so that concurrent
+ * increments of different keys rarely wait for each other and no score object is allocated per entry
+ * or per increment. The score order needed by {@link #keys(boolean)} and the min/max methods is computed
+ * lazily and kept until the next modification; {@link #topKeys(int)} selects the best entries without
+ * sorting the whole map.
+ * Iterations and sorted views are weakly consistent: they reflect the state of each stripe at some point
+ * during the iteration or computation.
+ */
+public class IntScoreMap<E> extends AbstractScoreMap<E> implements ReversibleScoreMap<E> {
+
+    /** default number of stripes */
+    public static final int DEFAULT_STRIPES = 16;
+
+    private static final int INITIAL_STRIPE_CAPACITY = 8;
+
+    /**
+     * One hash table part of the map, with the keys and their scores in parallel arrays.
+     * All accesses must be synchronized on the stripe.
+     */
+    private static final class Stripe {
+        private Object[] keys;
+        private int[] scores;
+        private volatile int size;
+
+        private Stripe() {
+            this.keys = new Object[INITIAL_STRIPE_CAPACITY];
+            this.scores = new int[INITIAL_STRIPE_CAPACITY];
+            this.size = 0;
+        }
+
+        /**
+         * @return the slot of the key, or the negative value -(slot + 1) of the free slot where it would be inserted
+         */
+        private int find(final Object key, final int hash) {
+            final int mask = this.keys.length - 1;
+            int slot = hash & mask;
+            Object k;
+            while ((k = this.keys[slot]) != null) {
+                if (k.equals(key)) return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -(slot + 1);
+        }
+
+        /**
+         * add to the score of a key, inserting it when missing
+         * @return the previous score, zero when the key was missing
+         */
+        private int add(final Object key, final int hash, final int delta) {
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                final int old = this.scores[slot];
+                this.scores[slot] = old + delta;
+                return old;
+            }
+            if ((this.size + 1) * 4 > this.keys.length * 3) {
+                grow();
+                slot = find(key, hash);
+            }
+            slot = -slot - 1;
+            this.keys[slot] = key;
+            this.scores[slot] = delta;
+            this.size++;
+            return 0;
+        }
+
+        /**
+         * set the score of a key, inserting it when missing
+         * @return the previous score, zero when the key was missing
+         */
+        private int set(final Object key, final int hash, final int score) {
+            final int slot = find(key, hash);
+            if (slot >= 0) {
+                final int old = this.scores[slot];
+                this.scores[slot] = score;
+                return old;
+            }
+            add(key, hash, score);
+            return 0;
+        }
+
+        private void grow() {
+            final Object[] oldKeys = this.keys;
+            final int[] oldScores = this.scores;
+            this.keys = new Object[oldKeys.length * 2];
+            this.scores = new int[oldKeys.length * 2];
+            final int mask = this.keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                final Object k = oldKeys[i];
+                if (k == null) continue;
+                int slot = slotHash(k.hashCode()) & mask;
+                while (this.keys[slot] != null) slot = (slot + 1) & mask;
+                this.keys[slot] = k;
+                this.scores[slot] = oldScores[i];
+            }
+        }
+
+        /**
+         * remove the entry at a slot, moving back the following entries of the same probe sequence
+         */
+        private void removeAt(int slot) {
+            final int mask = this.keys.length - 1;
+            this.keys[slot] = null;
+            this.scores[slot] = 0;
+            this.size--;
+            int next = (slot + 1) & mask;
+            Object k;
+            while ((k = this.keys[next]) != null) {
+                final int home = slotHash(k.hashCode()) & mask;
+                // move the entry when its home slot is not in the cyclic range (slot, next]
+                if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+                    this.keys[slot] = k;
+                    this.scores[slot] = this.scores[next];
+                    this.keys[next] = null;
+                    this.scores[next] = 0;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void clear() {
+            this.keys = new Object[INITIAL_STRIPE_CAPACITY];
+            this.scores = new int[INITIAL_STRIPE_CAPACITY];
+            this.size = 0;
+        }
+    }
+
+    /**
+     * The entries of the map in ascending score order, as computed at a given modification count
+     */
+    private static final class Sorted {
+        private final long modifications;
+        private final Object[] keys;
+        private final int[] scores;
+
+        private Sorted(final long modifications, final Object[] keys, final int[] scores) {
+            this.modifications = modifications;
+            this.keys = keys;
+            this.scores = scores;
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+
+    /** sum of all scores */
+    private final LongAdder gcount;
+
+    /** number of modifications, used to detect an outdated sorted view */
+    private final LongAdder modifications;
+
+    /** the last computed sorted view, may be outdated */
+    private volatile Sorted sorted;
+
+    /** Eventual registered object listening on map updates */
+    private ScoreMapUpdatesListener updatesListener;
+
+    public IntScoreMap() {
+        this(null);
+    }
+
+    /**
+     * @param updatesListener an eventual object listening on score map updates
+     */
+    public IntScoreMap(final ScoreMapUpdatesListener updatesListener) {
+        this(DEFAULT_STRIPES, updatesListener);
+    }
+
+    /**
+     * @param stripes the number of independently locked parts of the map, rounded up to a power of two
+     * @param updatesListener an eventual object listening on score map updates
+     */
+    public IntScoreMap(final int stripes, final ScoreMapUpdatesListener updatesListener) {
+        int n = 1;
+        int shift = 32;
+        while (n < stripes) {
+            n <<= 1;
+            shift--;
+        }
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new Stripe();
+        this.stripeShift = shift;
+        this.gcount = new LongAdder();
+        this.modifications = new LongAdder();
+        this.sorted = null;
+        this.updatesListener = updatesListener;
+    }
+
+    /**
+     * spread the bits of a hash code, used for the slots inside of a stripe
+     */
+    private static int slotHash(final int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the stripe of a hash code, selected with the high bits of a multiplicative hash
+     * so that it is independent of the slot in the stripe
+     */
+    private Stripe stripe(final int h) {
+        return this.stripeShift == 32 ? this.stripes[0] : this.stripes[(h * 0x9E3779B9) >>> this.stripeShift];
+    }
+
+    /**
+     * Dispatch the update event to the eventually registered listener.
+     */
+    private void dispatchUpdateToListener() {
+        if (this.updatesListener != null) {
+            this.updatesListener.updatedScoreMap();
+        }
+    }
+
+    /**
+     * @param updatesListener an eventual object which wants to listen to successful updates on this score map
+     */
+    public void setUpdatesListener(final ScoreMapUpdatesListener updatesListener) {
+        this.updatesListener = updatesListener;
+    }
+
+    @Override
+    public void clear() {
+        for (final Stripe stripe: this.stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        this.gcount.reset();
+        this.modifications.increment();
+        this.sorted = null;
+        dispatchUpdateToListener();
+    }
+
+    @Override
+    public int shrinkToMaxSize(final int maxsize) {
+        final int size = this.size();
+        if (size <= maxsize) return 0;
+        final Sorted s = sorted();
+        final int remove = s.scores.length - Math.max(0, maxsize);
+        if (remove <= 0) return 0;
+        // delete all entries with a score not greater than the greatest score which must be removed
+        return shrinkToMinScore(s.scores[remove - 1] + 1);
+    }
+
+    @Override
+    public int shrinkToMinScore(final int minScore) {
+        int deletedNb = 0;
+        for (final Stripe stripe: this.stripes) {
+            synchronized (stripe) {
+                int slot = 0;
+                while (slot < stripe.keys.length) {
+                    if (stripe.keys[slot] != null && stripe.scores[slot] < minScore) {
+                        this.gcount.add(-stripe.scores[slot]);
+                        stripe.removeAt(slot);
+                        deletedNb++;
+                        // removeAt may have moved another entry into this slot
+                    } else {
+                        slot++;
+                    }
+                }
+            }
+        }
+        if (deletedNb > 0) {
+            this.modifications.increment();
+            dispatchUpdateToListener();
+        }
+        return deletedNb;
+    }
+
+    /**
+     * @return the sum of all scores
+     */
+    public long totalCount() {
+        return this.gcount.sum();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe: this.stripes) size += stripe.size;
+        return size;
+    }
+
+    @Override
+    public boolean sizeSmaller(final int size) {
+        return this.size() < size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (final Stripe stripe: this.stripes) if (stripe.size > 0) return false;
+        return true;
+    }
+
+    @Override
+    public void set(final E obj, final int newScore) {
+        if (obj == null) return;
+        final int h = obj.hashCode();
+        final Stripe stripe = stripe(h);
+        final int old;
+        synchronized (stripe) {
+            old = stripe.set(obj, slotHash(h), newScore);
+        }
+        this.gcount.add((long) newScore - old);
+        this.modifications.increment();
+        dispatchUpdateToListener();
+    }
+
+    @Override
+    public int delete(final E obj) {
+        if (obj == null) return 0;
+        final int h = obj.hashCode();
+        final Stripe stripe = stripe(h);
+        final int score;
+        synchronized (stripe) {
+            final int slot = stripe.find(obj, slotHash(h));
+            if (slot < 0) return 0;
+            score = stripe.scores[slot];
+            stripe.removeAt(slot);
+        }
+        this.gcount.add(-score);
+        this.modifications.increment();
+        dispatchUpdateToListener();
+        return score;
+    }
+
+    @Override
+    public boolean containsKey(final E obj) {
+        if (obj == null) return false;
+        final int h = obj.hashCode();
+        final Stripe stripe = stripe(h);
+        synchronized (stripe) {
+            return stripe.find(obj, slotHash(h)) >= 0;
+        }
+    }
+
+    @Override
+    public int get(final E obj) {
+        if (obj == null) return 0;
+        final int h = obj.hashCode();
+        final Stripe stripe = stripe(h);
+        synchronized (stripe) {
+            final int slot = stripe.find(obj, slotHash(h));
+            return slot < 0 ? 0 : stripe.scores[slot];
+        }
+    }
+
+    @Override
+    public void inc(final E obj) {
+        inc(obj, 1);
+    }
+
+    @Override
+    public void inc(final E obj, final int incrementScore) {
+        if (obj == null) return;
+        final int h = obj.hashCode();
+        final Stripe stripe = stripe(h);
+        synchronized (stripe) {
+            stripe.add(obj, slotHash(h), incrementScore);
+        }
+        this.gcount.add(incrementScore);
+        this.modifications.increment();
+        dispatchUpdateToListener();
+    }
+
+    @Override
+    public void dec(final E obj) {
+        inc(obj, -1);
+    }
+
+    @Override
+    public void dec(final E obj, final int decrementScore) {
+        inc(obj, -decrementScore);
+    }
+
+    /**
+     * @return the entries in ascending score order, computed again only when the map has been modified
+     */
+    private Sorted sorted() {
+        final long mods = this.modifications.sum();
+        Sorted s = this.sorted;
+        if (s != null && s.modifications == mods) return s;
+
+        // collect the entries, then sort score and position packed into longs
+        final List<Object> keys = new ArrayList<Object>(this.size() + 16);
+        int[] scores = new int[this.size() + 16];
+        for (final Stripe stripe: this.stripes) {
+            synchronized (stripe) {
+                for (int slot = 0; slot < stripe.keys.length; slot++) {
+                    if (stripe.keys[slot] == null) continue;
+                    if (keys.size() == scores.length) scores = Arrays.copyOf(scores, scores.length * 2);
+                    scores[keys.size()] = stripe.scores[slot];
+                    keys.add(stripe.keys[slot]);
+                }
+            }
+        }
+        final int n = keys.size();
+        final long[] packed = new long[n];
+        for (int i = 0; i < n; i++) packed[i] = pack(scores[i], i);
+        Arrays.sort(packed);
+        final Object[] sortedKeys = new Object[n];
+        final int[] sortedScores = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int p = (int) packed[i];
+            sortedKeys[i] = keys.get(p);
+            sortedScores[i] = scores[p];
+        }
+        s = new Sorted(mods, sortedKeys, sortedScores);
+        this.sorted = s;
+        return s;
+    }
+
+    /**
+     * @return a long ordered by score first, then by position
+     */
+    private static long pack(final int score, final int position) {
+        return (((long) score) << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the keys with the highest scores, in descending score order. When no sorted view of the current
+     * map content is available, the keys are selected with a bounded heap instead of sorting all entries.
+     * @param count the maximum number of keys
+     * @return at most count keys
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> topKeys(final int count) {
+        if (count <= 0) return new ArrayList<E>(0);
+        final Sorted s = this.sorted;
+        if (s != null && s.modifications == this.modifications.sum()) {
+            final int n = Math.min(count, s.keys.length);
+            final List<E> top = new ArrayList<E>(n);
+            for (int i = s.keys.length - 1; i >= s.keys.length - n; i--) top.add((E) s.keys[i]);
+            return top;
+        }
+
+        // min-heap of the best packed score/position values found so far
+        final List<Object> candidates = new ArrayList<Object>(count);
+        final long[] heap = new long[count];
+        int heapSize = 0;
+        for (final Stripe stripe: this.stripes) {
+            synchronized (stripe) {
+                for (int slot = 0; slot < stripe.keys.length; slot++) {
+                    if (stripe.keys[slot] == null) continue;
+                    final int score = stripe.scores[slot];
+                    if (heapSize == count && score <= (int) (heap[0] >> 32)) continue;
+                    final long p;
+                    if (heapSize < count) {
+                        p = pack(score, candidates.size());
+                        candidates.add(stripe.keys[slot]);
+                        heap[heapSize] = p;
+                        siftUp(heap, heapSize++);
+                    } else {
+                        // replace the smallest candidate, reusing its position in the candidates list
+                        final int position = (int) heap[0];
+                        candidates.set(position, stripe.keys[slot]);
+                        heap[0] = pack(score, position);
+                        siftDown(heap, heapSize);
+                    }
+                }
+            }
+        }
+        final long[] best = Arrays.copyOf(heap, heapSize);
+        Arrays.sort(best);
+        final List<E> top = new ArrayList<E>(heapSize);
+        for (int i = heapSize - 1; i >= 0; i--) top.add((E) candidates.get((int) best[i]));
+        return top;
+    }
+
+    private static void siftUp(final long[] heap, int i) {
+        final long v = heap[i];
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (heap[parent] <= v) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = v;
+    }
+
+    private static void siftDown(final long[] heap, final int size) {
+        final long v = heap[0];
+        int i = 0;
+        int child;
+        while ((child = 2 * i + 1) < size) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (v <= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = v;
+    }
+
+    @Override
+    public int getMaxScore() {
+        final Sorted s = sorted();
+        return s.scores.length == 0 ? -1 : s.scores[s.scores.length - 1];
+    }
+
+    @Override
+    public int getMinScore() {
+        final Sorted s = sorted();
+        return s.scores.length == 0 ? -1 : s.scores[0];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getMaxKey() {
+        final Sorted s = sorted();
+        return s.keys.length == 0 ? null : (E) s.keys[s.keys.length - 1];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getMinKey() {
+        final Sorted s = sorted();
+        return s.keys.length == 0 ? null : (E) s.keys[0];
+    }
+
+    /**
+     * Creates and returns a sorted view to the keys. Sortorder is the score value.
+     * @param up true = asc order, false = reverse order
+     * @return iterator accessing the keys in order of score values
+     */
+    @Override
+    public Iterator<E> keys(final boolean up) {
+        final Sorted s = sorted();
+        return new Iterator<E>() {
+            private int i = up ? 0 : s.keys.length - 1;
+
+            @Override
+            public boolean hasNext() {
+                return up ? this.i < s.keys.length : this.i >= 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext()) throw new java.util.NoSuchElementException();
+                final E e = (E) s.keys[this.i];
+                this.i += up ? 1 : -1;
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Creates and returns a sorted view of the keys, sorted by their own natural order.
+     * @param up true = asc order, false = reverse order
+     * @return iterator accessing the keys in natural order
+     */
+    public Iterator<E> keysByNaturalOrder(final boolean up) {
+        final TreeSet<E> sortedKeys = up ? new TreeSet<E>() : new TreeSet<E>(Collections.reverseOrder());
+        for (final E key: this) sortedKeys.add(key);
+        return sortedKeys.iterator();
+    }
+
+    /**
+     * @return an iterator of the keys, in no particular order
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        final List<E> keys = new ArrayList<E>(this.size() + 16);
+        for (final Stripe stripe: this.stripes) {
+            synchronized (stripe) {
+                for (final Object k: stripe.keys) if (k != null) keys.add((E) k);
+            }
+        }
+        final Iterator<E> i = keys.iterator();
+        return new Iterator<E>() {
+            private E last = null;
+
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public E next() {
+                this.last = i.next();
+                return this.last;
+            }
+
+            @Override
+            public void remove() {
+                if (this.last == null) throw new IllegalStateException();
+                IntScoreMap.this.delete(this.last);
+                this.last = null;
+            }
+        };
+    }
+}
@@ -27,11 +27,16 @@ package net.yacy.cora.sorting;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * implements a stack where elements 'float' on-top of the stack according to a weight value.
@@ -39,15 +44,21 @@ import java.util.concurrent.TimeUnit;
  * for a double-check.
  * If the queue gets larger that the given maxsize, then elements from the tail of the queue
  * are drained (deleted).
+ * Elements are inserted without locking: when the stack is full, elements that are not better
+ * than the current tail are rejected at once, other elements are inserted into a concurrent
+ * skip list and the tail is evicted. Only threads taking elements from the stack synchronize
+ * on the drained list, so that the drained list records the elements in the order of removal.
  */
 public class WeakPriorityBlockingQueue<E> implements Serializable {
 
 	private static final long serialVersionUID = 4573442576760691887L;
 
-	private final TreeSet<Element<E>>   queue;    // object within the stack, ordered using a TreeSet
+    private final ConcurrentSkipListSet<Element<E>> queue; // object within the stack, ordered using a skip list
+    private final AtomicInteger queueSize; // number of elements in the queue, the size() of the skip list is not a constant-time operation
     private final Semaphore    enqueued; // semaphore for elements in the stack
     private final ArrayList<Element<E>> drained;  // objects that had been on the stack but had been removed
-    private int maxsize;
+    private final Set<Element<E>> drainedSet; // the same objects as in drained for fast double-checks
+    private final int maxsize;
 
     /**
      * create a new WeakPriorityBlockingQueue
@@ -58,8 +69,10 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     public WeakPriorityBlockingQueue(final int maxsize, boolean drain) {
         // the maxsize is the maximum number of entries in the stack
         // if this is set to -1, the size is unlimited
-        this.queue = new TreeSet<Element<E>>();
+        this.queue = new ConcurrentSkipListSet<Element<E>>();
+        this.queueSize = new AtomicInteger(0);
         this.drained = drain ? new ArrayList<Element<E>>() : null;
+        this.drainedSet = drain ? Collections.newSetFromMap(new ConcurrentHashMap<Element<E>, Boolean>()) : null;
         this.enqueued = new Semaphore(0);
         this.maxsize = maxsize;
     }
@@ -67,9 +80,14 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     /**
      * clear the queue
      */
-    public synchronized void clear() {
-        if (this.drained != null) this.drained.clear();
-        this.queue.clear();
+    public void clear() {
+        if (this.drained != null) {
+            synchronized (this.drained) {
+                this.drained.clear();
+                this.drainedSet.clear();
+            }
+        }
+        while (this.queue.pollFirst() != null) this.queueSize.decrementAndGet();
         this.enqueued.drainPermits();
     }
 
@@ -78,15 +96,15 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @return true if the queue is empty, false if not
      */
     public boolean isEmpty() {
-        return this.queue.isEmpty() & (this.drained == null || this.drained.isEmpty());
+        return this.queue.isEmpty() & (this.drained == null || sizeDrained() == 0);
     }
 
     /**
      * get the number of elements in the queue, waiting to be removed with take() or poll()
      * @return
      */
-    public synchronized int sizeQueue() {
-        return this.queue.size();
+    public int sizeQueue() {
+        return Math.max(0, this.queueSize.get());
     }
 
 
@@ -95,8 +113,11 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * in a list to get enumerated with element()
      * @return
      */
-    public synchronized int sizeDrained() {
-        return this.drained == null ? 0 : this.drained.size();
+    public int sizeDrained() {
+        if (this.drained == null) return 0;
+        synchronized (this.drained) {
+            return this.drained.size();
+        }
     }
 
     /**
@@ -104,10 +125,10 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * this is a combined number of sizeQueue() and sizeDrained();
      * @return
      */
-    public synchronized int sizeAvailable() {
+    public int sizeAvailable() {
         return this.maxsize < 0 ?
-                        this.queue.size() + (this.drained == null ? 0 : this.drained.size()) :
-                        Math.min(this.maxsize, this.queue.size() + (this.drained == null ? 0 : this.drained.size()));
+                        sizeQueue() + sizeDrained() :
+                        Math.min(this.maxsize, sizeQueue() + sizeDrained());
     }
 
     /**
@@ -116,21 +137,24 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * they are checked against the drained list
      * @param element the element (must have a equals() method)
      */
-    public synchronized void put(final Element<E> element) {
+    public void put(final Element<E> element) {
         // put the element on the stack
-        if (this.drained != null && this.drained.contains(element)) {
+        if (this.drainedSet != null && this.drainedSet.contains(element)) {
         	return;
         }
-        if (this.queue.size() == this.maxsize) {
-            // remove last elements if stack is too large
-            if (this.queue.add(element)) {
-            	this.queue.remove(this.queue.last());
-            }
+        if (this.maxsize >= 0 && this.queueSize.get() >= this.maxsize) {
+            // the stack is full: an element which is not better than the last one would be removed again at once
+            final Element<E> last = getLastInQueue();
+            if (last != null && element.compareTo(last) >= 0) return;
+        }
+        if (!this.queue.add(element)) return; // double
+        if (this.maxsize >= 0 && this.queueSize.incrementAndGet() > this.maxsize) {
+            // remove last element if stack is too large
+            if (this.queue.pollLast() != null) this.queueSize.decrementAndGet();
         } else {
-            // just add entry but only release semaphore if entry was not double
-            if (this.queue.add(element)) this.enqueued.release();
+            if (this.maxsize < 0) this.queueSize.incrementAndGet();
+            this.enqueued.release();
         }
-        assert this.queue.size() >= this.enqueued.availablePermits() : "(put) queue.size() = " + this.queue.size() + ", enqueued.availablePermits() = " + this.enqueued.availablePermits();
     }
 
     /**
@@ -140,9 +164,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     public Element<E> poll() {
         boolean a = this.enqueued.tryAcquire();
         if (!a) return null;
-        synchronized (this) {
-            return takeUnsafe();
-        }
+        return takeUnsafe();
     }
 
     /**
@@ -155,68 +177,66 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     public Element<E> poll(long timeout) throws InterruptedException {
         boolean a = (timeout <= 0) ? this.enqueued.tryAcquire() : this.enqueued.tryAcquire(timeout, TimeUnit.MILLISECONDS);
         if (!a) return null;
-        synchronized (this) {
-            return takeUnsafe();
-        }
+        return takeUnsafe();
     }
 
     private Element<E> takeUnsafe() {
-        final Element<E> element = this.queue.pollFirst();
-        assert element != null;
-        if (this.drained != null && (this.maxsize == -1 || this.drained.size() < this.maxsize)) this.drained.add(element);
-        assert this.queue.size() >= this.enqueued.availablePermits() : "(take) queue.size() = " + this.queue.size() + ", enqueued.availablePermits() = " + this.enqueued.availablePermits();
-        return element;
+        if (this.drained == null) {
+            final Element<E> element = this.queue.pollFirst();
+            if (element != null) this.queueSize.decrementAndGet();
+            return element;
+        }
+        // taking the head and recording it must be atomic to keep the order of the drained list
+        synchronized (this.drained) {
+            final Element<E> element = this.queue.pollFirst();
+            if (element == null) return null; // the queue was cleared concurrently
+            this.queueSize.decrementAndGet();
+            if (this.maxsize == -1 || this.drained.size() < this.maxsize) {
+                this.drained.add(element);
+                this.drainedSet.add(element);
+            }
+            return element;
+        }
     }
     
     /**
      * Enqueue again all drained elements. Do nothing when there is no internal drained list.
      */
-    public synchronized void requeueDrainedElements() {
+    public void requeueDrainedElements() {
     	if(this.drained != null) {
-    		final int initialDrainedSize = this.drained.size();
-    		for(int step = 0; step < initialDrainedSize; step++) {
-    			Element<E> element = this.drained.remove(this.drained.size() - 1);
-    			put(element);
+    		synchronized (this.drained) {
+    			final int initialDrainedSize = this.drained.size();
+    			for(int step = 0; step < initialDrainedSize; step++) {
+    				Element<E> element = this.drained.remove(this.drained.size() - 1);
+    				this.drainedSet.remove(element);
+    				put(element);
+    			}
     		}
     	}
     }
     
-    /**
-     * remove a drained element
-     * @param element
-     */
-    /*
-    public void removeDrained(Element<E> element) {
-        if (element == null) return;
-        synchronized (this.drained) {
-            int p = this.drained.size() - 1;
-            if (this.drained.get(p) == element) {
-                this.drained.remove(p);
-                return;
-            }
-        }
-        this.drained.remove(element);
-    }
-    */
-    
     /**
      * Return the element with the smallest weight from the internal queue, but do not remove it
      * @return null if no element is on the queue or the head of the queue
      */
-    public synchronized Element<E> peek() {
-        if (this.queue.isEmpty()) return null;
-        return this.queue.first();
+    public Element<E> peek() {
+        try {
+            return this.queue.isEmpty() ? null : this.queue.first();
+        } catch (final NoSuchElementException e) {
+            return null; // emptied concurrently
+        }
     }
     
     /**
      * Return the element with the highest weight, but do not remove it
      * @return null if no element is on the queue or the tail of the queue
      */
-    public synchronized Element<E> getLastInQueue() {
-        if (this.queue.isEmpty()) {
-        	return null;
+    public Element<E> getLastInQueue() {
+        try {
+            return this.queue.isEmpty() ? null : this.queue.last();
+        } catch (final NoSuchElementException e) {
+            return null; // emptied concurrently
         }
-        return this.queue.last();
     }
 
     /**
@@ -232,19 +252,19 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      */
     public Element<E> element(final int position) {
         if (this.drained == null) return null;
-        if (position < this.drained.size()) {
-            return this.drained.get(position);
+        int s;
+        synchronized (this.drained) {
+            s = this.drained.size();
+            if (position < s) return this.drained.get(position);
         }
-        synchronized (this) {
-            if (position >= this.queue.size() + this.drained.size()) return null; // we don't have that element
-            Element<E> p;
-            int s;
-            while (position >= this.drained.size()) {
-                s = this.drained.size();
-                p = this.poll();
-                if (this.drained.size() <= s) break;
-                if (p == null) break;
-            }
+        if (position >= sizeQueue() + s) return null; // we don't have that element
+        while (position >= s) {
+            if (this.poll() == null) break;
+            final int n = sizeDrained();
+            if (n <= s) break; // the drained list is full
+            s = n;
+        }
+        synchronized (this.drained) {
             if (position >= this.drained.size()) return null;
             return this.drained.get(position);
         }
@@ -262,16 +282,15 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     public Element<E> element(final int position, long time) throws InterruptedException {
         if (this.drained == null) return null;
         long timeout = time == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + time;
-        if (position < this.drained.size()) {
-            return this.drained.get(position);
-        }
-        while (position >= this.drained.size()) {
+        while (position >= sizeDrained()) {
             long t = timeout - System.currentTimeMillis();
             if (t <= 0) break;
             this.poll(t);
         }
-        if (position >= this.drained.size()) return null; // we still don't have that element
-        return this.drained.get(position);
+        synchronized (this.drained) {
+            if (position >= this.drained.size()) return null; // we still don't have that element
+            return this.drained.get(position);
+        }
     }
 
     /**
@@ -281,13 +300,15 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @param count
      * @return a list of elements in the stack
      */
-    public synchronized ArrayList<Element<E>> list(final int count) {
+    public ArrayList<Element<E>> list(final int count) {
         if (this.drained == null) return null;
         if (count < 0) {
             return list();
         }
         if (count > sizeAvailable()) throw new RuntimeException("list(" + count + ") exceeded avaiable number of elements (" + sizeAvailable() + ")");
-        while (count > this.drained.size()) this.poll();
+        while (count > sizeDrained()) {
+            if (this.poll() == null) break;
+        }
         return this.drained;
     }
 
@@ -295,10 +316,10 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * return all entries as they would be retrievable with element()
      * @return a list of all elements in the stack
      */
-    private synchronized ArrayList<Element<E>> list() {
+    private ArrayList<Element<E>> list() {
         if (this.drained == null) return null;
         // shift all elements
-        while (!this.queue.isEmpty()) this.poll();
+        while (this.poll() != null) {}
         return this.drained;
     }
 
@@ -306,11 +327,33 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * iterate over all elements available. All elements that are still in the queue are drained to recorded positions
      * @return an iterator over all drained positions.
      */
-    public synchronized Iterator<Element<E>> iterator() {
+    public Iterator<Element<E>> iterator() {
         if (this.drained == null) return null;
         // shift all elements to the offstack
-        while (!this.queue.isEmpty()) this.poll();
-        return this.drained.iterator();
+        while (this.poll() != null) {}
+        final Iterator<Element<E>> i = this.drained.iterator();
+        return new Iterator<Element<E>>() {
+            private Element<E> current = null;
+
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public Element<E> next() {
+                this.current = i.next();
+                return this.current;
+            }
+
+            @Override
+            public void remove() {
+                synchronized (WeakPriorityBlockingQueue.this.drained) {
+                    i.remove();
+                    WeakPriorityBlockingQueue.this.drainedSet.remove(this.current);
+                }
+            }
+        };
     }
 
     public interface Element<E> extends Serializable, Comparable<Element<E>>, Comparator<Element<E>> {
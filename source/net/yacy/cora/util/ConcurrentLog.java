@@ -28,13 +28,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 
@@ -43,14 +46,20 @@ import java.util.logging.Logger;
  * in concurrent environments. This makes logging a main performance issue. 
  * To overcome this problem, this is a add-on to jdk logging to put log entries
  * on a concurrent message queue and log the messages one by one using a
- * separate process
+ * separate process.
+ * The queue is a lock-free ring buffer; when it is full, messages below INFO level
+ * are dropped instead of blocking the caller. Messages with parameters are only
+ * formatted by the log handlers in the worker process, and handlers are flushed
+ * once after each batch of messages (see BatchFileHandler).
  */
 public final class ConcurrentLog {
 
     private final static Logger ConcurrentLogLogger = Logger.getLogger("ConcurrentLog");
     private final static Message POISON_MESSAGE = new Message();
-    private final static BlockingQueue<Message> logQueue = new ArrayBlockingQueue<Message>(500);
-    private static Worker logRunnerThread = null;
+    private final static MessageRing logQueue = new MessageRing(4096);
+    private final static AtomicLong droppedMessages = new AtomicLong(0);
+    private final static ConcurrentHashMap<String, Logger> loggers = new ConcurrentHashMap<String, Logger>(); // avoids the synchronized LogManager lookup for static log calls
+    private static volatile Worker logRunnerThread = null;
 
     static {
         ensureWorkerIsRunning();
@@ -174,6 +183,18 @@ public final class ConcurrentLog {
     public final boolean isLoggable(final Level level) {
         return this.theLogger.isLoggable(level);
     }
+
+    /**
+     * log a message with parameters which are formatted only if the message is not filtered,
+     * and only in the log worker process. Use this instead of string concatenation in hot paths.
+     * @param level the message level
+     * @param message the message with java.util.logging placeholders {0}, {1}, ... (see java.text.MessageFormat)
+     * @param params the parameters
+     */
+    public final void log(final Level level, final String message, final Object... params) {
+        if (!this.theLogger.isLoggable(level)) return;
+        enQueue(new Message(this.theLogger, level, message, params, null));
+    }
     
     /*
     public final void logException(final Throwable thrown) {
@@ -227,7 +248,7 @@ public final class ConcurrentLog {
         enQueueLog(appName, Level.FINE, message, thrown);
     }
     public final static boolean isFine(final String appName) {
-        return Logger.getLogger(appName).isLoggable(Level.FINE);
+        return getLogger(appName).isLoggable(Level.FINE);
     }
 
     public final static void finer(final String appName, final String message) {
@@ -246,185 +267,277 @@ public final class ConcurrentLog {
         enQueueLog(appName, Level.FINEST, message, thrown);
     }
     public final static boolean isFinest(final String appName) {
-        return Logger.getLogger(appName).isLoggable(Level.FINEST);
+        return getLogger(appName).isLoggable(Level.FINEST);
+    }
+
+    /**
+     * log a message with parameters which are formatted only if the message is not filtered,
+     * and only in the log worker process
+     * @param appName the logger name
+     * @param level the message level
+     * @param message the message with java.util.logging placeholders {0}, {1}, ... (see java.text.MessageFormat)
+     * @param params the parameters
+     */
+    public final static void log(final String appName, final Level level, final String message, final Object... params) {
+        final Logger logger = getLogger(appName);
+        if (!logger.isLoggable(level)) return;
+        enQueue(new Message(logger, level, message, params, null));
     }
 
     // private
+    private final static Logger getLogger(final String loggername) {
+        Logger logger = loggers.get(loggername);
+        if (logger == null) {
+            logger = Logger.getLogger(loggername);
+            final Logger old = loggers.putIfAbsent(loggername, logger);
+            if (old != null) logger = old;
+        }
+        return logger;
+    }
+
     private final static void enQueueLog(final Logger logger, final Level level, final String message, final Throwable thrown) {
         if (!logger.isLoggable(level)) return;
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            if (thrown == null) logger.log(level, "* " + message); else logger.log(level, "* " + message, thrown); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-            	if (thrown == null) logQueue.put(new Message(logger, level, message)); else logQueue.put(new Message(logger, level, message, thrown));
-            } catch (final InterruptedException e) {
-            	if (thrown == null) logger.log(level, message); else  logger.log(level, message, thrown);
-            }
-        }
+        enQueue(new Message(logger, level, message, null, thrown));
     }
 
     private final static void enQueueLog(final Logger logger, final Level level, final String message) {
         if (!logger.isLoggable(level)) return;
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            logger.log(level, "* " + message); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-                logQueue.put(new Message(logger, level, message));
-            } catch (final InterruptedException e) {
-                logger.log(level, message);
-            }
-        }
+        enQueue(new Message(logger, level, message, null, null));
     }
 
     private final static void enQueueLog(final String loggername, final Level level, final String message, final Throwable thrown) {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-        	if (thrown == null) Logger.getLogger(loggername).log(level, "* " + message); else Logger.getLogger(loggername).log(level, "* " + message, thrown); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-            	if (thrown == null) logQueue.put(new Message(loggername, level, message)); else logQueue.put(new Message(loggername, level, message, thrown));
-            } catch (final InterruptedException e) {
-            	if (thrown == null) Logger.getLogger(loggername).log(level, message); else Logger.getLogger(loggername).log(level, message, thrown);
-            }
-        }
+        enQueueLog(getLogger(loggername), level, message, thrown);
     }
 
     private final static void enQueueLog(final String loggername, final Level level, final String message) {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            Logger.getLogger(loggername).log(level, "* " + message); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-                logQueue.put(new Message(loggername, level, message));
-            } catch (final InterruptedException e) {
-                Logger.getLogger(loggername).log(level, message);
+        enQueueLog(getLogger(loggername), level, message);
+    }
+
+    private final static void enQueue(final Message message) {
+        final Worker worker = logRunnerThread;
+        if (worker == null || !worker.isAlive()) {
+            write(message, "* "); // the * is inefficient, but should show up only in emergency cases
+            return;
+        }
+        if (!logQueue.offer(message)) {
+            // the queue is full: drop debug messages, wait for the worker with all others
+            if (message.level.intValue() < Level.INFO.intValue()) {
+                droppedMessages.incrementAndGet();
+                return;
+            }
+            while (!logQueue.offer(message)) {
+                if (!worker.isAlive()) {
+                    write(message, "* ");
+                    return;
+                }
+                worker.wakeup();
+                LockSupport.parkNanos(100000L);
             }
         }
+        worker.wakeup();
+    }
+
+    private final static void write(final Message message, final String prefix) {
+        final LogRecord record = new LogRecord(message.level, prefix == null ? message.message : prefix + message.message);
+        record.setLoggerName(message.logger.getName());
+        if (message.params != null) record.setParameters(message.params);
+        if (message.thrown != null) record.setThrown(message.thrown);
+        message.logger.log(record);
     }
 
     protected final static class Message {
         private final Level level;
         private final String message;
-        private Logger logger;
-        private String loggername;
-        private Throwable thrown;
-        private Message(final Level level, final String message) {
+        private final Logger logger;
+        private final Object[] params;
+        private final Throwable thrown;
+        public Message(final Logger logger, final Level level, final String message, final Object[] params, final Throwable thrown) {
+            this.logger = logger;
             this.level = level;
             this.message = message == null || message.length() <= 4096 ? message : message.substring(0, 4096);
-        }
-        public Message(final Logger logger, final Level level, final String message, final Throwable thrown) {
-            this(level, message);
-            this.logger = logger;
-            this.loggername = null;
-            this.thrown = thrown;
-        }
-        public Message(final Logger logger, final Level level, final String message) {
-            this(level, message);
-            this.logger = logger;
-            this.loggername = null;
-            this.thrown = null;
-        }
-        public Message(final String loggername, final Level level, final String message, final Throwable thrown) {
-            this(level, message);
-            this.logger = null;
-            this.loggername = loggername;
+            this.params = params == null || params.length == 0 ? null : params;
             this.thrown = thrown;
         }
-        public Message(final String loggername, final Level level, final String message) {
-            this(level, message);
-            this.logger = null;
-            this.loggername = loggername;
-            this.thrown = null;
-        }
         public Message() {
             this.logger = null;
-            this.loggername = null;
             this.level = null;
             this.message = null;
+            this.params = null;
             this.thrown = null;
         }
     }
 
+    /**
+     * a bounded lock-free queue for many producers and a single consumer (the log worker).
+     * Each slot has a sequence number which tells producers and the consumer whether the slot is free or filled.
+     */
+    private final static class MessageRing {
+        private final int mask;
+        private final AtomicReferenceArray<Message> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail; // next position to be written by a producer
+        private volatile long head; // next position to be read by the consumer
+
+        private MessageRing(final int capacity) {
+            assert Integer.bitCount(capacity) == 1 : "capacity must be a power of two";
+            this.mask = capacity - 1;
+            this.slots = new AtomicReferenceArray<Message>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) this.sequences.set(i, i);
+            this.tail = new AtomicLong(0);
+            this.head = 0;
+        }
+
+        /**
+         * @return false if the queue is full
+         */
+        private boolean offer(final Message message) {
+            long t;
+            int index;
+            while (true) {
+                t = this.tail.get();
+                index = (int) (t & this.mask);
+                final long d = this.sequences.get(index) - t;
+                if (d == 0) {
+                    if (this.tail.compareAndSet(t, t + 1)) break;
+                } else if (d < 0) {
+                    return false; // the slot still holds a message from the previous round
+                }
+                // else another producer has taken the slot, try again
+            }
+            this.slots.set(index, message);
+            this.sequences.set(index, t + 1); // publish
+            return true;
+        }
+
+        /**
+         * may only be called by the consumer
+         * @return the next message or null if the queue is empty
+         */
+        private Message poll() {
+            final long h = this.head;
+            final int index = (int) (h & this.mask);
+            if (this.sequences.get(index) != h + 1) return null; // not (yet) published
+            final Message message = this.slots.get(index);
+            this.slots.set(index, null);
+            this.sequences.set(index, h + this.mask + 1); // free the slot for the next round
+            this.head = h + 1;
+            return message;
+        }
+
+        private boolean isEmpty() {
+            final long h = this.head;
+            return this.sequences.get((int) (h & this.mask)) != h + 1;
+        }
+
+        private int size() {
+            return (int) Math.max(0, this.tail.get() - this.head);
+        }
+    }
+
     protected final static class Worker extends Thread {
+        private volatile boolean waiting = false;
+
         public Worker() {
             super("Log Worker");
         }
 
+        private void wakeup() {
+            if (this.waiting) LockSupport.unpark(this);
+        }
+
         @Override
         public void run() {
             Message entry;
-            Map<String, Logger> loggerCache = new HashMap<String, Logger>();
+            boolean written = false;
             try {
-                while ((entry = logQueue.take()) != POISON_MESSAGE) {
-                    if (entry.logger == null) {
-                        assert entry.loggername != null;
-                        Logger l = loggerCache.get(entry.loggername);
-                        if (l == null) {l = Logger.getLogger(entry.loggername); loggerCache.put(entry.loggername, l);}
-                        if (entry.thrown == null) {
-                            l.log(entry.level, entry.message);
-                        } else {
-                            l.log(entry.level, entry.message, entry.thrown);
-                        }
-                    } else {
-                        assert entry.loggername == null;
-                        if (entry.thrown == null) {
-                            entry.logger.log(entry.level, entry.message);
-                        } else {
-                            entry.logger.log(entry.level, entry.message, entry.thrown);
+                while (true) {
+                    entry = logQueue.poll();
+                    if (entry == null) {
+                        // end of a batch
+                        if (written) {
+                            flushHandlers();
+                            written = false;
                         }
+                        final long dropped = droppedMessages.getAndSet(0);
+                        if (dropped > 0) ConcurrentLogLogger.log(Level.WARNING, "dropped " + dropped + " log messages below INFO level because the log queue was full");
+                        this.waiting = true;
+                        if (logQueue.isEmpty()) LockSupport.parkNanos(this, 100000000L);
+                        this.waiting = false;
+                        continue;
                     }
+                    if (entry == POISON_MESSAGE) break;
+                    write(entry, null);
+                    written = true;
                 }
             } catch (final Throwable e) {
                 ConcurrentLogLogger.log(Level.SEVERE, "ConcurrentLog.Worker has terminated", e);
             }
+            flushHandlers();
             ConcurrentLogLogger.log(Level.INFO, "terminating ConcurrentLog.Worker with " + logQueue.size() + " cached loglines.");
         }
+
+        private static void flushHandlers() {
+            final Logger root = LogManager.getLogManager().getLogger("");
+            if (root == null) return;
+            for (final Handler handler: root.getHandlers()) handler.flush();
+        }
+    }
+
+    private static final void resolveLogFilePattern(final File dataPath, final Properties logProperties, final String logFilePatternKey) {
+        String logFilePattern = logProperties.getProperty(logFilePatternKey, "%h/java%u.log" /* default FileHandler pattern*/);
+
+        File logFile;
+        if(logFilePattern.startsWith("%h")) {
+            logFile = new File(System.getProperty("user.home") + logFilePattern.substring(2));
+        } else if(logFilePattern.startsWith("%t")) {
+            String tmpDir = System.getProperty("java.io.tmpdir");
+            if (tmpDir == null) {
+                tmpDir = System.getProperty("user.home");
+            }
+            logFile = new File(tmpDir, logFilePattern.substring(2));
+        } else {
+            logFile = new File(logFilePattern);
+            if (!logFile.isAbsolute()) {
+                logFile = new File(dataPath, logFilePattern);
+                logFilePattern = logFile.getAbsolutePath();
+
+                /*
+                 * Update the file pattern with the absolute path flavor as LogManager and
+                 * FileHandler classes do not offer a way to configure the base parent path when
+                 * using relative path
+                 */
+                logProperties.setProperty(logFilePatternKey, logFilePattern);
+            }
+        }
+
+        // creating the logging directory if necessary
+        final File logDirectory = logFile.getParentFile();
+        if(logDirectory != null) {
+            if (!logDirectory.exists()) {
+                if(!logDirectory.mkdirs()) {
+                    System.err.println("STARTUP: Could not create the logs directory at " + logDirectory.getAbsolutePath());
+                }
+            } else if(!logDirectory.isDirectory()) {
+                System.err.println("STARTUP: Log file parent path at " + logDirectory.getAbsolutePath() + "is not a directory");
+            }
+        }
     }
 
     public static final void configureLogging(final File dataPath, final File loggingConfigFile) throws SecurityException, FileNotFoundException, IOException {
         System.out.println("STARTUP: Trying to load logging configuration from file " + loggingConfigFile.toString());
         try (final FileInputStream fileIn = new FileInputStream(loggingConfigFile);){
             
-        	final String logFilePatternKey = "java.util.logging.FileHandler.pattern";
             final Properties logProperties = new Properties();
             logProperties.load(fileIn);
-            String logFilePattern = logProperties.getProperty(logFilePatternKey, "%h/java%u.log" /* default FileHandler pattern*/);
-            
-            File logFile;
-            if(logFilePattern.startsWith("%h")) {
-            	logFile = new File(System.getProperty("user.home") + logFilePattern.substring(2));
-            } else if(logFilePattern.startsWith("%t")) {
-                String tmpDir = System.getProperty("java.io.tmpdir");
-                if (tmpDir == null) {
-                    tmpDir = System.getProperty("user.home");
-                }
-                logFile = new File(tmpDir, logFilePattern.substring(2));
-            } else {
-            	logFile = new File(logFilePattern);
-                if (!logFile.isAbsolute()) {
-                	logFile = new File(dataPath, logFilePattern);
-                	logFilePattern = logFile.getAbsolutePath();
-                	
-					/*
-					 * Update the file pattern with the absolute path flavor as LogManager and
-					 * FileHandler classes do not offer a way to configure the base parent path when
-					 * using relative path
-					 */
-					logProperties.setProperty(logFilePatternKey, logFilePattern);
-                }
-            }
-            
-           
-            // creating the logging directory if necessary
-            File logDirectory = logFile.getParentFile();
-            if(logDirectory != null) {
-            	if (!logDirectory.exists()) {
-            		if(!logDirectory.mkdirs()) {
-            			System.err.println("STARTUP: Could not create the logs directory at " + logDirectory.getAbsolutePath());
-            		}
-            	} else if(!logDirectory.isDirectory()) {
-            		System.err.println("STARTUP: Log file parent path at " + logDirectory.getAbsolutePath() + "is not a directory");
-            	}
+
+            // resolve the log file pattern of all configured file handlers (i.e. java.util.logging.FileHandler, BatchFileHandler)
+            final String handlers = logProperties.getProperty("handlers", "");
+            for (String handler: handlers.split("[\\s,]+")) {
+                handler = handler.trim();
+                if (handler.endsWith("FileHandler")) resolveLogFilePattern(dataPath, logProperties, handler + ".pattern");
             }
-            
+
             final ByteArrayOutputStream propsStream = new ByteArrayOutputStream();
             logProperties.store(propsStream, null);
             
@@ -461,7 +574,11 @@ public final class ConcurrentLog {
         }
         try {
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker: injection of poison message");
-            logQueue.put(POISON_MESSAGE);
+            while (!logQueue.offer(POISON_MESSAGE)) {
+                logRunnerThread.wakeup();
+                Thread.sleep(1);
+            }
+            logRunnerThread.wakeup();
             logRunnerThread.join(2000);
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker: terminated");
         } catch (final InterruptedException e) {
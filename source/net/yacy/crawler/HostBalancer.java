@@ -384,12 +384,13 @@ public class HostBalancer implements Balancer {
                             // check stop criteria
                             List<String> firstEntries = fastTree.firstEntry().getValue();
                             if (firstEntries.size() > 1) {
-                                // select larger queue from that list
-                                int largest = Integer.MIN_VALUE;
+                                // select larger queue from that list, weighted with the adaptive access rate
+                                // of the host so that fast hosts are preferred over slow or overloaded ones
+                                double largest = Double.NEGATIVE_INFINITY;
                                 for (String hh: firstEntries) {
                                     HostQueue hhq = this.queues.get(hh);
                                     if (hhq != null) {
-                                        int s = hhq.size();
+                                        double s = hhq.size() * Latency.rate(hh);
                                         if (s > largest) {
                                             largest = s;
                                             rhh = hh;
@@ -36,6 +36,7 @@ package net.yacy.crawler.data;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
@@ -44,6 +45,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.ResponseHeader;
 import net.yacy.cora.storage.HandleSet;
@@ -83,6 +85,21 @@ public final class Cache {
     /** Total number of cache hits since last start/initialization or cache clear */
     private static AtomicLong hits = new AtomicLong(0);
     
+    static {
+        Metrics.register("yacy_http_cache_requests", "requests for cached responses since start or cache clear", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return totalRequests.get();
+            }
+        });
+        Metrics.register("yacy_http_cache_hits", "cached responses found since start or cache clear", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return hits.get();
+            }
+        });
+    }
+    
     private static File cachePath = null;
     private static String prefix;
     public static final ConcurrentLog log = new ConcurrentLog("HTCACHE");
@@ -279,7 +296,35 @@ public final class Cache {
         } catch (final IOException e) {
             throw new IOException("Cache.store: cannot write to fileDB (2): " + e.getMessage());
         }
+        storeHeader(url, responseHeader);
+    }
+
+    /**
+     * store content which is read from a stream, like a large content which was spilled to a file. The content is
+     * compressed while it is read, so that it is not loaded into memory uncompressed.
+     * @param url the url of the content
+     * @param responseHeader the response header of the content
+     * @param content the content; it is not closed
+     * @param length the length of the content, for logging
+     * @throws IOException if the content cannot be read or stored
+     */
+    public static void store(final DigestURL url, final ResponseHeader responseHeader, final InputStream content, final long length) throws IOException {
+        if (maxCacheSize == 0) return;
+        if (responseHeader == null) throw new IOException("Cache.store of url " + url.toNormalform(false) + " not possible: responseHeader == null");
+        if (responseHeader.getXRobotsTag().contains("noarchive")) return; // don't cache, see http://noarchive.net/
+        if (content == null) throw new IOException("Cache.store of url " + url.toNormalform(false) + " not possible: content == null");
+        log.info("storing content of url " + url.toNormalform(false) + ", " + length + " bytes");
+
+        // store the file
+        try {
+            fileDB.insert(url.hash(), content);
+        } catch (final IOException e) {
+            throw new IOException("Cache.store: cannot write to fileDB (3): " + e.getMessage());
+        }
+        storeHeader(url, responseHeader);
+    }
 
+    private static void storeHeader(final DigestURL url, final ResponseHeader responseHeader) throws IOException {
         // store the response header into the header database
         final HashMap<String, String> hm = new HashMap<String, String>();
         hm.putAll(responseHeader);
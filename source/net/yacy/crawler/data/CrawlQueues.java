@@ -58,6 +58,7 @@ import net.yacy.crawler.HarvestProcess;
 import net.yacy.crawler.data.NoticedURL.StackType;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
+import net.yacy.crawler.retrieval.StreamResponse;
 import net.yacy.crawler.robots.RobotsTxtEntry;
 import net.yacy.kelondro.workflow.WorkflowJob;
 import net.yacy.peers.DHTSelection;
@@ -752,18 +753,27 @@ public class CrawlQueues {
                             // returns null if everything went fine, a fail reason string if a problem occurred
                             try {
                                 request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
-                                final Response response = CrawlQueues.this.sb.loader.load(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
-                                if (response == null) {
-                                    request.setStatus("error", WorkflowJob.STATUS_FINISHED);
-                                    if (CrawlQueues.log.isFine()) {
-                                        CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
-                                    }
-                                    error = "no content (possibly caused by cache policy)";
-                                } else {
+                                if ((request.url().isHTTP() || request.url().isHTTPS()) && CrawlQueues.this.sb.getConfigBool(SwitchboardConstants.CRAWLER_HTTP_STREAMING, false)) {
+                                    // streaming mode: parse while loading
+                                    final StreamResponse streamResponse = CrawlQueues.this.sb.loader.openCrawlInputStream(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
                                     request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
-                                    final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
+                                    final String storedFailMessage = CrawlQueues.this.sb.toIndexer(streamResponse);
                                     request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
                                     error = (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+                                } else {
+                                    final Response response = CrawlQueues.this.sb.loader.load(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
+                                    if (response == null) {
+                                        request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+                                        if (CrawlQueues.log.isFine()) {
+                                            CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
+                                        }
+                                        error = "no content (possibly caused by cache policy)";
+                                    } else {
+                                        request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
+                                        final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
+                                        request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
+                                        error = (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+                                    }
                                 }
                             } catch (final IOException e) {
                                 request.setStatus("error", WorkflowJob.STATUS_FINISHED);
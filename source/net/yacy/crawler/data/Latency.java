@@ -101,6 +101,36 @@ public class Latency {
         }
     }
 
+    /**
+     * update the latency entry after the host answered that it is overloaded
+     * (429 Too Many Requests or 503 Service Unavailable): the access rate is reduced
+     * and a Retry-After demand is respected
+     * @param url
+     * @param retryAfter the delay in milliseconds given by the Retry-After header; -1 if not given
+     */
+    public static void updateAfterBackoff(final DigestURL url, final long retryAfter) {
+        final String host = url.getHost();
+        if (host == null) return;
+        String hosthash = url.hosthash();
+        Host h = map.get(hosthash);
+        if (h == null) {
+            h = new Host(host, 500, 0);
+            if (map.size() > mapMaxSize || MemoryControl.shortStatus()) map.clear();
+            map.put(hosthash, h);
+        }
+        h.backoff(retryAfter);
+    }
+
+    /**
+     * @param hosthash the host hash of a crawled host
+     * @return the adaptive access rate factor of the host: greater than 1 for a fast and healthy host,
+     *         lower than 1 for a slow or overloaded host; 1 if the host was never accessed before
+     */
+    public static double rate(final String hosthash) {
+        final Host host = map.get(hosthash);
+        return host == null ? 1.0d : host.rate();
+    }
+
     private static Host host(final DigestURL url) {
         final String host = url.getHost();
         if (host == null) return null;
@@ -152,16 +182,18 @@ public class Latency {
         final Host host = map.get(hosthash);
         if (host == null) return Integer.MIN_VALUE; // no delay if host is new; use Integer because there is a cast to int somewhere
 
+        // a Retry-After demand of the host is always respected
+        final long retryAfter = host.retryAfterRemaining();
+        if (retryAfter > 0) return (int) Math.min(60000, retryAfter);
+
         // find the minimum waiting time based on the network domain (local or global)
         int waiting = agent.minimumDelta;
 
         // if we have accessed the domain many times, get slower (the flux factor)
         waiting += host.flux(waiting);
 
-        // use the access latency as rule how fast we can access the server
-        // this applies also to localhost, but differently, because it is not necessary to
-        // consider so many external accesses
-        waiting = Math.max(waiting, (int) (host.average() * Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f)));
+        // use the access latency and the adaptive access rate as rule how fast we can access the server
+        waiting = host.adaptiveDelay(waiting, Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f));
 
         // if the number of same hosts as in the url in the loading queue is greater than MaxSameHostInQueue, then increase waiting
         if (Switchboard.getSwitchboard().crawlQueues.hostcount(hostname) > Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.CRAWLER_MAX_SAME_HOST_IN_QUEUE, 20)) waiting += 3000;
@@ -184,8 +216,9 @@ public class Latency {
      * this follows from:
      * - given minimum access times
      * - the fact that an url is a CGI url or not
-     * - the times that the domain was accessed (flux factor)
-     * - the response latency of the domain
+     * - the times that the domain was accessed (flux factor, not for local domains)
+     * - the response latency of the domain and its adaptive access rate, which never lowers the waiting time below the minimum access time
+     * - a Retry-After time demanded by the domain
      * - and a given minimum access time as given in robots.txt
      * @param agent
      * @return the remaining waiting time in milliseconds. can be negative to reflect the due-time after a possible nex loading time
@@ -196,6 +229,10 @@ public class Latency {
         final Host host = host(url);
         if (host == null) return Integer.MIN_VALUE; // no delay if host is new; use Integer because there is a cast to int somewhere
 
+        // a Retry-After demand of the host is always respected
+        final long retryAfter = host.retryAfterRemaining();
+        if (retryAfter > 0) return (int) Math.min(60000, retryAfter);
+
         // find the minimum waiting time based on the network domain (local or global)
         boolean local = url.isLocal();
         int waiting = agent.minimumDelta;
@@ -203,8 +240,8 @@ public class Latency {
         // if we have accessed the domain many times, get slower (the flux factor)
         if (!local) waiting += host.flux(waiting);
 
-        // use the access latency as rule how fast we can access the server
-        waiting = Math.max(waiting, (int) (host.average() * Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f)));
+        // use the access latency and the adaptive access rate as rule how fast we can access the server
+        waiting = host.adaptiveDelay(waiting, Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f));
         
         // if the number of same hosts as in the url in the loading queue is greater than MaxSameHostInQueue, then increase waiting
         if (Switchboard.getSwitchboard().crawlQueues.hostcount(url.getHost()) > Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.CRAWLER_MAX_SAME_HOST_IN_QUEUE, 20)) waiting += 3000;
@@ -226,11 +263,13 @@ public class Latency {
         final Host host = host(url);
         if (host == null) return "host " + host + " never accessed before -> Integer.MIN_VALUE"; // no delay if host is new
 
-        // find the minimum waiting time based on the network domain (local or global)
-        boolean local = url.isLocal();
+        final long retryAfter = host.retryAfterRemaining();
+        if (retryAfter > 0) return "host demanded Retry-After -> " + retryAfter;
+
         final StringBuilder s = new StringBuilder(50);
 
         // find the minimum waiting time based on the network domain (local or global)
+        boolean local = url.isLocal();
         int waiting = agent.minimumDelta;
         s.append("minimumDelta = ").append(waiting);
 
@@ -240,12 +279,12 @@ public class Latency {
             waiting += flux;
             s.append(", flux = ").append(flux);
         }
-        
-        // use the access latency as rule how fast we can access the server
-        // this applies also to localhost, but differently, because it is not necessary to
-        // consider so many external accesses
+
+        // use the access latency and the adaptive access rate as rule how fast we can access the server
         s.append(", host.average = ").append(host.average());
-        waiting = Math.max(waiting, (int) (host.average() * Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f)));
+        s.append(", host.ewma = ").append(host.ewma());
+        s.append(", host.rate = ").append(host.rate());
+        waiting = host.adaptiveDelay(waiting, Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f));
         
         // if the number of same hosts as in the url in the loading queue is greater than MaxSameHostInQueue, then increase waiting
         int hostcount = Switchboard.getSwitchboard().crawlQueues.hostcount(url.getHost());
@@ -286,6 +325,22 @@ public class Latency {
         return sleeptime;
     }
     
+    /**
+     * Compute how many simultaneous connections the crawler may keep open to the host of the given url:
+     * one for each access that can be started, as allowed by the minimum access delta and the robots.txt
+     * crawl-delay, during the average response time of the host.
+     * @param url the url to load
+     * @param agent the crawler agent
+     * @param maxConnections the upper limit
+     * @return the number of connections between 1 and maxConnections; 1 if the host was never accessed before
+     */
+    public static int maxConnectionsPerHost(final DigestURL url, final ClientIdentification.Agent agent, final int maxConnections) {
+        final Host host = host(url);
+        if (host == null || maxConnections <= 1) return 1;
+        final long delta = Math.max(1, Math.max(agent.minimumDelta, host.robotsDelay()));
+        return (int) Math.max(1, Math.min(maxConnections, 1 + host.ewma() / delta));
+    }
+
     /**
      * load a robots.txt to get the robots time.
      * ATTENTION: this method causes that a robots.txt is loaded from the web which may cause a longer delay in execution.
@@ -300,18 +355,47 @@ public class Latency {
         return sleeptime < 0 ? 0 : sleeptime;
     }
     
+    /**
+     * Host access statistics and adaptive access rate controller.
+     * The access rate follows an additive increase / multiplicative decrease (AIMD) rule:
+     * it grows a little after each response which is not slower than usual, and is divided
+     * when the host answers that it is overloaded or responds much slower than usual.
+     * The response time used to compute the delay between two accesses is exponentially weighted,
+     * so that it follows the current load of the host.
+     */
     public static final class Host {
+        /** weight of a new response time in the exponentially weighted response time */
+        private static final double EWMA_WEIGHT = 0.3d;
+        /** a response slower than this factor multiplied by the weighted response time is a sign of overload */
+        private static final double SLOW_RESPONSE_FACTOR = 2.0d;
+        /** rate bounds: the delay between two accesses goes from half of the base delay up to 64 times the base delay, but never below the minimum delay */
+        private static final double RATE_MIN = 1.0d / 64, RATE_MAX = 2.0d;
+        /** additive increase of the rate after a healthy response */
+        private static final double RATE_INCREASE = 0.05d;
+        /** multiplicative decrease of the rate when the host is overloaded */
+        private static final double RATE_BACKOFF = 0.5d;
+        /** multiplicative decrease of the rate after a slow response */
+        private static final double RATE_SLOWDOWN = 0.9d;
+        /** maximum Retry-After delay respected, in milliseconds */
+        private static final long RETRY_AFTER_MAX = 3600000L;
+        
         private AtomicLong timeacc;
         private AtomicLong lastacc;
         private AtomicInteger count;
         private final String host;
         private long robotsMinDelay;
+        private double ewma;
+        private double rate;
+        private volatile long retryAfterTime;
         private Host(final String host, final long time, long robotsMinDelay) {
             this.host = host;
             this.timeacc = new AtomicLong(time);
             this.count = new AtomicInteger(1);
             this.lastacc = new AtomicLong(System.currentTimeMillis());
             this.robotsMinDelay = robotsMinDelay;
+            this.ewma = time;
+            this.rate = 1.0d;
+            this.retryAfterTime = 0;
         }
         private void update(final long time) {
             if (this.count.get() > 100) {
@@ -324,6 +408,22 @@ public class Latency {
             this.lastacc.set(System.currentTimeMillis());
             this.timeacc.addAndGet(Math.min(30000, time));
             this.count.incrementAndGet();
+            synchronized(this) {
+                if (time > this.ewma * SLOW_RESPONSE_FACTOR) {
+                    this.rate = Math.max(RATE_MIN, this.rate * RATE_SLOWDOWN);
+                } else {
+                    this.rate = Math.min(RATE_MAX, this.rate + RATE_INCREASE);
+                }
+                this.ewma += EWMA_WEIGHT * (Math.min(30000, time) - this.ewma);
+            }
+        }
+        private void backoff(final long retryAfter) {
+            synchronized(this) {
+                this.rate = Math.max(RATE_MIN, this.rate * RATE_BACKOFF);
+            }
+            if (retryAfter > 0) {
+                this.retryAfterTime = System.currentTimeMillis() + Math.min(RETRY_AFTER_MAX, retryAfter);
+            }
         }
         private void update() {
             this.lastacc.set(System.currentTimeMillis());
@@ -343,6 +443,37 @@ public class Latency {
         public long robotsDelay() {
             return this.robotsMinDelay;
         }
+        /**
+         * @return the exponentially weighted response time in milliseconds
+         */
+        public synchronized int ewma() {
+            return (int) this.ewma;
+        }
+        /**
+         * @return the current access rate factor, between 1/64 and 2
+         */
+        public synchronized double rate() {
+            return this.rate;
+        }
+        /**
+         * @return the time in milliseconds before the host may be accessed again as demanded by a Retry-After header; 0 if none
+         */
+        public long retryAfterRemaining() {
+            return Math.max(0, this.retryAfterTime - System.currentTimeMillis());
+        }
+        /**
+         * Compute the delay between two accesses to the host: the base delay is the minimum delay of
+         * the crawler agent, or a part of the weighted response time when the host is slower; it is
+         * divided by the adaptive access rate. A fast host is accessed faster only as long as the delay
+         * stays above the minimum delay: the politeness floor is never undercut.
+         * @param minimumDelta the minimum delay of the crawler agent in milliseconds
+         * @param latencyFactor the part of the response time to wait between two accesses
+         * @return the delay between two accesses in milliseconds, at least minimumDelta
+         */
+        public int adaptiveDelay(final int minimumDelta, final float latencyFactor) {
+            final double base = Math.max(minimumDelta, ewma() * latencyFactor);
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(minimumDelta, base / rate()));
+        }
         /**
          * Used by crawler to calculate additional access delay time for often accessed hosts
          * (access count > 10000 returns half of the range parameter) linear incrementet from 0 up to (range div 2)
@@ -0,0 +1,230 @@
+// CacheTeeInputStream.java
+// ---------------------------
+// part of YaCy
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.retrieval;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.crawler.data.Cache;
+
+/**
+ * Input stream tee-ing the content read by a consumer (typically a parser)
+ * into a bounded copy buffer, that is written to the HTCACHE once the stream
+ * is closed. The copy is kept in memory up to a threshold and then spilled to
+ * a temporary file, so that a resource can be parsed while it is downloaded
+ * without holding the whole content twice in memory.<br>
+ * When the content exceeds the maximum cacheable size, the copy is abandoned
+ * and nothing is written to the cache.<br>
+ * Mark and reset are not supported, as re-read bytes would be copied twice :
+ * wrap this stream in a BufferedInputStream when marks are required.
+ */
+public class CacheTeeInputStream extends FilterInputStream {
+
+	/** Logger */
+	private final static ConcurrentLog log = new ConcurrentLog(CacheTeeInputStream.class.getSimpleName());
+
+	/** Size of the buffer used to drain the remaining content on close */
+	private static final int DRAIN_BUFFER_SIZE = 8192;
+
+	/** The URL to associate with the content in the cache */
+	private final DigestURL url;
+
+	/** The response header to store in the cache */
+	private final ResponseHeader responseHeader;
+
+	/** Maximum content size to put in the cache */
+	private final long maxCacheSize;
+
+	/** The copy of the content read so far. Null when the copy has been abandoned. */
+	private DeferredFileOutputStream copy;
+
+	/** Number of bytes copied */
+	private long copied = 0;
+
+	/** Set to true once closed */
+	private boolean closed = false;
+
+	/**
+	 * @param inStream
+	 *            the content stream to wrap. Must not be null.
+	 * @param url
+	 *            the URL to associate with the content in the cache. Must not be
+	 *            null.
+	 * @param responseHeader
+	 *            the response header to store in the cache. Must not be null.
+	 * @param memoryThreshold
+	 *            the number of bytes to keep in memory before spilling the copy to
+	 *            a temporary file
+	 * @param maxCacheSize
+	 *            maximum content size to put in the cache
+	 * @throws IllegalArgumentException
+	 *             when a parameter is null
+	 */
+	public CacheTeeInputStream(final InputStream inStream, final DigestURL url, final ResponseHeader responseHeader,
+			final int memoryThreshold, final long maxCacheSize) {
+		super(inStream);
+		if (inStream == null || url == null || responseHeader == null) {
+			throw new IllegalArgumentException("inStream, url and responseHeader parameters must not be null");
+		}
+		this.url = url;
+		this.responseHeader = responseHeader;
+		this.maxCacheSize = maxCacheSize;
+		this.copy = new DeferredFileOutputStream(Math.max(0, memoryThreshold), "yacy-cachetee-", ".tmp", null);
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int result = this.in.read();
+		if (result >= 0 && this.copy != null) {
+			if (++this.copied > this.maxCacheSize) {
+				abandonCopy();
+			} else {
+				this.copy.write(result);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b) throws IOException {
+		return this.read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int nbRead = this.in.read(b, off, len);
+		if (nbRead > 0 && this.copy != null) {
+			this.copied += nbRead;
+			if (this.copied > this.maxCacheSize) {
+				abandonCopy();
+			} else {
+				this.copy.write(b, off, nbRead);
+			}
+		}
+		return nbRead;
+	}
+
+	/**
+	 * Skipped bytes are read to keep the copy complete.
+	 */
+	@Override
+	public long skip(final long n) throws IOException {
+		if (this.copy == null) {
+			return this.in.skip(n);
+		}
+		final byte[] buffer = new byte[(int) Math.min(DRAIN_BUFFER_SIZE, Math.max(n, 1))];
+		long skipped = 0;
+		while (skipped < n) {
+			final int nbRead = this.read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (nbRead < 0) {
+				break;
+			}
+			skipped += nbRead;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(final int readlimit) {
+		/* not supported */
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * @return true when the copy is still complete : the content did not exceed
+	 *         the maximum cacheable size
+	 */
+	public boolean isCopyComplete() {
+		return this.copy != null;
+	}
+
+	/**
+	 * Read the content remaining after the consumer stopped (eventually within
+	 * the maximum cacheable size), store the complete copy to the cache, then
+	 * release the copy buffer and close the wrapped stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			if (this.copy != null) {
+				final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+				while (this.copy != null && this.read(buffer, 0, buffer.length) >= 0) {
+					/* drain to complete the copy */
+				}
+			}
+			if (this.copy != null) {
+				this.copy.close();
+				if (this.copy.isInMemory()) {
+					Cache.store(this.url, this.responseHeader, this.copy.getData());
+				} else {
+					/* the spilled copy is compressed while it is read, and not loaded back onto the heap */
+					try (final InputStream spilled = new BufferedInputStream(new FileInputStream(this.copy.getFile()))) {
+						Cache.store(this.url, this.responseHeader, spilled, this.copied);
+					}
+				}
+			}
+		} catch (final IOException e) {
+			log.warn("cannot write " + this.url + " to Cache (5): " + e.getMessage());
+		} finally {
+			abandonCopy();
+			this.in.close();
+		}
+	}
+
+	/**
+	 * Stop copying and release the copy buffer resources
+	 */
+	private void abandonCopy() {
+		if (this.copy != null) {
+			try {
+				this.copy.close();
+			} catch (final IOException ignored) {
+				/* nothing to do */
+			}
+			final File tmpFile = this.copy.getFile();
+			if (tmpFile != null && tmpFile.exists() && !tmpFile.delete()) {
+				tmpFile.deleteOnExit();
+			}
+			this.copy = null;
+		}
+	}
+
+}
@@ -28,6 +28,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Locale;
+import java.util.logging.Level;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
@@ -61,6 +62,10 @@ public final class HTTPLoader {
     public  static final String DEFAULT_ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
     public  static final int    DEFAULT_MAXFILESIZE = 1024 * 1024 * 10;
     public  static final int    DEFAULT_CRAWLING_RETRY_COUNT = 5;
+    /** Default size of the in-memory part of the cache copy buffer in crawler streaming mode */
+    public  static final int    DEFAULT_STREAMING_MEMORY_THRESHOLD = 1024 * 1024;
+    /** HTTP status code 429 Too Many Requests (RFC 6585), not defined in HttpStatus */
+    private static final int    SC_TOO_MANY_REQUESTS = 429;
 
     /**
      * The socket timeout that should be used
@@ -85,6 +90,28 @@ public final class HTTPLoader {
         Latency.updateAfterLoad(entry.url(), System.currentTimeMillis() - start);
         return doc;
     }
+
+	/**
+	 * Open an input stream on a requested HTTP resource for the crawler streaming mode : the content is never fully
+	 * loaded in memory by the loader, but when the profile requires caching, it is tee-ed to the HTCACHE while the consumer reads it
+	 * (see {@link CacheTeeInputStream}). Latency is updated when the response header has been received.
+	 * @param request the request essentials
+	 * @param profile crawl profile
+	 * @param maxFileSize max file size to load. -1 means no limit.
+	 * @param blacklistType blacklist type to use
+	 * @param agent agent identifier
+	 * @return a response with full meta data and embedding on open input stream on content. Don't forget to close the stream.
+	 * @throws IOException when an error occurred
+	 */
+	public StreamResponse openCrawlInputStream(final Request request, CrawlProfile profile, final int maxFileSize,
+			final BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException {
+		Latency.updateBeforeLoad(request.url());
+		final long start = System.currentTimeMillis();
+		final StreamResponse response = openInputStream(request, profile, DEFAULT_CRAWLING_RETRY_COUNT, maxFileSize,
+				blacklistType, agent, true);
+		Latency.updateAfterLoad(request.url(), System.currentTimeMillis() - start);
+		return response;
+	}
     
 	/**
      * Open an input stream on a requested HTTP resource. When the resource content size is small 
@@ -101,6 +128,26 @@ public final class HTTPLoader {
 	public StreamResponse openInputStream(final Request request, CrawlProfile profile, final int retryCount,
 			final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent)
 					throws IOException {
+		return openInputStream(request, profile, retryCount, maxFileSize, blacklistType, agent, false);
+	}
+
+	/**
+     * Open an input stream on a requested HTTP resource.
+     * @param request
+     * @param profile crawl profile
+     * @param retryCount remaining redirect retries count
+     * @param maxFileSize max file size to load. -1 means no limit.
+     * @param blacklistType blacklist type to use
+     * @param agent agent identifier
+     * @param teeToCache when true and the profile requires caching, the content is not pre-loaded when small, 
+     * but always streamed and copied to the cache while it is consumed. When false, small content 
+     * (lower than {@link Response#CRAWLER_MAX_SIZE_TO_CACHE}) is fully loaded and cached before returning.
+     * @return a response with full meta data and embedding on open input stream on content. Don't forget to close the stream.
+     * @throws IOException when an error occurred
+     */
+	private StreamResponse openInputStream(final Request request, CrawlProfile profile, final int retryCount,
+			final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent,
+			final boolean teeToCache) throws IOException {
 		if (retryCount < 0) {
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
 					FailCategory.TEMPORARY_NETWORK_FAILURE, "retry counter exceeded", -1);
@@ -140,7 +187,8 @@ public final class HTTPLoader {
 		final RequestHeader requestHeader = createRequestheader(request, agent);
 
 		// HTTP-Client
-		final HTTPClient client = new HTTPClient(agent);
+		final HTTPClient client = new HTTPClient(agent, HTTPClient.Pool.CRAWLER);
+		HTTPClient.setCrawlerMaxPerRoute(url, Latency.maxConnectionsPerHost(request.url(), agent, HTTPClient.CRAWLER_MAX_PER_ROUTE));
 		client.setRedirecting(false); // we want to handle redirection
 										// ourselves, so we don't index pages
 										// twice
@@ -198,7 +246,7 @@ public final class HTTPLoader {
 
 				// retry crawling with new url
 				request.redirectURL(redirectionUrl);
-				return openInputStream(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
+				return openInputStream(request, profile, retryCount - 1, maxFileSize, blacklistType, agent, teeToCache);
 			}
 			// we don't want to follow redirects
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
@@ -213,7 +261,7 @@ public final class HTTPLoader {
 			 */
 			long contentLength = client.getHttpResponse().getEntity().getContentLength();
 			InputStream contentStream;
-			if (profile != null && profile.storeHTCache() && contentLength > 0 && contentLength < (Response.CRAWLER_MAX_SIZE_TO_CACHE) && !url.isLocal()) {
+			if (!teeToCache && profile != null && profile.storeHTCache() && contentLength > 0 && contentLength < (Response.CRAWLER_MAX_SIZE_TO_CACHE) && !url.isLocal()) {
 				byte[] content = null;
 				try {
 					content = HTTPClient.getByteArray(client.getHttpResponse().getEntity(), maxFileSize);
@@ -245,9 +293,22 @@ public final class HTTPLoader {
 				}
 			}
 
-			return new StreamResponse(new Response(request, requestHeader, responseHeader, profile, false, null), contentStream);
+			final Response response = new Response(request, requestHeader, responseHeader, profile, false, null);
+			if (teeToCache && profile != null && profile.storeHTCache() && contentLength < Response.CRAWLER_MAX_SIZE_TO_CACHE
+					&& !url.isLocal() && response.shallStoreCacheForCrawler() == null) {
+				/* Copy the content to the cache while it is consumed. As in LoaderDispatcher, content is associated with the last redirection location */
+				contentStream = new CacheTeeInputStream(contentStream, response.url(), responseHeader,
+						this.sb.getConfigInt(SwitchboardConstants.CRAWLER_HTTP_STREAMING_MEMORY_THRESHOLD, DEFAULT_STREAMING_MEMORY_THRESHOLD),
+						Response.CRAWLER_MAX_SIZE_TO_CACHE);
+			}
+
+			return new StreamResponse(response, contentStream);
 		} else {
 			client.finish();
+			if (statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+				// the host is overloaded : slow down
+				Latency.updateAfterBackoff(request.url(), responseHeader.retryAfter());
+			}
 			// if the response has not the right response type then reject file
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
 					FailCategory.TEMPORARY_NETWORK_FAILURE, "wrong http status code", statusCode);
@@ -280,9 +341,8 @@ public final class HTTPLoader {
 		final DigestURL redirectionUrl = DigestURL.newURL(request.url(), redirectionUrlString);
 
 		// restart crawling with new url
-		this.log.info("CRAWLER Redirection detected ('" + statusline + "') for URL "
-				+ requestURLString);
-		this.log.info("CRAWLER ..Redirecting request to: " + redirectionUrl.toNormalform(false));
+		this.log.log(Level.INFO, "CRAWLER Redirection detected (''{0}'') for URL {1}", statusline, requestURLString);
+		this.log.log(Level.INFO, "CRAWLER ..Redirecting request to: {0}", redirectionUrl);
 
 		this.sb.webStructure.generateCitationReference(url, redirectionUrl);
 
@@ -360,7 +420,8 @@ public final class HTTPLoader {
         final RequestHeader requestHeader = createRequestheader(request, agent);
 
         // HTTP-Client
-        final HTTPClient client = new HTTPClient(agent);
+        final HTTPClient client = new HTTPClient(agent, HTTPClient.Pool.CRAWLER);
+        HTTPClient.setCrawlerMaxPerRoute(url, Latency.maxConnectionsPerHost(request.url(), agent, HTTPClient.CRAWLER_MAX_PER_ROUTE));
         client.setRedirecting(false); // we want to handle redirection ourselves, so we don't index pages twice
         client.setTimout(this.socketTimeout);
         client.setHeader(requestHeader.entrySet());
@@ -443,6 +504,10 @@ public final class HTTPLoader {
 
             return response;
     	} else {
+            if (statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                // the host is overloaded : slow down
+                Latency.updateAfterBackoff(request.url(), responseHeader.retryAfter());
+            }
             // if the response has not the right response type then reject file
         	this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "wrong http status code", statusCode);
             throw new IOException("REJECTED WRONG STATUS TYPE '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
@@ -482,7 +547,7 @@ public final class HTTPLoader {
         requestHeader.put(HeaderFramework.ACCEPT_CHARSET, DEFAULT_CHARSET);
         requestHeader.put(HeaderFramework.ACCEPT_ENCODING, DEFAULT_ENCODING);
 
-        final HTTPClient client = new HTTPClient(agent);
+        final HTTPClient client = new HTTPClient(agent, HTTPClient.Pool.CRAWLER);
         client.setTimout(20000);
         client.setHeader(requestHeader.entrySet());
         	final byte[] responseBody = client.GETbytes(request.url(), null, null, false);
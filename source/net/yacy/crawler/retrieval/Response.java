@@ -69,6 +69,8 @@ public class Response {
     private final  ResponseHeader     responseHeader;
     private final  CrawlProfile       profile;
     private        byte[]             content;
+    private        Document[]         documents;       // parser result, computed once by parse()
+    private        Response           origin;          // response of which this is a copy sharing the parser result, or null
     private        int                status;          // tracker indexing status, see status defs below
     private final  boolean            fromCache;
     
@@ -224,6 +226,26 @@ public class Response {
         if (this.responseHeader != null) this.responseHeader.put(HeaderFramework.CONTENT_LENGTH, "0"); // 'virtual' length, shows that the resource was not loaded
     }
     
+    /**
+     * Create a copy of this response for another request of the same resource, for example a caller which joined
+     * a concurrent load of the same url. The content is shared and the response header is copied. The parser
+     * result is shared too when the request has the same depth and timezone offset, the request specific inputs
+     * of the parser: it is then computed only once for all such copies.
+     * @param request the request of the other caller
+     * @param profile the crawl profile of the other caller
+     * @return a new response
+     */
+    public synchronized Response copy(final Request request, final CrawlProfile profile) {
+        final Response copy = new Response(request, this.requestHeader,
+                this.responseHeader == null ? null : new ResponseHeader(this.responseHeader),
+                profile, this.fromCache, this.content);
+        final Response parsing = this.origin == null ? this : this.origin;
+        if (request.depth() == parsing.request.depth() && request.timezoneOffset() == parsing.request.timezoneOffset()) {
+            copy.origin = parsing;
+        }
+        return copy;
+    }
+
     public void updateStatus(final int newStatus) {
         this.status = newStatus;
     }
@@ -315,8 +337,10 @@ public class Response {
         return this.request.depth();
     }
 
-    public void setContent(final byte[] data) {
+    public synchronized void setContent(final byte[] data) {
         this.content = data;
+        this.documents = null;
+        this.origin = null;
         if (this.responseHeader != null && this.content != null && Integer.parseInt(this.responseHeader.get(HeaderFramework.CONTENT_LENGTH, "0")) <= content.length) {
             this.responseHeader.put(HeaderFramework.CONTENT_LENGTH, Integer.toString(content.length)); // repair length 
         }
@@ -863,11 +887,24 @@ public class Response {
         return processCase;
     }
 
-    public Document[] parse() throws Parser.Failure {
+    /**
+     * Parse the content of this response. The result is computed only once:
+     * repeated calls get the same parsed documents instead of running the parser again.
+     * @return the parsed documents or null when an unexpected error occurred
+     * @throws Parser.Failure when no parser supports the content or parsing failed
+     */
+    public synchronized Document[] parse() throws Parser.Failure {
+        if (this.documents != null) return this.documents;
+        if (this.origin != null && this.origin.getContent() == this.content) {
+            // a compatible copy gets the documents parsed once for its origin
+            this.documents = this.origin.parse();
+            return this.documents;
+        }
         final String supportError = TextParser.supports(url(), this.responseHeader == null ? null : this.responseHeader.getContentType());
         if (supportError != null) throw new Parser.Failure("no parser support:" + supportError, url());
         try {
-            return TextParser.parseSource(url(), this.responseHeader == null ? null : this.responseHeader.getContentType(), this.responseHeader == null ? StandardCharsets.UTF_8.name() : this.responseHeader.getCharacterEncoding(), new HashSet<String>(), new VocabularyScraper(), this.request.timezoneOffset(), this.request.depth(), this.content);
+            this.documents = TextParser.parseSource(url(), this.responseHeader == null ? null : this.responseHeader.getContentType(), this.responseHeader == null ? StandardCharsets.UTF_8.name() : this.responseHeader.getCharacterEncoding(), new HashSet<String>(), new VocabularyScraper(), this.request.timezoneOffset(), this.request.depth(), this.content);
+            return this.documents;
         } catch(Parser.Failure e) {
         	throw e;
         } catch (final Exception e) {
@@ -28,6 +28,7 @@ package net.yacy.crawler.retrieval;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.Date;
+import java.util.logging.Level;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
@@ -112,6 +113,6 @@ public class SitemapImporter extends Thread {
                 0,
                 this.crawlingProfile.timezoneOffset()
                 ));
-        logger.info("New URL '" + entry.url() + "' added for loading.");
+        logger.log(Level.INFO, "New URL ''{0}'' added for loading.", entry.url());
     }
 }
@@ -404,7 +404,19 @@ public final class TextParser {
 	public static Document[] parseWithLimits(final DigestURL location, String mimeType, final String charset, final Set<String> ignoreClassNames,
 			final int timezoneOffset, final int depth, final long contentLength, final InputStream sourceStream, int maxLinks,
 			long maxBytes) throws Parser.Failure{
-		return parseSource(location, mimeType, charset, ignoreClassNames, new VocabularyScraper(), timezoneOffset, depth, contentLength,
+		return parseWithLimits(location, mimeType, charset, ignoreClassNames, new VocabularyScraper(), timezoneOffset, depth, contentLength,
+				sourceStream, maxLinks, maxBytes);
+	}
+
+	/**
+	 * Same as {@link #parseWithLimits(DigestURL, String, String, Set, int, int, long, InputStream, int, long)},
+	 * with a vocabulary scraper, as used by the crawler.
+	 * @param scraper a vocabulary scraper
+	 */
+	public static Document[] parseWithLimits(final DigestURL location, String mimeType, final String charset, final Set<String> ignoreClassNames,
+			final VocabularyScraper scraper, final int timezoneOffset, final int depth, final long contentLength, final InputStream sourceStream, int maxLinks,
+			long maxBytes) throws Parser.Failure{
+		return parseSource(location, mimeType, charset, ignoreClassNames, scraper, timezoneOffset, depth, contentLength,
 				sourceStream, maxLinks, maxBytes);
 	}
 	
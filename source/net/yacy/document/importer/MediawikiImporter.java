@@ -40,7 +40,9 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -50,17 +52,24 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.document.id.AnchorURL;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
 import net.yacy.cora.protocol.ClientIdentification;
+import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.protocol.ResponseHeader;
 import net.yacy.cora.protocol.http.HTTPClient;
 import net.yacy.cora.util.ByteBuffer;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.NumberTools;
+import net.yacy.crawler.data.CrawlProfile;
+import net.yacy.crawler.retrieval.Request;
+import net.yacy.crawler.retrieval.Response;
 import net.yacy.data.wiki.WikiCode;
 import net.yacy.data.wiki.WikiParser;
 import net.yacy.document.Document;
@@ -68,7 +77,9 @@ import net.yacy.document.Parser;
 import net.yacy.document.TextParser;
 import net.yacy.document.VocabularyScraper;
 import net.yacy.document.content.SurrogateReader;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.NamePrefixThreadFactory;
+import net.yacy.search.Switchboard;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 
@@ -76,6 +87,14 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 /*
  * this class provides data structures to read a mediawiki dump file in xml format
  * as referenced with xmlns="http://www.mediawiki.org/xml/export-0.3/"
+ *
+ * The dump is either converted into surrogate files which are indexed later by the surrogate
+ * processing, or (with a null target directory) imported directly: the reader thread only
+ * cuts the uncompressed xml into pages, which are parsed, condensed and stored by a pool of
+ * worker threads. The offset of the first page not yet completely indexed is regularly saved
+ * to a checkpoint file next to a local dump file; a later direct import of the same file resumes
+ * from this offset. Offsets are positions in the uncompressed xml, as in the index created by
+ * createIndex.
  */
 
 public class MediawikiImporter extends Thread implements Importer {
@@ -88,7 +107,16 @@ public class MediawikiImporter extends Thread implements Importer {
     private static final byte[] pageendb = UTF8.getBytes(pageend);
     private static final int    docspermbinxmlbz2 = 800;  // documents per megabyte in a xml.bz2 mediawiki dump
 
-    public static Importer job; // if started from a servlet, this object is used to store the thread
+    public static MediawikiImporter job; // if started from a servlet, this object is used to store the thread
+
+    /** Suffix added to the dump file name to store the resume checkpoint of a direct import */
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /** Time in milliseconds between two writes of the checkpoint file */
+    private static final long CHECKPOINT_INTERVAL = 10000;
+
+    /** Entry signaling the end of the pages to the worker threads of a direct import */
+    private static final wikiraw POISON_PAGE = new wikiraw(new byte[0], -1, -1);
 
     public    MultiProtocolURL sourcefile;
     public    File targetdir;
@@ -99,8 +127,34 @@ public class MediawikiImporter extends Thread implements Importer {
     private   String hostport, urlStub;
     private   String errorMessage;
 
+    // direct import
+    private   final int concurrency; // number of worker threads
+    private   final File checkpointFile; // file storing the resume checkpoint, null when not importing from a local file
+    private   final AtomicInteger indexed; // number of pages indexed
+    private   final TreeSet<Long> pendingOffsets; // offsets of the pages being indexed: the smallest one is the resume checkpoint
+    private   volatile long consumed; // offset in the uncompressed xml up to which all pages have been read
+    private   volatile boolean abort;
 
+    /**
+     * create an importer which converts the dump into surrogate files
+     * @param sourcefile the dump file
+     * @param targetdir the directory for the surrogate files
+     */
     public MediawikiImporter(final MultiProtocolURL sourcefile, final File targetdir) {
+        this(sourcefile, targetdir, 0);
+    }
+
+    /**
+     * create an importer which parses the pages of the dump in parallel and indexes them directly,
+     * resuming from the checkpoint of an interrupted import of the same local file
+     * @param sourcefile the dump file
+     * @param concurrency the number of threads parsing and indexing the pages
+     */
+    public MediawikiImporter(final MultiProtocolURL sourcefile, final int concurrency) {
+        this(sourcefile, null, Math.max(1, concurrency));
+    }
+
+    private MediawikiImporter(final MultiProtocolURL sourcefile, final File targetdir, final int concurrency) {
     	super("MediawikiImporter(" + sourcefile != null ? sourcefile.toNormalform(true) : "null sourcefile" +")");
     	this.sourcefile = sourcefile;
     	this.docsize = sourcefile.length();
@@ -111,11 +165,39 @@ public class MediawikiImporter extends Thread implements Importer {
         this.hostport = null;
         this.urlStub = null;
         this.errorMessage = null;
+        this.concurrency = concurrency;
+        File checkpoint = null;
+        if (targetdir == null && sourcefile.isFile()) try {
+            checkpoint = new File(sourcefile.getFSFile().getPath() + CHECKPOINT_SUFFIX);
+        } catch (final MalformedURLException e) {}
+        this.checkpointFile = checkpoint;
+        this.indexed = new AtomicInteger();
+        this.pendingOffsets = new TreeSet<Long>();
+        this.consumed = 0;
+        this.abort = false;
+    }
+
+    /**
+     * @param dumpFile a mediawiki dump file
+     * @return the offset saved in the checkpoint file of a direct import of the dump, or 0 when there is none
+     */
+    public static long readCheckpoint(final File dumpFile) {
+        return readCheckpointFile(new File(dumpFile.getPath() + CHECKPOINT_SUFFIX));
+    }
+
+    private static long readCheckpointFile(final File checkpoint) {
+        if (!checkpoint.exists()) return 0;
+        try {
+            return Long.parseLong(UTF8.String(FileUtils.read(checkpoint)).trim());
+        } catch (final IOException | NumberFormatException e) {
+            ConcurrentLog.warn("WIKITRANSLATION", "cannot read checkpoint file " + checkpoint + ": " + e.getMessage());
+            return 0;
+        }
     }
 
     @Override
     public int count() {
-        return this.count;
+        return this.targetdir == null ? this.indexed.get() : this.count;
     }
 
     @Override
@@ -128,7 +210,8 @@ public class MediawikiImporter extends Thread implements Importer {
      */
     @Override
     public String status() {
-        return this.errorMessage != null ? this.errorMessage : "";
+        if (this.errorMessage != null) return this.errorMessage;
+        return this.checkpointFile == null ? "" : "resumable at offset " + checkpoint();
     }
 
     /**
@@ -153,9 +236,28 @@ public class MediawikiImporter extends Thread implements Importer {
         return (System.currentTimeMillis() - this.start) / 1000L;
     }
 
+    /**
+     * set the flag to stop a direct import, which can be resumed later
+     */
+    public void quit() {
+        this.abort = true;
+    }
+
+    /**
+     * @return true when the pages are indexed directly, false when they are written to surrogate files.
+     * Only a direct import can be stopped with {@link #quit()}.
+     */
+    public boolean isDirect() {
+        return this.targetdir == null;
+    }
+
     @Override
     public void run() {
         this.start = System.currentTimeMillis();
+        if (this.targetdir == null) {
+            importDirectly();
+            return;
+        }
         final int threads = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
         // out keeps a outputfile open until poisened, to make sure underlaying thread gets the end condition
         // regardless of any exception (e.g. eof memory) a add(poison) is added to the most outer final block
@@ -168,7 +270,7 @@ public class MediawikiImporter extends Thread implements Importer {
             if (p > 0) targetstub = targetstub.substring(0, p);
             InputStream is = new BufferedInputStream(this.sourcefile.getInputStream(ClientIdentification.yacyInternetCrawlerAgent), 1024 * 1024);
             if (this.sourcefile.getFileName().endsWith(".bz2")) {
-                is = new BZip2CompressorInputStream(is);
+                is = new BZip2CompressorInputStream(is, true); // multistream dumps are concatenated bz2 streams
             } else if (this.sourcefile.getFileName().endsWith(".gz")) {
                 is = new GZIPInputStream(is);
             }
@@ -298,6 +400,220 @@ public class MediawikiImporter extends Thread implements Importer {
         }
     }
 
+    /**
+     * read the dump and let a pool of worker threads index its pages, without intermediate surrogate files
+     */
+    private void importDirectly() {
+        final long startOffset = this.checkpointFile == null ? 0 : readCheckpointFile(this.checkpointFile);
+        final BlockingQueue<wikiraw> pages = new ArrayBlockingQueue<wikiraw>(this.concurrency * 10);
+        final Thread[] workers = new Thread[this.concurrency];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("MediawikiImporter.worker-" + i) {
+                @Override
+                public void run() {
+                    indexPages(pages);
+                }
+            };
+            workers[i].start();
+        }
+        PositionAwareReader in = null;
+        long lastCheckpoint = System.currentTimeMillis();
+        try {
+            InputStream is = new BufferedInputStream(this.sourcefile.getInputStream(ClientIdentification.yacyInternetCrawlerAgent), 1024 * 1024);
+            if (this.sourcefile.getFileName().endsWith(".bz2")) {
+                is = new BZip2CompressorInputStream(is, true);
+            } else if (this.sourcefile.getFileName().endsWith(".gz")) {
+                is = new GZIPInputStream(is);
+            }
+            in = new PositionAwareReader(new BufferedInputStream(is, 64 * 1024));
+
+            // the site info before the first page contains the base url of the wiki
+            if (!in.seek(pagestartb)) throw new IOException("no page in dump");
+            readSiteinfo(UTF8.String(in.bytes()));
+            if (startOffset > in.pos()) {
+                in.skip(startOffset - in.pos());
+                ConcurrentLog.info("WIKITRANSLATION", "Resuming import of " + this.sourcefile.getFileName() + " at offset " + startOffset);
+                if (!in.seek(pagestartb)) throw new IOException("no page at offset " + startOffset);
+            }
+
+            long pagestart;
+            do {
+                pagestart = in.pos() - pagestartb.length;
+                in.resetBuffer();
+                if (!in.seek(pageendb)) break;
+                synchronized (this.pendingOffsets) {
+                    this.pendingOffsets.add(pagestart);
+                }
+                this.consumed = in.pos();
+                try {
+                    if (!offer(pages, new wikiraw(in.bytes(), pagestart, in.pos()), workers)) {
+                        releaseOffset(pagestart);
+                        this.errorMessage = "all workers stopped";
+                        this.abort = true;
+                        break;
+                    }
+                    this.count++;
+                } catch (final InterruptedException e) {
+                    releaseOffset(pagestart);
+                    this.abort = true;
+                    break;
+                }
+                in.resetBuffer();
+                if (System.currentTimeMillis() - lastCheckpoint > CHECKPOINT_INTERVAL) {
+                    writeCheckpoint();
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+            } while (!this.abort && in.seek(pagestartb));
+        } catch (final IOException e) {
+            this.errorMessage = e.getMessage();
+            this.abort = true;
+            ConcurrentLog.logException(e);
+        } finally {
+            if (in != null) in.close();
+            // let the workers index the remaining pages, then stop them
+            for (int i = 0; i < workers.length; i++) {
+                try {
+                    if (!offer(pages, POISON_PAGE, workers)) break;
+                } catch (final InterruptedException e) {
+                    this.abort = true;
+                    for (final Thread worker: workers) worker.interrupt();
+                    break;
+                }
+            }
+            for (final Thread worker: workers) {
+                try {
+                    worker.join();
+                } catch (final InterruptedException e) {
+                    this.abort = true;
+                }
+            }
+            if (this.abort) {
+                writeCheckpoint();
+            } else if (this.checkpointFile != null) {
+                FileUtils.deletedelete(this.checkpointFile);
+            }
+            ConcurrentLog.info("WIKITRANSLATION", "Indexed " + this.indexed + " pages" + (this.abort && this.checkpointFile != null ? ", import can be resumed at offset " + checkpoint() : ""));
+        }
+    }
+
+    /**
+     * read the base url of the wiki from the siteinfo of the dump
+     */
+    private void readSiteinfo(final String siteinfo) throws MalformedURLException {
+        final int p = siteinfo.indexOf("<base>");
+        final int q = siteinfo.indexOf("</base>", p);
+        if (p < 0 || q < 0) throw new MalformedURLException("no base url in siteinfo of dump");
+        this.urlStub = siteinfo.substring(p + 6, q);
+        if (!this.urlStub.endsWith("/")) {
+            final int r = this.urlStub.lastIndexOf('/');
+            if (r > 0) this.urlStub = this.urlStub.substring(0, r + 1);
+        }
+        final DigestURL uri = new DigestURL(this.urlStub);
+        this.hostport = uri.getHost();
+        if (uri.getPort() != 80) this.hostport += ":" + uri.getPort();
+    }
+
+    /**
+     * put a page into the queue of the workers, waiting as long as at least one worker is alive to take it
+     * @return false when all workers have stopped and the page can not be taken anymore
+     */
+    private static boolean offer(final BlockingQueue<wikiraw> pages, final wikiraw page, final Thread[] workers) throws InterruptedException {
+        while (!pages.offer(page, 1, TimeUnit.SECONDS)) {
+            boolean alive = false;
+            for (final Thread worker: workers) alive |= worker.isAlive();
+            if (!alive) return false;
+        }
+        return true;
+    }
+
+    /**
+     * loop of a worker thread: parse and index the pages until the poison entry is received.
+     * A worker stopping before the poison entry sets the abort flag, so that the reader stops and the import can be resumed.
+     */
+    private void indexPages(final BlockingQueue<wikiraw> pages) {
+        wikiraw page;
+        boolean poisoned = false;
+        try {
+            while ((page = pages.take()) != POISON_PAGE) {
+                String title = null;
+                try {
+                    final String s = UTF8.String(page.b);
+                    int p = s.indexOf("<title>");
+                    int q = s.indexOf("</title>", p);
+                    if (p < 0 || q < 0) continue;
+                    title = s.substring(p + 7, q);
+                    p = s.indexOf(textstart, q);
+                    if (p < 0) continue;
+                    p = s.indexOf('>', p + textstart.length());
+                    q = s.indexOf(textend, p);
+                    if (p < 0 || q < 0 || q == p + 1) continue; // no content
+                    final wikiparserrecord record = newRecord(this.hostport, this.urlStub, title, new StringBuilder(s.substring(p + 1, q)));
+                    record.genHTML();
+                    record.genDocument();
+                    if (record.document == null) continue;
+                    final String error = indexDocument(record.url, record.document);
+                    if (error == null) {
+                        this.indexed.incrementAndGet();
+                    } else if (ConcurrentLog.isFine("WIKITRANSLATION")) {
+                        ConcurrentLog.fine("WIKITRANSLATION", "Not indexed " + title + ": " + error);
+                    }
+                } catch (final Throwable e) {
+                    ConcurrentLog.warn("WIKITRANSLATION", "Failed to index " + title + ": " + e.getMessage());
+                } finally {
+                    releaseOffset(page.start);
+                }
+            }
+            poisoned = true;
+        } catch (final InterruptedException e) {
+            // stop this worker
+        } finally {
+            if (!poisoned) this.abort = true;
+        }
+    }
+
+    /**
+     * index a document parsed from a page of the dump
+     * @return null when the document was indexed, otherwise the reason why it was not indexed
+     */
+    String indexDocument(final AnchorURL url, final Document document) {
+        final Switchboard sb = Switchboard.getSwitchboard();
+        final CrawlProfile profile = sb.crawler.defaultSurrogateProfile;
+        final Request request = new Request(ASCII.getBytes(sb.peers.mySeed().hash), url, null, "", new Date(), profile.handle(), 0, profile.timezoneOffset());
+        final ResponseHeader responseHeader = new ResponseHeader(200);
+        responseHeader.put(HeaderFramework.CONTENT_TYPE, "text/html"); // the documents are parsed from the html generated from the wiki text
+        final Response response = new Response(request, null, responseHeader, profile, false, null);
+        return sb.indexDirectly(response, new Document[] {document});
+    }
+
+    private void releaseOffset(final long offset) {
+        synchronized (this.pendingOffsets) {
+            this.pendingOffsets.remove(offset);
+        }
+    }
+
+    /**
+     * write the current checkpoint to the checkpoint file, when importing a local file directly
+     */
+    private void writeCheckpoint() {
+        if (this.checkpointFile == null) return;
+        try {
+            FileUtils.copy(UTF8.getBytes(Long.toString(checkpoint())), this.checkpointFile);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("WIKITRANSLATION", "cannot write checkpoint file " + this.checkpointFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the offset in the uncompressed xml from which an interrupted direct import can be resumed
+     * without losing pages: the offset of the oldest page not completely indexed, or the offset after the
+     * last page read when all pages read are indexed
+     */
+    public long checkpoint() {
+        synchronized (this.pendingOffsets) {
+            return this.pendingOffsets.isEmpty() ? this.consumed : this.pendingOffsets.first();
+        }
+    }
+
     public static void checkIndex(final File mediawikixml) {
         final File idx = idxFromMediawikiXML(mediawikixml);
         if (idx.exists()) return;
@@ -555,11 +871,25 @@ public class MediawikiImporter extends Thread implements Importer {
         private ByteBuffer bb;
 
         public PositionAwareReader(final File dumpFile) throws FileNotFoundException {
-            this.is = new BufferedInputStream(new FileInputStream(dumpFile), 64 *1024);
+            this(new BufferedInputStream(new FileInputStream(dumpFile), 64 *1024));
+        }
+
+        public PositionAwareReader(final InputStream is) {
+            this.is = is;
             this.seekpos = 0;
             this.bb = new ByteBuffer();
         }
 
+        public void skip(final long n) throws IOException {
+            long skipped = 0, s;
+            while (skipped < n) {
+                s = this.is.skip(n - skipped);
+                if (s <= 0) throw new IOException("cannot skip to offset " + (this.seekpos + n));
+                skipped += s;
+            }
+            this.seekpos += n;
+        }
+
         public void resetBuffer() {
             if (this.bb.length() > 10 * 1024) this.bb = new ByteBuffer(); else this.bb.clear();
         }
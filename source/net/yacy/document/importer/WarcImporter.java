@@ -27,7 +27,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
@@ -37,6 +43,8 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.document.TextParser;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.search.Switchboard;
 import net.yacy.server.http.ChunkedInputStream;
 import org.jwat.common.HeaderLine;
@@ -55,25 +63,67 @@ import org.jwat.warc.WarcRecord;
  *
  * http://archive-access.sourceforge.net/warc/warc_file_format-0.9.html
  * http://archive-access.sourceforge.net/warc/
+ *
+ * The archive is read sequentially by the importer thread, which only decodes
+ * the records; the responses are then parsed, condensed and stored by a pool
+ * of worker threads, bypassing the indexing queues of the crawler.
+ *
+ * When importing from a file, the offset of the first record not yet completely
+ * indexed is regularly saved to a checkpoint file next to the archive. A later
+ * import of the same file resumes from this offset. In a .warc.gz file, each
+ * record is normally compressed as a separate gzip member, so that this offset
+ * is a gzip member boundary where decompression can start.
  */
 public class WarcImporter extends Thread implements Importer {
 
     static public WarcImporter job; // static object to assure only one importer is running (if started from a servlet, this object is used to store the thread)
 
+    /** Suffix added to the archive file name to store the resume checkpoint */
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /** Time in milliseconds between two writes of the checkpoint file */
+    private static final long CHECKPOINT_INTERVAL = 10000;
+
+    /** Entry signaling the end of the records to the worker threads */
+    private static final Entry POISON = new Entry(null, -1);
+
+    /**
+     * A decoded response and the offset of its record in the archive
+     */
+    private static class Entry {
+        private final Response response;
+        private final long offset;
+
+        private Entry(final Response response, final long offset) {
+            this.response = response;
+            this.offset = offset;
+        }
+    }
+
     private final InputStream source; // current input warc archive
     private String name; // file name of input source
-    
-    private int recordCnt; // number of responses indexed (for statistic)
+    private final File checkpointFile; // file storing the resume checkpoint, null when not importing from a file
+    private final long startOffset; // offset in the input source where the import started
+    private final int concurrency; // number of worker threads
+
+    private final AtomicInteger recordCnt; // number of responses indexed (for statistic)
     private long startTime; // (for statistic)
     private final long sourceSize; // length of the input source (for statistic)
-    private long consumed; // bytes consumed from input source (for statistic)
-    private boolean abort = false; // flag to signal stop of import
+    private volatile long consumed; // bytes consumed from input source (for statistic)
+    private volatile boolean abort = false; // flag to signal stop of import
+
+    /** Number of records being indexed, by record offset : the smallest key is the resume checkpoint */
+    private final TreeMap<Long, Integer> pendingOffsets;
 
     public WarcImporter(InputStream f) {
-    	super("WarcImporter - from InputStream");
+        super("WarcImporter - from InputStream");
         source = f;
-        recordCnt = 0;
+        recordCnt = new AtomicInteger();
         sourceSize = -1;
+        checkpointFile = null;
+        startOffset = 0;
+        concurrency = WorkflowProcessor.availableCPU;
+        pendingOffsets = new TreeMap<Long, Integer>();
     }
 
     /**
@@ -88,11 +138,47 @@ public class WarcImporter extends Thread implements Importer {
         name = urlinfo;
     }
 
-    public WarcImporter(File f) throws FileNotFoundException{
-       super("WarcImporter - from file " + f.getName());
-       name = f.getName();
-       sourceSize = f.length();
-       source = new FileInputStream(f);
+    /**
+     * Init the WarcImporter with a file, resuming from its checkpoint file when an
+     * earlier import of this file has been interrupted.
+     * @param f the warc archive file
+     * @throws FileNotFoundException when the file doesn't exist
+     */
+    public WarcImporter(File f) throws FileNotFoundException {
+        this(f, readCheckpoint(f), WorkflowProcessor.availableCPU);
+    }
+
+    /**
+     * @param f the warc archive file
+     * @param startOffset the offset of the record to start from, as given by {@link #checkpoint()} on a previous import
+     * @param concurrency the number of threads indexing the records
+     * @throws FileNotFoundException when the file doesn't exist
+     */
+    public WarcImporter(File f, long startOffset, int concurrency) throws FileNotFoundException {
+        super("WarcImporter - from file " + f.getName());
+        name = f.getName();
+        sourceSize = f.length();
+        source = new FileInputStream(f);
+        recordCnt = new AtomicInteger();
+        checkpointFile = new File(f.getPath() + CHECKPOINT_SUFFIX);
+        this.startOffset = startOffset > 0 && startOffset < sourceSize ? startOffset : 0;
+        this.concurrency = Math.max(1, concurrency);
+        pendingOffsets = new TreeMap<Long, Integer>();
+    }
+
+    /**
+     * @param f a warc archive file
+     * @return the offset saved in the checkpoint file of the archive, or 0 when there is none
+     */
+    public static long readCheckpoint(File f) {
+        final File checkpoint = new File(f.getPath() + CHECKPOINT_SUFFIX);
+        if (!checkpoint.exists()) return 0;
+        try {
+            return Long.parseLong(UTF8.String(FileUtils.read(checkpoint)).trim());
+        } catch (final IOException | NumberFormatException e) {
+            ConcurrentLog.warn("WarcImporter", "cannot read checkpoint file " + checkpoint + ": " + e.getMessage());
+            return 0;
+        }
     }
 
     /**
@@ -107,77 +193,202 @@ public class WarcImporter extends Thread implements Importer {
         byte[] content;
         job = this;
         startTime = System.currentTimeMillis();
+        this.consumed = this.startOffset;
+        if (this.startOffset > 0) {
+            long skipped = 0;
+            while (skipped < this.startOffset) {
+                final long nb = f.skip(this.startOffset - skipped);
+                if (nb <= 0) throw new IOException("cannot skip to offset " + this.startOffset);
+                skipped += nb;
+            }
+            ConcurrentLog.info("WarcImporter", "Resuming import of " + this.name + " at offset " + this.startOffset);
+        }
+
+        final BlockingQueue<Entry> entries = new ArrayBlockingQueue<Entry>(this.concurrency * 2);
+        final Thread[] workers = new Thread[this.concurrency];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("WarcImporter.worker-" + i) {
+                @Override
+                public void run() {
+                    indexEntries(entries);
+                }
+            };
+            workers[i].start();
+        }
 
-        WarcReader localwarcReader = WarcReaderFactory.getReader(f);
-        WarcRecord wrec = localwarcReader.getNextRecord();
-        while (wrec != null && !abort) {
+        WarcReader localwarcReader = null;
+        long lastCheckpoint = System.currentTimeMillis();
+        boolean completed = false; // true only when the end of the file was reached without error
+        try {
+            localwarcReader = WarcReaderFactory.getReader(f);
+            WarcRecord wrec = localwarcReader.getNextRecord();
+            while (wrec != null && !abort) {
 
-            HeaderLine hl = wrec.getHeader(WarcConstants.FN_WARC_TYPE);
-            if (hl != null && hl.value.equals(WarcConstants.RT_RESPONSE)) { // filter responses
+                HeaderLine hl = wrec.getHeader(WarcConstants.FN_WARC_TYPE);
+                if (hl != null && hl.value.equals(WarcConstants.RT_RESPONSE)) { // filter responses
 
-                hl = wrec.getHeader(WarcConstants.FN_WARC_TARGET_URI);
-                DigestURL location = new DigestURL(hl.value);
+                    hl = wrec.getHeader(WarcConstants.FN_WARC_TARGET_URI);
+                    DigestURL location = new DigestURL(hl.value);
 
-                HttpHeader http = wrec.getHttpHeader();
+                    HttpHeader http = wrec.getHttpHeader();
 
-                if (http != null && http.statusCode == 200) { // process http response header OK (status 200)
+                    if (http != null && http.statusCode == 200) { // process http response header OK (status 200)
 
-                    if (TextParser.supportsMime(http.contentType) == null) { // check availability of parser
+                        if (TextParser.supportsMime(http.contentType) == null) { // check availability of parser
 
-                        InputStream istream = wrec.getPayloadContent();
-                        hl = http.getHeader(HeaderFramework.TRANSFER_ENCODING);
-                        if (hl != null && hl.value.contains("chunked")) {
-                            // because chunked stream.read doesn't read source fully, make sure all chunks are read
-                            istream = new ChunkedInputStream(istream);
-                            final ByteBuffer bbuffer = new ByteBuffer();
-                            int c;
-                            while ((c = istream.read()) >= 0) {
-                                bbuffer.append(c);
+                            InputStream istream = wrec.getPayloadContent();
+                            hl = http.getHeader(HeaderFramework.TRANSFER_ENCODING);
+                            if (hl != null && hl.value.contains("chunked")) {
+                                // because chunked stream.read doesn't read source fully, make sure all chunks are read
+                                istream = new ChunkedInputStream(istream);
+                                final ByteBuffer bbuffer = new ByteBuffer();
+                                int c;
+                                while ((c = istream.read()) >= 0) {
+                                    bbuffer.append(c);
+                                }
+                                content = bbuffer.getBytes();
+                            } else {
+                                content = new byte[(int) http.getPayloadLength()];
+                                int offset = 0, nb;
+                                while (offset < content.length && (nb = istream.read(content, offset, content.length - offset)) >= 0) {
+                                    offset += nb;
+                                }
                             }
-                            content = bbuffer.getBytes();
-                        } else {
-                            content = new byte[(int) http.getPayloadLength()];
-                            istream.read(content, 0, content.length);
-                        }
-                        istream.close();
+                            istream.close();
+
+                            RequestHeader requestHeader = new RequestHeader();
 
-                        RequestHeader requestHeader = new RequestHeader();
+                            ResponseHeader responseHeader = new ResponseHeader(http.statusCode);
+                            for (HeaderLine hx : http.getHeaderList()) { // include all original response headers for parser
+                                responseHeader.put(hx.name, hx.value);
+                            }
+
+                            final Request request = new Request(
+                                    ASCII.getBytes(Switchboard.getSwitchboard().peers.mySeed().hash),
+                                    location,
+                                    requestHeader.referer() == null ? null : requestHeader.referer().hash(),
+                                    "warc",
+                                    responseHeader.lastModified(),
+                                    Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.handle(),
+                                    0,
+                                    Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.timezoneOffset());
+
+                            final Response response = new Response(
+                                    request,
+                                    requestHeader,
+                                    responseHeader,
+                                    Switchboard.getSwitchboard().crawler.defaultSurrogateProfile,
+                                    false,
+                                    content
+                            );
 
-                        ResponseHeader responseHeader = new ResponseHeader(http.statusCode);
-                        for (HeaderLine hx : http.getHeaderList()) { // include all original response headers for parser
-                            responseHeader.put(hx.name, hx.value);
+                            final long recordOffset = this.startOffset + wrec.getStartOffset();
+                            synchronized (this.pendingOffsets) {
+                                final Integer count = this.pendingOffsets.get(recordOffset);
+                                this.pendingOffsets.put(recordOffset, count == null ? 1 : count + 1);
+                            }
+                            try {
+                                entries.put(new Entry(response, recordOffset));
+                            } catch (final InterruptedException e) {
+                                releaseOffset(recordOffset);
+                                break;
+                            }
                         }
+                    }
+                }
+                this.consumed = this.startOffset + localwarcReader.getConsumed();
+                if (System.currentTimeMillis() - lastCheckpoint > CHECKPOINT_INTERVAL) {
+                    writeCheckpoint();
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+                wrec = localwarcReader.getNextRecord();
+            }
+            completed = wrec == null;
+        } finally {
+            if (localwarcReader != null) localwarcReader.close();
+            // let the workers index the remaining entries, then stop them
+            for (int i = 0; i < workers.length; i++) {
+                try {
+                    entries.put(POISON);
+                } catch (final InterruptedException e) {
+                    abort = true;
+                }
+            }
+            for (final Thread worker: workers) {
+                try {
+                    worker.join();
+                } catch (final InterruptedException e) {
+                    abort = true;
+                }
+            }
+            if (completed && !abort) {
+                if (this.checkpointFile != null) FileUtils.deletedelete(this.checkpointFile);
+            } else {
+                // aborted, interrupted or failed with an exception : keep the resume point
+                writeCheckpoint();
+            }
+            ConcurrentLog.info("WarcImporter", "Indexed " + recordCnt + " documents" + ((completed && !abort) || this.checkpointFile == null ? "" : ", import can be resumed at offset " + checkpoint()));
+            job = null;
+        }
+    }
 
-                        final Request request = new Request(
-                                ASCII.getBytes(Switchboard.getSwitchboard().peers.mySeed().hash),
-                                location,
-                                requestHeader.referer() == null ? null : requestHeader.referer().hash(),
-                                "warc",
-                                responseHeader.lastModified(),
-                                Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.handle(),
-                                0,
-                                Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.timezoneOffset());
-
-                        final Response response = new Response(
-                                request,
-                                requestHeader,
-                                responseHeader,
-                                Switchboard.getSwitchboard().crawler.defaultSurrogateProfile,
-                                false,
-                                content
-                        );
-
-                        Switchboard.getSwitchboard().toIndexer(response);
-                        recordCnt++;
+    /**
+     * Loop of a worker thread : index the decoded responses until the poison entry is received.
+     */
+    private void indexEntries(final BlockingQueue<Entry> entries) {
+        Entry entry;
+        try {
+            while ((entry = entries.take()) != POISON) {
+                try {
+                    final String error = Switchboard.getSwitchboard().indexDirectly(entry.response);
+                    if (error == null) {
+                        recordCnt.incrementAndGet();
+                    } else if (ConcurrentLog.isFine("WarcImporter")) {
+                        ConcurrentLog.fine("WarcImporter", "Not indexed " + entry.response.url().toNormalform(true) + ": " + error);
                     }
+                } catch (final Throwable e) {
+                    ConcurrentLog.warn("WarcImporter", "Failed to index " + entry.response.url().toNormalform(true) + ": " + e.getMessage());
+                } finally {
+                    releaseOffset(entry.offset);
                 }
             }
-            this.consumed = localwarcReader.getConsumed();
-            wrec = localwarcReader.getNextRecord();
+        } catch (final InterruptedException e) {
+            // stop this worker
+        }
+    }
+
+    private void releaseOffset(final long offset) {
+        synchronized (this.pendingOffsets) {
+            final Integer count = this.pendingOffsets.get(offset);
+            if (count == null || count <= 1) {
+                this.pendingOffsets.remove(offset);
+            } else {
+                this.pendingOffsets.put(offset, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Write the current checkpoint to the checkpoint file, when importing from a file
+     */
+    private void writeCheckpoint() {
+        if (this.checkpointFile == null) return;
+        try {
+            FileUtils.copy(UTF8.getBytes(Long.toString(checkpoint())), this.checkpointFile);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("WarcImporter", "cannot write checkpoint file " + this.checkpointFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the offset in the input source from which an interrupted import can be resumed
+     * without losing records : the offset of the oldest record not completely indexed, or the number
+     * of bytes consumed when all records read are indexed
+     */
+    public long checkpoint() {
+        synchronized (this.pendingOffsets) {
+            return this.pendingOffsets.isEmpty() ? this.consumed : this.pendingOffsets.firstKey();
         }
-        localwarcReader.close();
-        ConcurrentLog.info("WarcImporter", "Indexed " + recordCnt + " documents");
-        job = null;
     }
 
     @Override
@@ -188,7 +399,7 @@ public class WarcImporter extends Thread implements Importer {
             ConcurrentLog.info("WarcImporter", ex.getMessage());
         }
     }
-    
+
     /**
      * Set the flag to stop import
      */
@@ -211,7 +422,7 @@ public class WarcImporter extends Thread implements Importer {
      */
     @Override
     public int count() {
-        return this.recordCnt;
+        return this.recordCnt.get();
     }
 
     /**
@@ -220,8 +431,8 @@ public class WarcImporter extends Thread implements Importer {
      */
     @Override
     public int speed() {
-        if (this.recordCnt == 0) return 0;
-        return (int) (this.recordCnt / Math.max(0L, runningTime() ));
+        if (this.recordCnt.get() == 0) return 0;
+        return (int) (this.recordCnt.get() / Math.max(1L, runningTime()));
     }
 
     /**
@@ -240,17 +451,18 @@ public class WarcImporter extends Thread implements Importer {
      */
     @Override
     public long remainingTime() {
-        if (this.consumed == 0) {
+        final long processed = this.consumed - this.startOffset;
+        if (processed <= 0 || this.sourceSize < 0) {
             return 0;
         } else {
-            long speed = this.consumed / runningTime();
+            long speed = Math.max(1L, processed / Math.max(1L, runningTime()));
             return (this.sourceSize - this.consumed) / speed;
         }
     }
 
     @Override
     public String status() {
-        return "";
+        return this.checkpointFile == null ? "" : "resumable at offset " + checkpoint();
     }
 
 }
@@ -132,7 +132,7 @@ public class ProxyHandler extends AbstractRemoteHandler implements Handler {
         RequestHeader proxyHeaders = ProxyHandler.convertHeaderFromJetty(request);
         setProxyHeaderForClient(request, proxyHeaders);
 
-        final HTTPClient client = new HTTPClient(ClientIdentification.yacyProxyAgent);
+        final HTTPClient client = new HTTPClient(ClientIdentification.yacyProxyAgent, HTTPClient.Pool.PROXY);
         client.setTimout(timeout);
         client.setHeader(proxyHeaders.entrySet());
         client.setRedirecting(false);
@@ -0,0 +1,57 @@
+/**
+ *  MetricsServlet
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.http.servlets;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.yacy.cora.metrics.Metrics;
+
+/**
+ * Serves all metrics of the {@link Metrics} registry in the OpenMetrics text format, or in the
+ * Prometheus text format if the client does not accept OpenMetrics, so that monitoring systems can
+ * scrape the peer. The servlet is mapped to a _p path in web.xml, so admin authentication is required.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String OPENMETRICS_TYPE = "application/openmetrics-text";
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+        final String accept = request.getHeader("Accept");
+        final boolean openMetrics = accept != null && accept.contains(OPENMETRICS_TYPE);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(openMetrics ? OPENMETRICS_TYPE + "; version=1.0.0; charset=utf-8" : "text/plain; version=0.0.4; charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        Metrics.write(writer, openMetrics);
+        writer.flush();
+    }
+}
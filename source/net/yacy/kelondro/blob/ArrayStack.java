@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -49,10 +50,12 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.yacy.cora.date.GenericFormatter;
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.order.NaturalOrder;
@@ -86,6 +89,8 @@ public class ArrayStack implements BLOB {
 
     private static final long maxFileSize = Integer.MAX_VALUE;
     public  static final long oneMonth    = 1000L * 60L * 60L * 24L * 365L / 12L;
+    /** BLOB files older than this are mounted on first access, younger files are mounted in the background after start-up */
+    private static final long coldAge     = 1000L * 60L * 60L * 24L * 7L;
 
     private       int            keylength;
     private       ByteOrder      ordering;
@@ -102,6 +107,9 @@ public class ArrayStack implements BLOB {
     /** the thread pool for the keeperOf executor service */
     private final ExecutorService executor;
 
+    /** the number of BLOB files which are not yet mounted by the background mount task */
+    private final AtomicInteger pendingMounts = new AtomicInteger(0);
+
     // use our own formatter to prevent concurrency locks with other processes
     private final static GenericFormatter my_SHORT_MILSEC_FORMATTER  = new GenericFormatter(GenericFormatter.newShortMilsecFormat(), 1);
 
@@ -195,7 +203,8 @@ public class ArrayStack implements BLOB {
             }
         }
 
-        // open all blob files
+        // open all blob files: the newest file is opened now because it is written, all others are read-only
+        // and mounted lazily, because reading or generating their index takes a long time for large files
         for (final String file : files) {
             if (file.length() >= 22 && file.charAt(this.prefix.length()) == '.' && file.endsWith(".blob")) {
                 try {
@@ -206,8 +215,7 @@ public class ArrayStack implements BLOB {
                        if (time == maxtime && !trimall) {
                            oneBlob = new Heap(f, keylength, ordering, buffersize);
                        } else {
-                           oneBlob = new HeapModifier(f, keylength, ordering);
-                           oneBlob.optimize(); // no writings here, can be used with minimum memory
+                           oneBlob = new LazyBLOB(f, keylength, ordering, deleteonfail);
                        }
                        sortedItems.put(Long.valueOf(time), new blobItem(d, f, oneBlob));
                    } catch (final IOException e) {
@@ -227,6 +235,70 @@ public class ArrayStack implements BLOB {
         for (final blobItem bi : sortedItems.values()) {
             this.blobs.add(bi);
         }
+
+        Metrics.register("yacy_blob_mounts_pending", "number of BLOB files which are not yet mounted after start-up", Metrics.Type.GAUGE, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return ArrayStack.this.pendingMounts.get();
+            }
+        }, "stack", this.prefix);
+        mountRecentBLOBs(deleteonfail);
+    }
+
+    /**
+     * mount the recent BLOB files in the background with parallel threads, the newest files first.
+     * Older files are mounted when they are accessed the first time; access to a file which is not
+     * yet mounted waits for the mount, so that the content of the stack is complete at any time.
+     * @param deleteonfail if true, a file which cannot be read was deleted and is removed from the stack; otherwise it
+     * stays in the stack and each access to it fails, like for a file mounted on first access
+     */
+    private void mountRecentBLOBs(final boolean deleteonfail) {
+        final long coldLimit = System.currentTimeMillis() - coldAge;
+        final List<blobItem> recent = new ArrayList<blobItem>();
+        int cold = 0;
+        for (final blobItem bi: this.blobs) {
+            if (!(bi.blob instanceof LazyBLOB)) continue;
+            if (bi.creation.getTime() >= coldLimit) recent.add(bi); else cold++;
+        }
+        if (cold > 0) ConcurrentLog.info("ArrayStack", this.prefix + ": " + cold + " BLOB files older than " + (coldAge / 1000L / 60L / 60L / 24L) + " days are mounted on first access");
+        if (recent.isEmpty()) return;
+        Collections.reverse(recent);
+        this.pendingMounts.set(recent.size());
+        final long start = System.currentTimeMillis();
+        final ExecutorService mounter = Executors.newFixedThreadPool(Math.min(recent.size(), Runtime.getRuntime().availableProcessors()), new NamePrefixThreadFactory(this.prefix + ".mount"));
+        for (final blobItem bi: recent) {
+            final LazyBLOB blob = (LazyBLOB) bi.blob;
+            mounter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!blob.mount()) {
+                            if (deleteonfail) {
+                                // the file was deleted; remove it from the stack unless it was unmounted already
+                                synchronized (ArrayStack.this) {
+                                    if (ArrayStack.this.blobs != null && ArrayStack.this.blobs.remove(bi)) blob.close(false);
+                                }
+                            } else {
+                                ConcurrentLog.warn("ArrayStack", ArrayStack.this.prefix + ": cannot mount BLOB file " + bi.location.getName());
+                            }
+                        }
+                    } finally {
+                        if (ArrayStack.this.pendingMounts.decrementAndGet() == 0) {
+                            ConcurrentLog.info("ArrayStack", ArrayStack.this.prefix + ": mounted " + recent.size() + " BLOB files in " + (System.currentTimeMillis() - start) + " milliseconds");
+                        }
+                    }
+                }
+            });
+        }
+        mounter.shutdown();
+    }
+
+    /**
+     * @return true if the background mount of recent BLOB files has finished.
+     * The stack can be used before, files which are not yet mounted are mounted on access.
+     */
+    public boolean ready() {
+        return this.pendingMounts.get() == 0;
     }
 
     @Override
@@ -903,6 +975,7 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public synchronized void close(final boolean writeIDX) {
+        Metrics.remove("yacy_blob_mounts_pending", "stack", this.prefix);
         for (final blobItem bi: this.blobs) bi.blob.close(writeIDX);
         this.blobs.clear();
         this.blobs = null;
@@ -46,6 +46,7 @@ import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.util.ByteArray;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 
 
@@ -353,6 +354,30 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     	}
     }
 
+    /**
+     * insert the content of a stream, which is compressed while it is read, so that the uncompressed content is never
+     * held in memory. The entry is written directly to the backend, without the buffer of uncompressed entries.
+     * @param key the key of the entry
+     * @param content the uncompressed content; it is not closed
+     * @throws IOException if the content cannot be read or the entry cannot be written
+     */
+    public void insert(final byte[] key, final InputStream content) throws IOException {
+        final int level = this.compressionLevel;
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(gzipMagic);
+        try (final OutputStream os = new GZIPOutputStream(baos, 65536){{def.setLevel(level);}}) {
+            FileUtils.copy(content, os);
+        }
+        final byte[] b = baos.toByteArray();
+        this.lock.lock();
+        try {
+            delete(key);
+            this.backend.insert(key, b);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     @Override
     public void delete(final byte[] key) throws IOException {
     	this.lock.lock();
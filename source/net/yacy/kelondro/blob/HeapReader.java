@@ -51,6 +51,7 @@ import net.yacy.kelondro.io.CachedFileWriter;
 import net.yacy.kelondro.io.Writer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
 import net.yacy.kelondro.util.RotateIterator;
 
 
@@ -535,8 +536,8 @@ public class HeapReader {
             try {
                 blob = new byte[len];
             } catch (final OutOfMemoryError e) {
-                // try once again after GC
-                MemoryControl.gc(1000, "HeapReader.get()/blob");
+                // try once again after caches released memory; the allocation runs the garbage collector itself
+                MemoryGovernor.reclaim(1.0d);
                 try {
                     blob = new byte[len];
                 } catch (final OutOfMemoryError ee) {
@@ -0,0 +1,251 @@
+/**
+ *  LazyBLOB
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.blob;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.RowHandleSet;
+
+/**
+ * A read-only heap file of an ArrayStack which is mounted when it is needed: the index of a heap is read
+ * from its dump or is generated by a scan of the heap file, which takes a long time for large files.
+ * The heap is mounted either with mount(), i.e. by a background task, or with the first access to its content.
+ * The file length and, if an index dump exists, the number of entries are known without mounting.
+ */
+public class LazyBLOB implements BLOB {
+
+    private final static ConcurrentLog log = new ConcurrentLog("LazyBLOB");
+
+    private final File heapFile;
+    private final int keylength;
+    private final ByteOrder ordering;
+    private final boolean deleteonfail;
+    private final int dumpSize; // the number of entries according to the index dump or -1 if unknown
+    private volatile BLOB blob;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * @param heapFile the heap file
+     * @param keylength the length of the keys
+     * @param ordering the key order
+     * @param deleteonfail if true, a heap file which cannot be read is deleted and the BLOB is empty; otherwise each access fails
+     */
+    public LazyBLOB(final File heapFile, final int keylength, final ByteOrder ordering, final boolean deleteonfail) {
+        this.heapFile = heapFile;
+        this.keylength = keylength;
+        this.ordering = ordering;
+        this.deleteonfail = deleteonfail;
+        this.blob = null;
+        this.failed = false;
+        this.closed = false;
+        final String fingerprint = HeapReader.fingerprintFileHash(heapFile);
+        final File idx = fingerprint == null ? null : HeapWriter.fingerprintIndexFile(heapFile, fingerprint);
+        this.dumpSize = idx != null && idx.exists() ? (int) (idx.length() / (keylength + 8)) : -1;
+    }
+
+    /**
+     * mount the heap if this was not done already
+     * @return true if the heap is mounted
+     */
+    public boolean mount() {
+        try {
+            return blob() != null;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the heap is mounted
+     */
+    public boolean isMounted() {
+        return this.blob != null;
+    }
+
+    /**
+     * get the mounted heap
+     * @return the heap or null if the heap file could not be read and was deleted
+     * @throws IOException if the heap file could not be read
+     */
+    private BLOB blob() throws IOException {
+        final BLOB b = this.blob;
+        if (b != null) return b;
+        synchronized (this) {
+            if (this.blob != null) return this.blob;
+            if (this.closed) throw new IOException("BLOB " + this.heapFile.getName() + " is closed");
+            if (this.failed) {
+                if (this.deleteonfail) return null;
+                throw new IOException("BLOB " + this.heapFile.getName() + " cannot be read");
+            }
+            try {
+                final HeapModifier heap = new HeapModifier(this.heapFile, this.keylength, this.ordering);
+                heap.optimize(); // no writings here, can be used with minimum memory
+                this.blob = heap;
+                return heap;
+            } catch (final IOException e) {
+                this.failed = true;
+                if (!this.deleteonfail) throw e;
+                log.warn("cannot read file " + this.heapFile.getName() + ", deleting it (smart fail; alternative would be: crash; required user action would be same as deletion)");
+                this.heapFile.delete();
+                return null;
+            }
+        }
+    }
+
+    private BLOB blobOrNull() {
+        try {
+            return blob();
+        } catch (final IOException e) {
+            log.warn(e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String name() {
+        return this.heapFile.toString();
+    }
+
+    @Override
+    public int keylength() {
+        return this.keylength;
+    }
+
+    @Override
+    public ByteOrder ordering() {
+        return this.ordering;
+    }
+
+    @Override
+    public void clear() throws IOException {
+        final BLOB b = blob();
+        if (b != null) b.clear();
+    }
+
+    @Override
+    public void optimize() {
+        final BLOB b = this.blob;
+        if (b != null) b.optimize();
+    }
+
+    @Override
+    public long mem() {
+        final BLOB b = this.blob;
+        return b == null ? 0 : b.mem();
+    }
+
+    @Override
+    public int size() {
+        final BLOB b = this.blob;
+        if (b != null) return b.size();
+        if (this.dumpSize >= 0) return this.dumpSize;
+        final BLOB m = blobOrNull();
+        return m == null ? 0 : m.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        final BLOB b = this.blob;
+        if (b != null) return b.isEmpty();
+        if (this.dumpSize >= 0) return this.dumpSize == 0;
+        final BLOB m = blobOrNull();
+        return m == null || m.isEmpty();
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
+        final BLOB b = blob();
+        return b == null ? new RowHandleSet(this.keylength, this.ordering, 0).keys(up, null) : b.keys(up, rotating);
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        final BLOB b = blob();
+        return b == null ? new RowHandleSet(this.keylength, this.ordering, 0).keys(up, firstKey) : b.keys(up, firstKey);
+    }
+
+    @Override
+    public boolean containsKey(final byte[] key) {
+        final BLOB b = blobOrNull();
+        return b != null && b.containsKey(key);
+    }
+
+    @Override
+    public byte[] get(final byte[] key) throws IOException, SpaceExceededException {
+        final BLOB b = blob();
+        return b == null ? null : b.get(key);
+    }
+
+    @Override
+    public byte[] get(final Object key) {
+        final BLOB b = blobOrNull();
+        return b == null ? null : b.get(key);
+    }
+
+    @Override
+    public long length() throws IOException {
+        final BLOB b = this.blob;
+        return b == null ? this.heapFile.length() : b.length();
+    }
+
+    @Override
+    public long length(final byte[] key) throws IOException {
+        final BLOB b = blob();
+        return b == null ? -1 : b.length(key);
+    }
+
+    @Override
+    public void insert(final byte[] key, final byte[] b) throws IOException {
+        final BLOB blob = blob();
+        if (blob == null) throw new IOException("BLOB " + this.heapFile.getName() + " was deleted");
+        blob.insert(key, b);
+    }
+
+    @Override
+    public int replace(final byte[] key, final Rewriter rewriter) throws IOException, SpaceExceededException {
+        final BLOB b = blob();
+        return b == null ? 0 : b.replace(key, rewriter);
+    }
+
+    @Override
+    public int reduce(final byte[] key, final Reducer reducer) throws IOException, SpaceExceededException {
+        final BLOB b = blob();
+        return b == null ? 0 : b.reduce(key, reducer);
+    }
+
+    @Override
+    public void delete(final byte[] key) throws IOException {
+        final BLOB b = blob();
+        if (b != null) b.delete(key);
+    }
+
+    @Override
+    public synchronized void close(final boolean writeIDX) {
+        this.closed = true;
+        if (this.blob != null) this.blob.close(writeIDX);
+        this.blob = null;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ *  BatchFileHandler
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.logging;
+
+import java.io.IOException;
+import java.util.logging.FileHandler;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * A FileHandler which does not flush the log file after each record. The java.util.logging.FileHandler
+ * flushes after every record, which costs a write system call per log line. This handler flushes only after
+ * a batch of records, when the ConcurrentLog worker has emptied its queue, and on close.
+ * It is configured like the FileHandler with properties prefixed by its class name; the additional
+ * property <code>.batch</code> sets the maximum number of records between two flushes (default 256).
+ */
+public final class BatchFileHandler extends FileHandler {
+
+    private static final int DEFAULT_BATCH = 256;
+
+    private final int batch;
+    private int unflushed = 0;
+    private boolean publishing = false;
+
+    public BatchFileHandler() throws IOException, SecurityException {
+        super();
+        int b = DEFAULT_BATCH;
+        final String batchStr = LogManager.getLogManager().getProperty(getClass().getName() + ".batch");
+        if (batchStr != null) try {
+            b = Integer.parseInt(batchStr.trim());
+        } catch (final NumberFormatException e) {}
+        this.batch = Math.max(1, b);
+    }
+
+    @Override
+    public final synchronized void publish(final LogRecord record) {
+        this.publishing = true; // suppress the flush of FileHandler.publish
+        try {
+            super.publish(record);
+        } finally {
+            this.publishing = false;
+        }
+        if (++this.unflushed >= this.batch) flush();
+    }
+
+    @Override
+    public final synchronized void flush() {
+        if (this.publishing) return;
+        this.unflushed = 0;
+        super.flush();
+    }
+}
@@ -640,6 +640,13 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         return this.array.entries();
     }
 
+    /**
+     * @return true if all recent container files are mounted
+     */
+    public boolean ready() {
+        return this.array.ready();
+    }
+
     @Override
     public int minMem() {
         return 10 * 1024 * 1024;
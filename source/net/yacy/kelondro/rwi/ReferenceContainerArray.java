@@ -91,6 +91,13 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return this.array.ordering();
     }
 
+    /**
+     * @return true if all recent container files are mounted
+     */
+    public boolean ready() {
+        return this.array == null || this.array.ready();
+    }
+
     public File newContainerBLOBFile() {
     	return this.array.newBLOB(new Date());
     }
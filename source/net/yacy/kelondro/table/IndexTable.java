@@ -25,6 +25,7 @@ import java.io.IOException;
 
 import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Index;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.util.kelondroException;
 
@@ -33,7 +34,7 @@ import net.yacy.kelondro.util.kelondroException;
  */
 public class IndexTable {
 
-    private final Table table;
+    private final Index table;
 
     /**
      * create an index with given (fixed) key and value length 
@@ -48,10 +49,32 @@ public class IndexTable {
             final File location, int keysize, int payloadsize,
             final boolean useTailCache,
             final boolean exceed134217727) throws IOException {
+        this(location, keysize, payloadsize, useTailCache, exceed134217727, false);
+    }
+
+    /**
+     * create an index with given (fixed) key and value length 
+     * @param location
+     * @param keysize
+     * @param payloadsize
+     * @param useTailCache
+     * @param exceed134217727
+     * @param mapped if true, the index is a MappedTable which does not load the index into RAM; both kinds use the same file format
+     * @throws IOException
+     */
+    public IndexTable(
+            final File location, int keysize, int payloadsize,
+            final boolean useTailCache,
+            final boolean exceed134217727,
+            final boolean mapped) throws IOException {
         final Row row = new Row(
                 "byte[] key-" + keysize + ", " +
                 "long num-" + payloadsize + " {b256}",
                 NaturalOrder.naturalOrder);
+        if (mapped) {
+            this.table = new MappedTable(location, row);
+            return;
+        }
         Table t;
         try {
             t = new Table(location, row, 1024*1024, 0, useTailCache, exceed134217727, true);
@@ -100,7 +123,8 @@ public class IndexTable {
     }
     
     /**
-     * check if a given value exists in the index. The check is very efficient because all operations are done in the RAM.
+     * check if a given value exists in the index. The check is very efficient because all operations are done in the RAM
+     * or, for a mapped index, in memory-mapped files.
      * @param key
      * @return true if the key already existed, false otherwise
      */
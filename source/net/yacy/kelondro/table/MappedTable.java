@@ -0,0 +1,651 @@
+/**
+ *  MappedTable
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Index;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.index.RowCollection;
+import net.yacy.kelondro.index.RowHandleSet;
+
+/**
+ * A table of fixed-width rows which is not loaded into the java heap.
+ * The rows are stored in the same file format as in {@link Table}, a plain sequence of rows, so that both classes
+ * can open the same file. The rows are found with an open-addressing hash index of the primary keys which is
+ * stored in a second file next to the table file. Both files are memory-mapped: the table is available right
+ * after opening and the operating system decides which pages are held in RAM.
+ * The index file is rebuilt with one scan of the table file if it is missing, if it does not match the
+ * table file or if the table was not closed properly.
+ * The hash index has no order; ordered iterations must sort all keys in RAM and are therefore expensive.
+ */
+public class MappedTable implements Index, Iterable<Row.Entry> {
+
+    private final static ConcurrentLog log = new ConcurrentLog("TABLE");
+
+    public static final String INDEX_EXTENSION = ".hidx";
+
+    // layout of the index file: a header followed by the hash slots, each slot holds the row number + 1 or 0 if empty
+    private static final long MAGIC = 0x5961437948494458L; // "YaCyHIDX"
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0, HEADER_KEYLENGTH = 8, HEADER_OBJECTSIZE = 12, HEADER_CAPACITY = 16, HEADER_ROWS = 24, HEADER_CLEAN = 32, HEADER_MODIFIED = 40;
+    private static final int OPEN = 0, CLOSED = 1, CLOSED_UNTRUNCATED = 2; // values of the clean flag
+
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final long MIN_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7d;
+
+    private final File tablefile;
+    private final File indexfile;
+    private final Row rowdef;
+    private final int keylength;
+    private final int objectsize;
+    private final byte[] probe;
+    private MappedFile data;
+    private MappedFile index;
+    private long capacity; // number of hash slots, a power of two
+    private int rows;
+    private boolean deleteOnExit;
+
+    /**
+     * a file which is mapped in chunks. Small files are mapped with one chunk which grows with the file,
+     * larger files with chunks of the maximum size. Mapping a chunk extends the file to the chunk boundary.
+     */
+    private static class MappedFile {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final int maxChunkSize;
+        private int chunkSize;
+        private final ArrayList<MappedByteBuffer> chunks;
+
+        /**
+         * @param file the file
+         * @param unit values must not be split between chunks, the chunk size is a multiple of this
+         */
+        private MappedFile(final File file, final int unit) throws IOException {
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = this.raf.getChannel();
+            this.maxChunkSize = Math.max(1, MAX_CHUNK_SIZE / unit) * unit;
+            this.chunkSize = unit * 1024;
+            while (this.chunkSize < this.maxChunkSize && this.chunkSize < this.channel.size()) this.chunkSize *= 2;
+            this.chunkSize = Math.min(this.chunkSize, this.maxChunkSize);
+            this.chunks = new ArrayList<MappedByteBuffer>();
+        }
+
+        private MappedByteBuffer chunk(final long pos) throws IOException {
+            if (pos >= (long) this.chunks.size() * this.chunkSize && this.chunkSize < this.maxChunkSize && pos >= this.chunkSize) {
+                // grow the chunk size until one chunk covers the position, the mapping is renewed on demand
+                while (this.chunkSize < this.maxChunkSize && pos >= this.chunkSize) this.chunkSize = (int) Math.min((long) this.maxChunkSize, 2L * this.chunkSize);
+                this.chunks.clear();
+            }
+            final int c = (int) (pos / this.chunkSize);
+            while (this.chunks.size() <= c) {
+                this.chunks.add(this.channel.map(FileChannel.MapMode.READ_WRITE, (long) this.chunks.size() * this.chunkSize, this.chunkSize));
+            }
+            return this.chunks.get(c);
+        }
+
+        private void get(final long pos, final byte[] b, final int off, final int len) throws IOException {
+            final MappedByteBuffer chunk = chunk(pos);
+            chunk.position((int) (pos % this.chunkSize));
+            chunk.get(b, off, len);
+        }
+
+        private void put(final long pos, final byte[] b, final int off, final int len) throws IOException {
+            final MappedByteBuffer chunk = chunk(pos);
+            chunk.position((int) (pos % this.chunkSize));
+            chunk.put(b, off, len);
+        }
+
+        private int getInt(final long pos) throws IOException {
+            return chunk(pos).getInt((int) (pos % this.chunkSize));
+        }
+
+        private void putInt(final long pos, final int value) throws IOException {
+            chunk(pos).putInt((int) (pos % this.chunkSize), value);
+        }
+
+        private long getLong(final long pos) throws IOException {
+            return chunk(pos).getLong((int) (pos % this.chunkSize));
+        }
+
+        private void putLong(final long pos, final long value) throws IOException {
+            chunk(pos).putLong((int) (pos % this.chunkSize), value);
+        }
+
+        /**
+         * fill a range with zero bytes; from and to must be multiples of 8
+         */
+        private void zero(final long from, final long to) throws IOException {
+            for (long pos = from; pos < to; pos += 8) putLong(pos, 0L);
+        }
+
+        private void force() {
+            for (final MappedByteBuffer chunk: this.chunks) chunk.force();
+        }
+
+        /**
+         * write all changes and close the file
+         * @param length the length of the file content, the file is truncated to this length if possible
+         * @return false if the file could not be truncated
+         */
+        private boolean close(final long length) {
+            force();
+            this.chunks.clear();
+            boolean truncated = true;
+            try {
+                // this may fail on systems which do not allow to truncate a file while it is still mapped
+                if (this.channel.size() > length) this.channel.truncate(length);
+            } catch (final IOException e) {
+                log.warn("could not truncate mapped file: " + e.getMessage());
+                truncated = false;
+            }
+            try {
+                this.raf.close();
+            } catch (final IOException e) {}
+            return truncated;
+        }
+    }
+
+    /**
+     * open or create a mapped table
+     * @param tablefile the table file; the index file is stored next to it with the extension INDEX_EXTENSION
+     * @param rowdef the row definition
+     * @throws IOException
+     */
+    public MappedTable(final File tablefile, final Row rowdef) throws IOException {
+        this.tablefile = tablefile;
+        this.indexfile = new File(tablefile.getParentFile(), tablefile.getName() + INDEX_EXTENSION);
+        this.rowdef = rowdef;
+        this.keylength = rowdef.primaryKeyLength;
+        this.objectsize = rowdef.objectsize;
+        this.probe = new byte[this.keylength];
+        this.deleteOnExit = false;
+        if (tablefile.getParentFile() != null) tablefile.getParentFile().mkdirs();
+
+        final long filerows = tablefile.exists() ? tablefile.length() / this.objectsize : 0;
+        final long indexlength = this.indexfile.exists() ? this.indexfile.length() : 0; // before mapping, which extends the file
+        final long modified = tablefile.lastModified(); // a change of the table with Table invalidates the index
+        this.data = new MappedFile(tablefile, this.objectsize);
+        this.index = new MappedFile(this.indexfile, 8);
+        if (filerows > Integer.MAX_VALUE) throw new IOException("table " + tablefile + " has too many rows: " + filerows);
+
+        if (indexlength >= HEADER_SIZE &&
+            this.index.getLong(HEADER_MAGIC) == MAGIC &&
+            this.index.getInt(HEADER_KEYLENGTH) == this.keylength &&
+            this.index.getInt(HEADER_OBJECTSIZE) == this.objectsize) {
+            final long headerrows = this.index.getLong(HEADER_ROWS);
+            final long headercapacity = this.index.getLong(HEADER_CAPACITY);
+            final int closed = this.index.getInt(HEADER_CLEAN);
+            final boolean clean = closed == CLOSED || closed == CLOSED_UNTRUNCATED;
+            final boolean consistent = headercapacity >= MIN_CAPACITY && Long.bitCount(headercapacity) == 1 && headerrows <= headercapacity * MAX_LOAD &&
+                                       indexlength >= HEADER_SIZE + 4L * headercapacity && this.index.getLong(HEADER_MODIFIED) == modified;
+            if (consistent && ((closed == CLOSED && headerrows == filerows) || (closed == CLOSED_UNTRUNCATED && headerrows <= filerows))) {
+                // the index belongs to the table file, nothing to load
+                this.capacity = headercapacity;
+                this.rows = (int) headerrows;
+            } else {
+                // a table which was not closed properly may have mapped space beyond the last row,
+                // a properly closed table with another size was changed with Table
+                rebuild((int) (clean ? filerows : Math.min(Math.max(0, headerrows), filerows)));
+            }
+        } else {
+            rebuild((int) filerows);
+        }
+        // a crash shall cause a rebuild of the index
+        this.index.putInt(HEADER_CLEAN, OPEN);
+        this.index.force();
+    }
+
+    /**
+     * create the hash index with one scan of the table file; doubles are removed from the table
+     * @param rowcount the number of rows in the table file
+     * @throws IOException
+     */
+    private void rebuild(final int rowcount) throws IOException {
+        final long start = System.currentTimeMillis();
+        long cap = MIN_CAPACITY;
+        while (cap * MAX_LOAD < rowcount + 1) cap *= 2;
+        this.capacity = cap;
+        this.index.zero(0, HEADER_SIZE + 4L * this.capacity);
+        this.index.putLong(HEADER_MAGIC, MAGIC);
+        this.index.putInt(HEADER_KEYLENGTH, this.keylength);
+        this.index.putInt(HEADER_OBJECTSIZE, this.objectsize);
+        this.index.putLong(HEADER_CAPACITY, this.capacity);
+        this.rows = rowcount;
+        final byte[] key = new byte[this.keylength];
+        final List<Integer> doubles = new ArrayList<Integer>();
+        for (int row = 0; row < rowcount; row++) {
+            this.data.get((long) row * this.objectsize, key, 0, this.keylength);
+            final long slot = find(key);
+            if (slot >= 0) doubles.add(row); else setSlot(-slot - 1, row + 1);
+        }
+        // remove the doubles top-down, the first entry of each key is kept as in Table
+        for (int i = doubles.size() - 1; i >= 0; i--) removeRow(doubles.get(i).intValue());
+        this.index.putLong(HEADER_ROWS, this.rows);
+        if (rowcount > 0) log.info("rebuilt hash index of " + this.tablefile.getName() + " with " + this.rows + " rows, removed " + doubles.size() + " doubles in " + (System.currentTimeMillis() - start) + " milliseconds");
+    }
+
+    private long hash(final byte[] key) {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < this.keylength; i++) {
+            h ^= key[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return (h ^ (h >>> 29)) & (this.capacity - 1);
+    }
+
+    private int getSlot(final long slot) throws IOException {
+        return this.index.getInt(HEADER_SIZE + 4L * slot);
+    }
+
+    private void setSlot(final long slot, final int value) throws IOException {
+        this.index.putInt(HEADER_SIZE + 4L * slot, value);
+    }
+
+    /**
+     * find the hash slot of a key
+     * @param key a key with the key length of the table
+     * @return the slot if the key exists, otherwise -(empty slot) - 1
+     */
+    private long find(final byte[] key) throws IOException {
+        long slot = hash(key);
+        while (true) {
+            final int value = getSlot(slot);
+            if (value == 0) return -slot - 1;
+            this.data.get((long) (value - 1) * this.objectsize, this.probe, 0, this.keylength);
+            if (equalKey(key, this.probe)) return slot;
+            slot = (slot + 1) & (this.capacity - 1);
+        }
+    }
+
+    private boolean equalKey(final byte[] a, final byte[] b) {
+        for (int i = 0; i < this.keylength; i++) if (a[i] != b[i]) return false;
+        return true;
+    }
+
+    /**
+     * remove a slot; the following slots of the same cluster are shifted back so that no tombstones are needed
+     */
+    private void removeSlot(final long slot) throws IOException {
+        final long mask = this.capacity - 1;
+        final byte[] key = new byte[this.keylength];
+        long hole = slot;
+        long s = slot;
+        while (true) {
+            s = (s + 1) & mask;
+            final int value = getSlot(s);
+            if (value == 0) break;
+            this.data.get((long) (value - 1) * this.objectsize, key, 0, this.keylength);
+            final long home = hash(key);
+            // the entry may fill the hole if its home slot is not between the hole and its current slot
+            final boolean movable = (s > hole) ? (home <= hole || home > s) : (home <= hole && home > s);
+            if (movable) {
+                setSlot(hole, value);
+                hole = s;
+            }
+        }
+        setSlot(hole, 0);
+    }
+
+    /**
+     * remove a row from the table file by moving the last row to its position, as in Table.
+     * The slot of the removed row must have been removed before.
+     */
+    private void removeRow(final int row) throws IOException {
+        final int last = this.rows - 1;
+        if (row != last) {
+            final byte[] b = new byte[this.objectsize];
+            this.data.get((long) last * this.objectsize, b, 0, this.objectsize);
+            final long slot = find(b);
+            if (slot >= 0) setSlot(slot, row + 1);
+            this.data.put((long) row * this.objectsize, b, 0, this.objectsize);
+        }
+        this.rows--;
+        this.index.putLong(HEADER_ROWS, this.rows);
+    }
+
+    private byte[] normalizeKey(final byte[] key) {
+        if (key.length == this.keylength) return key;
+        final byte[] k = new byte[this.keylength];
+        System.arraycopy(key, 0, k, 0, Math.min(key.length, this.keylength));
+        return k;
+    }
+
+    private Row.Entry readRow(final int row) throws IOException {
+        final byte[] b = new byte[this.objectsize];
+        this.data.get((long) row * this.objectsize, b, 0, this.objectsize);
+        return this.rowdef.newEntry(b);
+    }
+
+    private void append(final byte[] b) throws IOException {
+        if (this.rows + 1 > this.capacity * MAX_LOAD) {
+            this.index.putLong(HEADER_ROWS, this.rows);
+            rebuild(this.rows); // the capacity is doubled
+        }
+        final long slot = find(b);
+        assert slot < 0;
+        this.data.put((long) this.rows * this.objectsize, b, 0, this.objectsize);
+        setSlot(-slot - 1, this.rows + 1);
+        this.rows++;
+        this.index.putLong(HEADER_ROWS, this.rows);
+    }
+
+    @Override
+    public String filename() {
+        return this.tablefile.toString();
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.rows;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public long mem() {
+        return 0; // all data is outside of the java heap
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return this.rows == 0;
+    }
+
+    @Override
+    public Row row() {
+        return this.rowdef;
+    }
+
+    @Override
+    public synchronized byte[] smallestKey() {
+        return extremeKey(-1);
+    }
+
+    @Override
+    public synchronized byte[] largestKey() {
+        return extremeKey(1);
+    }
+
+    private byte[] extremeKey(final int sign) {
+        byte[] best = null;
+        try {
+            for (int row = 0; row < this.rows; row++) {
+                final byte[] key = new byte[this.keylength];
+                this.data.get((long) row * this.objectsize, key, 0, this.keylength);
+                if (best == null || sign * this.rowdef.objectOrder.compare(key, best) > 0) best = key;
+            }
+        } catch (final IOException e) {
+            log.warn("cannot read " + this.tablefile + ": " + e.getMessage());
+        }
+        return best;
+    }
+
+    @Override
+    public synchronized boolean has(final byte[] key) {
+        if (key == null || this.data == null) return false;
+        try {
+            return find(normalizeKey(key)) >= 0;
+        } catch (final IOException e) {
+            log.warn("cannot read " + this.tablefile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Map<byte[], Row.Entry> get(final Collection<byte[]> keys, final boolean forcecopy) throws IOException, InterruptedException {
+        final Map<byte[], Row.Entry> map = new TreeMap<byte[], Row.Entry>(row().objectOrder);
+        Row.Entry entry;
+        for (final byte[] key: keys) {
+            entry = get(key, forcecopy);
+            if (entry != null) map.put(key, entry);
+        }
+        return map;
+    }
+
+    @Override
+    public synchronized Entry get(final byte[] key, final boolean forcecopy) throws IOException {
+        if (key == null || this.data == null) return null;
+        final long slot = find(normalizeKey(key));
+        if (slot < 0) return null;
+        return readRow(getSlot(slot) - 1);
+    }
+
+    @Override
+    public synchronized Entry replace(final Entry row) throws SpaceExceededException, IOException {
+        final byte[] b = row.bytes();
+        final long slot = find(b);
+        if (slot < 0) {
+            append(b);
+            return null;
+        }
+        final int r = getSlot(slot) - 1;
+        final Row.Entry old = readRow(r);
+        this.data.put((long) r * this.objectsize, b, 0, this.objectsize);
+        return old;
+    }
+
+    @Override
+    public boolean put(final Entry row) throws IOException, SpaceExceededException {
+        return replace(row) == null;
+    }
+
+    /**
+     * add a row; in contrast to other indexes a double key replaces the existing row because the hash index cannot hold doubles
+     */
+    @Override
+    public void addUnique(final Entry row) throws SpaceExceededException, IOException {
+        replace(row);
+    }
+
+    @Override
+    public List<RowCollection> removeDoubles() throws IOException, SpaceExceededException {
+        return new ArrayList<RowCollection>(0);
+    }
+
+    @Override
+    public boolean delete(final byte[] key) throws IOException {
+        return remove(key) != null;
+    }
+
+    @Override
+    public synchronized Entry remove(final byte[] key) throws IOException {
+        if (key == null) return null;
+        final long slot = find(normalizeKey(key));
+        if (slot < 0) return null;
+        final int r = getSlot(slot) - 1;
+        final Row.Entry old = readRow(r);
+        removeSlot(slot);
+        removeRow(r);
+        return old;
+    }
+
+    @Override
+    public synchronized Entry removeOne() throws IOException {
+        if (this.rows == 0) return null;
+        final Row.Entry last = readRow(this.rows - 1);
+        return remove(last.getPrimaryKeyBytes());
+    }
+
+    @Override
+    public synchronized List<Entry> top(int count) throws IOException {
+        final ArrayList<Row.Entry> list = new ArrayList<Row.Entry>();
+        for (int row = this.rows - 1; row >= 0 && count > 0; row--, count--) list.add(readRow(row));
+        return list;
+    }
+
+    @Override
+    public synchronized List<Entry> random(int count) throws IOException {
+        if (count > this.rows) count = this.rows;
+        final ArrayList<Row.Entry> list = new ArrayList<Row.Entry>();
+        if (count == 0) return list;
+        final int stepsize = this.rows / count;
+        for (int row = 0; row < this.rows && count > 0; row += stepsize, count--) list.add(readRow(row));
+        return list;
+    }
+
+    /**
+     * all keys in the order of the table; this loads all keys into RAM
+     */
+    @Override
+    public synchronized CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        final RowHandleSet keys = new RowHandleSet(this.keylength, this.rowdef.objectOrder, this.rows);
+        final byte[] key = new byte[this.keylength];
+        try {
+            for (int row = 0; row < this.rows; row++) {
+                this.data.get((long) row * this.objectsize, key, 0, this.keylength);
+                keys.putUnique(key.clone());
+            }
+        } catch (final SpaceExceededException e) {
+            throw new IOException(e.getMessage());
+        }
+        return keys.keys(up, firstKey);
+    }
+
+    @Override
+    public CloneableIterator<Entry> rows(final boolean up, final byte[] firstKey) throws IOException {
+        return new RowIterator(keys(up, firstKey));
+    }
+
+    @Override
+    public CloneableIterator<Entry> rows() throws IOException {
+        return new RowIterator(null);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        try {
+            return rows();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * iterates the rows in the order of the given keys or, without keys, in the order of the table file
+     */
+    private class RowIterator implements CloneableIterator<Entry> {
+        private final CloneableIterator<byte[]> keys;
+        private int row;
+        private Entry next;
+
+        private RowIterator(final CloneableIterator<byte[]> keys) {
+            this.keys = keys;
+            this.row = 0;
+            this.next = next0();
+        }
+
+        private Entry next0() {
+            try {
+                if (this.keys == null) {
+                    synchronized (MappedTable.this) {
+                        return this.row < MappedTable.this.rows ? readRow(this.row++) : null;
+                    }
+                }
+                while (this.keys.hasNext()) {
+                    final Entry entry = get(this.keys.next(), false);
+                    if (entry != null) return entry;
+                }
+            } catch (final IOException e) {
+                log.warn("cannot read " + MappedTable.this.tablefile + ": " + e.getMessage());
+            }
+            return null;
+        }
+
+        @Override
+        public CloneableIterator<Entry> clone(final Object modifier) {
+            return new RowIterator(this.keys == null ? null : this.keys.clone(modifier));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Entry next() {
+            final Entry entry = this.next;
+            this.next = next0();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (this.keys != null) this.keys.close();
+        }
+    }
+
+    @Override
+    public synchronized void deleteOnExit() {
+        this.deleteOnExit = true;
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        this.rows = 0;
+        this.index.zero(HEADER_SIZE, HEADER_SIZE + 4L * this.capacity);
+        this.index.putLong(HEADER_ROWS, 0);
+    }
+
+    /**
+     * close the table; the table file is truncated to its rows so that it can be opened with Table as well
+     */
+    @Override
+    public synchronized void close() {
+        if (this.data == null) return;
+        try {
+            this.index.putLong(HEADER_ROWS, this.rows);
+            final boolean truncated = this.data.close((long) this.rows * this.objectsize);
+            this.index.putLong(HEADER_MODIFIED, this.tablefile.lastModified());
+            this.index.putInt(HEADER_CLEAN, truncated ? CLOSED : CLOSED_UNTRUNCATED);
+        } catch (final IOException e) {
+            log.warn("cannot close " + this.tablefile + ": " + e.getMessage());
+        }
+        this.index.close(HEADER_SIZE + 4L * this.capacity);
+        this.data = null;
+        this.index = null;
+        if (this.deleteOnExit) {
+            this.tablefile.delete();
+            this.indexfile.delete();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ *  MemoryGovernor
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Metrics;
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * A memory budget manager. Caches register with a weight and a callback which releases a fraction of their
+ * entries. When the heap usage after a garbage collection exceeds a threshold, the JVM notifies the governor
+ * (using the collection usage thresholds of the heap memory pools) and the governor asks all registered caches
+ * to release a part of their content which grows with the memory pressure and with the weight of the cache.
+ * This replaces the wholesale clearing of caches when MemoryControl.shortStatus() is set, and it neither
+ * polls the memory state nor forces garbage collections.
+ * If the JVM does not support collection usage thresholds, a failed MemoryControl.request() signals the pressure.
+ */
+public class MemoryGovernor {
+
+    private final static ConcurrentLog log = new ConcurrentLog("MemoryGovernor");
+
+    /**
+     * a cache which can release a part of its content
+     */
+    public interface Reclaimable {
+
+        /**
+         * release (at least approximately) the given fraction of the cached entries,
+         * preferably those that are least likely to be used again
+         * @param fraction a value greater than 0 and at most 1, where 1 means that the cache shall be cleared
+         * @return the number of released entries
+         */
+        public int reclaim(double fraction);
+    }
+
+    private static class Registration {
+        private final String name;
+        private final int weight;
+        private final Reclaimable cache;
+
+        private Registration(final String name, final int weight, final Reclaimable cache) {
+            this.name = name;
+            this.weight = weight;
+            this.cache = cache;
+        }
+    }
+
+    /** the default heap usage after garbage collection (in percent of the maximum) which starts reclaiming */
+    public static final int DEFAULT_THRESHOLD = 80;
+
+    /** the heap usage after garbage collection (in percent of the maximum) above which memory is exhausted even after reclaiming */
+    private static final int CRITICAL_PERCENT = 95;
+
+    /** the pressure is computed relative to a low watermark below the threshold */
+    private static final int PRESSURE_RANGE_PERCENT = 10;
+
+    /** minimum time between two reclaim runs, to let the garbage collector catch up */
+    private static final long MIN_RECLAIM_INTERVAL = 1000;
+
+    private static final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+    private static final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+    private static final AtomicBoolean reclaimScheduled = new AtomicBoolean(false);
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+    private static volatile long lastReclaim = 0;
+    private static final Counter reclaimCounter = Metrics.counter("yacy_memory_reclaims", "number of cache reclaim runs because of memory pressure");
+
+    static {
+        for (final MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+                pools.add(pool);
+            }
+        }
+        if (pools.isEmpty()) {
+            log.info("no heap memory pool supports collection usage thresholds; memory pressure is signaled by failed memory requests only");
+        } else {
+            setThreshold(DEFAULT_THRESHOLD);
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(new NotificationListener() {
+                @Override
+                public void handleNotification(final Notification notification, final Object handback) {
+                    if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) signal();
+                }
+            }, null, null);
+        }
+        Metrics.register("yacy_memory_pressure_percent", "memory pressure after garbage collection, 0 below the reclaim threshold", Metrics.Type.GAUGE, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return Math.round(pressure() * 100.0d);
+            }
+        });
+    }
+
+    /**
+     * set the heap usage after garbage collection which starts reclaiming
+     * @param percent percent of the maximum heap size
+     */
+    public static void setThreshold(final int percent) {
+        threshold = Math.max(10, Math.min(CRITICAL_PERCENT, percent));
+        for (final MemoryPoolMXBean pool: pools) {
+            try {
+                pool.setCollectionUsageThreshold(pool.getUsage().getMax() * threshold / 100);
+            } catch (final IllegalArgumentException | UnsupportedOperationException e) {
+                log.warn("cannot set collection usage threshold of " + pool.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return true if the memory pressure is notified by the JVM, false if only failed memory requests signal memory pressure
+     */
+    public static boolean isNotified() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * register a cache; caches with a higher weight release a larger part of their content
+     * @param name a name for logging
+     * @param weight a positive weight, where 100 is the weight for caches which are cheap to re-compute
+     * @param cache the reclaim callback
+     */
+    public static void register(final String name, final int weight, final Reclaimable cache) {
+        registrations.add(new Registration(name, Math.max(1, weight), cache));
+    }
+
+    public static void unregister(final Reclaimable cache) {
+        for (final Registration registration: registrations) {
+            if (registration.cache == cache) registrations.remove(registration);
+        }
+    }
+
+    /**
+     * the highest usage after the last garbage collection of the observed heap memory pools
+     * @return the usage as fraction of the maximum or -1 if not available
+     */
+    private static double collectionUsage() {
+        double usage = -1.0d;
+        for (final MemoryPoolMXBean pool: pools) {
+            final MemoryUsage u = pool.getCollectionUsage();
+            if (u == null || u.getMax() <= 0) continue;
+            usage = Math.max(usage, ((double) u.getUsed()) / u.getMax());
+        }
+        return usage;
+    }
+
+    /**
+     * compute the memory pressure from the heap usage after the last garbage collection
+     * @return 0 if the usage is below the low watermark, growing to 1 when the heap is full
+     */
+    public static double pressure() {
+        final double usage = collectionUsage();
+        if (usage < 0.0d) return MemoryControl.shortStatus() ? 0.5d : 0.0d;
+        final double low = (threshold - PRESSURE_RANGE_PERCENT) / 100.0d;
+        return Math.max(0.0d, Math.min(1.0d, (usage - low) / (1.0d - low)));
+    }
+
+    /**
+     * test if the memory is exhausted, even after reclaiming memory from caches.
+     * Long running jobs should stop only in this case, not already when memory is short.
+     * @return true if the heap usage after garbage collection is above a critical level
+     */
+    public static boolean exhausted() {
+        final double usage = collectionUsage();
+        if (usage < 0.0d) return MemoryControl.shortStatus();
+        return usage * 100.0d >= CRITICAL_PERCENT;
+    }
+
+    /**
+     * signal memory pressure; the caches are reclaimed asynchronously, at most once within MIN_RECLAIM_INTERVAL
+     */
+    public static void signal() {
+        if (System.currentTimeMillis() - lastReclaim < MIN_RECLAIM_INTERVAL) return;
+        if (!reclaimScheduled.compareAndSet(false, true)) return;
+        final Thread t = new Thread("MemoryGovernor.reclaim") {
+            @Override
+            public void run() {
+                try {
+                    final double pressure = pressure();
+                    reclaim(pressure > 0.0d ? pressure : 0.1d);
+                } finally {
+                    reclaimScheduled.set(false);
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * let all registered caches release a part of their content.
+     * The cache with the highest weight releases the given pressure fraction, the others proportionally less.
+     * @param pressure a value between 0 and 1
+     */
+    public static void reclaim(final double pressure) {
+        if (pressure <= 0.0d) return;
+        lastReclaim = System.currentTimeMillis();
+        int maxWeight = 1;
+        for (final Registration registration: registrations) maxWeight = Math.max(maxWeight, registration.weight);
+        final StringBuilder report = new StringBuilder();
+        for (final Registration registration: registrations) {
+            final double fraction = Math.min(1.0d, pressure * registration.weight / maxWeight);
+            try {
+                final int released = registration.cache.reclaim(fraction);
+                if (released > 0) report.append(' ').append(registration.name).append('=').append(released);
+            } catch (final RuntimeException e) {
+                log.warn("reclaim of " + registration.name + " failed: " + e.getMessage(), e);
+            }
+        }
+        reclaimCounter.inc();
+        log.info("memory pressure " + Math.round(pressure * 100.0d) + "%, released entries:" + (report.length() == 0 ? " none" : report.toString()));
+    }
+}
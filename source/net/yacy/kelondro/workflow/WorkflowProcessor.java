@@ -33,6 +33,9 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
@@ -50,8 +53,9 @@ public class WorkflowProcessor<J extends WorkflowJob> {
     private final WorkflowTask<J> task;
     private final String processName, description;
     private final String[] childs;
-    private long blockTime, execTime, passOnTime;
-    private long execCount;
+    private final Counter blockTime, execTime, passOnTime;
+    private final Counter execCount;
+    private final Histogram jobTime;
 
     public WorkflowProcessor(
             final String name, final String description, final String[] childnames,
@@ -74,11 +78,22 @@ public class WorkflowProcessor<J extends WorkflowJob> {
             this.executorRunning++;
         }
         */
-        // init statistics
-        this.blockTime = 0;
-        this.execTime = 0;
-        this.passOnTime = 0;
-        this.execCount = 0;
+        // init statistics; the counters are also exported with the process name as label
+        this.blockTime = new Counter();
+        this.execTime = new Counter();
+        this.passOnTime = new Counter();
+        this.execCount = new Counter();
+        Metrics.register("yacy_workflow_block_milliseconds", "time that the workflow executors waited for input", Metrics.Type.COUNTER, this.blockTime, "processor", name);
+        Metrics.register("yacy_workflow_exec_milliseconds", "time that the workflow executors spent on jobs", Metrics.Type.COUNTER, this.execTime, "processor", name);
+        Metrics.register("yacy_workflow_passon_milliseconds", "time that the workflow executors waited for the next queue", Metrics.Type.COUNTER, this.passOnTime, "processor", name);
+        Metrics.register("yacy_workflow_jobs", "number of jobs executed by the workflow processor", Metrics.Type.COUNTER, this.execCount, "processor", name);
+        Metrics.register("yacy_workflow_queue_size", "number of jobs waiting in the workflow processor queue", Metrics.Type.GAUGE, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return getQueueSize();
+            }
+        }, "processor", name);
+        this.jobTime = Metrics.histogram("yacy_workflow_job_duration_seconds", "execution time of single workflow jobs", 0.001d, 60000, "processor", name);
 
         // store this object for easy monitoring
         processMonitor.add(this);
@@ -124,7 +139,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         }
         final long t = System.currentTimeMillis();
         final J j = this.input.take();
-        this.blockTime += System.currentTimeMillis() - t;
+        this.blockTime.add(System.currentTimeMillis() - t);
         return j;
     }
 
@@ -136,7 +151,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         }
         final long t = System.currentTimeMillis();
         this.output.enQueue(next);
-        this.passOnTime += System.currentTimeMillis() - t;
+        this.passOnTime.add(System.currentTimeMillis() - t);
     }
 
     public void clear() {
@@ -237,6 +252,12 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         ConcurrentLog.info("serverProcessor", "queue " + this.processName + ": shutdown.");
         this.executor = null;
         this.input = null;
+        Metrics.remove("yacy_workflow_block_milliseconds", "processor", this.processName);
+        Metrics.remove("yacy_workflow_exec_milliseconds", "processor", this.processName);
+        Metrics.remove("yacy_workflow_passon_milliseconds", "processor", this.processName);
+        Metrics.remove("yacy_workflow_jobs", "processor", this.processName);
+        Metrics.remove("yacy_workflow_queue_size", "processor", this.processName);
+        Metrics.remove("yacy_workflow_job_duration_seconds", "processor", this.processName);
         // remove entry from monitor
         final Iterator<WorkflowProcessor<?>> i = processes();
         WorkflowProcessor<?> p;
@@ -254,8 +275,9 @@ public class WorkflowProcessor<J extends WorkflowJob> {
     }
 
     protected void increaseJobTime(final long time) {
-        this.execTime += time;
-        this.execCount++;
+        this.execTime.add(time);
+        this.execCount.inc();
+        this.jobTime.record(time);
     }
 
     public String getName() {
@@ -280,7 +302,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
      * @return
      */
     public long getBlockTime() {
-        return this.blockTime;
+        return this.blockTime.get();
     }
 
     /**
@@ -288,10 +310,10 @@ public class WorkflowProcessor<J extends WorkflowJob> {
      * @return
      */
     public long getExecTime() {
-        return this.execTime;
+        return this.execTime.get();
     }
     public long getExecCount() {
-        return this.execCount;
+        return this.execCount.get();
     }
 
     /**
@@ -300,7 +322,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
      * @return
      */
     public long getPassOnTime() {
-        return this.passOnTime;
+        return this.passOnTime.get();
     }
 
 }
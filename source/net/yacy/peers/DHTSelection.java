@@ -29,7 +29,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -130,37 +129,27 @@ public class DHTSelection {
         return extraSeeds;
     }
 
-    public static Set<Seed> selectDHTSearchTargets(final SeedDB seedDB, final HandleSet wordhashes, final int minage, final int redundancy, final int maxredundancy, final Random random) {
-
-        // put in seeds according to dht
-        Set<Seed> seeds = new LinkedHashSet<Seed>(); // dht position seeds
-        if (seedDB != null) {
-            Iterator<byte[]> iter = wordhashes.iterator();
-            while (iter.hasNext()) {
-                seeds.addAll(collectHorizontalDHTPositions(seedDB, iter.next(), minage, redundancy, maxredundancy, random));
-            }
-        }
-        
-        return seeds;
-    }
-
-    private static ArrayList<Seed> collectHorizontalDHTPositions(final SeedDB seedDB, final byte[] wordhash, final int minage, final int redundancy, final int maxredundancy, Random random) {
-        // this method is called from the search target computation
-        ArrayList<Seed> collectedSeeds = new ArrayList<Seed>(redundancy * seedDB.scheme.verticalPartitions());
-        for (int verticalPosition = 0; verticalPosition < seedDB.scheme.verticalPartitions(); verticalPosition++) {
-            ArrayList<Seed> seeds = selectVerticalDHTPositions(seedDB, wordhash, minage, maxredundancy, verticalPosition);
-            if (seeds.size() <= redundancy) {
-                collectedSeeds.addAll(seeds);
-            } else {
-                // we pick some random peers from the vertical position.
-                // All of them should be valid, but picking a random subset is a distributed load balancing on the whole YaCy network.
-                // without picking a random subset, always the same peers would be targeted for the same word resulting in (possible) DoS on the target.
-                for (int i = 0; i < redundancy; i++) {
-                    collectedSeeds.add(seeds.remove(random.nextInt(seeds.size())));
-                }
+    /**
+     * collect the redundant DHT positions of all words and vertical partitions without picking a subset, so that
+     * the caller can choose the targets itself and keep the other peers of each position as alternates
+     * @param seedDB the database of seeds
+     * @param wordhashes the words we are searching for
+     * @param minage the minimum age of a seed in days
+     * @param maxredundancy the maximum number of redundant peer positions for each partition
+     * @return one list of candidate seeds for each word and vertical position
+     */
+    public static List<List<Seed>> selectDHTSearchTargetGroups(final SeedDB seedDB, final HandleSet wordhashes, final int minage, final int maxredundancy) {
+        final List<List<Seed>> groups = new ArrayList<List<Seed>>();
+        if (seedDB == null) return groups;
+        Iterator<byte[]> iter = wordhashes.iterator();
+        while (iter.hasNext()) {
+            final byte[] wordhash = iter.next();
+            for (int verticalPosition = 0; verticalPosition < seedDB.scheme.verticalPartitions(); verticalPosition++) {
+                ArrayList<Seed> seeds = selectVerticalDHTPositions(seedDB, wordhash, minage, maxredundancy, verticalPosition);
+                if (!seeds.isEmpty()) groups.add(seeds);
             }
         }
-        return collectedSeeds;
+        return groups;
     }
     
     @SuppressWarnings("unchecked")
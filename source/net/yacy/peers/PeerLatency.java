@@ -0,0 +1,182 @@
+/**
+ *  PeerLatency
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
+
+/**
+ * Response time statistics of remote search requests per peer. The remote search uses them to prefer peers
+ * which answer fast and reliably when it selects targets among redundant DHT positions, and to decide when
+ * a duplicate request to another peer shall be sent because a peer answers slower than usual.
+ * Only the most recently used peers are tracked to limit the memory footprint.
+ */
+public class PeerLatency {
+
+    /** search request types, used as metric label */
+    public static final String RWI = "rwi", SOLR = "solr";
+
+    /** the number of answers of a peer which are needed before its own quantiles are used */
+    public static final int MIN_SAMPLES = 5;
+
+    /** the expected response time of peers which have not been asked yet */
+    public static final long DEFAULT_LATENCY = 1000;
+
+    private static final int MAX_PEERS = 256;
+    private static final long MAX_TRACKABLE = 60000;
+    private static final double EWMA_ALPHA = 0.2d;
+
+    private static class Stats {
+        private final Histogram histogram = new Histogram(0.001d, MAX_TRACKABLE);
+        private volatile double ewma = -1.0d;
+        private volatile int failures = 0;
+        private volatile long lastAccess = System.currentTimeMillis();
+    }
+
+    private static final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+    private static final Histogram rwiDuration = Metrics.histogram("yacy_remote_search_duration_seconds", "response time of remote search requests", 0.001d, MAX_TRACKABLE, "type", RWI);
+    private static final Histogram solrDuration = Metrics.histogram("yacy_remote_search_duration_seconds", "response time of remote search requests", 0.001d, MAX_TRACKABLE, "type", SOLR);
+
+    private PeerLatency() {
+    }
+
+    private static Stats stats(final String peerHash) {
+        Stats s = stats.get(peerHash);
+        if (s == null) {
+            if (stats.size() >= MAX_PEERS) evict();
+            s = new Stats();
+            final Stats t = stats.putIfAbsent(peerHash, s);
+            if (t != null) s = t;
+        }
+        s.lastAccess = System.currentTimeMillis();
+        return s;
+    }
+
+    /**
+     * remove the least recently used peer
+     */
+    private static void evict() {
+        String oldest = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (final Map.Entry<String, Stats> entry: stats.entrySet()) {
+            if (entry.getValue().lastAccess < oldestAccess) {
+                oldestAccess = entry.getValue().lastAccess;
+                oldest = entry.getKey();
+            }
+        }
+        if (oldest != null) stats.remove(oldest);
+    }
+
+    /**
+     * record the outcome of a search request. Interrupted requests shall not be recorded.
+     * @param peer the target peer
+     * @param type RWI or SOLR
+     * @param time the time from sending the request until the answer or the failure in milliseconds
+     * @param success true if the peer answered
+     */
+    public static void record(final Seed peer, final String type, final long time, final boolean success) {
+        if (peer == null || peer.hash == null) return;
+        (SOLR.equals(type) ? solrDuration : rwiDuration).record(time);
+        final Stats s = stats(peer.hash);
+        if (success) {
+            s.histogram.record(time);
+            s.ewma = s.ewma < 0.0d ? time : EWMA_ALPHA * time + (1.0d - EWMA_ALPHA) * s.ewma;
+            s.failures = 0;
+        } else {
+            s.failures++;
+        }
+    }
+
+    /**
+     * @param peerHash the peer hash
+     * @param quantile a value between 0 and 1
+     * @return the response time of the peer at the given quantile in milliseconds or -1 if there are not enough answers of the peer
+     */
+    public static long quantile(final String peerHash, final double quantile) {
+        final Stats s = stats.get(peerHash);
+        if (s == null || s.histogram.count() < MIN_SAMPLES) return -1;
+        return Math.round(s.histogram.quantile(quantile) / s.histogram.scale());
+    }
+
+    /**
+     * @return the median response time of all peers answering RWI requests in milliseconds or -1 if there are not enough answers
+     */
+    public static long medianRWI() {
+        if (rwiDuration.count() < MIN_SAMPLES) return -1;
+        return Math.round(rwiDuration.quantile(0.5d) / rwiDuration.scale());
+    }
+
+    /**
+     * the selection weight of a peer: the reciprocal expected response time, reduced for each failed request in a row
+     * @param peerHash the peer hash
+     * @return a positive weight, which is the same for all unknown peers
+     */
+    public static double weight(final String peerHash) {
+        final Stats s = stats.get(peerHash);
+        if (s == null) return 1.0d / DEFAULT_LATENCY;
+        final double latency = s.ewma < 0.0d ? DEFAULT_LATENCY : Math.max(10.0d, s.ewma);
+        return 1.0d / latency / (1 << Math.min(10, s.failures));
+    }
+
+    /**
+     * select a weighted random sample of peers without replacement, where the probability of each peer
+     * grows with its weight. Random selection keeps the load distributed on the network even if the
+     * same words are searched again.
+     * @param peers the candidates
+     * @param n the sample size
+     * @param random the random source
+     * @return at most n peers, ordered by their sample key with the preferred peers first
+     */
+    public static List<Seed> sample(final Collection<Seed> peers, final int n, final Random random) {
+        // weighted sampling with keys u^(1/w), the n peers with the largest keys are the sample
+        final List<Seed> candidates = new ArrayList<Seed>(peers);
+        final double[] keys = new double[candidates.size()];
+        for (int i = 0; i < keys.length; i++) {
+            final Seed seed = candidates.get(i);
+            final double w = seed == null || seed.hash == null ? 1.0d / DEFAULT_LATENCY : weight(seed.hash);
+            keys[i] = Math.log(1.0d - random.nextDouble()) / w; // logarithm of u^(1/w), u in (0, 1]
+        }
+        final List<Seed> sample = new ArrayList<Seed>(Math.min(n, candidates.size()));
+        final boolean[] taken = new boolean[keys.length];
+        while (sample.size() < n && sample.size() < candidates.size()) {
+            int best = -1;
+            for (int i = 0; i < keys.length; i++) {
+                if (!taken[i] && (best < 0 || keys[i] > keys[best])) best = i;
+            }
+            taken[best] = true;
+            sample.add(candidates.get(best));
+        }
+        return sample;
+    }
+
+    /**
+     * @return the number of tracked peers
+     */
+    public static int size() {
+        return stats.size();
+    }
+}
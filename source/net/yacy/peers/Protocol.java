@@ -52,7 +52,6 @@ import java.net.MalformedURLException;
 import java.time.DateTimeException;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -63,7 +62,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.entity.mime.content.ContentBody;
@@ -74,6 +72,7 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.FacetParams;
 
 import net.yacy.migration;
 import net.yacy.cora.date.GenericFormatter;
@@ -84,6 +83,7 @@ import net.yacy.cora.document.feed.RSSFeed;
 import net.yacy.cora.document.feed.RSSMessage;
 import net.yacy.cora.document.feed.RSSReader;
 import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.cora.federate.solr.connector.EmbeddedSolrConnector;
 import net.yacy.cora.federate.solr.connector.RemoteSolrConnector;
 import net.yacy.cora.federate.solr.connector.SolrConnector;
 import net.yacy.cora.federate.solr.instance.RemoteInstance;
@@ -123,7 +123,9 @@ import net.yacy.repository.Blacklist.BlacklistType;
 import net.yacy.search.EventTracker;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
+import net.yacy.search.index.RemoteResultWriter;
 import net.yacy.search.index.Segment;
+import net.yacy.search.query.FacetCache;
 import net.yacy.search.query.SearchEvent;
 import net.yacy.search.query.SecondarySearchSuperviser;
 import net.yacy.search.schema.CollectionSchema;
@@ -159,7 +161,7 @@ public final class Protocol {
             final String path,
             final Map<String, ContentBody> parts,
             final int timeout) throws IOException {
-            final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent);
+            final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, HTTPClient.Pool.PEERS);
             httpClient.setTimout(timeout);
             MultiProtocolURL targetURL = new MultiProtocolURL(targetBaseURL, path);
 			this.result = httpClient.POSTbytes(targetURL, Seed.b64Hash2hexHash(targetHash) + ".yacyh", parts, false,
@@ -207,7 +209,7 @@ public final class Protocol {
             // send request
             final long start = System.currentTimeMillis();
             // final byte[] content = HTTPConnector.getConnector(MultiProtocolURI.yacybotUserAgent).post(new MultiProtocolURI("http://" + address + "/yacy/hello.html"), 30000, yacySeed.b64Hash2hexHash(otherHash) + ".yacyh", parts);
-            final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 30000);
+            final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 30000, HTTPClient.Pool.PEERS);
             content =
                 httpClient.POSTbytes(
                     new MultiProtocolURL(targetBaseURL, "/yacy/hello.html"),
@@ -433,7 +435,7 @@ public final class Protocol {
         parts.put("count", UTF8.StringBody(Integer.toString(maxCount)));
         parts.put("time", UTF8.StringBody(Long.toString(maxTime)));
         // final byte[] result = HTTPConnector.getConnector(MultiProtocolURI.yacybotUserAgent).post(new MultiProtocolURI("http://" + target.getClusterAddress() + "/yacy/urls.xml"), (int) maxTime, target.getHexHash() + ".yacyh", parts);
-        final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, (int) maxTime);
+        final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, (int) maxTime, HTTPClient.Pool.PEERS);
         RSSReader reader = null;
         for (final String ip: target.getIPs()) {
         	MultiProtocolURL targetBaseURL = null;
@@ -690,12 +692,7 @@ public final class Protocol {
 
         // insert results to containers
         int term = count;
-        Map<String, LinkedHashSet<String>> snip;
-        if (event.addResultsToLocalIndex) {
-            snip = null;
-        } else {
-            snip = new HashMap<String, LinkedHashSet<String>>(); // needed to display nodestack results
-        }
+        final Map<String, LinkedHashSet<String>> snip = new HashMap<String, LinkedHashSet<String>>(); // needed to display nodestack results
         List<URIMetadataNode> storeDocs = new ArrayList<URIMetadataNode>(result.links.size());
         for ( final URIMetadataNode urlEntry : result.links ) {
             if ( term-- <= 0 ) {
@@ -758,12 +755,10 @@ public final class Protocol {
                 // System.out.println("--- RECEIVED SNIPPET '" + urlEntry.snippet() + "'");
                 TextSnippet.snippetsCache.put(wordhashes, ASCII.String(urlEntry.hash()), urlEntry.snippet());
                 // add snippet for snippethandling for nodestack entries (used if not stored to index)
-                if (!event.addResultsToLocalIndex) {
-                    // TODO: must have a snippet even to get the snippetcache entry back when adding to nodestack
-                    LinkedHashSet<String> sniptxt = new LinkedHashSet<String>();
-                    sniptxt.add(urlEntry.snippet());
-                    snip.put(ASCII.String(urlEntry.hash()), sniptxt);
-                }
+                // TODO: must have a snippet even to get the snippetcache entry back when adding to nodestack
+                LinkedHashSet<String> sniptxt = new LinkedHashSet<String>();
+                sniptxt.add(urlEntry.snippet());
+                snip.put(ASCII.String(urlEntry.hash()), sniptxt);
             }
 
             // add the url entry to the word indexes
@@ -780,6 +775,7 @@ public final class Protocol {
         // store remote result to local result container
         // insert one container into the search result buffer
         // one is enough, only the references are used, not the word
+        boolean stored = false;
         if (event.addResultsToLocalIndex) {
 			/*
 			 * Current thread might be interrupted by SearchEvent.cleanup()
@@ -787,29 +783,25 @@ public final class Protocol {
 			if (Thread.interrupted()) {
 				throw new InterruptedException("solrQuery interrupted");
 			}
-			WriteMetadataNodeToLocalIndexThread writerToLocalIndex = new WriteMetadataNodeToLocalIndexThread(event.query.getSegment(), storeDocs);
-			writerToLocalIndex.start();
 			try {
-				writerToLocalIndex.join();
+				// written by the write-back thread of the segment, which is not affected by an interruption of this thread
+				stored = event.query.getSegment().remoteResultWriter().write(storeDocs, event.query.starttime + event.query.maxtime - System.currentTimeMillis());
 			} catch(InterruptedException e) {
-				/*
-				 * Current thread interruption might happen while waiting
-				 * for writeToLocalIndexThread.
-				 */
-				writerToLocalIndex.stopWriting();
 				throw new InterruptedException("remoteProcess stopped!");
 			}
+        }
+        if (stored) {
             event.addRWIs(container.get(0), false, target.getName() + "/" + target.hash, result.totalCount, time);
         } else {
-            // feed results as nodes (SolrQuery results) which carry metadata,
+            // feed results as nodes also if the index is too busy to store them as nodes (SolrQuery results) which carry metadata,
             // to prevent a call to getMetaData for RWI results, which would fail (if no metadata in index and no display of these results)
             event.addNodes(storeDocs, null, snip, false, target.getName() + "/" + target.hash, count, true);
         }
         event.addFinalize();
         event.addExpectedRemoteReferences(-count);
 
-        // insert the containers to the index
-        for ( final ReferenceContainer<WordReference> c : container ) {
+        // insert the containers to the index; only if the metadata of the references was stored
+        if (stored) for ( final ReferenceContainer<WordReference> c : container ) {
             try {
                 event.query.getSegment().storeRWI(c);
             } catch (final Exception e ) {
@@ -829,57 +821,6 @@ public final class Protocol {
         Network.log.info("remote search: peer " + target.getName() + " sent " + container.get(0).size() + "/" + result.totalCount + " references");
     }
     
-    /**
-     * This thread is used to write a collection of URIMetadataNode documents to a segment allowing to be safely stopped.
-     * Indeed, if one interrupt a thread while commiting to Solr index, the index is closed and will be no more writable 
-     * (later calls would throw a org.apache.lucene.store.AlreadyClosedException) because Solr IndexWriter uses an InterruptibleChanel.
-     * This thread allow to safely stop writing operation using an AtomicBoolean.
-     * @author luc
-     *
-     */
-    private static class WriteMetadataNodeToLocalIndexThread extends Thread {
-    	
-    	private AtomicBoolean stop = new AtomicBoolean(false);
-    	
-    	private Segment segment;
-    	
-    	private Collection<URIMetadataNode> storeDocs;
-    	
-    	/**
-    	 * Parameters must be not null.
-    	 * @param segment solr segment to write
-    	 * @param storeDocs solr documents collection to put to segment
-    	 */
-    	public WriteMetadataNodeToLocalIndexThread(Segment segment, Collection<URIMetadataNode> storeDocs) {
-    		super("WriteMetadataNodeToLocalIndexThread");
-    		this.segment = segment;
-    		this.storeDocs = storeDocs;
-    	}
-    	
-    	/**
-    	 * Use this to stop writing operation. This thread will not stop immediately as Solr might be writing something.
-    	 */
-    	public void stopWriting() {
-    		this.stop.set(true);
-    	}
-		
-		@Override
-		public void run() {
-            for (URIMetadataNode entry : this.storeDocs) {
-            	if(stop.get()) {
-            		Network.log.info("Writing documents collection to Solr segment was stopped.");
-            		return;
-            	}
-                try {
-                    segment.setFirstSeenTime(entry.hash(), Math.min(entry.moddate().getTime(), System.currentTimeMillis()));
-                    segment.fulltext().putMetadata(entry); // it will be checked inside the putMetadata that poor metadata does not overwrite rich metadata
-                } catch (final IOException e) {
-                    ConcurrentLog.logException(e);
-                }
-            }
-		}
-	}
-
     private static class SearchResult {
         public int availableCount; // number of returned LURL's for this search
         public int totalCount; //
@@ -962,7 +903,7 @@ public final class Protocol {
                 //resultMap = FileUtils.table(HTTPConnector.getConnector(MultiProtocolURI.crawlerUserAgent).post(new MultiProtocolURI("http://" + target.getClusterAddress() + "/yacy/search.html"), 60000, target.getHexHash() + ".yacyh", parts));
             }
 
-            final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 8000);
+            final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 8000, HTTPClient.Pool.PEERS);
             byte[] a = httpClient.POSTbytes(new MultiProtocolURL(targetBaseURL + "/yacy/search.html"), hostname, parts, false, true);
             if (a != null && a.length > 200000) {
                 // there is something wrong. This is too large, maybe a hack on the other side?
@@ -1215,14 +1156,35 @@ public final class Protocol {
         Map<String, LinkedHashSet<String>> snippets = new HashMap<String, LinkedHashSet<String>>(); // this will be a list of urlhash-snippet entries
         final QueryResponse[] rsp = new QueryResponse[]{null};
         final SolrDocumentList[] docList = new SolrDocumentList[]{null};
+        Map<String, ReversibleScoreMap<String>> cachedFacets = null;
+        String facetFingerprint = null;
+        long indexVersion = -1;
         {// encapsulate expensive solr QueryResponse object
             if (localsearch && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_REMOTE_SOLR_TESTLOCAL, false)) {
-                // search the local index
+                // search the local index; an embedded index is read page by page with a cursor
                 try {
-                    SolrConnector sc = event.getQuery().getSegment().fulltext().getDefaultConnector();
-                    if (!sc.isClosed()) {
-                        rsp[0] = sc.getResponseByParams(solrQuery);
+                    final EmbeddedSolrConnector.PagedQuery pages = event.localSolrPages();
+                    if (pages != null) {
+                        // the facets of the local index are cached as long as the index does not change
+                        if (useSolrFacets && solrQuery.getBool(FacetParams.FACET, false)) {
+                            indexVersion = pages.indexVersion();
+                            facetFingerprint = FacetCache.fingerprint(solrQuery);
+                            cachedFacets = FacetCache.get(facetFingerprint, indexVersion);
+                        }
+                        if (cachedFacets == null) {
+                            rsp[0] = pages.page(solrQuery, offset, count);
+                        } else {
+                            final SolrQuery withoutFacets = solrQuery.getCopy();
+                            withoutFacets.setFacet(false);
+                            rsp[0] = pages.page(withoutFacets, offset, count);
+                        }
                         docList[0] = rsp[0].getResults();
+                    } else {
+                        SolrConnector sc = event.getQuery().getSegment().fulltext().getDefaultConnector();
+                        if (!sc.isClosed()) {
+                            rsp[0] = sc.getResponseByParams(solrQuery);
+                            docList[0] = rsp[0].getResults();
+                        }
                     }
                 } catch (final Throwable e) {
                     Network.log.info("SEARCH failed (solr), localpeer (" + e.getMessage() + ")", e);
@@ -1295,7 +1257,9 @@ public final class Protocol {
             }
 
             // evaluate facets
-            if(useSolrFacets) {
+            if (cachedFacets != null) {
+                facets.putAll(cachedFacets);
+            } else if(useSolrFacets) {
             	for (String field: event.query.facetfields) {
             		FacetField facet = rsp[0].getFacetField(field);
             		ReversibleScoreMap<String> result = new ClusteredScoreMap<String>(UTF8.insensitiveUTF8Comparator);
@@ -1317,6 +1281,7 @@ public final class Protocol {
             			facets.put(field, result);
             		}
             	}
+            	if (facetFingerprint != null) FacetCache.put(facetFingerprint, indexVersion, facets);
             }
             
             // evaluate snippets
@@ -1350,10 +1315,8 @@ public final class Protocol {
         List<URIMetadataNode> resultContainer = new ArrayList<URIMetadataNode>();
         Network.log.info("SEARCH (solr), returned " + docList[0].size() + " out of " + docList[0].getNumFound() + " documents and " + facets.size() + " facets " + facets.keySet().toString() + " from " + (target == null ? "shard" : ("peer " + target.hash + ":" + target.getName())));
         int term = count;
-        Collection<SolrInputDocument> docs;
-        if (event.addResultsToLocalIndex) { // only needed to store remote results
-            docs = new ArrayList<SolrInputDocument>(docList[0].size());
-        } else docs = null;
+        // remote results are stored to the local index unless the indexing is too busy
+        final RemoteResultWriter writer = !localsearch && event.addResultsToLocalIndex && event.query.getSegment().remoteResultWriter().accept(docList[0].size()) ? event.query.getSegment().remoteResultWriter() : null;
         for (final SolrDocument tmpdoc: docList[0]) {
             //System.out.println("***DEBUG*** " + ((String) doc.getFieldValue("sku")));
             if ( term-- <= 0 ) {
@@ -1397,17 +1360,16 @@ public final class Protocol {
             if (!localsearch) {
                 
                 // put the remote documents to the local index. We must convert the solr document to a solr input document:
-                if (event.addResultsToLocalIndex) {
+                if (writer != null) {
                     /* Check document size, only if a limit is set on remote documents size allowed to be stored to local index */
-                    if (checkDocumentSize(tmpdoc, event.getRemoteDocStoredMaxSize() * 1024)) {
+                    if (!checkDocumentSize(tmpdoc, event.getRemoteDocStoredMaxSize() * 1024)) {
+                        Network.log.info("Document size greater than " + event.getRemoteDocStoredMaxSize() + " kbytes, excludes it from being stored to local index. Url : " + urlEntry.urlstring());
+                    } else if (!writer.isRecent(urlEntry.hash(), urlEntry.loaddate().getTime())) {
                         final SolrInputDocument sid = event.query.getSegment().fulltext().getDefaultConfiguration().toSolrInputDocument(tmpdoc);
 
                         // the input document stays untouched because it contains top-level cloned objects
-                        docs.add(sid);
                         // will be stored to index, and is a full solr document, can be added to firstseen
-                        event.query.getSegment().setFirstSeenTime(urlEntry.hash(), Math.min(urlEntry.moddate().getTime(), System.currentTimeMillis()));
-                    } else {
-                        Network.log.info("Document size greater than " + event.getRemoteDocStoredMaxSize() + " kbytes, excludes it from being stored to local index. Url : " + urlEntry.urlstring());
+                        writer.add(sid, urlEntry.hash(), urlEntry.loaddate().getTime(), Math.min(urlEntry.moddate().getTime(), System.currentTimeMillis()));
                     }
                 }
 
@@ -1436,17 +1398,6 @@ public final class Protocol {
             event.addExpectedRemoteReferences(-count);
             Network.log.info("local search (solr): localpeer sent " + resultContainer.size() + "/" + numFound + " references");
         } else {
-            if (event.addResultsToLocalIndex) {
-                /*
-		 * Current thread might be interrupted by SearchEvent.cleanup()
-                 */
-                if (Thread.interrupted()) {
-                    throw new InterruptedException("solrQuery interrupted");
-                }
-                WriteToLocalIndexThread writeToLocalIndexThread = new WriteToLocalIndexThread(event.query.getSegment(),
-                        docs); // will clear docs on return
-                writeToLocalIndexThread.start();
-            }
             event.addNodes(resultContainer, facets, snippets, false, target.getName() + "/" + target.hash, numFound, incrementNavigators);
             event.addFinalize();
             event.addExpectedRemoteReferences(-count);
@@ -1455,55 +1406,6 @@ public final class Protocol {
         return resultContainer.size();
     }
     
-    /**
-     * This thread is used to write a collection of Solr documents to a segment allowing to be safely stopped.
-     * Indeed, if one interrupt a thread while commiting to Solr index, the index is closed and will be no more writable 
-     * (later calls would throw a org.apache.lucene.store.AlreadyClosedException) because Solr IndexWriter uses an InterruptibleChanel.
-     * This thead allow to safely stop writing operation using an AtomicBoolean.
-     * @author luc
-     *
-     */
-    private static class WriteToLocalIndexThread extends Thread {
-    	
-    	private AtomicBoolean stop = new AtomicBoolean(false);
-    	
-    	private Segment segment;
-    	
-    	private Collection<SolrInputDocument> docs;
-    	
-    	/**
-    	 * Parameters must be not null.
-         * After writing the collection is cleared
-    	 * @param segment solr segment to write
-    	 * @param docs solr documents collection to put to segment
-    	 */
-    	public WriteToLocalIndexThread(Segment segment, Collection<SolrInputDocument> docs) {
-    		super("WriteToLocalIndexThread");
-    		this.segment = segment;
-    		this.docs = docs;
-    	}
-    	
-    	/**
-    	 * Use this to stop writing operation. This thread will not stop immediately as Solr might be writing something.
-    	 */
-    	public void stopWriting() {
-    		this.stop.set(true);
-    	}
-		
-        @Override
-        public void run() {
-            for (SolrInputDocument doc : docs) {
-                if (stop.get()) {
-                    docs.clear();
-                    Network.log.info("Writing documents collection to Solr segment was stopped.");
-                    return;
-                }
-                segment.putDocument(doc);
-            }
-            docs.clear();
-        }
-    }
-    
 	/**
 	 * Only when maxSize is greater than zero, check that doc size is lower. To
 	 * process in a reasonable amount of time, document size is not evaluated
@@ -1623,7 +1525,7 @@ public final class Protocol {
 				}
 				parts.put("lurlEntry", UTF8.StringBody(crypt.simpleEncode(lurlstr, salt)));
 				// send request
-				final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 10000);
+				final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 10000, HTTPClient.Pool.PEERS);
 				MultiProtocolURL targetBaseURL = target.getPublicMultiprotocolURL(ip, preferHttps);
 				byte[] content;
 				try {
@@ -1844,7 +1746,7 @@ public final class Protocol {
                 parts.put("wordc", UTF8.StringBody(Integer.toString(indexes.size())));
                 parts.put("entryc", UTF8.StringBody(Integer.toString(indexcount)));
                 parts.put("indexes", UTF8.StringBody(entrypost.toString()));
-                final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout);
+                final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout, HTTPClient.Pool.PEERS);
                 byte[] content = null;
                 try {
 					content = httpClient.POSTbytes(new MultiProtocolURL(targetBaseURL, "/yacy/transferRWI.html"),
@@ -1948,7 +1850,7 @@ public final class Protocol {
                 MultiProtocolURL targetBaseURL = targetSeed.getPublicMultiprotocolURL(ip, preferHttps);
                 
                 parts.put("urlc", UTF8.StringBody(Integer.toString(urlc)));
-                final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout);
+                final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout, HTTPClient.Pool.PEERS);
                 byte[] content = null;
                 try {
 					content = httpClient.POSTbytes(new MultiProtocolURL(targetBaseURL, "/yacy/transferURL.html"),
@@ -1996,7 +1898,7 @@ public final class Protocol {
             try {
                 final Map<String, ContentBody> parts =
                     basicRequestParts(sb, targetSeed.hash, salt);
-                final HTTPClient httpclient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 15000);
+                final HTTPClient httpclient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, 15000, HTTPClient.Pool.PEERS);
                 MultiProtocolURL targetBaseURL = targetSeed.getPublicMultiprotocolURL(ip, preferHttps);
                 byte[] content;
                 try {
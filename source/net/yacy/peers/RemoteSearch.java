@@ -26,8 +26,12 @@ package net.yacy.peers;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
@@ -57,6 +61,9 @@ public class RemoteSearch extends Thread {
 
     private static final ThreadGroup ysThreadGroup = new ThreadGroup("yacySearchThreadGroup");
     public static final ConcurrentLog log = new ConcurrentLog("DHT");
+
+    /** time between two checks of the running DHT searches for hedging and cancellation */
+    private static final long SUPERVISION_INTERVAL = 50;
     
     final private SearchEvent event;
     final private String wordhashes, excludehashes;
@@ -68,7 +75,8 @@ public class RemoteSearch extends Thread {
     
     /** The target peer of this search Thread */
     final private Seed targetPeer;
-    private int urls;
+    private volatile int urls;
+    private volatile boolean cancelled;
     private final int count, maxDistance;
     private final long time;
     final private String language;
@@ -99,6 +107,7 @@ public class RemoteSearch extends Thread {
         this.blacklist = blacklist;
         this.targetPeer = targetPeer;
         this.urls = -1;
+        this.cancelled = false;
         this.count = count;
         this.time = time;
         this.maxDistance = maxDistance;
@@ -110,6 +119,7 @@ public class RemoteSearch extends Thread {
     @Override
     public void run() {
         this.event.oneFeederStarted();
+        final long start = System.currentTimeMillis();
         try {
             this.urls = Protocol.primarySearch(
                         this.event,
@@ -125,6 +135,7 @@ public class RemoteSearch extends Thread {
                         this.targetPeer,
                         this.secondarySearchSuperviser,
                         this.blacklist);
+            if (!this.cancelled) PeerLatency.record(this.targetPeer, PeerLatency.RWI, System.currentTimeMillis() - start, this.urls >= 0);
             if (this.urls >= 0) {
                 // urls is an array of url hashes. this is only used for log output
                 this.event.peers.mySeed().incRI(this.urls);
@@ -160,6 +171,14 @@ public class RemoteSearch extends Thread {
         return this.targetPeer;
     }
 
+    /**
+     * interrupt this search because its result is not needed any more; the response time is not recorded then
+     */
+    public void cancel() {
+        this.cancelled = true;
+        if (this.isAlive()) this.interrupt();
+    }
+
     /**
      * Select YaCy peers using DHT rules and start new threads requesting remotely RWI or Solr index on them.
      * @param event the origin search event. Must not be null.
@@ -201,6 +220,7 @@ public class RemoteSearch extends Thread {
         // prepare seed targets and threads
         Random random = new Random(System.currentTimeMillis());
         Collection<Seed> dhtPeers = null;
+        final Map<String, List<Seed>> alternates = new HashMap<String, List<Seed>>(); // redundant peers of the DHT positions of each target
         if (clusterselection != null) {
             dhtPeers = DHTSelection.selectClusterPeers(event.peers, clusterselection);
         } else {
@@ -208,32 +228,29 @@ public class RemoteSearch extends Thread {
                 if (event.query.modifier.sitehost != null && event.query.modifier.sitehost.length() > 0) {
                     // select peers according to host name, not the query goal
                     String newGoal = Domains.getSmartSLD(event.query.modifier.sitehost);
-                    dhtPeers = DHTSelection.selectDHTSearchTargets(
+                    dhtPeers = selectTargets(DHTSelection.selectDHTSearchTargetGroups(
                             event.peers,
                             QueryParams.hashes2Set(ASCII.String(Word.word2hash(newGoal))),
                             minage,
-                            redundancy, event.peers.redundancy(),
-                            random);
+                            event.peers.redundancy()),
+                            redundancy, alternates, random);
                 } else {
                     // select just random peers
                     dhtPeers = DHTSelection.seedsByAge(event.peers, false, event.peers.redundancy()).values();
                 }
             } else {
-                dhtPeers = DHTSelection.selectDHTSearchTargets(
+                dhtPeers = selectTargets(DHTSelection.selectDHTSearchTargetGroups(
                                 event.peers,
                                 event.query.getQueryGoal().getIncludeHashes(),
                                 minage,
-                                redundancy, event.peers.redundancy(),
-                                random);
+                                event.peers.redundancy()),
+                                redundancy, alternates, random);
                 // this set of peers may be too large and consume too many threads if more than one word is searched.
                 // to prevent overloading, we do a subset collection based on random to prevent the death of the own peer
-                // and to do a distributed load-balancing on the target peers
-                long targetSize = 1 + redundancy * event.peers.scheme.verticalPartitions(); // this is the maximum for one word plus one
+                // and to do a distributed load-balancing on the target peers; fast peers are preferred in the random choice
+                int targetSize = 1 + redundancy * event.peers.scheme.verticalPartitions(); // this is the maximum for one word plus one
                 if (dhtPeers.size() > targetSize) {
-                    ArrayList<Seed> pa = new ArrayList<Seed>(dhtPeers.size());
-                    pa.addAll(dhtPeers);
-                    dhtPeers.clear();
-                    for (int i = 0; i < targetSize; i++) dhtPeers.add(pa.remove(random.nextInt(pa.size())));
+                    dhtPeers = new LinkedHashSet<Seed>(PeerLatency.sample(dhtPeers, targetSize, random));
                 }
             }
         }
@@ -282,37 +299,174 @@ public class RemoteSearch extends Thread {
         }
         
         // start search to YaCy DHT peers
+        final List<RemoteSearch> dhtSearches = new ArrayList<RemoteSearch>(dhtPeers.size());
+        final Set<String> asked = new HashSet<String>();
         if (!sb.getConfigBool(SwitchboardConstants.DEBUG_SEARCH_REMOTE_DHT_OFF, false)) {
             for (Seed dhtPeer: dhtPeers) {
                 if (dhtPeer == null || dhtPeer.hash == null) continue;
-				if (MemoryControl.shortStatus()
-						|| Memory.load() > sb.getConfigFloat(SwitchboardConstants.REMOTESEARCH_MAXLOAD_RWI,
-								SwitchboardConstants.REMOTESEARCH_MAXLOAD_RWI_DEFAULT)) {
-					continue;
-				}
+                if (!canStartRWISearch(sb)) continue;
                 try {
-                    RemoteSearch rs = new RemoteSearch(
-                        event,
-                        QueryParams.hashSet2hashString(event.query.getQueryGoal().getIncludeHashes()),
-                        QueryParams.hashSet2hashString(event.query.getQueryGoal().getExcludeHashes()),
-                        event.query.targetlang == null ? "" : event.query.targetlang,
-                        event.query.contentdom == null ? ContentDomain.ALL : event.query.contentdom,
-                        event.query.isStrictContentDom(),
-                        count,
-                        time,
-                        event.query.maxDistance,
-                        targets,
-                        dhtPeer,
-                        event.secondarySearchSuperviser,
-                        blacklist);
-                    rs.start();
-                    event.primarySearchThreadsL.add(rs);
+                    dhtSearches.add(startRWISearch(event, count, time, targets, dhtPeer, blacklist));
+                    asked.add(dhtPeer.hash);
                 } catch (final OutOfMemoryError e) {
                     ConcurrentLog.logException(e);
                     break;
                 }
             }
         }
+
+        // the results of redundant peers overlap, so the remote searches are complete when each partition is
+        // expected to have contributed the needed results
+        final int quota = event.query.neededResults() * redundancy;
+        superviseRWISearches(event, dhtSearches, alternates, asked, count, time, targets, blacklist, quota);
+    }
+
+    /**
+     * choose the search targets among the redundant DHT positions: from each position, redundancy peers are
+     * sampled randomly, preferring peers which answered fast and reliably before. The other peers of each
+     * position are kept as alternates for hedged requests.
+     * @param groups the candidate peers of each DHT position
+     * @param redundancy the number of targets for each position
+     * @param alternates a map from the target peer hashes to their alternates which is filled by this method
+     * @param random the random source
+     * @return the target peers
+     */
+    private static Set<Seed> selectTargets(final List<List<Seed>> groups, final int redundancy, final Map<String, List<Seed>> alternates, final Random random) {
+        final Set<Seed> targets = new LinkedHashSet<Seed>();
+        for (final List<Seed> group: groups) {
+            final List<Seed> selected = PeerLatency.sample(group, redundancy, random);
+            targets.addAll(selected);
+            for (final Seed seed: selected) {
+                List<Seed> a = alternates.get(seed.hash);
+                if (a == null) {
+                    a = new ArrayList<Seed>();
+                    alternates.put(seed.hash, a);
+                }
+                for (final Seed alternate: group) {
+                    if (!selected.contains(alternate) && !a.contains(alternate)) a.add(alternate);
+                }
+            }
+        }
+        return targets;
+    }
+
+    private static boolean canStartRWISearch(final Switchboard sb) {
+        return !MemoryControl.shortStatus() && Memory.load() <= sb.getConfigFloat(SwitchboardConstants.REMOTESEARCH_MAXLOAD_RWI, SwitchboardConstants.REMOTESEARCH_MAXLOAD_RWI_DEFAULT);
+    }
+
+    private static RemoteSearch startRWISearch(final SearchEvent event, final int count, final long time, final int targets, final Seed dhtPeer, final Blacklist blacklist) {
+        RemoteSearch rs = new RemoteSearch(
+            event,
+            QueryParams.hashSet2hashString(event.query.getQueryGoal().getIncludeHashes()),
+            QueryParams.hashSet2hashString(event.query.getQueryGoal().getExcludeHashes()),
+            event.query.targetlang == null ? "" : event.query.targetlang,
+            event.query.contentdom == null ? ContentDomain.ALL : event.query.contentdom,
+            event.query.isStrictContentDom(),
+            count,
+            time,
+            event.query.maxDistance,
+            targets,
+            dhtPeer,
+            event.secondarySearchSuperviser,
+            blacklist);
+        rs.start();
+        event.primarySearchThreadsL.add(rs);
+        return rs;
+    }
+
+    /**
+     * Watch the running DHT searches until they terminate or the search time is over. When a peer does not answer
+     * within its median response time, the same request is sent to a redundant peer of the same DHT position and
+     * the slower request of both is cancelled as soon as one answers. All remaining remote searches are cancelled
+     * when the remote peers contributed enough results.
+     * @param event the origin search event
+     * @param searches the started DHT searches
+     * @param alternates the redundant peers for each target peer hash
+     * @param asked the hashes of all peers which are already requested
+     * @param count the desired number of results of each peer
+     * @param time the maximum processing time of the remote peers
+     * @param targets the number of target peers
+     * @param blacklist the blacklist to use
+     * @param quota the number of remote results after which all remote searches are cancelled
+     */
+    private static void superviseRWISearches(
+            final SearchEvent event,
+            final List<RemoteSearch> searches,
+            final Map<String, List<Seed>> alternates,
+            final Set<String> asked,
+            final int count,
+            final long time,
+            final int targets,
+            final Blacklist blacklist,
+            final int quota) {
+        final Switchboard sb = Switchboard.getSwitchboard();
+        final long start = System.currentTimeMillis();
+        final long deadline = start + time;
+        final long median = PeerLatency.medianRWI();
+        final long defaultDelay = median < 0 ? Math.min(PeerLatency.DEFAULT_LATENCY, time / 2) : median;
+        final List<RemoteSearch> pending = new ArrayList<RemoteSearch>(searches);
+        final Map<RemoteSearch, RemoteSearch> hedges = new HashMap<RemoteSearch, RemoteSearch>();
+        int hedgeCount = 0;
+        while (System.currentTimeMillis() < deadline) {
+            if (event.remote_rwi_available.get() + event.remote_solr_available.get() >= quota) {
+                int cancelled = 0;
+                for (final RemoteSearch search: event.primarySearchThreadsL) {
+                    if (search.isAlive()) {search.cancel(); cancelled++;}
+                }
+                for (final Thread search: event.nodeSearchThreads) {
+                    if (search.isAlive()) {search.interrupt(); cancelled++;}
+                }
+                if (cancelled > 0) log.info("remote search quota of " + quota + " results reached after " + (System.currentTimeMillis() - start) + " ms, cancelled " + cancelled + " searches");
+                break;
+            }
+            final Iterator<RemoteSearch> i = pending.iterator();
+            while (i.hasNext()) {
+                final RemoteSearch search = i.next();
+                final RemoteSearch hedge = hedges.get(search);
+                if (hedge == null) {
+                    if (!search.isAlive()) {i.remove(); continue;}
+                    long delay = PeerLatency.quantile(search.targetPeer.hash, 0.5d);
+                    if (delay < 0) delay = defaultDelay;
+                    if (System.currentTimeMillis() - start < delay) continue;
+                    final Seed alternate = nextAlternate(alternates.get(search.targetPeer.hash), asked);
+                    if (alternate == null || !canStartRWISearch(sb)) {i.remove(); continue;}
+                    try {
+                        hedges.put(search, startRWISearch(event, count, time, targets, alternate, blacklist));
+                        asked.add(alternate.hash);
+                        hedgeCount++;
+                    } catch (final OutOfMemoryError e) {
+                        ConcurrentLog.logException(e);
+                        i.remove();
+                    }
+                } else {
+                    // the first answer of the pair makes the other request unnecessary
+                    if (!search.isAlive() && search.urls >= 0) {
+                        hedge.cancel();
+                        i.remove();
+                    } else if (!hedge.isAlive() && hedge.urls >= 0) {
+                        search.cancel();
+                        i.remove();
+                    } else if (!search.isAlive() && !hedge.isAlive()) {
+                        i.remove();
+                    }
+                }
+            }
+            if (pending.isEmpty()) break;
+            try {
+                Thread.sleep(SUPERVISION_INTERVAL);
+            } catch (final InterruptedException e) {
+                break;
+            }
+        }
+        if (hedgeCount > 0) log.info("sent " + hedgeCount + " hedged requests to redundant peers for " + searches.size() + " slow DHT searches");
+    }
+
+    private static Seed nextAlternate(final List<Seed> alternates, final Set<String> asked) {
+        if (alternates == null) return null;
+        for (final Seed alternate: alternates) {
+            if (alternate != null && alternate.hash != null && !asked.contains(alternate.hash)) return alternate;
+        }
+        return null;
     }
 
     public static Thread secondaryRemoteSearch(
@@ -403,6 +557,7 @@ public class RemoteSearch extends Thread {
             @Override
             public void run() {
                     int urls = 0;
+                    final long requestTime = System.currentTimeMillis();
                     try {
                         event.oneFeederStarted();
                         urls = Protocol.solrQuery(
@@ -415,6 +570,7 @@ public class RemoteSearch extends Thread {
                                         blacklist,
                                         useSolrFacets,
                                         incrementNavigators);
+                        if (!this.isInterrupted()) PeerLatency.record(targetPeer, PeerLatency.SOLR, System.currentTimeMillis() - requestTime, urls >= 0);
                         if (urls >= 0) {
                             // urls is an array of url hashes. this is only used for log output
                             event.peers.mySeed().incRI(urls);
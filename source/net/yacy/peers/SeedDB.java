@@ -897,7 +897,7 @@ public final class SeedDB implements AlternativeDomainNames {
         reqHeader.put(HeaderFramework.CACHE_CONTROL, "no-cache, no-store"); // httpc uses HTTP/1.0 is this necessary?
         reqHeader.put(HeaderFramework.USER_AGENT, ClientIdentification.yacyInternetCrawlerAgent.userAgent);
 
-        final HTTPClient client = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent);
+        final HTTPClient client = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, HTTPClient.Pool.PEERS);
         client.setHeader(reqHeader.entrySet());
         byte[] content = null;
         try {
@@ -1130,7 +1130,7 @@ public final class SeedDB implements AlternativeDomainNames {
                     final RequestHeader reqHeader = new RequestHeader();
                     reqHeader.put(HeaderFramework.PRAGMA, "no-cache");
                     reqHeader.put(HeaderFramework.CACHE_CONTROL, "no-cache, no-store");
-                    final HTTPClient client = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout);
+                    final HTTPClient client = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout, HTTPClient.Pool.PEERS);
                     client.setHeader(reqHeader.entrySet());
 
                     client.HEADResponse(url.toNormalform(false), false);
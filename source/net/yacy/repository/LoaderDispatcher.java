@@ -27,18 +27,24 @@
 package net.yacy.repository;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
@@ -69,9 +75,11 @@ import net.yacy.search.Switchboard;
 
 public final class LoaderDispatcher {
 
-    private final static int accessTimeMaxsize = 1000;
     private final static ConcurrentLog log = new ConcurrentLog("LOADER");
-    private static final ConcurrentHashMap<String, Long> accessTime = new ConcurrentHashMap<String, Long>(); // to protect targets from DDoS
+    private final static AccessTimeBuckets accessTime = new AccessTimeBuckets(1000, 8); // to protect targets from DDoS
+
+    /** maximum time in milliseconds a caller waits for a concurrent load of the same url before loading on its own */
+    private final static long sharedLoadTimeout = 5000;
 
     private final Switchboard sb;
     private final HashSet<String> supportedProtocols;
@@ -79,7 +87,7 @@ public final class LoaderDispatcher {
     private final FTPLoader ftpLoader;
     private final SMBLoader smbLoader;
     private final FileLoader fileLoader;
-    private final ConcurrentHashMap<DigestURL, Semaphore> loaderSteering; // a map that delivers a 'finish' semaphore for urls
+    private final ConcurrentHashMap<LoadKey, CompletableFuture<Response>> loaderSteering; // the in-flight loads; concurrent compatible callers share their result
 
     public LoaderDispatcher(final Switchboard sb) {
         this.sb = sb;
@@ -90,7 +98,7 @@ public final class LoaderDispatcher {
         this.ftpLoader = new FTPLoader(sb, LoaderDispatcher.log);
         this.smbLoader = new SMBLoader(sb, LoaderDispatcher.log);
         this.fileLoader = new FileLoader(sb, LoaderDispatcher.log);
-        this.loaderSteering = new ConcurrentHashMap<DigestURL, Semaphore>();
+        this.loaderSteering = new ConcurrentHashMap<LoadKey, CompletableFuture<Response>>();
     }
 
     public boolean isSupportedProtocol(final String protocol) {
@@ -154,7 +162,10 @@ public final class LoaderDispatcher {
 
     /**
      * loads a resource from cache or web/ftp/smb/file
-     * on concurrent execution waits max 5 sec for the prev. loader to fill the cache (except for CacheStrategy.NOCACHE)
+     * on concurrent execution the callers share a single load (single-flight): the first caller loads the resource,
+     * the other ones with the same cache strategy, maximum file size and agent wait max 5 sec for its result
+     * (except for CacheStrategy.NOCACHE). Each of them gets its own copy of the Response; when the first load fails,
+     * the waiting callers load on their own.
      * 
      * @param request the request essentials
      * @param cacheStrategy strategy according to NOCACHE, IFFRESH, IFEXIST, CACHEONLY
@@ -165,31 +176,80 @@ public final class LoaderDispatcher {
      * @throws IOException
      */
     public Response load(final Request request, final CacheStrategy cacheStrategy, final int maxFileSize, final BlacklistType blacklistType, ClientIdentification.Agent agent) throws IOException {
-        Semaphore check = this.loaderSteering.get(request.url());
-        if (check != null && cacheStrategy != CacheStrategy.NOCACHE) {
-            // a loading process is going on for that url
-            //ConcurrentLog.info("LoaderDispatcher", "waiting for " + request.url().toNormalform(true));
-            long t = System.currentTimeMillis();
-            try { check.tryAcquire(5, TimeUnit.SECONDS);} catch (final InterruptedException e) {}
-            ConcurrentLog.info("LoaderDispatcher", "waited " + (System.currentTimeMillis() - t) + " ms for " + request.url().toNormalform(true));
-            // now the process may have terminated and we run a normal loading
-            // which may be successful faster because of a cache hit
-        }
-
-        this.loaderSteering.put(request.url(), new Semaphore(0));
+        final LoadKey key = new LoadKey(request.url(), cacheStrategy, maxFileSize, agent);
+        final CompletableFuture<Response> flight = new CompletableFuture<Response>();
+        final CompletableFuture<Response> running = this.loaderSteering.putIfAbsent(key, flight);
+        if (running != null && cacheStrategy != CacheStrategy.NOCACHE) {
+            // a compatible loading process is going on for that url: join it
+            checkBlacklist(request, blacklistType);
+            final Response shared = awaitSharedLoad(running, request, maxFileSize);
+            if (shared != null) return shared;
+            // the running load failed, did not deliver in time or its result does not fit: load on our own
+        }
+
         try {
             final Response response = loadInternal(request, cacheStrategy, maxFileSize, blacklistType, agent);
-            // finally block cleans up loaderSteering and semaphore
+            flight.complete(response);
             return response;
         } catch (final IOException e) {
         	/* Do not wrap an IOException in an unnecessary supplementary IOException */
+            flight.completeExceptionally(e);
             throw e;
         } catch (final Throwable e) {
-            throw new IOException(e);
+            final IOException ioe = new IOException(e);
+            flight.completeExceptionally(ioe);
+            throw ioe;
         } finally {
-            // release the semaphore anyway
-            check = this.loaderSteering.remove(request.url()); // = next caller goes directly to loadInternal (is ok we just wanted to fill cash)
-            if (check != null) check.release(1000); // don't block any other
+            // only the owner of the flight removes it; waiters are already released by the completion
+            if (running == null) this.loaderSteering.remove(key, flight);
+        }
+    }
+
+    /**
+     * Wait for the result of a compatible load of the same url running in another thread.
+     * @param running the in-flight load
+     * @param request the request of the waiting caller
+     * @param maxFileSize the maximum content size accepted by the waiting caller. -1 means no limit.
+     * @return a copy of the shared response for the waiting caller, or null when the running load failed, did not terminate in time or its content exceeds maxFileSize
+     * @throws IOException when the waiting thread was interrupted
+     */
+    private Response awaitSharedLoad(final CompletableFuture<Response> running, final Request request, final int maxFileSize) throws IOException {
+        final DigestURL url = request.url();
+        final long t = System.currentTimeMillis();
+        final Response response;
+        try {
+            response = running.get(sharedLoadTimeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            ConcurrentLog.info("LoaderDispatcher", "waited " + (System.currentTimeMillis() - t) + " ms in vain for " + url.toNormalform(true));
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + url.toNormalform(true));
+        } catch (final ExecutionException e) {
+            // the failure may be specific to the first caller, for instance a timeout of its client
+            if (log.isFine()) log.fine("shared load failed for " + url.toNormalform(true) + ": " + e.getCause().getMessage());
+            return null;
+        }
+        if (response == null || response.getContent() == null) return null;
+        if (maxFileSize >= 0 && response.getContent().length > maxFileSize) return null;
+        if (log.isFine()) log.fine("shared load after " + (System.currentTimeMillis() - t) + " ms for " + url.toNormalform(true));
+        final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
+        return response.copy(request, crawlProfile);
+    }
+
+    /**
+     * Reject the request when its url is in the blacklist
+     * @param request the request essentials
+     * @param blacklistType the blacklist to check. Nothing is checked when null.
+     * @throws IOException when the url is blacklisted
+     */
+    private void checkBlacklist(final Request request, final BlacklistType blacklistType) throws IOException {
+        final DigestURL url = request.url();
+        final String host = url.getHost();
+        if (blacklistType != null && host != null && Switchboard.urlBlacklist.isListed(blacklistType, host.toLowerCase(Locale.ROOT), url.getFile())) {
+            final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
+            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), crawlProfile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
+            throw new IOException("DISPATCHER Rejecting URL '" + request.url().toString() + "'. URL is in blacklist.$");
         }
     }
 
@@ -209,10 +269,7 @@ public final class LoaderDispatcher {
         final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
         
         // check if url is in blacklist
-        if (blacklistType != null && host != null && Switchboard.urlBlacklist.isListed(blacklistType, host.toLowerCase(Locale.ROOT), url.getFile())) {
-            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), crawlProfile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
-            throw new IOException("DISPATCHER Rejecting URL '" + request.url().toString() + "'. URL is in blacklist.$");
-        }
+        checkBlacklist(request, blacklistType);
         
         // check if we have the page in the cache
         Response response = loadFromCache(request, cacheStrategy, agent, url, crawlProfile);
@@ -233,10 +290,7 @@ public final class LoaderDispatcher {
         checkAccessTime(agent, url);
 
         // now it's for sure that we will access the target. Remember the access time
-        if (host != null) {
-            if (accessTime.size() > accessTimeMaxsize) accessTime.clear(); // prevent a memory leak here
-            accessTime.put(host, System.currentTimeMillis());
-        }
+        if (host != null) accessTime.put(host, System.currentTimeMillis());
 
         // load resource from the internet
         if (protocol.equals("http") || protocol.equals("https")) {
@@ -352,10 +406,11 @@ public final class LoaderDispatcher {
      * Open an InputStream on a resource from the web, from ftp, from smb or a file
      * @param request the request essentials
      * @param cacheStratgy strategy according to NOCACHE, IFFRESH, IFEXIST, CACHEONLY
+     * @param crawling when true, http resources are opened for the crawler streaming mode (see {@link HTTPLoader#openCrawlInputStream})
      * @return an open ImageInputStream. Don't forget to close it once used!
      * @throws IOException when url is malformed, blacklisted, or CacheStrategy is CACHEONLY and content is unavailable
      */
-    private StreamResponse openInputStreamInternal(final Request request, CacheStrategy cacheStrategy, final int maxFileSize, final BlacklistType blacklistType, ClientIdentification.Agent agent) throws IOException {
+    private StreamResponse openInputStreamInternal(final Request request, CacheStrategy cacheStrategy, final int maxFileSize, final BlacklistType blacklistType, ClientIdentification.Agent agent, final boolean crawling) throws IOException {
         // get the protocol of the next URL
         final DigestURL url = request.url();
 		if (url.isFile() || url.isSMB()) {
@@ -367,10 +422,7 @@ public final class LoaderDispatcher {
         final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
         
         // check if url is in blacklist
-        if (blacklistType != null && host != null && Switchboard.urlBlacklist.isListed(blacklistType, host.toLowerCase(Locale.ROOT), url.getFile())) {
-            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), crawlProfile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
-            throw new IOException("DISPATCHER Rejecting URL '" + request.url().toString() + "'. URL is in blacklist.$");
-        }
+        checkBlacklist(request, blacklistType);
         
         // check if we have the page in the cache
         Response cachedResponse = loadFromCache(request, cacheStrategy, agent, url, crawlProfile);
@@ -391,15 +443,16 @@ public final class LoaderDispatcher {
 		checkAccessTime(agent, url);
 
         // now it's for sure that we will access the target. Remember the access time
-        if (host != null) {
-            if (accessTime.size() > accessTimeMaxsize) accessTime.clear(); // prevent a memory leak here
-            accessTime.put(host, System.currentTimeMillis());
-        }
+        if (host != null) accessTime.put(host, System.currentTimeMillis());
 
         // load resource from the internet
         StreamResponse response;
         if (protocol.equals("http") || protocol.equals("https")) {
-        	response = this.httpLoader.openInputStream(request, crawlProfile, 1, maxFileSize, blacklistType, agent);
+        	if (crawling) {
+        		response = this.httpLoader.openCrawlInputStream(request, crawlProfile, maxFileSize, blacklistType, agent);
+        	} else {
+        		response = this.httpLoader.openInputStream(request, crawlProfile, 1, maxFileSize, blacklistType, agent);
+        	}
         } else if (protocol.equals("ftp")) {
         	response = this.ftpLoader.openInputStream(request, true);
         } else if (protocol.equals("smb")) {
@@ -428,17 +481,11 @@ public final class LoaderDispatcher {
 			if (lastAccess != null)
 				wait = Math.max(0, agent.minimumDelta + lastAccess.longValue() - System.currentTimeMillis());
 			if (wait > 0) {
-				// force a sleep here. Instead just sleep we clean up the
-				// accessTime map
-				final long untilTime = System.currentTimeMillis() + wait;
-				cleanupAccessTimeTable(untilTime);
-				if (System.currentTimeMillis() < untilTime) {
-					long frcdslp = untilTime - System.currentTimeMillis();
-					LoaderDispatcher.log.info("Forcing sleep of " + frcdslp + " ms for host " + host);
-					try {
-						Thread.sleep(frcdslp);
-					} catch (final InterruptedException ee) {
-					}
+				// force a sleep here. Outdated access times expire with their time bucket, no cleanup needed
+				LoaderDispatcher.log.info("Forcing sleep of " + wait + " ms for host " + host);
+				try {
+					Thread.sleep(wait);
+				} catch (final InterruptedException ee) {
 				}
 			}
 		}
@@ -488,44 +535,52 @@ public final class LoaderDispatcher {
      * @param blacklistType black list
      * @param agent agent identification for HTTP requests
      * @param maxFileSize max file size to load. -1 means no limit.
-     * @return a response with full meta data and embedding on open input stream on content. Don't forget to close the stream.
+     * @return a response with full meta data and embedding on open input stream on content. Don't forget to close the stream:
+     * concurrent callers of the same url wait for the stream to be read until its end or closed.
      * @throws IOException when url is malformed or blacklisted
      */
 	public StreamResponse openInputStream(final Request request, final CacheStrategy cacheStrategy,
 			BlacklistType blacklistType, final ClientIdentification.Agent agent, final int maxFileSize) throws IOException {
 		StreamResponse response;
 
-		Semaphore check = this.loaderSteering.get(request.url());
-		if (check != null && cacheStrategy != CacheStrategy.NOCACHE) {
-			// a loading process is going on for that url
-			long t = System.currentTimeMillis();
-			try {
-				check.tryAcquire(5, TimeUnit.SECONDS);
-			} catch (final InterruptedException e) {
+		final LoadKey key = new LoadKey(request.url(), cacheStrategy, maxFileSize, agent);
+		final CompletableFuture<Response> flight = new CompletableFuture<Response>();
+		final CompletableFuture<Response> running = this.loaderSteering.putIfAbsent(key, flight);
+		if (running != null && cacheStrategy != CacheStrategy.NOCACHE) {
+			// a compatible loading process is going on for that url : share its content
+			checkBlacklist(request, blacklistType);
+			final Response shared = awaitSharedLoad(running, request, maxFileSize);
+			if (shared != null) {
+				return new StreamResponse(shared, new ByteArrayInputStream(shared.getContent()));
 			}
-			ConcurrentLog.info("LoaderDispatcher",
-					"waited " + (System.currentTimeMillis() - t) + " ms for " + request.url().toNormalform(true));
-			// now the process may have terminated and we run a normal loading
-			// which may be successful faster because of a cache hit
 		}
 
-		this.loaderSteering.put(request.url(), new Semaphore(0));
 		try {
-			response = openInputStreamInternal(request, cacheStrategy, maxFileSize, blacklistType, agent);
+			response = openInputStreamInternal(request, cacheStrategy, maxFileSize, blacklistType, agent, false);
 		} catch(IOException ioe) {
 			/* Do not re encapsulate any eventual IOException in an IOException */
+			if (running == null) {
+				flight.completeExceptionally(ioe);
+				this.loaderSteering.remove(key, flight);
+			}
 			throw ioe;
 		} catch (final Throwable e) {
-			throw new IOException(e);
-		} finally {
-			// release the semaphore anyway
-			check = this.loaderSteering.remove(request.url());
-			if (check != null) {
-				check.release(1000); // don't block any other
+			final IOException ioe = new IOException(e);
+			if (running == null) {
+				flight.completeExceptionally(ioe);
+				this.loaderSteering.remove(key, flight);
 			}
+			throw ioe;
 		}
 
-		return response;
+		if (running != null) return response; // the in-flight load of another caller stays registered
+		if (response == null || response.getContentStream() == null) {
+			flight.complete(null);
+			this.loaderSteering.remove(key, flight);
+			return response;
+		}
+		/* The stream is registered as in-flight : its content is shared with the concurrent callers once read until its end */
+		return new StreamResponse(response.getResponse(), new SharedLoadInputStream(response.getContentStream(), response.getResponse(), maxFileSize, key, flight));
 	}
     
     /**
@@ -543,6 +598,28 @@ public final class LoaderDispatcher {
 		return this.openInputStream(request, cacheStrategy, blacklistType, agent, maxFileSize);
 	}
 
+    /**
+     * Open the URL as an InputStream from the web or the cache for the crawler streaming mode : when the crawl profile requires
+     * caching, the content is copied to the cache while it is consumed, so that the resource can be parsed while it is downloaded.
+     * Apply the default per protocol configured maximum file size limit.
+     * @param request must be not null
+     * @param cacheStrategy cache strategy to use
+     * @param blacklistType black list
+     * @param agent agent identification for HTTP requests
+     * @return a response with full meta data and embedding on open input stream on content. Don't forget to close the stream.
+     * @throws IOException when url is malformed or blacklisted
+     */
+    public StreamResponse openCrawlInputStream(final Request request, final CacheStrategy cacheStrategy,
+            final BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException {
+        try {
+            return openInputStreamInternal(request, cacheStrategy, protocolMaxFileSize(request.url()), blacklistType, agent, true);
+        } catch (final IOException ioe) {
+            throw ioe;
+        } catch (final Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
     public Document[] loadDocuments(final Request request, final CacheStrategy cacheStrategy, final int maxFileSize, BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException, Parser.Failure {
 
         // load resource
@@ -718,16 +795,6 @@ public final class LoaderDispatcher {
         return Document.getHyperlinks(documents, true);
     }
 
-    public synchronized static void cleanupAccessTimeTable(final long timeout) {
-    	final Iterator<Map.Entry<String, Long>> i = accessTime.entrySet().iterator();
-        Map.Entry<String, Long> e;
-        while (i.hasNext()) {
-            e = i.next();
-            if (System.currentTimeMillis() > timeout) break;
-            if (System.currentTimeMillis() - e.getValue().longValue() > 1000) i.remove();
-        }
-    }
-
     public void loadIfNotExistBackground(final DigestURL url, final File cache, final int maxFileSize, BlacklistType blacklistType, final ClientIdentification.Agent agent) {
         new Loader(url, cache, maxFileSize, CacheStrategy.IFEXIST, blacklistType, agent).start();
     }
@@ -766,4 +833,186 @@ public final class LoaderDispatcher {
             } catch (final MalformedURLException e) {} catch (final IOException e) {}
         }
     }
+
+    /**
+     * Identifies an in-flight load: only loads of the same url with the same cache strategy, maximum file size
+     * and client agent are shared, because each of them may change the result of the load.
+     */
+    private static final class LoadKey {
+
+        private final DigestURL url;
+        private final CacheStrategy cacheStrategy;
+        private final int maxFileSize;
+        private final String userAgent;
+
+        private LoadKey(final DigestURL url, final CacheStrategy cacheStrategy, final int maxFileSize, final ClientIdentification.Agent agent) {
+            this.url = url;
+            this.cacheStrategy = cacheStrategy;
+            this.maxFileSize = maxFileSize;
+            this.userAgent = agent == null ? null : agent.userAgent;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.url, this.cacheStrategy, this.maxFileSize, this.userAgent);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof LoadKey)) return false;
+            final LoadKey other = (LoadKey) obj;
+            return this.url.equals(other.url) && this.cacheStrategy == other.cacheStrategy
+                    && this.maxFileSize == other.maxFileSize && Objects.equals(this.userAgent, other.userAgent);
+        }
+    }
+
+    /**
+     * Content stream of a load opened by {@link #openInputStream(Request, CacheStrategy, BlacklistType, ClientIdentification.Agent, int)},
+     * registered as in-flight: the content is copied while it is consumed and shared with the waiting callers
+     * when the stream is read until its end. When the stream is closed before, skipped or exceeds the maximum file size,
+     * the waiting callers load on their own.
+     */
+    private final class SharedLoadInputStream extends FilterInputStream {
+
+        private final Response response;
+        private final int maxFileSize;
+        private final LoadKey key;
+        private final CompletableFuture<Response> flight;
+        private ByteArrayOutputStream copy; // the content read so far, null when it can not be shared
+
+        private SharedLoadInputStream(final InputStream in, final Response response, final int maxFileSize, final LoadKey key, final CompletableFuture<Response> flight) {
+            super(in);
+            this.response = response;
+            this.maxFileSize = maxFileSize;
+            this.key = key;
+            this.flight = flight;
+            this.copy = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                finish(true);
+            } else if (this.copy != null) {
+                if (this.maxFileSize >= 0 && this.copy.size() >= this.maxFileSize) {
+                    this.copy = null;
+                } else {
+                    this.copy.write(b);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n < 0) {
+                finish(true);
+            } else if (this.copy != null) {
+                if (this.maxFileSize >= 0 && this.copy.size() + n > this.maxFileSize) {
+                    this.copy = null;
+                } else {
+                    this.copy.write(b, off, n);
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            this.copy = null; // skipped content is missing in the copy
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                finish(false);
+            }
+        }
+
+        /**
+         * release the waiting callers, with the shared content when the stream was completely read
+         * @param complete true when the end of the stream was reached
+         */
+        private void finish(final boolean complete) {
+            if (this.flight.isDone()) return;
+            Response shared = null;
+            if (complete && this.copy != null) {
+                shared = this.response.copy(this.response.getRequest(), this.response.profile());
+                shared.setContent(this.copy.toByteArray());
+            }
+            this.copy = null;
+            this.flight.complete(shared);
+            LoaderDispatcher.this.loaderSteering.remove(this.key, this.flight);
+        }
+    }
+
+    /**
+     * Last access times per host, kept in a ring of time buckets. Each bucket holds the accesses
+     * of one time slice; a bucket is replaced as a whole (lock-free) when its slot is reused for a newer slice,
+     * so outdated entries expire without any synchronized cleanup sweep.
+     * Access times older than (bucketCount - 1) * bucketMillis are forgotten: this must cover the minimum
+     * access delta of the client agents.
+     */
+    private static class AccessTimeBuckets {
+
+        private final long bucketMillis;
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        private static class Bucket {
+            private final long slice;
+            private final ConcurrentHashMap<String, Long> times;
+
+            private Bucket(final long slice) {
+                this.slice = slice;
+                this.times = new ConcurrentHashMap<String, Long>();
+            }
+        }
+
+        public AccessTimeBuckets(final long bucketMillis, final int bucketCount) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = new AtomicReferenceArray<Bucket>(bucketCount);
+        }
+
+        public void put(final String host, final long time) {
+            final long slice = time / this.bucketMillis;
+            final int index = (int) (slice % this.buckets.length());
+            Bucket bucket = this.buckets.get(index);
+            while (bucket == null || bucket.slice < slice) {
+                final Bucket fresh = new Bucket(slice);
+                if (this.buckets.compareAndSet(index, bucket, fresh)) {
+                    bucket = fresh;
+                } else {
+                    bucket = this.buckets.get(index);
+                }
+            }
+            if (bucket.slice == slice) bucket.times.put(host, time);
+        }
+
+        /**
+         * @param host the host name
+         * @return the latest remembered access time of the host or null if it was not accessed recently
+         */
+        public Long get(final String host) {
+            final long oldestSlice = System.currentTimeMillis() / this.bucketMillis - this.buckets.length() + 1;
+            Long latest = null;
+            for (int i = 0; i < this.buckets.length(); i++) {
+                final Bucket bucket = this.buckets.get(i);
+                if (bucket == null || bucket.slice < oldestSlice) continue;
+                final Long time = bucket.times.get(host);
+                if (time != null && (latest == null || time.longValue() > latest.longValue())) latest = time;
+            }
+            return latest;
+        }
+    }
 }
@@ -35,6 +35,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import net.yacy.cora.date.GenericFormatter;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.peers.graphics.ProfilingGraph;
 
 
@@ -55,6 +57,12 @@ public class EventTracker {
 
     private final static Map<EClass, Queue<Event>> historyMaps = new ConcurrentHashMap<EClass, Queue<Event>>();
     private final static Map<EClass, Long> eventAccess = new ConcurrentHashMap<EClass, Long>(); // value: last time when this was accessed
+    private final static Counter[] eventCounter = new Counter[EClass.values().length]; // all events, also those which are not recorded because of the access protection
+    static {
+        for (final EClass eventClass: EClass.values()) {
+            eventCounter[eventClass.ordinal()] = Metrics.counter("yacy_events", "number of tracked events", "class", eventClass.name().toLowerCase());
+        }
+    }
 
     public final static void delete(final EClass eventName) {
         historyMaps.remove(eventName);
@@ -62,6 +70,8 @@ public class EventTracker {
     }
 
     public final static void update(final EClass eventName, final Object eventPayload, final boolean useProtection) {
+        eventCounter[eventName.ordinal()].inc();
+
         // check protection against too heavy access
         if (useProtection) {
             final Long lastAcc = eventAccess.get(eventName);
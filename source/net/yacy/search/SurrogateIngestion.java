@@ -0,0 +1,313 @@
+/**
+ *  SurrogateIngestion
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.workflow.WorkflowJob;
+import net.yacy.kelondro.workflow.WorkflowProcessor;
+import net.yacy.kelondro.workflow.WorkflowTask;
+
+/**
+ * Long-lived service ingesting the files of the surrogates input directory.
+ * A bounded number of files is read at the same time, each by one reader thread,
+ * and the surrogate documents read from all files are indexed by one shared
+ * bounded pool of indexer threads. Readers wait when the indexers are behind,
+ * so that the number of threads does not depend on the number of files to
+ * process.
+ */
+public class SurrogateIngestion {
+
+    private final static ConcurrentLog log = new ConcurrentLog(SurrogateIngestion.class.getSimpleName());
+
+    /**
+     * Statistics and completion tracking of one surrogate source (a file or an entry in a zip file)
+     */
+    public static class Source {
+
+        private final String name;
+        private final long startTime;
+        private final AtomicInteger pending;
+        private final AtomicLong indexed;
+        private volatile long endTime;
+
+        private Source(final String name) {
+            this.name = name;
+            this.startTime = System.currentTimeMillis();
+            this.pending = new AtomicInteger();
+            this.indexed = new AtomicLong();
+            this.endTime = 0;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the number of documents indexed from this source
+         */
+        public long getIndexed() {
+            return this.indexed.get();
+        }
+
+        /**
+         * @return the number of documents read from this source and not yet indexed
+         */
+        public int getPending() {
+            return this.pending.get();
+        }
+
+        /**
+         * @return the time in milliseconds spent on this source
+         */
+        public long getRunningTime() {
+            return (this.endTime == 0 ? System.currentTimeMillis() : this.endTime) - this.startTime;
+        }
+
+        /**
+         * @return the number of documents indexed per second from this source
+         */
+        public int getDocsPerSecond() {
+            return (int) (this.indexed.get() * 1000L / Math.max(1000L, getRunningTime()));
+        }
+
+        private void done(final boolean success) {
+            if (success) this.indexed.incrementAndGet();
+            if (this.pending.decrementAndGet() <= 0) {
+                synchronized (this) {
+                    this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * A surrogate document to index, as read from a source
+     */
+    public static class Job extends WorkflowJob {
+
+        public final Object surrogate;
+        public final Source source;
+
+        private Job(final Object surrogate, final Source source) {
+            super();
+            this.surrogate = surrogate;
+            this.source = source;
+        }
+    }
+
+    /**
+     * The indexing of one surrogate document
+     */
+    public interface Indexer {
+
+        /**
+         * @param surrogate a surrogate document as read from a source
+         * @return true when the document has been indexed
+         * @throws Exception
+         */
+        public boolean index(final Object surrogate) throws Exception;
+    }
+
+    private final WorkflowProcessor<Job> processor;
+    private final ExecutorService fileReaders;
+    private final int maxFiles;
+    private final Set<String> filesInProgress;
+    private final Set<Source> activeSources;
+    private final AtomicLong totalIndexed;
+    private final AtomicLong totalTime;
+    private final AtomicLong totalSources;
+
+    /**
+     * @param indexer the indexing of one document, run by the indexer threads
+     * @param childnames the names of the processes receiving the documents from the indexer, as shown in the performance pages
+     * @param concurrency the number of indexer threads
+     * @param maxFiles the maximum number of files read at the same time
+     */
+    public SurrogateIngestion(final Indexer indexer, final String[] childnames, final int concurrency, final int maxFiles) {
+        this.maxFiles = Math.max(1, maxFiles);
+        this.filesInProgress = ConcurrentHashMap.newKeySet();
+        this.activeSources = ConcurrentHashMap.newKeySet();
+        this.totalIndexed = new AtomicLong();
+        this.totalTime = new AtomicLong();
+        this.totalSources = new AtomicLong();
+        this.processor = new WorkflowProcessor<Job>(
+                "surrogateIndexing",
+                "This indexes the documents read from the files in the surrogates input directory. The documents of all files being read share this pool.",
+                childnames,
+                new WorkflowTask<Job>() {
+                    @Override
+                    public Job process(final Job job) throws Exception {
+                        boolean success = false;
+                        try {
+                            success = indexer.index(job.surrogate);
+                        } catch (final Throwable e) {
+                            log.warn("failed to index a surrogate document from " + job.source.getName() + ": " + e.getMessage());
+                        } finally {
+                            job.source.done(success);
+                        }
+                        return null;
+                    }
+                },
+                Math.max(100, concurrency * 20),
+                null,
+                Math.max(1, concurrency));
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.fileReaders = Executors.newFixedThreadPool(this.maxFiles, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, SurrogateIngestion.class.getSimpleName() + ".reader-" + threadCount.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * Start reading a file in a reader thread, when the maximum number of files read at the same time is not reached
+     * and this file is not already being read.
+     * @param fileName the name of the file
+     * @param reader the task reading the file and calling {@link #open(String)}, {@link #submit(Source, Object)} and {@link #finish(Source)}
+     * @return true when the file reading has been started
+     */
+    public synchronized boolean submitFile(final String fileName, final Runnable reader) {
+        if (this.filesInProgress.size() >= this.maxFiles || this.filesInProgress.contains(fileName)) return false;
+        this.filesInProgress.add(fileName);
+        try {
+            this.fileReaders.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reader.run();
+                    } finally {
+                        SurrogateIngestion.this.filesInProgress.remove(fileName);
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            this.filesInProgress.remove(fileName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the names of the files being read
+     */
+    public Collection<String> filesInProgress() {
+        return new ArrayList<String>(this.filesInProgress);
+    }
+
+    /**
+     * Start tracking a new source
+     * @param name the name of the source
+     * @return the source to submit documents to
+     */
+    public Source open(final String name) {
+        final Source source = new Source(name);
+        this.activeSources.add(source);
+        return source;
+    }
+
+    /**
+     * Submit a document to the indexer threads. Waits when the indexers queue is full.
+     * @param source the source of the document
+     * @param surrogate the document
+     */
+    public void submit(final Source source, final Object surrogate) {
+        source.pending.incrementAndGet();
+        this.processor.enQueue(new Job(surrogate, source));
+    }
+
+    /**
+     * Wait until all documents submitted from a source are indexed, then stop tracking it.
+     * @param source a source with all its documents submitted
+     */
+    public void finish(final Source source) {
+        synchronized (source) {
+            while (source.pending.get() > 0) {
+                try {
+                    source.wait(1000);
+                } catch (final InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        source.endTime = System.currentTimeMillis();
+        this.activeSources.remove(source);
+        this.totalIndexed.addAndGet(source.getIndexed());
+        this.totalTime.addAndGet(source.getRunningTime());
+        this.totalSources.incrementAndGet();
+        log.info("indexed " + source.getIndexed() + " documents from " + source.getName() + " (" + source.getDocsPerSecond() + " docs/s)");
+    }
+
+    /**
+     * @return the sources currently read or indexed
+     */
+    public Collection<Source> activeSources() {
+        return new ArrayList<Source>(this.activeSources);
+    }
+
+    /**
+     * @return the number of documents indexed from finished sources
+     */
+    public long totalIndexed() {
+        return this.totalIndexed.get();
+    }
+
+    /**
+     * @return the number of finished sources
+     */
+    public long totalSources() {
+        return this.totalSources.get();
+    }
+
+    /**
+     * @return the current number of documents indexed per second, all active sources together
+     */
+    public int docsPerSecond() {
+        int sum = 0;
+        for (final Source source: this.activeSources) sum += source.getDocsPerSecond();
+        return sum;
+    }
+
+    /**
+     * @return the average number of documents indexed per second from a finished source
+     */
+    public int averageDocsPerSecond() {
+        return (int) (this.totalIndexed.get() * 1000L / Math.max(1000L, this.totalTime.get()));
+    }
+
+    /**
+     * Stop the reader threads and the indexer threads
+     */
+    public void shutdown() {
+        this.fileReaders.shutdownNow();
+        this.processor.shutdown();
+    }
+
+}
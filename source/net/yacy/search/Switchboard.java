@@ -39,8 +39,6 @@ package net.yacy.search;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -90,6 +88,7 @@ import java.util.zip.ZipInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
@@ -120,6 +119,7 @@ import net.yacy.cora.federate.solr.connector.SolrConnector.LoadTimeURL;
 import net.yacy.cora.federate.solr.instance.EmbeddedInstance;
 import net.yacy.cora.federate.solr.instance.RemoteInstance;
 import net.yacy.cora.federate.yacy.CacheStrategy;
+import net.yacy.cora.language.synonyms.SynonymLibrary;
 import net.yacy.cora.lod.vocabulary.Tagging;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.order.Digest;
@@ -152,6 +152,7 @@ import net.yacy.crawler.data.ResultURLs.EventOrigin;
 import net.yacy.crawler.data.Transactions;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
+import net.yacy.crawler.retrieval.StreamResponse;
 import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.data.BlogBoard;
 import net.yacy.data.BlogBoardComments;
@@ -307,6 +308,7 @@ public final class Switchboard extends serverSwitch {
     public WorkflowProcessor<IndexingQueueEntry> indexingCondensementProcessor;
     public WorkflowProcessor<IndexingQueueEntry> indexingAnalysisProcessor;
     public WorkflowProcessor<IndexingQueueEntry> indexingStorageProcessor;
+    public SurrogateIngestion surrogateIngestion;
 
     public RobotsTxtConfig robotstxtConfig = null;
     public boolean useTailCache;
@@ -577,13 +579,18 @@ public final class Switchboard extends serverSwitch {
         // initialize index
         ReferenceContainer.maxReferences = getConfigInt("index.maxReferences", 0);
         final File segmentsPath = new File(new File(indexPath, networkName), "SEGMENTS");
-        try {this.index = new Segment(this.log, segmentsPath, archivePath, solrCollectionConfigurationWork, solrWebgraphConfigurationWork);} catch (IOException e) {ConcurrentLog.logException(e);}
+        try {this.index = new Segment(this.log, segmentsPath, archivePath, solrCollectionConfigurationWork, solrWebgraphConfigurationWork, getConfigBool(SwitchboardConstants.INDEX_FIRSTSEEN_MAPPED, false));} catch (IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) try {
             this.index.connectRWI(wordCacheMaxCount, fileSizeMax);
         } catch (final IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_CITATION, true)) try {
             this.index.connectCitation(wordCacheMaxCount, fileSizeMax);
         } catch (final IOException e) {ConcurrentLog.logException(e);}
+        if (this.getConfigBool(SwitchboardConstants.POSTPROCESSING_JOURNAL, true)) try {
+            this.index.connectPostprocessingJournal();
+        } catch (final IOException e) {ConcurrentLog.logException(e);} else {
+            this.index.disconnectPostprocessingJournal();
+        }
 		if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_FULLTEXT,
 				SwitchboardConstants.CORE_SERVICE_FULLTEXT_DEFAULT)) {
             try {this.index.fulltext().connectLocalSolr();} catch (final IOException e) {ConcurrentLog.logException(e);}
@@ -1095,6 +1102,20 @@ public final class Switchboard extends serverSwitch {
                 this.indexingCondensementProcessor,
                 WorkflowProcessor.availableCPU);
 
+        this.surrogateIngestion = new SurrogateIngestion(
+                new SurrogateIngestion.Indexer() {
+
+                    @Override
+                    public boolean index(final Object surrogate) throws Exception {
+                        return indexSurrogate(surrogate);
+                    }
+                },
+                new String[] {
+                    "condenseDocument", "RWI/Cache/Collections"
+                },
+                WorkflowProcessor.availableCPU,
+                getConfigInt(SwitchboardConstants.SURROGATES_MAX_FILES, SwitchboardConstants.SURROGATES_MAX_FILES_DEFAULT));
+
         // deploy busy threads
         this.log.config("Starting Threads");
         MemoryControl.gc(10000, "plasmaSwitchboard, help for profiler"); // help for profiler - thq
@@ -1283,14 +1304,14 @@ public final class Switchboard extends serverSwitch {
 	 * Initialize outgoing connections pools with user defined settings
 	 */
 	private void initOutgoingConnectionPools() {
-		int generalPoolMaxTotal = getConfigInt(SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL,
+		initOutgoingConnectionPool(HTTPClient.Pool.GENERAL, SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL,
 				SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL_DEFAULT);
-		if (generalPoolMaxTotal <= 0) {
-			/* Fix eventually wrong value from the config file */
-			generalPoolMaxTotal = SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL_DEFAULT;
-			setConfig(SwitchboardConstants.HTTP_OUTGOING_POOL_GENERAL_MAX_TOTAL, generalPoolMaxTotal);
-		}
-		HTTPClient.initPoolMaxConnections(HTTPClient.CONNECTION_MANAGER, generalPoolMaxTotal);
+		initOutgoingConnectionPool(HTTPClient.Pool.CRAWLER, SwitchboardConstants.HTTP_OUTGOING_POOL_CRAWLER_MAX_TOTAL,
+				SwitchboardConstants.HTTP_OUTGOING_POOL_CRAWLER_MAX_TOTAL_DEFAULT);
+		initOutgoingConnectionPool(HTTPClient.Pool.PEERS, SwitchboardConstants.HTTP_OUTGOING_POOL_PEERS_MAX_TOTAL,
+				SwitchboardConstants.HTTP_OUTGOING_POOL_PEERS_MAX_TOTAL_DEFAULT);
+		initOutgoingConnectionPool(HTTPClient.Pool.PROXY, SwitchboardConstants.HTTP_OUTGOING_POOL_PROXY_MAX_TOTAL,
+				SwitchboardConstants.HTTP_OUTGOING_POOL_PROXY_MAX_TOTAL_DEFAULT);
 
 		int remoteSolrPoolMaxTotal = getConfigInt(SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL,
 				SwitchboardConstants.HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL_DEFAULT);
@@ -1301,6 +1322,22 @@ public final class Switchboard extends serverSwitch {
 		}
 		RemoteInstance.initPoolMaxConnections(RemoteInstance.CONNECTION_MANAGER, remoteSolrPoolMaxTotal);
 	}
+	
+	/**
+	 * Initialize an outgoing connections pool of the HTTP client with user defined settings
+	 * @param pool the pool partition
+	 * @param maxTotalKey the key of the maximum total connections setting
+	 * @param maxTotalDefault the default maximum total connections
+	 */
+	private void initOutgoingConnectionPool(final HTTPClient.Pool pool, final String maxTotalKey, final int maxTotalDefault) {
+		int maxTotal = getConfigInt(maxTotalKey, maxTotalDefault);
+		if (maxTotal <= 0) {
+			/* Fix eventually wrong value from the config file */
+			maxTotal = maxTotalDefault;
+			setConfig(maxTotalKey, maxTotal);
+		}
+		HTTPClient.initPoolMaxConnections(HTTPClient.getConnectionManager(pool), maxTotal);
+	}
 
     final String getSysinfo() {
         return getConfig(SwitchboardConstants.NETWORK_NAME, "") + (isRobinsonMode() ? "-" : "/") + getConfig(SwitchboardConstants.NETWORK_DOMAIN, "global");
@@ -1509,9 +1546,10 @@ public final class Switchboard extends serverSwitch {
                 this.exceed134217727);
             final File segmentsPath = new File(new File(indexPrimaryPath, networkName), "SEGMENTS");
             final File archivePath = getDataPath(SwitchboardConstants.INDEX_ARCHIVE_PATH, SwitchboardConstants.INDEX_ARCHIVE_DEFAULT);
-            this.index = new Segment(this.log, segmentsPath, archivePath, collectionConfiguration, webgraphConfiguration);
+            this.index = new Segment(this.log, segmentsPath, archivePath, collectionConfiguration, webgraphConfiguration, getConfigBool(SwitchboardConstants.INDEX_FIRSTSEEN_MAPPED, false));
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) this.index.connectRWI(wordCacheMaxCount, fileSizeMax);
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_CITATION, true)) this.index.connectCitation(wordCacheMaxCount, fileSizeMax);
+            if (this.getConfigBool(SwitchboardConstants.POSTPROCESSING_JOURNAL, true)) this.index.connectPostprocessingJournal(); else this.index.disconnectPostprocessingJournal();
 			if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_FULLTEXT,
 					SwitchboardConstants.CORE_SERVICE_FULLTEXT_DEFAULT)) {
                 this.index.fulltext().connectLocalSolr();
@@ -1997,6 +2035,7 @@ public final class Switchboard extends serverSwitch {
         this.crawlStacker.close();
         this.crawlQueues.close();
         this.robots.close();
+        this.surrogateIngestion.shutdown();
         this.indexingDocumentProcessor.shutdown();
         this.indexingCondensementProcessor.shutdown();
         this.indexingAnalysisProcessor.shutdown();
@@ -2047,6 +2086,99 @@ public final class Switchboard extends serverSwitch {
     public String toIndexer(final Response response) {
         assert response != null;
 
+        final String noIndexReason = checkIndexing(response);
+        if (noIndexReason != null) return noIndexReason;
+
+        this.indexingDocumentProcessor.enQueue(new IndexingQueueEntry(
+            response,
+            null,
+            null));
+        return null;
+    }
+
+    /**
+     * Index a response in the current thread: the parsing, condensing, web structure analysis and storage
+     * steps run here instead of in the indexing queues. This is used by bulk importers running
+     * their own pool of worker threads, to not compete with the crawler for the indexing queues.
+     *
+     * @param response
+     * @return null if successful, an error message otherwise
+     */
+    public String indexDirectly(final Response response) {
+        final String noIndexReason = checkIndexing(response);
+        if (noIndexReason != null) return noIndexReason;
+
+        IndexingQueueEntry entry = parseDocument(new IndexingQueueEntry(response, null, null));
+        if (entry == null) return "parser failure"; // already pushed to the error-db by parseDocument
+        entry = condenseDocument(entry);
+        entry = webStructureAnalysis(entry);
+        storeDocumentIndex(entry);
+        return null;
+    }
+
+    /**
+     * Index already parsed documents in the current thread, like {@link #indexDirectly(Response)} but
+     * without the parsing step. This is used by bulk importers which create the documents themselves.
+     * The response is checked against the same indexing rules as a loaded response.
+     *
+     * @param response the response of the documents, giving the url, the mime type and the crawl profile
+     * @param documents the parsed documents
+     * @return null if successful, an error message otherwise
+     */
+    public String indexDirectly(final Response response, final Document[] documents) {
+        final String noIndexReason = checkIndexing(response);
+        if (noIndexReason != null) return noIndexReason;
+        if (documents == null || documents.length == 0) return "no documents";
+        IndexingQueueEntry entry = condenseDocument(new IndexingQueueEntry(response, documents, null));
+        entry = webStructureAnalysis(entry);
+        storeDocumentIndex(entry);
+        return null;
+    }
+
+    /**
+     * Pass a streamed response to the indexer: the content is parsed now, while it is downloaded, and the parsed
+     * documents are then handed over to the condenser. Parsers which do not support parsing within limits
+     * read the stream within the maximum file size; the content is only buffered by the TextParser when
+     * several parsers must be tried on it.
+     * The content stream is closed in any case.
+     *
+     * @param streamResponse the response with its open content stream
+     * @return null if successful, an error message otherwise
+     */
+    public String toIndexer(final StreamResponse streamResponse) {
+        final Response response = streamResponse.getResponse();
+        try {
+            final String noIndexReason = checkIndexing(response);
+            if (noIndexReason != null) return noIndexReason;
+
+            if (streamResponse.getContentStream() == null) {
+                // no content stream: use the normal indexing queue
+                this.indexingDocumentProcessor.enQueue(new IndexingQueueEntry(response, null, null));
+                return null;
+            }
+
+            response.updateStatus(Response.QUEUE_STATE_PARSING);
+            final Document[] documents = parseDocument(response, streamResponse.getContentStream());
+            if (documents == null) return "parser failure$"; // already pushed to the error-db by parseDocument
+            this.indexingCondensementProcessor.enQueue(new IndexingQueueEntry(response, documents, null));
+            return null;
+        } catch (final InterruptedException e) {
+            return "interrupted";
+        } finally {
+            try {
+                streamResponse.close();
+            } catch (final IOException e) {
+                this.log.warn("cannot close content stream of " + response.url().toNormalform(true));
+            }
+        }
+    }
+
+    /**
+     * check if the document should be indexed based on proxy/crawler rules
+     * @param response the loaded response
+     * @return null if the response may be indexed, an error message otherwise
+     */
+    private String checkIndexing(final Response response) {
         // get next queue entry and start a queue processing
         if ( response == null ) {
             if ( this.log.isFine() ) {
@@ -2097,11 +2229,6 @@ public final class Switchboard extends serverSwitch {
             // finish this entry
             return "not allowed: " + noIndexReason;
         }
-
-        this.indexingDocumentProcessor.enQueue(new IndexingQueueEntry(
-            response,
-            null,
-            null));
         return null;
     }
 
@@ -2121,15 +2248,8 @@ public final class Switchboard extends serverSwitch {
                 zis = new ZipInputStream(is);
                 ZipEntry entry;
                 while ( (entry = zis.getNextEntry()) != null ) {
-                    int size;
-                    final byte[] buffer = new byte[2048];
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    while ( (size = zis.read(buffer, 0, buffer.length)) != -1 ) {
-                        baos.write(buffer, 0, size);
-                    }
-                    baos.flush();
-                    processSurrogate(new ByteArrayInputStream(baos.toByteArray()), entry.getName());
-                    baos.close();
+                    // read the entry directly from the zip stream, which must stay open for the next entries
+                    processSurrogate(new CloseShieldInputStream(zis), entry.getName());
                     if (shallTerminate()) break;
                 }
             } catch (final IOException e ) {
@@ -2165,74 +2285,15 @@ public final class Switchboard extends serverSwitch {
                 InputStream is = new BufferedInputStream(fis);
                 br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
                 String line;
-                while ((line = br.readLine()) != null) {
-                    JSONTokener jt = new JSONTokener(line);
-                    JSONObject json = new JSONObject(jt);
-                    if ((json.has("index") && json.length() == 1) || json.length() == 0) continue;
-                    SolrInputDocument surrogate = new SolrInputDocument();
-                    for (String key: json.keySet()) {
-                        Object o = json.get(key);
-                        if (o instanceof JSONArray) {
-                            // transform this into a list
-                            JSONArray a = (JSONArray) o;
-                            // patch altered yacy grid schema (yacy grid does not split url lists into protocol and urlstub)
-                            if (key.equals("inboundlinks_sxt")) {
-                                // compute inboundlinks_urlstub_sxt and inboundlinks_protocol_sxt
-                                List<Object> urlstub = new ArrayList<>();
-                                List<Object> protocol = new ArrayList<>();
-                                for (int i = 0; i < a.length(); i++) {
-                                    AnchorURL b = new AnchorURL((String) a.get(i));
-                                    urlstub.add(b.urlstub(true, true));
-                                    protocol.add(b.getProtocol());
-                                }
-                                CollectionSchema.inboundlinks_urlstub_sxt.add(surrogate, urlstub);
-                                CollectionSchema.inboundlinks_protocol_sxt.add(surrogate, protocol);
-                            } else if (key.equals("outboundlinks_sxt")) {
-                                // compute outboundlinks_urlstub_sxt and outboundlinks_protocol_sxt
-                                List<Object> urlstub = new ArrayList<>();
-                                List<Object> protocol = new ArrayList<>();
-                                for (int i = 0; i < a.length(); i++) {
-                                    AnchorURL b = new AnchorURL((String) a.get(i));
-                                    urlstub.add(b.urlstub(true, true));
-                                    protocol.add(b.getProtocol());
-                                }
-                                CollectionSchema.outboundlinks_urlstub_sxt.add(surrogate, urlstub);
-                                CollectionSchema.outboundlinks_protocol_sxt.add(surrogate, protocol);
-                            } else if (key.equals("images_sxt")) {
-                                // compute images_urlstub_sxt and images_protocol_sxt
-                                List<Object> urlstub = new ArrayList<>();
-                                List<Object> protocol = new ArrayList<>();
-                                for (int i = 0; i < a.length(); i++) {
-                                    AnchorURL b = new AnchorURL((String) a.get(i));
-                                    urlstub.add(b.urlstub(true, true));
-                                    protocol.add(b.getProtocol());
-                                }
-                                CollectionSchema.images_urlstub_sxt.add(surrogate, urlstub);
-                                CollectionSchema.images_protocol_sxt.add(surrogate, protocol);
-                            } else {
-                                List<Object> list = new ArrayList<>();
-                                for (int i = 0; i < a.length(); i++) list.add(a.get(i));
-                                CollectionSchema schema = CollectionSchema.valueOf(key);
-                                schema.add(surrogate, list);
-                            }
-                        } else {
-                            // patch yacy grid altered schema (yacy grid does not have IDs any more, but they can be re-computed here)
-                            if (key.equals("url_s")) {
-                                DigestURL durl = new DigestURL(o.toString());
-                                String id = ASCII.String(durl.hash());
-                                surrogate.setField(CollectionSchema.sku.getSolrFieldName(), durl.toNormalform(true));
-                                surrogate.setField(CollectionSchema.id.getSolrFieldName(), id);
-                                surrogate.setField(CollectionSchema.host_id_s.getSolrFieldName(), id.substring(6));
-                            } else if (key.equals("referrer_url_s")) {
-                                DigestURL durl = new DigestURL(o.toString());
-                                String id = ASCII.String(durl.hash());
-                                surrogate.setField(CollectionSchema.referrer_id_s.getSolrFieldName(), id);
-                            } else {
-                                surrogate.setField(key, o.toString());
-                            }
-                        }
+                final SurrogateIngestion.Source source = this.surrogateIngestion.open(s);
+                try {
+                    while ((line = br.readLine()) != null) {
+                        // the lines are parsed by the indexer threads
+                        if (!line.isEmpty()) this.surrogateIngestion.submit(source, line);
+                        if (shallTerminate()) break;
                     }
-                    Switchboard.this.index.putDocument(surrogate);
+                } finally {
+                    this.surrogateIngestion.finish(source);
                 }
                 br.close();
                 br = null;
@@ -2303,88 +2364,187 @@ public final class Switchboard extends serverSwitch {
         return moved;
     }
 
-    public void processSurrogate(final InputStream is, final String name) throws IOException {
-        final int concurrency = Runtime.getRuntime().availableProcessors();
+    /**
+     * Convert a line of a jsonlist or flatjson surrogate file to a Solr document
+     * @param line a json object in one line
+     * @return the Solr document or null when the line does not contain a document
+     * @throws MalformedURLException when an url in the document is malformed
+     */
+    private static SolrInputDocument jsonToSurrogate(final String line) throws MalformedURLException {
+        JSONTokener jt = new JSONTokener(line);
+        JSONObject json = new JSONObject(jt);
+        if ((json.has("index") && json.length() == 1) || json.length() == 0) return null;
+        SolrInputDocument surrogate = new SolrInputDocument();
+        for (String key: json.keySet()) {
+            Object o = json.get(key);
+            if (o instanceof JSONArray) {
+                // transform this into a list
+                JSONArray a = (JSONArray) o;
+                // patch altered yacy grid schema (yacy grid does not split url lists into protocol and urlstub)
+                if (key.equals("inboundlinks_sxt")) {
+                    // compute inboundlinks_urlstub_sxt and inboundlinks_protocol_sxt
+                    List<Object> urlstub = new ArrayList<>();
+                    List<Object> protocol = new ArrayList<>();
+                    for (int i = 0; i < a.length(); i++) {
+                        AnchorURL b = new AnchorURL((String) a.get(i));
+                        urlstub.add(b.urlstub(true, true));
+                        protocol.add(b.getProtocol());
+                    }
+                    CollectionSchema.inboundlinks_urlstub_sxt.add(surrogate, urlstub);
+                    CollectionSchema.inboundlinks_protocol_sxt.add(surrogate, protocol);
+                } else if (key.equals("outboundlinks_sxt")) {
+                    // compute outboundlinks_urlstub_sxt and outboundlinks_protocol_sxt
+                    List<Object> urlstub = new ArrayList<>();
+                    List<Object> protocol = new ArrayList<>();
+                    for (int i = 0; i < a.length(); i++) {
+                        AnchorURL b = new AnchorURL((String) a.get(i));
+                        urlstub.add(b.urlstub(true, true));
+                        protocol.add(b.getProtocol());
+                    }
+                    CollectionSchema.outboundlinks_urlstub_sxt.add(surrogate, urlstub);
+                    CollectionSchema.outboundlinks_protocol_sxt.add(surrogate, protocol);
+                } else if (key.equals("images_sxt")) {
+                    // compute images_urlstub_sxt and images_protocol_sxt
+                    List<Object> urlstub = new ArrayList<>();
+                    List<Object> protocol = new ArrayList<>();
+                    for (int i = 0; i < a.length(); i++) {
+                        AnchorURL b = new AnchorURL((String) a.get(i));
+                        urlstub.add(b.urlstub(true, true));
+                        protocol.add(b.getProtocol());
+                    }
+                    CollectionSchema.images_urlstub_sxt.add(surrogate, urlstub);
+                    CollectionSchema.images_protocol_sxt.add(surrogate, protocol);
+                } else {
+                    List<Object> list = new ArrayList<>();
+                    for (int i = 0; i < a.length(); i++) list.add(a.get(i));
+                    CollectionSchema schema = CollectionSchema.valueOf(key);
+                    schema.add(surrogate, list);
+                }
+            } else {
+                // patch yacy grid altered schema (yacy grid does not have IDs any more, but they can be re-computed here)
+                if (key.equals("url_s")) {
+                    DigestURL durl = new DigestURL(o.toString());
+                    String id = ASCII.String(durl.hash());
+                    surrogate.setField(CollectionSchema.sku.getSolrFieldName(), durl.toNormalform(true));
+                    surrogate.setField(CollectionSchema.id.getSolrFieldName(), id);
+                    surrogate.setField(CollectionSchema.host_id_s.getSolrFieldName(), id.substring(6));
+                } else if (key.equals("referrer_url_s")) {
+                    DigestURL durl = new DigestURL(o.toString());
+                    String id = ASCII.String(durl.hash());
+                    surrogate.setField(CollectionSchema.referrer_id_s.getSolrFieldName(), id);
+                } else {
+                    surrogate.setField(key, o.toString());
+                }
+            }
+        }
+        return surrogate;
+    }
 
+    /**
+     * Read the surrogate documents from a stream and pass them to the indexer threads of the surrogate ingestion
+     * service. Returns when all documents have been indexed.
+     * @param is the surrogate xml stream
+     * @param name the name of the surrogate source
+     */
+    public void processSurrogate(final InputStream is, final String name) throws IOException {
         // start reader thread
-        final SurrogateReader reader = new SurrogateReader(is, 100, this.crawlStacker, this.index.fulltext().getDefaultConfiguration(), concurrency);
+        final SurrogateReader reader = new SurrogateReader(is, 100, this.crawlStacker, this.index.fulltext().getDefaultConfiguration(), 1);
         final Thread readerThread = new Thread(reader, name);
-        readerThread.setPriority(Thread.MAX_PRIORITY); // we must have maximum prio here because this thread feeds the other threads. It must always be ahead of them.
         readerThread.start();
-        
-        // start indexer threads
+
+        // pass the surrogates to the shared indexer threads
         assert this.crawlStacker != null;
-        Thread[] indexer = new Thread[concurrency];
-        for (int t = 0; t < concurrency; t++) {
-            indexer[t] = new Thread("Switchboard.processSurrogate-" + t) {
-                @Override
-                public void run() {
-                    VocabularyScraper scraper = new VocabularyScraper();
-                    Object surrogateObj;
-                    while ((surrogateObj = reader.take()) != SurrogateReader.POISON_DOCUMENT ) {
-                        assert surrogateObj != null;
-                        /* When parsing a full-text Solr xml data dump Surrogate reader produces SolrInputDocument instances */
-                        if(surrogateObj instanceof SolrInputDocument) {
-                        	SolrInputDocument surrogate = (SolrInputDocument)surrogateObj;
-                        	try {
-                        		// enrich the surrogate
-                        		final String id = (String) surrogate.getFieldValue(CollectionSchema.id.getSolrFieldName());
-                        		final String text = (String) surrogate.getFieldValue(CollectionSchema.text_t.getSolrFieldName());
-                        		final DigestURL rootURL = new DigestURL((String) surrogate.getFieldValue(CollectionSchema.sku.getSolrFieldName()), ASCII.getBytes(id));
-                        		if (text != null && text.length() > 0 && id != null ) {
-                        			// run the tokenizer on the text to get vocabularies and synonyms
-                        			final Tokenizer tokenizer = new Tokenizer(rootURL, text, LibraryProvider.dymLib, true, scraper);
-                        			final Map<String, Set<String>> facets = Document.computeGenericFacets(tokenizer.tags());
-                        			// overwrite the given vocabularies and synonyms with new computed ones
-                        			Switchboard.this.index.fulltext().getDefaultConfiguration().enrich(surrogate, tokenizer.synonyms(), facets);
-                        		}
-                        		
-                            	/* Update the ResultURLS stack for monitoring */
-                        		final byte[] myPeerHash = ASCII.getBytes(peers.mySeed().hash);
-                                ResultURLs.stack(
-                                        ASCII.String(rootURL.hash()),
-                                        rootURL.getHost(),
-                                        myPeerHash,
-                                        myPeerHash,
-                                        EventOrigin.SURROGATES);
-                        	} catch (MalformedURLException e) {
-                        		ConcurrentLog.logException(e);
-                        	}
-                        	// write the surrogate into the index
-                        	Switchboard.this.index.putDocument(surrogate);
-                        } else if(surrogateObj instanceof DCEntry) {
-                        	/* When parsing a MediaWiki dump Surrogate reader produces DCEntry instances */
-                            // create a queue entry
-                        	final DCEntry entry = (DCEntry)surrogateObj;
-                            final Document document = entry.document();
-                            final Request request =
-                                new Request(
-                                    ASCII.getBytes(peers.mySeed().hash),
-                                    entry.getIdentifier(true),
-                                    null,
-                                    "",
-                                    entry.getDate(),
-                                    crawler.defaultSurrogateProfile.handle(),
-                                    0,
-                                    crawler.defaultSurrogateProfile.timezoneOffset());
-                            final Response response = new Response(request, null, null, crawler.defaultSurrogateProfile, false, null);
-                            final IndexingQueueEntry queueEntry =
-                                new IndexingQueueEntry(response, new Document[] {document}, null);
-                
-                            indexingCondensementProcessor.enQueue(queueEntry);
-                        }
-                        if (shallTerminate()) break;
-                    }
-                }
-            };
-            indexer[t].setPriority(5);
-            indexer[t].start();
+        final SurrogateIngestion.Source source = this.surrogateIngestion.open(name);
+        try {
+            Object surrogateObj;
+            while ((surrogateObj = reader.take()) != SurrogateReader.POISON_DOCUMENT) {
+                assert surrogateObj != null;
+                this.surrogateIngestion.submit(source, surrogateObj);
+                if (shallTerminate()) break;
+            }
+        } finally {
+            // wait for the indexing of all documents from this source
+            this.surrogateIngestion.finish(source);
         }
-        
-        // wait for termination of indexer threads
-        for (int t = 0; t < concurrency; t++) {
-            try {indexer[t].join();} catch (InterruptedException e) {}
+    }
+
+    /**
+     * Index one surrogate document, as read from a surrogate file.
+     * @param surrogateObj a SolrInputDocument from a full-text Solr xml dump, a DCEntry from a MediaWiki dump
+     * or a line of a jsonlist or flatjson file
+     * @return true when the document has been indexed or passed to the indexing queue
+     */
+    private boolean indexSurrogate(final Object surrogateObj) throws IOException {
+        if (surrogateObj instanceof String) {
+            /* A line of a jsonlist or flatjson file */
+            final SolrInputDocument surrogate = jsonToSurrogate((String) surrogateObj);
+            if (surrogate == null) return false;
+            this.index.putDocument(surrogate);
+            return true;
+        }
+        /* When parsing a full-text Solr xml data dump Surrogate reader produces SolrInputDocument instances */
+        if(surrogateObj instanceof SolrInputDocument) {
+        	SolrInputDocument surrogate = (SolrInputDocument)surrogateObj;
+        	try {
+        		// enrich the surrogate
+        		final String id = (String) surrogate.getFieldValue(CollectionSchema.id.getSolrFieldName());
+        		final String text = (String) surrogate.getFieldValue(CollectionSchema.text_t.getSolrFieldName());
+        		final DigestURL rootURL = new DigestURL((String) surrogate.getFieldValue(CollectionSchema.sku.getSolrFieldName()), ASCII.getBytes(id));
+        		if (text != null && text.length() > 0 && id != null ) {
+        			final List<String> synonyms;
+        			final Map<String, Set<String>> facets;
+        			if (LibraryProvider.autotagging.isEmpty() && SynonymLibrary.size() == 0) {
+        				// without vocabularies and synonyms the tokenizer would not find anything: don't run it over the text
+        				synonyms = new ArrayList<>(0);
+        				facets = new HashMap<>();
+        			} else {
+        				// run the tokenizer on the text to get vocabularies and synonyms
+        				final Tokenizer tokenizer = new Tokenizer(rootURL, text, LibraryProvider.dymLib, true, new VocabularyScraper());
+        				synonyms = tokenizer.synonyms();
+        				facets = Document.computeGenericFacets(tokenizer.tags());
+        			}
+        			// overwrite the given vocabularies and synonyms with new computed ones
+        			this.index.fulltext().getDefaultConfiguration().enrich(surrogate, synonyms, facets);
+        		}
+
+            	/* Update the ResultURLS stack for monitoring */
+        		final byte[] myPeerHash = ASCII.getBytes(peers.mySeed().hash);
+                ResultURLs.stack(
+                        ASCII.String(rootURL.hash()),
+                        rootURL.getHost(),
+                        myPeerHash,
+                        myPeerHash,
+                        EventOrigin.SURROGATES);
+        	} catch (MalformedURLException e) {
+        		ConcurrentLog.logException(e);
+        	}
+        	// write the surrogate into the index
+        	this.index.putDocument(surrogate);
+        	return true;
+        }
+        if(surrogateObj instanceof DCEntry) {
+        	/* When parsing a MediaWiki dump Surrogate reader produces DCEntry instances */
+            // create a queue entry
+        	final DCEntry entry = (DCEntry)surrogateObj;
+            final Document document = entry.document();
+            final Request request =
+                new Request(
+                    ASCII.getBytes(peers.mySeed().hash),
+                    entry.getIdentifier(true),
+                    null,
+                    "",
+                    entry.getDate(),
+                    crawler.defaultSurrogateProfile.handle(),
+                    0,
+                    crawler.defaultSurrogateProfile.timezoneOffset());
+            final Response response = new Response(request, null, null, crawler.defaultSurrogateProfile, false, null);
+            final IndexingQueueEntry queueEntry =
+                new IndexingQueueEntry(response, new Document[] {document}, null);
+
+            indexingCondensementProcessor.enQueue(queueEntry);
+            return true;
         }
+        return false;
     }
 
     public int surrogateQueueSize() {
@@ -2421,6 +2581,7 @@ public final class Switchboard extends serverSwitch {
             return false;
         }
 
+        boolean submitted = false;
         try {
             // check surrogates
             final String[] surrogatelist = this.surrogatesInPath.list();
@@ -2438,16 +2599,34 @@ public final class Switchboard extends serverSwitch {
                         || surrogate.endsWith(".warc.gz")
                         || surrogate.endsWith(".jsonlist")
                         || surrogate.endsWith(".flatjson") ) {
-                        // read the surrogate file and store entry in index
-                        if ( processSurrogate(surrogate) ) {
-                            return true;
+                        if ( (surrogate.endsWith(".warc") || surrogate.endsWith(".warc.gz")) && warcInProgress() ) {
+                            continue; // warc files use their own worker threads: import them one after the other
+                        }
+                        // read the surrogate file in a reader thread of the ingestion service and store entries in index
+                        if ( this.surrogateIngestion.submitFile(surrogate, new Runnable() {
+                                @Override
+                                public void run() {
+                                    processSurrogate(surrogate);
+                                }
+                            }) ) {
+                            submitted = true;
                         }
                     }
                 }
             }
 
         } catch (final InterruptedException e ) {
-            return false;
+            return submitted;
+        }
+        return submitted;
+    }
+
+    /**
+     * @return true when a warc file of the surrogates input directory is being imported
+     */
+    private boolean warcInProgress() {
+        for (final String fileName: this.surrogateIngestion.filesInProgress()) {
+            if (fileName.endsWith(".warc") || fileName.endsWith(".warc.gz")) return true;
         }
         return false;
     }
@@ -2981,6 +3160,17 @@ public final class Switchboard extends serverSwitch {
     }
 
     private Document[] parseDocument(final Response response) throws InterruptedException {
+        return parseDocument(response, null);
+    }
+
+    /**
+     * Parse a response, stack the embedded anchors to the crawler and return the parsed documents.
+     * @param response the response to parse
+     * @param contentStream an open stream on the response content, or null to parse the content
+     * loaded in the response (or fetched from the cache)
+     * @return the parsed documents or null when parsing failed
+     */
+    private Document[] parseDocument(final Response response, final InputStream contentStream) throws InterruptedException {
         Document[] documents = null;
         //final Pattern rewritePattern = Pattern.compile(";jsessionid.*");
         final EventOrigin processCase = response.processCase(this.peers.mySeed().hash);
@@ -2998,7 +3188,7 @@ public final class Switchboard extends serverSwitch {
 
         // PARSE CONTENT
         final long parsingStartTime = System.currentTimeMillis();
-        if ( response.getContent() == null ) {
+        if ( contentStream == null && response.getContent() == null ) {
             // fetch the document from cache
             response.setContent(Cache.getContent(response.url().hash()));
             if ( response.getContent() == null ) {
@@ -3008,19 +3198,37 @@ public final class Switchboard extends serverSwitch {
                 return null;
             }
         }
-        assert response.getContent() != null;
+        assert contentStream != null || response.getContent() != null;
         try {
             // parse the document
-            documents =
-                TextParser.parseSource(
-                    new AnchorURL(response.url()),
-                    response.getMimeType(),
-                    response.getCharacterEncoding(),
-                    response.profile().ignoreDivClassName(),
-                    response.profile().scraper(),
-                    response.profile().timezoneOffset(),
-                    response.depth(),
-                    response.getContent());
+            if (contentStream != null) {
+                // apply the same size limit as a load into memory would do
+                final int maxFileSize = this.loader.protocolMaxFileSize(response.url());
+                documents =
+                    TextParser.parseWithLimits(
+                        new AnchorURL(response.url()),
+                        response.getMimeType(),
+                        response.getCharacterEncoding(),
+                        response.profile().ignoreDivClassName(),
+                        response.profile().scraper(),
+                        response.profile().timezoneOffset(),
+                        response.depth(),
+                        response.size(),
+                        contentStream,
+                        Integer.MAX_VALUE,
+                        maxFileSize < 0 ? Long.MAX_VALUE : maxFileSize);
+            } else {
+                documents =
+                    TextParser.parseSource(
+                        new AnchorURL(response.url()),
+                        response.getMimeType(),
+                        response.getCharacterEncoding(),
+                        response.profile().ignoreDivClassName(),
+                        response.profile().scraper(),
+                        response.profile().timezoneOffset(),
+                        response.depth(),
+                        response.getContent());
+            }
             if ( documents == null ) {
                 throw new Parser.Failure("Parser returned null.", response.url());
             }
@@ -151,6 +151,12 @@ public final class SwitchboardConstants {
     public static final String SURROGATES_LOADPREREQ           = "70_surrogates_loadprereq";
     public static final String SURROGATES_IDLESLEEP            = "70_surrogates_idlesleep";
     public static final String SURROGATES_BUSYSLEEP            = "70_surrogates_busysleep";
+
+    /** Setting key for the maximum number of surrogate files read at the same time */
+    public static final String SURROGATES_MAX_FILES = "surrogates.maxFiles";
+
+    /** Default maximum number of surrogate files read at the same time */
+    public static final int SURROGATES_MAX_FILES_DEFAULT = 2;
     // 85_scheduler
     /**
      * <p><code>public static final String <strong>SCHEDULER</strong> = "85_scheduler"</code></p>
@@ -329,6 +335,18 @@ public final class SwitchboardConstants {
     /** Default value controlling whether a self-signed certificate is acceptable from a remote Solr instance with authentication credentials. */
     public static final boolean FEDERATED_SERVICE_SOLR_INDEXING_AUTHENTICATED_ALLOW_SELF_SIGNED_DEFAULT = false;
 
+    /** Setting key for the number of documents buffered before a batch write to the Solr index. Zero disables buffering. */
+    public static final String SOLR_INDEXING_BUFFER_SIZE = "solr.indexing.buffer.size";
+
+    /** Default number of documents buffered before a batch write to the Solr index */
+    public static final int SOLR_INDEXING_BUFFER_SIZE_DEFAULT = 100;
+
+    /** Setting key for the maximum time in milliseconds a document stays in the Solr indexing buffer */
+    public static final String SOLR_INDEXING_BUFFER_MAXAGE = "solr.indexing.buffer.maxAge";
+
+    /** Default maximum time in milliseconds a document stays in the Solr indexing buffer */
+    public static final long SOLR_INDEXING_BUFFER_MAXAGE_DEFAULT = 1000;
+
     /** Key of the setting controlling wheter to use or not an embedded Solr instance */
     public static final String CORE_SERVICE_FULLTEXT            = "core.service.fulltext";
     
@@ -348,6 +366,8 @@ public final class SwitchboardConstants {
     public static final String CRAWLER_MAX_SAME_HOST_IN_QUEUE   = "crawler.MaxSameHostInQueue";
     public static final String CRAWLER_FOLLOW_REDIRECTS         = "crawler.http.FollowRedirects"; // ignore the target url and follow to the redirect
     public static final String CRAWLER_RECORD_REDIRECTS         = "crawler.http.RecordRedirects"; // record the ignored redirected page to the index store
+    public static final String CRAWLER_HTTP_STREAMING           = "crawler.http.streaming"; // parse http resources while they are downloaded
+    public static final String CRAWLER_HTTP_STREAMING_MEMORY_THRESHOLD = "crawler.http.streaming.memoryThreshold"; // in-memory part of the cache copy before spilling to disk
     
     public static final String CRAWLER_USER_AGENT_NAME          = "crawler.userAgent.name";
     public static final String CRAWLER_USER_AGENT_STRING        = "crawler.userAgent.string";
@@ -466,6 +486,10 @@ public final class SwitchboardConstants {
     public static final String INDEX_PATH_DEFAULT       = "DATA/INDEX";
     public static final String INDEX_ARCHIVE_PATH       = "indexArchivePath"; // this is a relative path to the application root or an absolute path
     public static final String INDEX_ARCHIVE_DEFAULT    = "DATA/ARCHIVE";
+    /** if true, the first-seen index of the segment is memory-mapped instead of loaded into RAM */
+    public static final String INDEX_FIRSTSEEN_MAPPED   = "index.firstseen.mapped";
+    /** if true, the documents which need postprocessing are recorded in a journal instead of being searched in the index */
+    public static final String POSTPROCESSING_JOURNAL   = "postprocessing.journal";
     /**
      * <p><code>public static final String <strong>LISTS_PATH</strong> = "listsPath"</code></p>
      * <p>Name of the setting specifying the folder beginning from the YaCy-installation's top-folder, where all
@@ -503,6 +527,24 @@ public final class SwitchboardConstants {
     
     /** Default setting value controlling the maximum number of simultaneously open outgoing HTTP connections in the remote Solr pool */
     public static final int HTTP_OUTGOING_POOL_REMOTE_SOLR_MAX_TOTAL_DEFAULT = 100;
+    
+    /** Key of the setting controlling the maximum number of simultaneously open outgoing HTTP connections in the crawler pool (net.yacy.cora.protocol.http.HTTPClient) */
+    public static final String HTTP_OUTGOING_POOL_CRAWLER_MAX_TOTAL = "http.outgoing.pool.crawler.maxTotal";
+    
+    /** Default setting value controlling the maximum number of simultaneously open outgoing HTTP connections in the crawler pool */
+    public static final int HTTP_OUTGOING_POOL_CRAWLER_MAX_TOTAL_DEFAULT = 200;
+    
+    /** Key of the setting controlling the maximum number of simultaneously open outgoing HTTP connections in the peer-to-peer pool (net.yacy.cora.protocol.http.HTTPClient) */
+    public static final String HTTP_OUTGOING_POOL_PEERS_MAX_TOTAL = "http.outgoing.pool.peers.maxTotal";
+    
+    /** Default setting value controlling the maximum number of simultaneously open outgoing HTTP connections in the peer-to-peer pool */
+    public static final int HTTP_OUTGOING_POOL_PEERS_MAX_TOTAL_DEFAULT = 100;
+    
+    /** Key of the setting controlling the maximum number of simultaneously open outgoing HTTP connections in the proxy pool (net.yacy.cora.protocol.http.HTTPClient) */
+    public static final String HTTP_OUTGOING_POOL_PROXY_MAX_TOTAL = "http.outgoing.pool.proxy.maxTotal";
+    
+    /** Default setting value controlling the maximum number of simultaneously open outgoing HTTP connections in the proxy pool */
+    public static final int HTTP_OUTGOING_POOL_PROXY_MAX_TOTAL_DEFAULT = 100;
 
 
     /*
@@ -24,12 +24,20 @@ package net.yacy.search.index;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -37,6 +45,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -66,7 +75,6 @@ import net.yacy.cora.sorting.ReversibleScoreMap;
 import net.yacy.cora.sorting.WeakPriorityBlockingQueue;
 import net.yacy.cora.storage.ZIPReader;
 import net.yacy.cora.storage.ZIPWriter;
-import net.yacy.cora.util.CRIgnoreWriter;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.document.parser.html.CharacterCoding;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
@@ -104,6 +112,7 @@ public final class Fulltext {
     private final CollectionConfiguration collectionConfiguration;
     private final WebgraphConfiguration   webgraphConfiguration;
     private       boolean                 writeWebgraph;
+    private final MetadataCache           metadataCache;
 
     protected Fulltext(final File segmentPath, final File archivePath,
             final CollectionConfiguration collectionConfiguration, final WebgraphConfiguration webgraphConfiguration) {
@@ -115,6 +124,7 @@ public final class Fulltext {
         this.collectionConfiguration = collectionConfiguration;
         this.webgraphConfiguration = webgraphConfiguration;
         this.writeWebgraph = false;
+        this.metadataCache = new MetadataCache();
     }
     
     public void setUseWebgraph(boolean check) {
@@ -264,6 +274,7 @@ public final class Fulltext {
                 this.commit(false);
             }
             this.solrInstances.clearCaches();
+            this.metadataCache.clear();
         } finally {
         	this.solrInstancesLock.unlock();
         }
@@ -279,6 +290,7 @@ public final class Fulltext {
                 }
             }
             this.solrInstances.clearCaches();
+            this.metadataCache.clear();
         } finally {
         	this.solrInstancesLock.unlock();
         }
@@ -349,7 +361,34 @@ public final class Fulltext {
         if (urlHash == null) return null;
         return getMetadata(urlHash, null, 0L);
     }
-    
+
+    /**
+     * Loads the meta data for the url referenced by the WordReference like getMetadata(element), but
+     * takes it from the metadata cache if possible. A document from the cache contains only the fields
+     * listed in MetadataCache.FIELDS; it must be completed with completeMetadata() before other fields are read.
+     *
+     * @param element rwi wordreference
+     * @return URIMetadataNode with at least the cached fields or null if the document does not exist
+     */
+    public URIMetadataNode getCachedMetadata(final WeakPriorityBlockingQueue.Element<WordReferenceVars> element) {
+        if (element == null) return null;
+        WordReferenceVars wre = element.getElement();
+        if (wre == null) return null;
+        URIMetadataNode node = this.metadataCache.get(wre.urlhash(), wre, element.getWeight());
+        if (node != null) return node;
+        return getMetadata(wre.urlhash(), wre, element.getWeight());
+    }
+
+    /**
+     * load all fields of a document which was taken from the metadata cache
+     * @param node a document from getCachedMetadata()
+     * @return the complete document with the word reference and score of the given node, or null if the document was deleted
+     */
+    public URIMetadataNode completeMetadata(final URIMetadataNode node) {
+        if (node == null || !MetadataCache.isPartial(node)) return node;
+        return getMetadata(node.hash(), node.word(), node.score());
+    }
+
     private URIMetadataNode getMetadata(final byte[] urlHash, final WordReferenceVars wre, final long score) {
         String u = ASCII.String(urlHash);
         
@@ -357,6 +396,7 @@ public final class Fulltext {
         try {
             SolrDocument doc = this.getDefaultConnector().getDocumentById(u);
             if (doc != null) {
+                this.metadataCache.put(doc);
             	return new URIMetadataNode(doc, wre, score);
             }
         } catch (final IOException e) {
@@ -378,6 +418,26 @@ public final class Fulltext {
         } catch (final SolrException e) {
             throw new IOException(e.getMessage(), e);
         }
+        this.metadataCache.put(doc);
+        if (MemoryControl.shortStatus()) clearCaches();
+    }
+
+    /**
+     * store a batch of documents with one call to the connector
+     * @param docs the documents
+     * @throws IOException
+     */
+    public void putDocuments(final Collection<SolrInputDocument> docs) throws IOException {
+        if (docs == null || docs.size() == 0) return;
+        SolrConnector connector = this.getDefaultConnector();
+        if (connector == null) return;
+        ConcurrentLog.info("Fulltext", "indexing: " + docs.size() + " documents");
+        try {
+            connector.add(docs);
+        } catch (final SolrException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        for (final SolrInputDocument doc: docs) this.metadataCache.put(doc);
         if (MemoryControl.shortStatus()) clearCaches();
     }
 
@@ -436,6 +496,7 @@ public final class Fulltext {
     public void deleteStaleDomainHashes(final Set<String> hosthashes, Date freshdate) {
         // delete in solr
         Date now = new Date();
+        this.metadataCache.clear();
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_id_s.getSolrFieldName(), hosthashes,
                 (freshdate == null || freshdate.after(now)) ? null :
                 (CollectionSchema.load_date_dt.getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(freshdate) + "]"));
@@ -447,6 +508,7 @@ public final class Fulltext {
     public void deleteStaleDomainNames(final Set<String> hostnames, Date freshdate) {
 
         Date now = new Date();
+        this.metadataCache.clear();
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_s.getSolrFieldName(), hostnames,
                 (freshdate == null || freshdate.after(now)) ? null :
                 (CollectionSchema.load_date_dt.getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(freshdate) + "]"));
@@ -489,6 +551,7 @@ public final class Fulltext {
         Date deleteageDate = new Date(System.currentTimeMillis() - deltaToNow);
         final String collection1Query = (loaddate ? CollectionSchema.load_date_dt : CollectionSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
         final String webgraphQuery = (loaddate ? WebgraphSchema.load_date_dt : WebgraphSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
+        this.metadataCache.clear();
         try {
             this.getDefaultConnector().deleteByQuery(collection1Query);
             if (this.getWebgraphConnector() != null) this.getWebgraphConnector().deleteByQuery(webgraphQuery);
@@ -532,6 +595,7 @@ public final class Fulltext {
      */
     public void remove(final Collection<String> deleteIDs) {
         if (deleteIDs == null || deleteIDs.size() == 0) return;
+        for (String id : deleteIDs) this.metadataCache.remove(ASCII.getBytes(id));
         try {
             this.getDefaultConnector().deleteByIds(deleteIDs);
             if (this.writeWebgraph) { // Webgraph.id is combination of sourceHash+targetHash+hexCounter, to be successful use source_id_s and/or target_id_s
@@ -545,6 +609,15 @@ public final class Fulltext {
         }
     }
 
+    /**
+     * Removes a document from the metadata cache. This is needed when the document is changed
+     * with a direct write to the collection connector, for example by the postprocessing.
+     * @param urlHash the document id
+     */
+    public void invalidateCachedMetadata(final byte[] urlHash) {
+        if (urlHash != null) this.metadataCache.remove(urlHash);
+    }
+
     /**
      * Deletes document with id=urlHash from fulltext index and document with
      * source_id_s=urlHash from webgraph index
@@ -553,6 +626,7 @@ public final class Fulltext {
      */
     public boolean remove(final byte[] urlHash) {
         if (urlHash == null) return false;
+        this.metadataCache.remove(urlHash);
         try {
             String id = ASCII.String(urlHash);
             this.getDefaultConnector().deleteById(id);
@@ -710,7 +784,35 @@ public final class Fulltext {
     }
     
     public final static String yacy_dump_prefix = "yacy_dump_";
+
+    /** the characters of the document ids in index order, used to split the ids into ranges for a parallel export */
+    final static String EXPORT_ID_ORDER = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+    /** the number of documents which are read with one query of a parallel export */
+    private final static int EXPORT_PAGE_SIZE = 1000;
+    /** the maximum number of documents in one part file of a parallel export */
+    private final static int EXPORT_PART_SIZE = 100000;
+
     public Export export(Fulltext.ExportFormat format, String filter, String query, final int maxseconds, File path, boolean dom, boolean text) throws IOException {
+        return export(format, filter, query, maxseconds, path, dom, text, 1);
+    }
+
+    /**
+     * start an export of the index
+     * @param parts the number of id ranges which are exported concurrently to gzipped part files; with 1 a single file is written.
+     * An interrupted parallel export with the same format, filter, query and maxseconds is continued with the time window
+     * of its first start.
+     */
+    public Export export(Fulltext.ExportFormat format, String filter, String query, final int maxseconds, File path, boolean dom, boolean text, final int parts) throws IOException {
+        final String userQuery = query == null ? AbstractSolrConnector.CATCHALL_QUERY : query;
+        
+        if (parts > 1 && !dom) {
+            final File unfinished = unfinishedExport(path, format, filter, userQuery, maxseconds, text, parts);
+            if (unfinished != null) {
+                // the stored query contains the time window of the interrupted export
+                final Properties progress = loadProgress(progressFile(unfinished));
+                if (progress != null) return export(unfinished, filter, progress.getProperty("query"), format, dom, text, parts, userQuery, maxseconds);
+            }
+        }
         
         // modify query according to maxseconds
         long now = System.currentTimeMillis();
@@ -719,9 +821,9 @@ public final class Fulltext {
             String nowstr = new Date(now).toInstant().toString();
             String fromstr = new Date(from).toInstant().toString();
             String dateq = CollectionSchema.load_date_dt.getSolrFieldName() + ":[" + fromstr + " TO " + nowstr + "]";
-            query = query == null || AbstractSolrConnector.CATCHALL_QUERY.equals(query) ? dateq : query + " AND " + dateq; 
+            query = AbstractSolrConnector.CATCHALL_QUERY.equals(userQuery) ? dateq : userQuery + " AND " + dateq; 
         } else {
-            query = query == null? AbstractSolrConnector.CATCHALL_QUERY : query;
+            query = userQuery;
         }
         
         // check the oldest and latest entry in the index for this query
@@ -787,16 +889,25 @@ public final class Fulltext {
         final File f = new File(s);
         f.getParentFile().mkdirs();
         
-        return export(f, filter, query, format, dom, text);
+        return export(f, filter, query, format, dom, text, parts, userQuery, maxseconds);
     }
     
     // export methods
     public Export export(final File f, final String filter, final String query, final ExportFormat format, final boolean dom, final boolean text) {
+        return export(f, filter, query, format, dom, text, 1);
+    }
+
+    public Export export(final File f, final String filter, final String query, final ExportFormat format, final boolean dom, final boolean text, final int parts) {
+        return export(f, filter, query, format, dom, text, parts, query, 0);
+    }
+
+    private Export export(final File f, final String filter, final String query, final ExportFormat format, final boolean dom, final boolean text, final int parts,
+            final String userQuery, final int maxseconds) {
         if ((this.exportthread != null) && (this.exportthread.isAlive())) {
             ConcurrentLog.warn("LURL-EXPORT", "cannot start another export thread, already one running");
             return this.exportthread;
         }
-        this.exportthread = new Export(f, filter, query, format, dom, text);
+        this.exportthread = new Export(f, filter, query, format, dom, text, parts, userQuery, maxseconds);
         this.exportthread.start();
         return this.exportthread;
     }
@@ -810,25 +921,92 @@ public final class Fulltext {
         return this.exportthread;
     }
 
+    /**
+     * compute the id range of a shard of a parallel export
+     * @param shard the number of the shard, 0 &lt;= shard &lt; parts
+     * @param parts the number of shards, at most the length of EXPORT_ID_ORDER
+     * @return the first character of the ids of the shard (inclusive) and of the next shard (exclusive); null if unbounded
+     */
+    static String[] exportShardBounds(final int shard, final int parts) {
+        final int n = EXPORT_ID_ORDER.length();
+        return new String[] {
+            shard == 0 ? null : EXPORT_ID_ORDER.substring(shard * n / parts, shard * n / parts + 1),
+            shard == parts - 1 ? null : EXPORT_ID_ORDER.substring((shard + 1) * n / parts, (shard + 1) * n / parts + 1)
+        };
+    }
+
+    private static File progressFile(final File f) {
+        return new File(f.getAbsolutePath() + ".progress");
+    }
+
+    /**
+     * @return the content of a progress file or null if it cannot be read
+     */
+    private static Properties loadProgress(final File progressFile) {
+        final Properties progress = new Properties();
+        try (final InputStream is = new FileInputStream(progressFile)) {
+            progress.load(is);
+        } catch (final IOException e) {
+            return null;
+        }
+        return progress;
+    }
+
+    /**
+     * find a parallel export which was interrupted
+     * @param query the query as given by the user, without the time window of maxseconds
+     * @return the export file of an export with the same parameters which has a progress file or null
+     */
+    private static File unfinishedExport(final File path, final ExportFormat format, final String filter, final String query, final int maxseconds, final boolean text, final int parts) {
+        final String[] names = path.list();
+        if (names == null) return null;
+        for (final String name: names) {
+            if (!name.startsWith(yacy_dump_prefix) || !name.endsWith(".progress")) continue;
+            final Properties progress = loadProgress(new File(path, name));
+            if (progress == null) continue;
+            if (format.name().equals(progress.getProperty("format")) &&
+                (filter == null ? "" : filter).equals(progress.getProperty("filter")) &&
+                query.equals(progress.getProperty("userquery")) &&
+                Integer.toString(maxseconds).equals(progress.getProperty("maxseconds")) &&
+                Boolean.toString(text).equals(progress.getProperty("text")) &&
+                Integer.toString(parts).equals(progress.getProperty("parts"))) {
+                return new File(path, name.substring(0, name.length() - ".progress".length()));
+            }
+        }
+        return null;
+    }
+
     public class Export extends Thread {
         private final File f;
+        private final String filter;
         private final Pattern pattern;
-        private int count;
-        private String failure, query;
+        private final AtomicInteger count;
+        private volatile String failure;
+        private final String query;
+        private final String userQuery; // the query without the time window of maxseconds, to find an unfinished export
+        private final int maxseconds;
         private final ExportFormat format;
         private final boolean dom, text;
+        private final int parts;
+        private final Properties progress; // the state of a parallel export, persisted in the progress file
 
-        private Export(final File f, final String filter, final String query, final ExportFormat format, final boolean dom, final boolean text) {
+        private Export(final File f, final String filter, final String query, final ExportFormat format, final boolean dom, final boolean text, final int parts,
+                final String userQuery, final int maxseconds) {
         	super("Fulltext.Export");
             // format: 0=text, 1=html, 2=rss/xml
             this.f = f;
+            this.filter = filter;
             this.pattern = filter == null ? null : Pattern.compile(filter);
             this.query = query == null? AbstractSolrConnector.CATCHALL_QUERY : query;
-            this.count = 0;
+            this.userQuery = userQuery == null? this.query : userQuery;
+            this.maxseconds = maxseconds;
+            this.count = new AtomicInteger(0);
             this.failure = null;
             this.format = format;
             this.dom = dom;
             this.text = text;
+            this.parts = dom ? 1 : Math.max(1, Math.min(EXPORT_ID_ORDER.length(), parts));
+            this.progress = new Properties();
             //if ((dom) && (format == 2)) dom = false;
         }
 
@@ -845,34 +1023,17 @@ public final class Fulltext {
                 return;
         	}
         	
+        	if (this.parts > 1) {
+        	    runParallel();
+        	    return;
+        	}
+        	
             try (/* Resources automatically closed by this try-with-resources statement */
                 final OutputStream os = new FileOutputStream(this.format == ExportFormat.solr ? new File(this.f.getAbsolutePath() + ".gz") : this.f);
             	final OutputStream wrappedStream = ((this.format == ExportFormat.solr)) ? new GZIPOutputStream(os, 65536){{def.setLevel(Deflater.BEST_COMPRESSION);}} : os;
                 final PrintWriter pw =  new PrintWriter(new BufferedOutputStream(wrappedStream));
             ) {
-                if (this.format == ExportFormat.html) {
-                    pw.println("<html><head></head><body>");
-                }
-                if (this.format == ExportFormat.rss) {
-                    pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                    pw.println("<?xml-stylesheet type='text/xsl' href='/yacysearch.xsl' version='1.0'?>");
-                    pw.println("<rss version=\"2.0\" xmlns:yacy=\"http://www.yacy.net/\" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\" xmlns:atom=\"http://www.w3.org/2005/Atom\">");
-                    pw.println("<channel>");
-                    pw.println("<title>YaCy Peer-to-Peer - Web-Search URL Export</title>");
-                    pw.println("<description></description>");
-                    pw.println("<link>http://yacy.net</link>");
-                }
-                if (this.format == ExportFormat.solr) {
-                    pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                    pw.println("<response>");
-                    pw.println("<lst name=\"responseHeader\">");
-                    pw.println(" <str format=\"yacy.index.export.solr.xml\"/>");
-                    pw.println(" <lst name=\"params\">");
-                    pw.println("  <str name=\"q\">" + this.query + "</str>");
-                    pw.println(" </lst>");
-                    pw.println("</lst>");
-                    pw.println("<result>");
-                }
+                writeHeader(pw);
                 if (this.dom) {
                     Map<String, ReversibleScoreMap<String>> scores = Fulltext.this.getDefaultConnector().getFacets(this.query + " AND " + CollectionSchema.httpstatus_i.getSolrFieldName() + ":200", 100000000, CollectionSchema.host_s.getSolrFieldName());
                     ReversibleScoreMap<String> stats = scores.get(CollectionSchema.host_s.getSolrFieldName());
@@ -880,74 +1041,17 @@ public final class Fulltext {
                         if (this.pattern != null && !this.pattern.matcher(host).matches()) continue;
                         if (this.format == ExportFormat.text) pw.println(host);
                         if (this.format == ExportFormat.html) pw.println("<a href=\"http://" + host + "\">" + host + "</a><br>");
-                        this.count++;
+                        this.count.incrementAndGet();
                     }
                 } else {
-                    if (this.format == ExportFormat.solr || this.format == ExportFormat.elasticsearch || (this.text && this.format == ExportFormat.text)) {
-                        BlockingQueue<SolrDocument> docs = Fulltext.this.getDefaultConnector().concurrentDocumentsByQuery(this.query + " AND " + CollectionSchema.httpstatus_i.getSolrFieldName() + ":200", null, 0, 100000000, Long.MAX_VALUE, 100, 1, true);
-                        SolrDocument doc;
-                        while ((doc = docs.take()) != AbstractSolrConnector.POISON_DOCUMENT) {
-                            String url = getStringFrom(doc.getFieldValue(CollectionSchema.sku.getSolrFieldName()));
-                            if (this.pattern != null && !this.pattern.matcher(url).matches()) continue;
-                            CRIgnoreWriter sw = new CRIgnoreWriter();
-                            if (this.text) sw.write((String) doc.getFieldValue(CollectionSchema.text_t.getSolrFieldName()));
-                            if (this.format == ExportFormat.solr) EnhancedXMLResponseWriter.writeDoc(sw, doc);
-                            if (this.format == ExportFormat.elasticsearch) FlatJSONResponseWriter.writeDoc(sw, doc);
-                            sw.close();
-                            if (this.format == ExportFormat.elasticsearch) pw.println("{\"index\":{}}");
-                            String d = sw.toString();
-                            pw.println(d);
-                            this.count++;
-                        }
-                    } else {
-                        BlockingQueue<SolrDocument> docs = Fulltext.this.getDefaultConnector().concurrentDocumentsByQuery(this.query + " AND " + CollectionSchema.httpstatus_i.getSolrFieldName() + ":200", null, 0, 100000000, Long.MAX_VALUE, 100, 1, true, 
-                                CollectionSchema.id.getSolrFieldName(), CollectionSchema.sku.getSolrFieldName(), CollectionSchema.title.getSolrFieldName(),
-                                CollectionSchema.author.getSolrFieldName(), CollectionSchema.description_txt.getSolrFieldName(), CollectionSchema.size_i.getSolrFieldName(), CollectionSchema.last_modified.getSolrFieldName());
-                        SolrDocument doc;
-                        String url, hash, title, author, description;
-                        Integer size;
-                        Date date;
-                        while ((doc = docs.take()) != AbstractSolrConnector.POISON_DOCUMENT) {
-                            hash = getStringFrom(doc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
-                            url = getStringFrom(doc.getFieldValue(CollectionSchema.sku.getSolrFieldName()));
-                            title = getStringFrom(doc.getFieldValue(CollectionSchema.title.getSolrFieldName()));
-                            author = getStringFrom(doc.getFieldValue(CollectionSchema.author.getSolrFieldName()));
-                            description = getStringFrom(doc.getFieldValue(CollectionSchema.description_txt.getSolrFieldName()));
-                            size = (Integer) doc.getFieldValue(CollectionSchema.size_i.getSolrFieldName());
-                            date = (Date) doc.getFieldValue(CollectionSchema.last_modified.getSolrFieldName());
-                            if (this.pattern != null && !this.pattern.matcher(url).matches()) continue;
-                            if (this.format == ExportFormat.text) {
-                                pw.println(url);
-                            }
-                            if (this.format == ExportFormat.html) {
-                                if (title != null) pw.println("<a href=\"" + MultiProtocolURL.escape(url) + "\">" + CharacterCoding.unicode2xml(title, true) + "</a>");
-                            }
-                            if (this.format == ExportFormat.rss) {
-                                pw.println("<item>");
-                                if (title != null) pw.println("<title>" + CharacterCoding.unicode2xml(title, true) + "</title>");
-                                pw.println("<link>" + MultiProtocolURL.escape(url) + "</link>");
-                                if (author != null && !author.isEmpty()) pw.println("<author>" + CharacterCoding.unicode2xml(author, true) + "</author>");
-                                if (description != null && !description.isEmpty()) pw.println("<description>" + CharacterCoding.unicode2xml(description, true) + "</description>");
-                                if (date != null) pw.println("<pubDate>" + HeaderFramework.formatRFC1123(date) + "</pubDate>");
-                                if (size != null) pw.println("<yacy:size>" + size.intValue() + "</yacy:size>");
-                                pw.println("<guid isPermaLink=\"false\">" + hash + "</guid>");
-                                pw.println("</item>");
-                            }
-                            this.count++;
-                        }
+                    final Writer docWriter = new ControlCharacterFilterWriter(pw);
+                    BlockingQueue<SolrDocument> docs = Fulltext.this.getDefaultConnector().concurrentDocumentsByQuery(this.query + " AND " + CollectionSchema.httpstatus_i.getSolrFieldName() + ":200", null, 0, 100000000, Long.MAX_VALUE, 100, 1, true, exportFields());
+                    SolrDocument doc;
+                    while ((doc = docs.take()) != AbstractSolrConnector.POISON_DOCUMENT) {
+                        if (writeDocument(pw, docWriter, doc)) this.count.incrementAndGet();
                     }
                 }
-                if (this.format == ExportFormat.html) {
-                    pw.println("</body></html>");
-                }
-                if (this.format == ExportFormat.rss) {
-                    pw.println("</channel>");
-                    pw.println("</rss>");
-                }
-                if (this.format == ExportFormat.solr) {
-                    pw.println("</result>");
-                    pw.println("</response>");
-                }
+                writeFooter(pw);
             } catch (final Exception e) {
             	/* Catch but log any IO exception that can occur on copy, automatic closing or streams creation */
                 ConcurrentLog.logException(e);
@@ -956,6 +1060,301 @@ public final class Fulltext {
             // terminate process
         }
 
+        /**
+         * Export the documents with one thread for each shard of the id range. Each thread pages through its shard
+         * in id order and writes gzipped part files of EXPORT_PART_SIZE documents. The last id of each completed
+         * part is recorded in the progress file, so an interrupted export continues after the last completed parts.
+         */
+        private void runParallel() {
+            final File progressFile = progressFile(this.f);
+            if (progressFile.exists()) {
+                try (final InputStream is = new FileInputStream(progressFile)) {
+                    this.progress.load(is);
+                } catch (final IOException e) {
+                    ConcurrentLog.logException(e);
+                    this.failure = e.getMessage();
+                    return;
+                }
+                ConcurrentLog.info("Fulltext", "continuing export " + this.f.getName());
+            } else {
+                this.progress.setProperty("format", this.format.name());
+                this.progress.setProperty("filter", this.filter == null ? "" : this.filter);
+                this.progress.setProperty("query", this.query);
+                this.progress.setProperty("userquery", this.userQuery);
+                this.progress.setProperty("maxseconds", Integer.toString(this.maxseconds));
+                this.progress.setProperty("text", Boolean.toString(this.text));
+                this.progress.setProperty("parts", Integer.toString(this.parts));
+                try {
+                    storeProgress();
+                } catch (final IOException e) {
+                    ConcurrentLog.logException(e);
+                    this.failure = e.getMessage();
+                    return;
+                }
+            }
+            final List<Shard> shards = new ArrayList<Shard>(this.parts);
+            for (int i = 0; i < this.parts; i++) {
+                final Shard shard = new Shard(i);
+                this.count.addAndGet(shard.shardCount);
+                if (shard.done) continue;
+                shard.start();
+                shards.add(shard);
+            }
+            for (final Shard shard: shards) try {
+                shard.join();
+            } catch (final InterruptedException e) {
+                this.failure = e.getMessage();
+            }
+            if (this.failure == null) progressFile.delete();
+        }
+
+        /**
+         * record the state of a shard in the progress file
+         */
+        private synchronized void checkpoint(final Shard shard) throws IOException {
+            final String key = "shard." + shard.shard + ".";
+            if (shard.last != null) this.progress.setProperty(key + "last", shard.last);
+            this.progress.setProperty(key + "part", Integer.toString(shard.part));
+            this.progress.setProperty(key + "count", Integer.toString(shard.shardCount));
+            this.progress.setProperty(key + "done", Boolean.toString(shard.done));
+            storeProgress();
+        }
+
+        private synchronized void storeProgress() throws IOException {
+            final File progressFile = progressFile(this.f);
+            final File temp = new File(progressFile.getAbsolutePath() + ".tmp");
+            try (final OutputStream os = new FileOutputStream(temp)) {
+                this.progress.store(os, "export progress");
+            }
+            Files.move(temp.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        /**
+         * A range of document ids which is exported by one thread.
+         */
+        private class Shard extends Thread {
+            private final int shard;
+            private final String lowerBound, upperBound; // first character of the ids of this shard and of the next shard; null if unbounded
+            private String last; // the id of the last exported document
+            private int part; // the number of the current part file
+            private int shardCount;
+            private boolean done;
+
+            private Shard(final int shard) {
+                super("Fulltext.Export.Shard-" + shard);
+                this.shard = shard;
+                final String[] bounds = exportShardBounds(shard, Export.this.parts);
+                this.lowerBound = bounds[0];
+                this.upperBound = bounds[1];
+                final String key = "shard." + shard + ".";
+                this.last = Export.this.progress.getProperty(key + "last");
+                this.part = Integer.parseInt(Export.this.progress.getProperty(key + "part", "0"));
+                this.shardCount = Integer.parseInt(Export.this.progress.getProperty(key + "count", "0"));
+                this.done = Boolean.parseBoolean(Export.this.progress.getProperty(key + "done", "false"));
+            }
+
+            /**
+             * @return the query for the documents following the last exported document
+             */
+            private String pageQuery() {
+                final StringBuilder q = new StringBuilder(Export.this.query.length() + 100);
+                q.append("{!cache=false}(").append(Export.this.query).append(") AND ");
+                q.append(CollectionSchema.httpstatus_i.getSolrFieldName()).append(":200 AND ");
+                q.append(CollectionSchema.id.getSolrFieldName()).append(':');
+                if (this.last != null) {
+                    q.append("{\"").append(this.last).append('"');
+                } else if (this.lowerBound != null) {
+                    q.append("[\"").append(this.lowerBound).append('"');
+                } else {
+                    q.append("[*");
+                }
+                q.append(" TO ");
+                if (this.upperBound != null) {
+                    q.append('"').append(this.upperBound).append("\"}");
+                } else {
+                    q.append("*]");
+                }
+                return q.toString();
+            }
+
+            private File partFile() {
+                final String name = Export.this.f.getName();
+                final String ext = "." + Export.this.format.getExt();
+                final String base = name.endsWith(ext) ? name.substring(0, name.length() - ext.length()) : name;
+                return new File(Export.this.f.getParentFile(), base + String.format(".s%02dp%04d", this.shard, this.part) + ext + ".gz");
+            }
+
+            private PrintWriter openPart() throws IOException {
+                final PrintWriter pw = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(partFile()), 65536)), StandardCharsets.UTF_8));
+                writeHeader(pw);
+                return pw;
+            }
+
+            private void closePart(final PrintWriter pw) throws IOException {
+                writeFooter(pw);
+                final boolean error = pw.checkError();
+                pw.close();
+                if (error) throw new IOException("cannot write " + partFile());
+            }
+
+            @Override
+            public void run() {
+                final SolrConnector connector = Fulltext.this.getDefaultConnector();
+                final String[] fields = exportFields();
+                PrintWriter pw = null;
+                try {
+                    pw = openPart();
+                    Writer docWriter = new ControlCharacterFilterWriter(pw);
+                    int partCount = 0;
+                    int retry = 0;
+                    while (Export.this.failure == null) {
+                        final SolrDocumentList page;
+                        try {
+                            page = connector.getDocumentListByQuery(pageQuery(), CollectionSchema.id.getSolrFieldName() + " asc", 0, EXPORT_PAGE_SIZE, fields);
+                        } catch (final SolrException | IOException e) {
+                            // remote Solr may be temporary down, so we wait a bit
+                            if (retry++ < 6) {
+                                Thread.sleep(1000);
+                                continue;
+                            }
+                            throw e;
+                        }
+                        retry = 0;
+                        for (final SolrDocument doc: page) {
+                            this.last = (String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+                            if (writeDocument(pw, docWriter, doc)) {
+                                partCount++;
+                                this.shardCount++;
+                                Export.this.count.incrementAndGet();
+                            }
+                            if (partCount >= EXPORT_PART_SIZE) {
+                                closePart(pw);
+                                pw = null;
+                                this.part++;
+                                checkpoint(this);
+                                pw = openPart();
+                                docWriter = new ControlCharacterFilterWriter(pw);
+                                partCount = 0;
+                            }
+                        }
+                        if (page.size() < EXPORT_PAGE_SIZE) {
+                            // finished
+                            closePart(pw);
+                            pw = null;
+                            if (partCount == 0) partFile().delete(); else this.part++;
+                            this.done = true;
+                            checkpoint(this);
+                            break;
+                        }
+                    }
+                } catch (final Throwable e) {
+                    ConcurrentLog.logException(e);
+                    Export.this.failure = e.getMessage() == null ? e.toString() : e.getMessage();
+                } finally {
+                    // an incomplete part is written again when the export is continued
+                    if (pw != null) pw.close();
+                }
+            }
+        }
+
+        /**
+         * @return the fields which are needed for the export format; an empty array for all fields
+         */
+        private String[] exportFields() {
+            if (this.format == ExportFormat.solr || this.format == ExportFormat.elasticsearch || (this.text && this.format == ExportFormat.text)) return new String[0];
+            return new String[]{CollectionSchema.id.getSolrFieldName(), CollectionSchema.sku.getSolrFieldName(), CollectionSchema.title.getSolrFieldName(),
+                    CollectionSchema.author.getSolrFieldName(), CollectionSchema.description_txt.getSolrFieldName(), CollectionSchema.size_i.getSolrFieldName(), CollectionSchema.last_modified.getSolrFieldName()};
+        }
+
+        private void writeHeader(final PrintWriter pw) {
+            if (this.format == ExportFormat.html) {
+                pw.println("<html><head></head><body>");
+            }
+            if (this.format == ExportFormat.rss) {
+                pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                pw.println("<?xml-stylesheet type='text/xsl' href='/yacysearch.xsl' version='1.0'?>");
+                pw.println("<rss version=\"2.0\" xmlns:yacy=\"http://www.yacy.net/\" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\" xmlns:atom=\"http://www.w3.org/2005/Atom\">");
+                pw.println("<channel>");
+                pw.println("<title>YaCy Peer-to-Peer - Web-Search URL Export</title>");
+                pw.println("<description></description>");
+                pw.println("<link>http://yacy.net</link>");
+            }
+            if (this.format == ExportFormat.solr) {
+                pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                pw.println("<response>");
+                pw.println("<lst name=\"responseHeader\">");
+                pw.println(" <str format=\"yacy.index.export.solr.xml\"/>");
+                pw.println(" <lst name=\"params\">");
+                pw.println("  <str name=\"q\">" + this.query + "</str>");
+                pw.println(" </lst>");
+                pw.println("</lst>");
+                pw.println("<result>");
+            }
+        }
+
+        private void writeFooter(final PrintWriter pw) {
+            if (this.format == ExportFormat.html) {
+                pw.println("</body></html>");
+            }
+            if (this.format == ExportFormat.rss) {
+                pw.println("</channel>");
+                pw.println("</rss>");
+            }
+            if (this.format == ExportFormat.solr) {
+                pw.println("</result>");
+                pw.println("</response>");
+            }
+        }
+
+        /**
+         * write one document in the export format
+         * @param pw the export writer
+         * @param docWriter a writer to pw which removes control characters, so that each document is written to one line
+         * @param doc the document
+         * @return false if the document was not written because its url does not match the filter
+         */
+        private boolean writeDocument(final PrintWriter pw, final Writer docWriter, final SolrDocument doc) throws IOException {
+            if (this.format == ExportFormat.solr || this.format == ExportFormat.elasticsearch || (this.text && this.format == ExportFormat.text)) {
+                String url = getStringFrom(doc.getFieldValue(CollectionSchema.sku.getSolrFieldName()));
+                if (this.pattern != null && !this.pattern.matcher(url).matches()) return false;
+                if (this.format == ExportFormat.elasticsearch) pw.println("{\"index\":{}}");
+                if (this.text) {
+                    final String text = (String) doc.getFieldValue(CollectionSchema.text_t.getSolrFieldName());
+                    if (text != null) docWriter.write(text);
+                }
+                if (this.format == ExportFormat.solr) EnhancedXMLResponseWriter.writeDoc(docWriter, doc);
+                if (this.format == ExportFormat.elasticsearch) FlatJSONResponseWriter.writeDoc(docWriter, doc);
+                pw.println();
+                return true;
+            }
+            String hash = getStringFrom(doc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
+            String url = getStringFrom(doc.getFieldValue(CollectionSchema.sku.getSolrFieldName()));
+            String title = getStringFrom(doc.getFieldValue(CollectionSchema.title.getSolrFieldName()));
+            String author = getStringFrom(doc.getFieldValue(CollectionSchema.author.getSolrFieldName()));
+            String description = getStringFrom(doc.getFieldValue(CollectionSchema.description_txt.getSolrFieldName()));
+            Integer size = (Integer) doc.getFieldValue(CollectionSchema.size_i.getSolrFieldName());
+            Date date = (Date) doc.getFieldValue(CollectionSchema.last_modified.getSolrFieldName());
+            if (this.pattern != null && !this.pattern.matcher(url).matches()) return false;
+            if (this.format == ExportFormat.text) {
+                pw.println(url);
+            }
+            if (this.format == ExportFormat.html) {
+                if (title != null) pw.println("<a href=\"" + MultiProtocolURL.escape(url) + "\">" + CharacterCoding.unicode2xml(title, true) + "</a>");
+            }
+            if (this.format == ExportFormat.rss) {
+                pw.println("<item>");
+                if (title != null) pw.println("<title>" + CharacterCoding.unicode2xml(title, true) + "</title>");
+                pw.println("<link>" + MultiProtocolURL.escape(url) + "</link>");
+                if (author != null && !author.isEmpty()) pw.println("<author>" + CharacterCoding.unicode2xml(author, true) + "</author>");
+                if (description != null && !description.isEmpty()) pw.println("<description>" + CharacterCoding.unicode2xml(description, true) + "</description>");
+                if (date != null) pw.println("<pubDate>" + HeaderFramework.formatRFC1123(date) + "</pubDate>");
+                if (size != null) pw.println("<yacy:size>" + size.intValue() + "</yacy:size>");
+                pw.println("<guid isPermaLink=\"false\">" + hash + "</guid>");
+                pw.println("</item>");
+            }
+            return true;
+        }
+
         public File file() {
             return this.f;
         }
@@ -965,7 +1364,14 @@ public final class Fulltext {
         }
 
         public int count() {
-            return this.count;
+            return this.count.get();
+        }
+        
+        /**
+         * @return the number of shards which are exported concurrently
+         */
+        public int parts() {
+            return this.parts;
         }
         
         @SuppressWarnings("unchecked")
@@ -977,4 +1383,50 @@ public final class Fulltext {
 
     }
 
+    /**
+     * A writer which removes control characters, like the line breaks within a document.
+     */
+    static class ControlCharacterFilterWriter extends FilterWriter {
+
+        ControlCharacterFilterWriter(final Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            if (c >= 32) this.out.write(c);
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            int start = off;
+            final int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (cbuf[i] < 32) {
+                    if (i > start) this.out.write(cbuf, start, i - start);
+                    start = i + 1;
+                }
+            }
+            if (end > start) this.out.write(cbuf, start, end - start);
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) throws IOException {
+            int start = off;
+            final int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (str.charAt(i) < 32) {
+                    if (i > start) this.out.write(str, start, i - start);
+                    start = i + 1;
+                }
+            }
+            if (end > start) this.out.write(str, start, end - start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush(); // the underlying export writer is closed by the export
+        }
+    }
+
 }
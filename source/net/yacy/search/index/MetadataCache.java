@@ -0,0 +1,446 @@
+/**
+ *  MetadataCache
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.search.index;
+
+import java.net.MalformedURLException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentBase;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.federate.solr.SolrType;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Metrics;
+import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * A cache of the metadata fields which are read while RWI search results are filtered, ranked and counted by the
+ * navigators. Thousands of RWI references are resolved per second during a p2p search; with this cache most of them
+ * do not need a Solr document lookup. The entries are stored in columns outside of the Java heap: one column for each
+ * date and integer field and one block of fixed size for all string fields of an entry. Entries which do not fit into
+ * that block are not cached. The cache is populated when documents are stored and when they are read from Solr;
+ * if it is full, entries which were not accessed recently are replaced (clock algorithm).
+ * Documents from the cache contain only the cached fields and must be completed with {@link Fulltext#completeMetadata(URIMetadataNode)}
+ * before other fields are read. Documents which are changed by other means than the Fulltext methods may be outdated
+ * in the cache, therefore entries expire after a while.
+ */
+public class MetadataCache {
+
+    /** the cached fields */
+    public static final CollectionSchema[] FIELDS = new CollectionSchema[] {
+        CollectionSchema.sku, CollectionSchema.host_s, CollectionSchema.host_id_s, CollectionSchema.url_protocol_s, CollectionSchema.url_file_ext_s,
+        CollectionSchema.title, CollectionSchema.author, CollectionSchema.author_sxt, CollectionSchema.keywords, CollectionSchema.language_s,
+        CollectionSchema.collection_sxt, CollectionSchema.content_type, CollectionSchema.coordinate_p, CollectionSchema.dates_in_content_dts,
+        CollectionSchema.load_date_dt, CollectionSchema.last_modified, CollectionSchema.fresh_date_dt, CollectionSchema.size_i,
+        CollectionSchema.wordcount_i, CollectionSchema.imagescount_i, CollectionSchema.audiolinkscount_i, CollectionSchema.videolinkscount_i,
+        CollectionSchema.applinkscount_i, CollectionSchema.inboundlinkscount_i, CollectionSchema.outboundlinkscount_i, CollectionSchema.url_chars_i
+    };
+
+    private static final Set<String> FIELDNAMES = new HashSet<String>();
+    static {
+        FIELDNAMES.add(CollectionSchema.id.getSolrFieldName());
+        for (final CollectionSchema field: FIELDS) FIELDNAMES.add(field.getSolrFieldName());
+    }
+
+    /** the size of the block for the string fields of an entry */
+    private static final int BLOCKSIZE = 768;
+
+    private static final int KEYLENGTH = 12;
+
+    /** the estimated size of an entry, for the computation of the cache size */
+    private static final int ENTRYSIZE = BLOCKSIZE + 128;
+
+    /** the maximum age of an entry in milliseconds */
+    private static final long MAX_AGE = 3600000;
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    private static final Counter hits = Metrics.counter("yacy_metadata_cache_hits", "RWI metadata lookups answered from the metadata cache");
+    private static final Counter misses = Metrics.counter("yacy_metadata_cache_misses", "RWI metadata lookups which were not found in the metadata cache");
+
+    /**
+     * A document from the cache, which holds only the cached fields.
+     */
+    static final class PartialNode extends URIMetadataNode {
+        private static final long serialVersionUID = 3162459421740293812L;
+
+        private PartialNode(final SolrDocument doc, final WordReferenceVars searchedWord, final long score) throws MalformedURLException {
+            super(doc, searchedWord, score);
+        }
+    }
+
+    private final int capacity;
+    private final CollectionSchema[] dateFields, intFields, blockFields;
+
+    // the columns, allocated with the first entry
+    private ByteBuffer keys;
+    private LongBuffer time;
+    private LongBuffer[] dateColumns;
+    private IntBuffer[] intColumns;
+    private ByteBuffer blocks;
+
+    private int[] hashes;       // the hash of the key in each slot
+    private byte[] referenced;  // the clock bit of each slot, 0 if the slot is free
+    private int[] table;        // open addressing hash index: slot + 1, or 0 for an empty position
+    private int[] free;         // stack of free slots
+    private int freeCount;
+    private int used;           // the number of slots which were used once
+    private int size;
+    private int hand;
+
+    /**
+     * create a cache with a size which is derived from the maximum heap size
+     */
+    public MetadataCache() {
+        this((int) Math.max(1024, Math.min(100000, MemoryControl.maxMemory() / 64 / ENTRYSIZE)));
+    }
+
+    /**
+     * @param capacity the maximum number of entries
+     */
+    public MetadataCache(final int capacity) {
+        this.capacity = capacity;
+        final List<CollectionSchema> d = new ArrayList<CollectionSchema>(), i = new ArrayList<CollectionSchema>(), b = new ArrayList<CollectionSchema>();
+        for (final CollectionSchema field: FIELDS) {
+            if (field.isMultiValued() || (field.getType() != SolrType.date && field.getType() != SolrType.num_integer)) b.add(field);
+            else if (field.getType() == SolrType.date) d.add(field);
+            else i.add(field);
+        }
+        this.dateFields = d.toArray(new CollectionSchema[d.size()]);
+        this.intFields = i.toArray(new CollectionSchema[i.size()]);
+        this.blockFields = b.toArray(new CollectionSchema[b.size()]);
+        this.keys = null;
+        this.size = 0;
+    }
+
+    /**
+     * check if all fields which are needed by a search are cached
+     * @param fieldnames the names of the fields
+     * @return true if all fields are cached
+     */
+    public static boolean covers(final Collection<String> fieldnames) {
+        return FIELDNAMES.containsAll(fieldnames);
+    }
+
+    /**
+     * check if a document is a partial document from the cache
+     */
+    public static boolean isPartial(final URIMetadataNode node) {
+        return node instanceof PartialNode;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public synchronized void clear() {
+        if (this.keys == null) return;
+        Arrays.fill(this.table, 0);
+        Arrays.fill(this.referenced, (byte) 0);
+        this.freeCount = 0;
+        this.used = 0;
+        this.size = 0;
+        this.hand = 0;
+    }
+
+    /**
+     * get a document from the cache
+     * @param urlhash the url hash
+     * @param searchedWord the word reference which the document belongs to or null
+     * @param score the ranking score
+     * @return a partial document with the cached fields or null if the document is not cached
+     */
+    public URIMetadataNode get(final byte[] urlhash, final WordReferenceVars searchedWord, final long score) {
+        final SolrDocument doc;
+        synchronized (this) {
+            final int slot = this.keys == null ? -1 : find(urlhash, hash(urlhash));
+            if (slot < 0 || System.currentTimeMillis() - this.time.get(slot) > MAX_AGE) {
+                if (slot >= 0) delete(slot);
+                misses.inc();
+                return null;
+            }
+            this.referenced[slot] = 2;
+            doc = read(slot, urlhash);
+        }
+        hits.inc();
+        try {
+            return new PartialNode(doc, searchedWord, score);
+        } catch (final MalformedURLException e) {
+            remove(urlhash);
+            return null;
+        }
+    }
+
+    /**
+     * store a document in the cache or remove it if it cannot be cached.
+     * Atomic updates, which contain only the changed fields, remove the document.
+     * @param doc a complete SolrDocument or SolrInputDocument
+     */
+    public void put(final SolrDocumentBase<?, ?> doc) {
+        final Object id = doc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+        if (!(id instanceof String) || ((String) id).length() != KEYLENGTH) return;
+        final byte[] key = ASCII.getBytes((String) id);
+        final byte[] block = encode(doc);
+        if (block == null || !(doc.getFieldValue(CollectionSchema.sku.getSolrFieldName()) instanceof String)) {
+            remove(key);
+            return;
+        }
+        final long[] dates = new long[this.dateFields.length];
+        for (int i = 0; i < dates.length; i++) {
+            final Object value = doc.getFieldValue(this.dateFields[i].getSolrFieldName());
+            if (value instanceof Map) {remove(key); return;}
+            dates[i] = value instanceof Date ? ((Date) value).getTime() : NULL_LONG;
+        }
+        final int[] ints = new int[this.intFields.length];
+        for (int i = 0; i < ints.length; i++) {
+            final Object value = doc.getFieldValue(this.intFields[i].getSolrFieldName());
+            if (value instanceof Map) {remove(key); return;}
+            ints[i] = value instanceof Number ? ((Number) value).intValue() : NULL_INT;
+        }
+        synchronized (this) {
+            if (this.keys == null) allocate();
+            final int h = hash(key);
+            int slot = find(key, h);
+            if (slot < 0) {
+                slot = newSlot();
+                this.hashes[slot] = h;
+                this.keys.position(slot * KEYLENGTH);
+                this.keys.put(key);
+                insert(slot, h);
+                this.size++;
+            }
+            this.referenced[slot] = 1;
+            this.time.put(slot, System.currentTimeMillis());
+            for (int i = 0; i < dates.length; i++) this.dateColumns[i].put(slot, dates[i]);
+            for (int i = 0; i < ints.length; i++) this.intColumns[i].put(slot, ints[i]);
+            this.blocks.position(slot * BLOCKSIZE);
+            this.blocks.put(block);
+        }
+    }
+
+    /**
+     * remove a document from the cache
+     * @param urlhash the url hash
+     */
+    public synchronized void remove(final byte[] urlhash) {
+        if (this.keys == null || urlhash == null) return;
+        final int slot = find(urlhash, hash(urlhash));
+        if (slot >= 0) delete(slot);
+    }
+
+    private void allocate() {
+        this.keys = ByteBuffer.allocateDirect(this.capacity * KEYLENGTH);
+        this.time = ByteBuffer.allocateDirect(this.capacity * 8).asLongBuffer();
+        this.dateColumns = new LongBuffer[this.dateFields.length];
+        for (int i = 0; i < this.dateColumns.length; i++) this.dateColumns[i] = ByteBuffer.allocateDirect(this.capacity * 8).asLongBuffer();
+        this.intColumns = new IntBuffer[this.intFields.length];
+        for (int i = 0; i < this.intColumns.length; i++) this.intColumns[i] = ByteBuffer.allocateDirect(this.capacity * 4).asIntBuffer();
+        this.blocks = ByteBuffer.allocateDirect(this.capacity * BLOCKSIZE);
+        this.hashes = new int[this.capacity];
+        this.referenced = new byte[this.capacity];
+        this.table = new int[Integer.highestOneBit(Math.max(2, this.capacity) * 2) * 2];
+        this.free = new int[this.capacity];
+        this.freeCount = 0;
+        this.used = 0;
+        this.hand = 0;
+    }
+
+    /**
+     * get an unused slot; if the cache is full, an entry which was not accessed recently is removed
+     */
+    private int newSlot() {
+        if (this.freeCount > 0) return this.free[--this.freeCount];
+        if (this.used < this.capacity) return this.used++;
+        while (true) {
+            final int slot = this.hand;
+            this.hand = (this.hand + 1) % this.capacity;
+            if (this.referenced[slot] == 1) {
+                delete(slot);
+                return this.free[--this.freeCount];
+            }
+            this.referenced[slot]--;
+        }
+    }
+
+    private static int hash(final byte[] key) {
+        int h = 0;
+        for (int i = 0; i < KEYLENGTH; i++) h = 31 * h + key[i];
+        return h ^ (h >>> 16);
+    }
+
+    private boolean keyEquals(final int slot, final byte[] key) {
+        final int offset = slot * KEYLENGTH;
+        for (int i = 0; i < KEYLENGTH; i++) if (this.keys.get(offset + i) != key[i]) return false;
+        return true;
+    }
+
+    private int find(final byte[] key, final int h) {
+        if (key.length != KEYLENGTH) return -1;
+        final int mask = this.table.length - 1;
+        int p = h & mask;
+        int s;
+        while ((s = this.table[p]) != 0) {
+            if (this.hashes[s - 1] == h && keyEquals(s - 1, key)) return s - 1;
+            p = (p + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(final int slot, final int h) {
+        final int mask = this.table.length - 1;
+        int p = h & mask;
+        while (this.table[p] != 0) p = (p + 1) & mask;
+        this.table[p] = slot + 1;
+    }
+
+    private void delete(final int slot) {
+        final int mask = this.table.length - 1;
+        int p = this.hashes[slot] & mask;
+        while (this.table[p] != slot + 1) p = (p + 1) & mask;
+        // backward shift deletion keeps the probe sequences of the following positions intact
+        int q = p;
+        while (true) {
+            q = (q + 1) & mask;
+            final int s = this.table[q];
+            if (s == 0) break;
+            final int home = this.hashes[s - 1] & mask;
+            if (((q - home) & mask) >= ((q - p) & mask)) {
+                this.table[p] = s;
+                p = q;
+            }
+        }
+        this.table[p] = 0;
+        this.referenced[slot] = 0;
+        this.free[this.freeCount++] = slot;
+        this.size--;
+    }
+
+    private SolrDocument read(final int slot, final byte[] key) {
+        final SolrDocument doc = new SolrDocument();
+        doc.setField(CollectionSchema.id.getSolrFieldName(), ASCII.String(key));
+        for (int i = 0; i < this.dateFields.length; i++) {
+            final long value = this.dateColumns[i].get(slot);
+            if (value != NULL_LONG) doc.setField(this.dateFields[i].getSolrFieldName(), new Date(value));
+        }
+        for (int i = 0; i < this.intFields.length; i++) {
+            final int value = this.intColumns[i].get(slot);
+            if (value != NULL_INT) doc.setField(this.intFields[i].getSolrFieldName(), value);
+        }
+        final byte[] block = new byte[BLOCKSIZE];
+        this.blocks.position(slot * BLOCKSIZE);
+        this.blocks.get(block);
+        final ByteBuffer b = ByteBuffer.wrap(block);
+        for (final CollectionSchema field: this.blockFields) {
+            final boolean date = field.getType() == SolrType.date;
+            if (field.isMultiValued()) {
+                final int count = b.getShort();
+                if (count < 0) continue;
+                final List<Object> values = new ArrayList<Object>(count);
+                for (int i = 0; i < count; i++) values.add(date ? new Date(b.getLong()) : readString(b));
+                doc.setField(field.getSolrFieldName(), values);
+            } else {
+                final String value = readString(b);
+                if (value != null) doc.setField(field.getSolrFieldName(), value);
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * encode the string fields and multi-valued fields of a document
+     * @return the block or null if the fields do not fit into a block or the document is an atomic update
+     */
+    private byte[] encode(final SolrDocumentBase<?, ?> doc) {
+        final ByteBuffer b = ByteBuffer.allocate(BLOCKSIZE);
+        try {
+            for (final CollectionSchema field: this.blockFields) {
+                final boolean date = field.getType() == SolrType.date;
+                final Object value = doc.getFieldValue(field.getSolrFieldName());
+                if (value instanceof Map) return null;
+                if (field.isMultiValued()) {
+                    final Collection<?> values = value == null ? null : doc.getFieldValues(field.getSolrFieldName());
+                    if (values == null) {
+                        b.putShort((short) -1);
+                        continue;
+                    }
+                    b.putShort((short) values.size());
+                    for (final Object v: values) {
+                        if (date) {
+                            if (!(v instanceof Date)) return null;
+                            b.putLong(((Date) v).getTime());
+                        } else {
+                            writeString(b, v == null ? "" : v.toString());
+                        }
+                    }
+                } else {
+                    writeString(b, value == null ? null : (value instanceof Collection ? first((Collection<?>) value) : value.toString()));
+                }
+            }
+        } catch (final BufferOverflowException e) {
+            return null;
+        }
+        final byte[] block = new byte[b.position()];
+        b.flip();
+        b.get(block);
+        return block;
+    }
+
+    private static String first(final Collection<?> values) {
+        for (final Object v: values) return v == null ? null : v.toString();
+        return null;
+    }
+
+    private static void writeString(final ByteBuffer b, final String s) {
+        if (s == null) {
+            b.putShort((short) -1);
+            return;
+        }
+        final byte[] u = UTF8.getBytes(s);
+        if (u.length > Short.MAX_VALUE) throw new BufferOverflowException();
+        b.putShort((short) u.length);
+        b.put(u);
+    }
+
+    private static String readString(final ByteBuffer b) {
+        final int length = b.getShort();
+        if (length < 0) return null;
+        if (length == 0) return "";
+        final String s = UTF8.String(b.array(), b.position(), length);
+        b.position(b.position() + length);
+        return s;
+    }
+}
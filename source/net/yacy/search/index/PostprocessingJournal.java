@@ -0,0 +1,398 @@
+/**
+ *  PostprocessingJournal
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.search.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrInputDocument;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.sorting.ClusteredScoreMap;
+import net.yacy.cora.sorting.ReversibleScoreMap;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * An append-only journal of the documents which were written to the collection with a process tag.
+ * Every document stored with a process_sxt value is recorded with its id, host and harvest key, so the
+ * postprocessing can find its work without a scan of the index for the process tag. The journal is consumed
+ * with take(): the journal file is rotated, so new records are appended to a fresh file, and the rotated records
+ * of a harvest key (or all records) are moved to a work file which is processed in chunks; the other records are
+ * kept in a rest file for the next take(). The position of the last processed chunk is written to a checkpoint
+ * file, so an interrupted postprocessing continues after a restart where it stopped.
+ * Documents which were stored before the journal existed, or while it was switched off, are not recorded; as long
+ * as scanRequired() is true, the postprocessing must be done once by a scan of the index.
+ */
+public class PostprocessingJournal {
+
+    private final static ConcurrentLog log = new ConcurrentLog("PostprocessingJournal");
+
+    public static final String JOURNAL_NAME = "postprocessing.journal";
+    private static final String ROTATED_EXTENSION = ".rotated";
+    private static final String REST_EXTENSION = ".rest";
+    private static final String WORK_EXTENSION = ".work";
+    private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+    private static final String SCAN_EXTENSION = ".scan";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final File journalFile, rotatedFile, restFile, workFile, checkpointFile, scanFile;
+    private final Object takeLock; // serializes take(), which does not block append() while it splits the records
+    private OutputStream out;
+    private Work work; // the work which is currently processed or null
+
+    /**
+     * open the journal in the given directory
+     * @param path the segment directory
+     * @throws IOException if the journal cannot be opened
+     */
+    public PostprocessingJournal(final File path) throws IOException {
+        path.mkdirs();
+        this.journalFile = new File(path, JOURNAL_NAME);
+        this.rotatedFile = new File(path, JOURNAL_NAME + ROTATED_EXTENSION);
+        this.restFile = new File(path, JOURNAL_NAME + REST_EXTENSION);
+        this.workFile = new File(path, JOURNAL_NAME + WORK_EXTENSION);
+        this.checkpointFile = new File(path, JOURNAL_NAME + WORK_EXTENSION + CHECKPOINT_EXTENSION);
+        this.scanFile = new File(path, JOURNAL_NAME + SCAN_EXTENSION);
+        this.takeLock = new Object();
+        if (!this.journalFile.exists() && !this.rotatedFile.exists() && !this.restFile.exists() && !this.workFile.exists()) {
+            // documents which were stored before the journal was created can only be found with a scan
+            this.scanFile.createNewFile();
+        } else if (this.journalFile.length() > 0) {
+            // terminate a record which was written incompletely before a crash, otherwise it would be joined with the next record
+            try (final RandomAccessFile raf = new RandomAccessFile(this.journalFile, "rw")) {
+                raf.seek(raf.length() - 1);
+                if (raf.read() != '\n') raf.write('\n');
+            }
+        }
+        this.out = new BufferedOutputStream(new FileOutputStream(this.journalFile, true));
+        this.work = null;
+    }
+
+    /**
+     * record a document if it has a process tag
+     * @param doc a document which was written to the collection
+     */
+    public void append(final SolrInputDocument doc) {
+        final Collection<Object> proctags = doc.getFieldValues(CollectionSchema.process_sxt.getSolrFieldName());
+        if (proctags == null || proctags.isEmpty() || proctags.iterator().next() instanceof Map) return; // no process tag or a partial update
+        final Object id = doc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+        final Object host = doc.getFieldValue(CollectionSchema.host_s.getSolrFieldName());
+        final Object harvestkey = doc.getFieldValue(CollectionSchema.harvestkey_s.getSolrFieldName());
+        if (!(id instanceof String)) return;
+        append((String) id, host instanceof String ? (String) host : "", harvestkey instanceof String ? (String) harvestkey : "");
+    }
+
+    /**
+     * record a document
+     * @param id the document id
+     * @param host the host of the document, may be empty
+     * @param harvestkey the harvest key of the document, may be empty
+     */
+    public synchronized void append(final String id, final String host, final String harvestkey) {
+        if (this.out == null) return;
+        try {
+            this.out.write(UTF8.getBytes(id + '\t' + host + '\t' + harvestkey + '\n'));
+            this.out.flush();
+        } catch (final IOException e) {
+            log.warn("cannot write to " + this.journalFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * mark that the postprocessing must scan the index once before it can use the journal again. This is
+     * called while the journal is switched off, because the documents stored meanwhile are not recorded.
+     * @param path the segment directory
+     */
+    public static void requireScan(final File path) {
+        final File scanFile = new File(path, JOURNAL_NAME + SCAN_EXTENSION);
+        try {
+            path.mkdirs();
+            scanFile.createNewFile();
+        } catch (final IOException e) {
+            log.warn("cannot create " + scanFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if there may be documents with a process tag which are not recorded in the journal
+     */
+    public boolean scanRequired() {
+        return this.scanFile.exists();
+    }
+
+    /**
+     * called after all documents with a process tag were postprocessed by a scan of the index;
+     * from now on all documents to be postprocessed are recorded in the journal
+     */
+    public void scanCompleted() {
+        this.scanFile.delete();
+    }
+
+    /**
+     * take the records of a harvest key from the journal. If the work of an interrupted postprocessing exists, that work is
+     * returned first. The records stay in the work file until Work.finish() is called.
+     * Records are appended to a fresh journal file while the taken records are split, so append() is not blocked.
+     * @param harvestkey the harvest key or null for all records
+     * @return the work or null if there is nothing to do or if another work is processed currently
+     * @throws IOException if the journal cannot be read or written
+     */
+    public Work take(final String harvestkey) throws IOException {
+        synchronized (this.takeLock) {
+            synchronized (this) {
+                if (this.work != null || this.out == null) return null;
+                if (!this.workFile.exists() && !this.rotatedFile.exists() && this.journalFile.length() > 0) {
+                    // rotate the journal; a rotated file which is left from a crash is split first
+                    this.out.close();
+                    try {
+                        Files.move(this.journalFile.toPath(), this.rotatedFile.toPath());
+                    } finally {
+                        this.out = new BufferedOutputStream(new FileOutputStream(this.journalFile, true));
+                    }
+                }
+            }
+            if (!this.workFile.exists() && split(harvestkey) == 0) return null;
+            final Work w = new Work();
+            if (w.size() == 0) {
+                w.finish();
+                return null;
+            }
+            synchronized (this) {
+                if (this.out == null) {
+                    // closed meanwhile
+                    w.close();
+                    return null;
+                }
+                this.work = w;
+            }
+            return w;
+        }
+    }
+
+    /**
+     * split the rotated journal and the rest of the former takes into the work file with the records of a harvest key
+     * and a new rest file with the remaining records. After a crash during the split, some records may be processed twice,
+     * which does no harm because the postprocessing skips documents without a process tag.
+     * @param harvestkey the harvest key or null for all records
+     * @return the number of records in the work file
+     * @throws IOException if the files cannot be read or written
+     */
+    private int split(final String harvestkey) throws IOException {
+        final File restTemp = new File(this.restFile.getParentFile(), this.restFile.getName() + TEMP_EXTENSION);
+        final File workTemp = new File(this.workFile.getParentFile(), this.workFile.getName() + TEMP_EXTENSION);
+        int taken = 0;
+        try {
+            try (
+                final OutputStream restOut = new BufferedOutputStream(new FileOutputStream(restTemp));
+                final OutputStream workOut = new BufferedOutputStream(new FileOutputStream(workTemp));
+            ) {
+                for (final File f: new File[] {this.restFile, this.rotatedFile}) {
+                    if (!f.exists()) continue;
+                    try (final InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+                        byte[] line;
+                        while ((line = readLine(in)) != null) {
+                            final String[] record = parse(line);
+                            if (record == null) continue; // an incomplete record written before a crash
+                            final OutputStream target = harvestkey == null || harvestkey.equals(record[2]) ? workOut : restOut;
+                            target.write(line);
+                            target.write('\n');
+                            if (target == workOut) taken++;
+                        }
+                    }
+                }
+            }
+            if (taken > 0) {
+                this.checkpointFile.delete();
+                Files.move(workTemp.toPath(), this.workFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(restTemp.toPath(), this.restFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            this.rotatedFile.delete();
+        } finally {
+            workTemp.delete();
+            restTemp.delete();
+        }
+        return taken;
+    }
+
+    /**
+     * close the journal; the records which were not processed are kept for the next start
+     */
+    public synchronized void close() {
+        if (this.out == null) return;
+        try {
+            this.out.close();
+        } catch (final IOException e) {
+            log.warn("cannot close " + this.journalFile + ": " + e.getMessage());
+        }
+        this.out = null;
+    }
+
+    /**
+     * parse a journal record
+     * @return the array of id, host and harvest key or null if the record is broken
+     */
+    private static String[] parse(final byte[] line) {
+        final String[] record = UTF8.String(line).split("\t", -1);
+        return record.length == 3 && record[0].length() > 0 ? record : null;
+    }
+
+    /**
+     * read a line without the line terminator
+     * @return the line or null at the end of the stream; an unterminated last line is returned as empty line
+     */
+    private static byte[] readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') return line.toByteArray();
+            line.write(b);
+        }
+        return line.size() == 0 ? null : new byte[0];
+    }
+
+    private static long readCheckpoint(final File f) {
+        if (!f.exists()) return 0;
+        try {
+            return Long.parseLong(UTF8.String(Files.readAllBytes(f.toPath())).trim());
+        } catch (final IOException | NumberFormatException e) {
+            log.warn("cannot read " + f + ", starting from the beginning: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * The records taken from the journal for one postprocessing run.
+     */
+    public class Work implements Closeable {
+
+        private final ClusteredScoreMap<String> hosts;
+        private int size;
+        private InputStream in;
+        private long position; // the file position after the last record returned by next()
+
+        private Work() throws IOException {
+            final long checkpoint = readCheckpoint(PostprocessingJournal.this.checkpointFile);
+            this.hosts = new ClusteredScoreMap<String>(true);
+            this.size = 0;
+            this.in = new BufferedInputStream(new FileInputStream(PostprocessingJournal.this.workFile));
+            try {
+                skip(this.in, checkpoint);
+                byte[] line;
+                while ((line = readLine(this.in)) != null) {
+                    final String[] record = parse(line);
+                    if (record == null) continue;
+                    this.size++;
+                    if (record[1].length() > 0) this.hosts.inc(record[1]);
+                }
+            } finally {
+                this.in.close();
+            }
+            this.in = new BufferedInputStream(new FileInputStream(PostprocessingJournal.this.workFile));
+            skip(this.in, checkpoint);
+            this.position = checkpoint;
+        }
+
+        private void skip(final InputStream is, long n) throws IOException {
+            while (n > 0) {
+                final long s = is.skip(n);
+                if (s <= 0) break;
+                n -= s;
+            }
+        }
+
+        /**
+         * @return the hosts of the documents which are not processed yet, scored by the number of records
+         */
+        public ReversibleScoreMap<String> hosts() {
+            return this.hosts;
+        }
+
+        /**
+         * @return the number of records which were not processed before this work was opened
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * read the next document ids
+         * @param max the maximum number of ids
+         * @return the ids; the list is empty if all records were read
+         * @throws IOException if the work file cannot be read
+         */
+        public List<String> next(final int max) throws IOException {
+            final List<String> ids = new ArrayList<String>(max);
+            byte[] line;
+            while (ids.size() < max && (line = readLine(this.in)) != null) {
+                this.position += line.length + 1;
+                final String[] record = parse(line);
+                if (record != null) ids.add(record[0]);
+            }
+            return ids;
+        }
+
+        /**
+         * record that all ids which were returned by next() are processed
+         * @throws IOException if the checkpoint cannot be written
+         */
+        public void checkpoint() throws IOException {
+            final File temp = new File(PostprocessingJournal.this.checkpointFile.getParentFile(), PostprocessingJournal.this.checkpointFile.getName() + TEMP_EXTENSION);
+            Files.write(temp.toPath(), UTF8.getBytes(Long.toString(this.position)));
+            Files.move(temp.toPath(), PostprocessingJournal.this.checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        /**
+         * delete the work after all records were processed
+         */
+        public void finish() {
+            close();
+            PostprocessingJournal.this.workFile.delete();
+            PostprocessingJournal.this.checkpointFile.delete();
+        }
+
+        /**
+         * close the work; the records which were not processed are returned again by the next take()
+         */
+        @Override
+        public void close() {
+            synchronized (PostprocessingJournal.this) {
+                if (PostprocessingJournal.this.work == this) PostprocessingJournal.this.work = null;
+            }
+            try {
+                this.in.close();
+            } catch (final IOException e) {}
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ *  RemoteResultWriter
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.search.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.common.SolrInputDocument;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Metrics;
+import net.yacy.cora.storage.ARC;
+import net.yacy.cora.storage.ConcurrentARC;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.search.Switchboard;
+
+/**
+ * Writes the results of remote searches to the local index. All search events share one writer thread
+ * per segment, which stores the documents in batches together with their first-seen time.
+ * Documents which were written recently with the same or a newer load date are skipped, because popular
+ * queries return the same documents from many peers again and again. The write-back is optional: while the
+ * indexing queues or the Solr update buffer are full, or memory is short, new documents are dropped.
+ * A dedicated thread is also needed because the search threads are interrupted when a search event
+ * is cleaned up, and an interrupted Solr write closes the index.
+ */
+public class RemoteResultWriter {
+
+    private final static ConcurrentLog log = new ConcurrentLog("RemoteResultWriter");
+
+    /** the maximum number of documents waiting to be written */
+    private static final int QUEUE_CAPACITY = 2000;
+
+    /** the maximum number of documents written with one Solr call */
+    private static final int BATCH_SIZE = 100;
+
+    /** the number of url hashes remembered by the recent-writes filter */
+    private static final int RECENT_CAPACITY = 50000;
+
+    /** remote results are dropped while the Solr update buffer holds more documents */
+    private static final int MAX_SOLR_BUFFER = 1000;
+
+    /** remote results are dropped while the indexing queues hold more documents */
+    private static final int MAX_INDEXING_QUEUE = 100;
+
+    private static final Counter written = Metrics.counter("yacy_remote_result_writeback_total", "remote search results handled by the write-back to the local index", "result", "written");
+    private static final Counter duplicates = Metrics.counter("yacy_remote_result_writeback_total", "remote search results handled by the write-back to the local index", "result", "duplicate");
+    private static final Counter dropped = Metrics.counter("yacy_remote_result_writeback_total", "remote search results handled by the write-back to the local index", "result", "dropped");
+
+    private static class Item {
+        private final byte[] urlhash;
+        private final long loaddate;
+        private final long firstSeen;
+        private final SolrInputDocument doc; // either a full document
+        private final URIMetadataNode node; // or the metadata of a RWI search result
+        private final CountDownLatch done;
+        private final AtomicBoolean failed; // set if the write of an item of a waiting writer failed
+
+        private Item(final byte[] urlhash, final long loaddate, final long firstSeen, final SolrInputDocument doc, final URIMetadataNode node,
+                final CountDownLatch done, final AtomicBoolean failed) {
+            this.urlhash = urlhash;
+            this.loaddate = loaddate;
+            this.firstSeen = firstSeen;
+            this.doc = doc;
+            this.node = node;
+            this.done = done;
+            this.failed = failed;
+        }
+
+        private void fail() {
+            dropped.inc();
+            if (this.failed != null) this.failed.set(true);
+        }
+    }
+
+    private final Segment segment;
+    private final BlockingQueue<Item> queue;
+    private final ARC<String, Long> recent; // url hash -> load date of the last written document
+    private final Thread writer;
+    private volatile boolean running;
+
+    public RemoteResultWriter(final Segment segment) {
+        this.segment = segment;
+        this.queue = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY);
+        this.recent = new ConcurrentARC<String, Long>(RECENT_CAPACITY, Math.max(1, Runtime.getRuntime().availableProcessors()));
+        this.running = true;
+        this.writer = new Thread("RemoteResultWriter") {
+            @Override
+            public void run() {
+                RemoteResultWriter.this.writeLoop();
+            }
+        };
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * check if remote results can be written now
+     * @param count the number of results, which are counted as dropped if the writer is busy
+     * @return false if the results shall not be written because of indexing backpressure
+     */
+    public boolean accept(final int count) {
+        if (this.running && !busy()) return true;
+        dropped.add(count);
+        return false;
+    }
+
+    private boolean busy() {
+        if (this.queue.remainingCapacity() == 0 || MemoryControl.shortStatus()) return true;
+        if (this.segment.fulltext().bufferSize() > MAX_SOLR_BUFFER) return true;
+        final Switchboard sb = Switchboard.getSwitchboard();
+        return sb != null && sb.getIndexingProcessorsQueueSize() > MAX_INDEXING_QUEUE;
+    }
+
+    /**
+     * check the recent-writes filter
+     * @param urlhash the url hash of a document
+     * @param loaddate the load date of the document
+     * @return true if the document was written recently with the same or a newer load date
+     */
+    public boolean isRecent(final byte[] urlhash, final long loaddate) {
+        final Long last = this.recent.get(ASCII.String(urlhash));
+        if (last == null || last.longValue() < loaddate) return false;
+        duplicates.inc();
+        return true;
+    }
+
+    /**
+     * enqueue a full remote document; it is written in the background
+     * @param doc the document
+     * @param urlhash the url hash of the document
+     * @param loaddate the load date of the document
+     * @param firstSeen the first-seen time of the url
+     */
+    public void add(final SolrInputDocument doc, final byte[] urlhash, final long loaddate, final long firstSeen) {
+        if (!this.running || !this.queue.offer(new Item(urlhash, loaddate, firstSeen, doc, null, null, null))) dropped.inc();
+    }
+
+    /**
+     * write the metadata of remote RWI search results and wait until they are written, because
+     * the references are resolved with the local metadata. Waiting may be interrupted or time out, the write continues anyway.
+     * It is checked inside the writer that poor metadata does not overwrite rich metadata.
+     * @param nodes the metadata
+     * @param timeout the maximum time to wait in milliseconds, usually the remaining time of the search
+     * @return false if not all metadata was written in time, because of indexing backpressure or because a write failed
+     * @throws InterruptedException when the wait is interrupted
+     */
+    public boolean write(final Collection<URIMetadataNode> nodes, final long timeout) throws InterruptedException {
+        if (!accept(nodes.size())) return false;
+        final List<URIMetadataNode> fresh = new ArrayList<URIMetadataNode>(nodes.size());
+        for (final URIMetadataNode node: nodes) {
+            if (!isRecent(node.hash(), node.loaddate().getTime())) fresh.add(node);
+        }
+        if (fresh.isEmpty()) return true;
+        final CountDownLatch done = new CountDownLatch(fresh.size());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        boolean complete = true;
+        for (final URIMetadataNode node: fresh) {
+            final Item item = new Item(node.hash(), node.loaddate().getTime(), Math.min(node.moddate().getTime(), System.currentTimeMillis()), null, node, done, failed);
+            if (!this.running || !this.queue.offer(item)) {
+                dropped.inc();
+                done.countDown();
+                complete = false;
+            }
+        }
+        if (!this.running) {
+            // the writer may have stopped before it could take the items enqueued above
+            this.writer.join(Math.max(1, timeout));
+            releaseQueued();
+        }
+        return done.await(Math.max(0, timeout), TimeUnit.MILLISECONDS) && complete && !failed.get();
+    }
+
+    /**
+     * @return the number of documents waiting to be written
+     */
+    public int size() {
+        return this.queue.size();
+    }
+
+    /**
+     * write the waiting documents and stop the writer thread
+     */
+    public void close() {
+        this.running = false;
+        try {
+            this.writer.join(10000);
+        } catch (final InterruptedException e) {}
+        // documents which could not be written in time are dropped; their waiting writers are released
+        releaseQueued();
+    }
+
+    /**
+     * remove all waiting documents from the queue and release the threads waiting for them
+     */
+    private void releaseQueued() {
+        final List<Item> rest = new ArrayList<Item>();
+        this.queue.drainTo(rest);
+        for (final Item item: rest) {
+            item.fail();
+            if (item.done != null) item.done.countDown();
+        }
+    }
+
+    private void writeLoop() {
+        final List<Item> batch = new ArrayList<Item>(BATCH_SIZE);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                final Item first = this.queue.poll(1000, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                this.queue.drainTo(batch, BATCH_SIZE - 1);
+                writeBatch(batch);
+            } catch (final InterruptedException e) {
+                break;
+            } catch (final Throwable e) {
+                log.warn("writing remote search results failed: " + e.getMessage(), e);
+                for (final Item item: batch) if (item.failed != null) item.failed.set(true);
+            } finally {
+                for (final Item item: batch) if (item.done != null) item.done.countDown();
+                batch.clear();
+            }
+        }
+        releaseQueued();
+    }
+
+    private void writeBatch(final List<Item> batch) {
+        final List<Item> docItems = new ArrayList<Item>(batch.size());
+        for (final Item item: batch) {
+            // the same document may have been sent by several peers since it was enqueued
+            if (isRecent(item.urlhash, item.loaddate)) continue;
+            this.segment.setFirstSeenTime(item.urlhash, item.firstSeen);
+            if (item.doc != null) {
+                docItems.add(item);
+            } else try {
+                this.segment.fulltext().putMetadata(item.node);
+                written(item);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+                item.fail();
+            }
+        }
+        if (docItems.isEmpty()) return;
+        final List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(docItems.size());
+        for (final Item item: docItems) docs.add(item.doc);
+        try {
+            this.segment.fulltext().putDocuments(docs);
+            for (final Item item: docItems) written(item);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            for (final Item item: docItems) item.fail();
+        }
+    }
+
+    /**
+     * remember a successfully written document in the recent-writes filter
+     */
+    private void written(final Item item) {
+        this.recent.put(ASCII.String(item.urlhash), item.loaddate);
+        written.inc();
+    }
+}
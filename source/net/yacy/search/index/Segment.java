@@ -124,7 +124,9 @@ public class Segment {
     protected       IndexCell<WordReference>       termIndex;
     protected       IndexCell<CitationReference>   urlCitationIndex;
     protected       IndexTable                     firstSeenIndex;
+    protected       PostprocessingJournal          postprocessingJournal;
     protected       IODispatcher                   merger = null; // shared iodispatcher for kelondro indexes
+    private   final RemoteResultWriter             remoteResultWriter;
 
     /**
      * create a new Segment
@@ -134,6 +136,19 @@ public class Segment {
      */
     public Segment(final ConcurrentLog log, final File segmentPath, final File archivePath,
             final CollectionConfiguration collectionConfiguration, final WebgraphConfiguration webgraphConfiguration) throws IOException {
+        this(log, segmentPath, archivePath, collectionConfiguration, webgraphConfiguration, false);
+    }
+
+    /**
+     * create a new Segment
+     * @param log logger instance
+     * @param segmentPath that should be the path pointing to the directory "SEGMENT"
+     * @param mappedFirstSeen if true, the first-seen index is memory-mapped instead of loaded into RAM
+     * @throws IOException when an error occurs
+     */
+    public Segment(final ConcurrentLog log, final File segmentPath, final File archivePath,
+            final CollectionConfiguration collectionConfiguration, final WebgraphConfiguration webgraphConfiguration,
+            final boolean mappedFirstSeen) throws IOException {
         log.info("Initializing Segment '" + segmentPath + ".");
         this.log = log;
         this.segmentPath = segmentPath;
@@ -142,7 +157,9 @@ public class Segment {
         this.fulltext = new Fulltext(segmentPath, archivePath, collectionConfiguration, webgraphConfiguration);
         this.termIndex = null;
         this.urlCitationIndex = null;
-        this.firstSeenIndex = new IndexTable(new File(segmentPath, firstseenIndexName), 12, 8, false, false);
+        this.postprocessingJournal = null;
+        this.firstSeenIndex = new IndexTable(new File(segmentPath, firstseenIndexName), 12, 8, false, false, mappedFirstSeen);
+        this.remoteResultWriter = new RemoteResultWriter(this);
     }
     
     public boolean connectedRWI() {
@@ -205,6 +222,38 @@ public class Segment {
         this.urlCitationIndex = null;
     }
 
+    public boolean connectedPostprocessingJournal() {
+        return this.postprocessingJournal != null;
+    }
+
+    /**
+     * open the journal of the documents which need postprocessing; while the journal is connected,
+     * the postprocessing finds its work in the journal instead of scanning the index for process tags
+     * @throws IOException if the journal cannot be opened
+     */
+    public void connectPostprocessingJournal() throws IOException {
+        if (this.postprocessingJournal != null) return;
+        this.postprocessingJournal = new PostprocessingJournal(this.segmentPath);
+    }
+
+    /**
+     * @return the postprocessing journal or null if it is not connected
+     */
+    public PostprocessingJournal postprocessingJournal() {
+        return this.postprocessingJournal;
+    }
+
+    /**
+     * close the postprocessing journal. Documents which are stored while the journal is disconnected are not
+     * recorded, so the postprocessing scans the index once when the journal is connected again.
+     */
+    public void disconnectPostprocessingJournal() {
+        PostprocessingJournal.requireScan(this.segmentPath);
+        if (this.postprocessingJournal == null) return;
+        this.postprocessingJournal.close();
+        this.postprocessingJournal = null;
+    }
+
     public int citationCount() {
         return this.urlCitationIndex == null ? 0 : this.urlCitationIndex.sizesMax();
     }
@@ -354,6 +403,15 @@ public class Segment {
         return this.termIndex.getBufferSize();
     }
 
+    /**
+     * check if the background mount of the term and citation index files has finished. The segment can be
+     * searched before, files which are not yet mounted are mounted with the first access.
+     * @return true if all recent index files are mounted
+     */
+    public boolean ready() {
+        return (this.termIndex == null || this.termIndex.ready()) && (this.urlCitationIndex == null || this.urlCitationIndex.ready());
+    }
+
     /**
      * get a guess about the word count. This is only a guess because it uses the term index if present and this index may be
      * influenced by index transmission processes in its statistic word distribution. However, it can be a hint for heuristics
@@ -388,6 +446,13 @@ public class Segment {
         }
     }
     
+    /**
+     * @return the writer which stores remote search results to this segment
+     */
+    public RemoteResultWriter remoteResultWriter() {
+        return this.remoteResultWriter;
+    }
+
     public long getFirstSeenTime(final byte[] urlhash) {
         if (urlhash == null) return -1;
         try {
@@ -479,10 +544,12 @@ public class Segment {
     }
 
     public synchronized void close() {
+        this.remoteResultWriter.close();
     	if (this.termIndex != null) this.termIndex.close();
         if (this.fulltext != null) this.fulltext.close();
         if (this.urlCitationIndex != null) this.urlCitationIndex.close();
         if (this.firstSeenIndex != null) this.firstSeenIndex.close();
+        if (this.postprocessingJournal != null) this.postprocessingJournal.close();
         if (this.merger != null) {
             this.merger.terminate();
             this.merger = null;
@@ -554,6 +621,7 @@ public class Segment {
     public void putDocument(final SolrInputDocument queueEntry) {
         try {
             this.fulltext().putDocument(queueEntry);
+            if (this.postprocessingJournal != null) this.postprocessingJournal.append(queueEntry);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         }
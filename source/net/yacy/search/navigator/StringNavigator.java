@@ -25,7 +25,7 @@ package net.yacy.search.navigator;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import net.yacy.cora.sorting.ConcurrentScoreMap;
+import net.yacy.cora.sorting.IntScoreMap;
 import net.yacy.cora.sorting.ReversibleScoreMap;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.search.query.QueryModifier;
@@ -35,7 +35,7 @@ import net.yacy.search.schema.CollectionSchema;
  * Search navigator for simple string entries based on ScoreMap to count and
  * order the result list by counted occurence
  */
-public class StringNavigator  extends ConcurrentScoreMap<String> implements Navigator {
+public class StringNavigator  extends IntScoreMap<String> implements Navigator {
 
     public String title;
     protected final CollectionSchema field;
@@ -0,0 +1,203 @@
+/**
+ *  FacetCache
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.search.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.SolrParams;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Metrics;
+import net.yacy.cora.order.Digest;
+import net.yacy.cora.sorting.ClusteredScoreMap;
+import net.yacy.cora.sorting.ReversibleScoreMap;
+import net.yacy.cora.storage.ARC;
+import net.yacy.cora.storage.ConcurrentARC;
+import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
+
+/**
+ * A cache of the field facet counts of the local Solr index, shared by all search events. The key is a fingerprint
+ * of the query parameters which determine the facet counts, so that paging, a different sort order or highlighting
+ * do not cause another facet computation. An entry is valid only for the index version (the version of the index
+ * reader which computed it), so that it is invalidated by the next commit, and for a limited time.
+ * The number of entries is derived from the maximum heap size; under memory pressure entries are released by the MemoryGovernor.
+ */
+public class FacetCache {
+
+    /** estimated memory usage of one entry, for the computation of the cache size */
+    private static final long ESTIMATED_ENTRY_SIZE = 32 * 1024;
+
+    /** the maximum age of an entry in milliseconds */
+    private static final long MAX_AGE = 600000;
+
+    private static class Entry {
+        private final long indexVersion;
+        private final long time;
+        private final Map<String, String[]> keys;
+        private final Map<String, int[]> counts;
+
+        private Entry(final long indexVersion, final Map<String, ReversibleScoreMap<String>> facets) {
+            this.indexVersion = indexVersion;
+            this.time = System.currentTimeMillis();
+            this.keys = new HashMap<String, String[]>(facets.size());
+            this.counts = new HashMap<String, int[]>(facets.size());
+            for (final Map.Entry<String, ReversibleScoreMap<String>> facet: facets.entrySet()) {
+                final ReversibleScoreMap<String> map = facet.getValue();
+                final List<String> k = new ArrayList<String>(map.size());
+                for (final String key: map) k.add(key);
+                final int[] c = new int[k.size()];
+                for (int i = 0; i < c.length; i++) c[i] = map.get(k.get(i));
+                this.keys.put(facet.getKey(), k.toArray(new String[k.size()]));
+                this.counts.put(facet.getKey(), c);
+            }
+        }
+
+        private Map<String, ReversibleScoreMap<String>> facets() {
+            final Map<String, ReversibleScoreMap<String>> facets = new HashMap<String, ReversibleScoreMap<String>>(this.keys.size());
+            for (final Map.Entry<String, String[]> facet: this.keys.entrySet()) {
+                final String[] k = facet.getValue();
+                final int[] c = this.counts.get(facet.getKey());
+                final ReversibleScoreMap<String> map = new ClusteredScoreMap<String>(UTF8.insensitiveUTF8Comparator);
+                for (int i = 0; i < k.length; i++) map.set(k[i], c[i]);
+                facets.put(facet.getKey(), map);
+            }
+            return facets;
+        }
+    }
+
+    private static final int maxEntries = (int) Math.max(64, Math.min(8192, MemoryControl.maxMemory() / 64 / ESTIMATED_ENTRY_SIZE));
+    private static final ARC<String, Entry> cache = new ConcurrentARC<String, Entry>(maxEntries, Math.max(1, Runtime.getRuntime().availableProcessors()));
+    private static final Counter hits = Metrics.counter("yacy_facet_cache_hits", "local facet computations answered from the facet cache");
+    private static final Counter misses = Metrics.counter("yacy_facet_cache_misses", "local facet computations which were not found in the facet cache");
+
+    static {
+        Metrics.register("yacy_facet_cache_size", "number of cached facet results", Metrics.Type.GAUGE, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cache.size();
+            }
+        });
+        MemoryGovernor.register("FacetCache", 100, new MemoryGovernor.Reclaimable() {
+            @Override
+            public int reclaim(final double fraction) {
+                return FacetCache.reclaim(fraction);
+            }
+        });
+    }
+
+    private FacetCache() {
+    }
+
+    /**
+     * compute the fingerprint of the parameters which determine the field facet counts of a query.
+     * The result window, sort order, returned fields, highlighting and range facets (which are not cached) are ignored,
+     * and multiple values of a parameter (i.e. filter queries) are considered in any order.
+     * @param query the Solr query
+     * @return the fingerprint
+     */
+    public static String fingerprint(final SolrParams query) {
+        final TreeSet<String> names = new TreeSet<String>();
+        final Iterator<String> i = query.getParameterNamesIterator();
+        while (i.hasNext()) names.add(i.next());
+        final StringBuilder sb = new StringBuilder(256);
+        for (final String name: names) {
+            if (CommonParams.START.equals(name) || CommonParams.ROWS.equals(name) || CommonParams.SORT.equals(name) ||
+                CommonParams.FL.equals(name) || CursorMarkParams.CURSOR_MARK_PARAM.equals(name) || "partitions".equals(name) ||
+                "hl".equals(name) || name.startsWith("hl.") || name.contains(FacetParams.FACET_RANGE)) continue;
+            final String[] values = query.getParams(name);
+            if (values == null) continue;
+            final String[] sorted = values.clone();
+            Arrays.sort(sorted);
+            sb.append(name);
+            for (final String value: sorted) sb.append('\u0000').append(value);
+            sb.append('\u0001');
+        }
+        return Digest.encodeMD5Hex(sb.toString());
+    }
+
+    /**
+     * get the facets of a query
+     * @param fingerprint the fingerprint of the query
+     * @param indexVersion the version of the index which is searched
+     * @return a copy of the cached facets, which may be changed by the caller, or null if there is no valid entry
+     */
+    public static Map<String, ReversibleScoreMap<String>> get(final String fingerprint, final long indexVersion) {
+        final Entry entry = cache.get(fingerprint);
+        if (entry == null || entry.indexVersion != indexVersion || System.currentTimeMillis() - entry.time > MAX_AGE) {
+            if (entry != null) cache.remove(fingerprint);
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        return entry.facets();
+    }
+
+    /**
+     * store the facets of a query
+     * @param fingerprint the fingerprint of the query
+     * @param indexVersion the version of the index which computed the facets
+     * @param facets the facets; they are copied and may be changed by the caller afterwards
+     */
+    public static void put(final String fingerprint, final long indexVersion, final Map<String, ReversibleScoreMap<String>> facets) {
+        if (facets == null) return;
+        cache.put(fingerprint, new Entry(indexVersion, facets));
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    /**
+     * release a fraction of the cache entries
+     * @param fraction
+     * @return the number of released entries
+     */
+    private static int reclaim(final double fraction) {
+        final int size = cache.size();
+        if (fraction >= 1.0d) {
+            cache.clear();
+            return size;
+        }
+        final int n = (int) (size * fraction);
+        if (n <= 0) return 0;
+        final List<String> keys = new ArrayList<String>(n);
+        for (final Map.Entry<String, Entry> entry: cache) {
+            if (keys.size() >= n) break;
+            keys.add(entry.getKey());
+        }
+        for (final String key: keys) cache.remove(key);
+        return keys.size();
+    }
+}
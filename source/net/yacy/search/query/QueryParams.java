@@ -182,7 +182,7 @@ public final class QueryParams {
     public final QueryModifier modifier;
     public Seed remotepeer;
     public final long starttime; // the time when the query started, how long it should take and the time when the timeout is reached (milliseconds)
-    protected final long maxtime;
+    public final long maxtime;
     // values that are set after a search:
     public int transmitcount; // number of results that had been shown to the user
     public long searchtime, urlretrievaltime, snippetcomputationtime; // time to perform the search, to get all the urls, and to compute the snippets
@@ -32,6 +32,7 @@ import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -43,6 +44,7 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -58,13 +60,14 @@ import net.yacy.cora.document.analysis.Classification.ContentDomain;
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.cora.federate.solr.connector.EmbeddedSolrConnector;
 import net.yacy.cora.federate.solr.responsewriter.OpensearchResponseWriter;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.federate.yacy.Distribution;
 import net.yacy.cora.lod.vocabulary.Tagging;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.Domains;
-import net.yacy.cora.sorting.ConcurrentScoreMap;
+import net.yacy.cora.sorting.IntScoreMap;
 import net.yacy.cora.sorting.ReversibleScoreMap;
 import net.yacy.cora.sorting.ScoreMap;
 import net.yacy.cora.sorting.ScoreMapUpdatesListener;
@@ -100,6 +103,8 @@ import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.EventTracker;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
+import net.yacy.search.index.Fulltext;
+import net.yacy.search.index.MetadataCache;
 import net.yacy.search.index.Segment;
 import net.yacy.search.navigator.Navigator;
 import net.yacy.search.navigator.NavigatorPlugins;
@@ -118,6 +123,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     private static final int max_results_rwi = 3000;
     private static final int max_results_node = 150;
 
+    /** number of result pages which are fetched at once from the local Solr index when local and remote results are mixed */
+    private static final int local_solr_prefetch_pages = 3;
+
     /*
     private static long noRobinsonLocalRWISearch = 0;
     static {
@@ -154,6 +162,10 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     /** Offset of the next local Solr index request
      * Example : last local request with offset=10 and itemsPerPage=20, sets this attribute to 30. */
     private int localsolroffset;
+
+    /** The local Solr query, continued page by page with a cursor; opened on demand and closed by cleanup() */
+    private EmbeddedSolrConnector.PagedQuery localSolrPages;
+    private boolean localSolrPagesClosed;
     
     /** counter for referenced that had been sorted out for other reasons */
     private final AtomicInteger expectedRemoteReferences, maxExpectedRemoteReferences;
@@ -165,7 +177,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     public final ScoreMap<String> protocolNavigator;
     
     /** a counter for file types */
-    public final ConcurrentScoreMap<String> dateNavigator;
+    public final IntScoreMap<String> dateNavigator;
     
     /** counters for Vocabularies; key is metatag.getVocabularyName() */
     public final Map<String, ScoreMap<String>> vocabularyNavigator;
@@ -175,6 +187,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     
     /** map of search custom/configured search navigators in addition to above standard navigators (which use special handling or display forms) */
     public final Map<String, Navigator> navigatorPlugins;
+
+    /** true if the RWI results can be filtered and counted with documents from the metadata cache, because no other fields are needed */
+    private final boolean rwiMetadataFromCache;
     
 	/** Holds the total number of successful write operations performed on all the active navigators since their initialization. */
 	private final AtomicLong navGeneration = new AtomicLong();
@@ -199,7 +214,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     private SortedMap<byte[], ReferenceContainer<WordReference>> localSearchInclusion;
     
     /** reference score computation for the commonSense heuristic */
-    private final ScoreMap<String> ref;
+    private final IntScoreMap<String> ref;
     private final long maxtime;
     
     /** key = domhash (6 bytes); value = like stack */
@@ -354,9 +369,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.excludeintext_image = Switchboard.getSwitchboard().getConfigBool("search.excludeintext.image", true);
         // prepare configured search navigation
         final String navcfg = Switchboard.getSwitchboard().getConfig("search.navigation", "");
-        this.locationNavigator = navcfg.contains("location") ? new ConcurrentScoreMap<String>(this) : null;
-        this.protocolNavigator = navcfg.contains("protocol") ? new ConcurrentScoreMap<String>(this) : null;
-        this.dateNavigator = navcfg.contains("date") ? new ConcurrentScoreMap<String>(this) : null;
+        this.locationNavigator = navcfg.contains("location") ? new IntScoreMap<String>(this) : null;
+        this.protocolNavigator = navcfg.contains("protocol") ? new IntScoreMap<String>(this) : null;
+        this.dateNavigator = navcfg.contains("date") ? new IntScoreMap<String>(this) : null;
         this.topicNavigatorCount = navcfg.contains("topics") ? MAX_TOPWORDS : 0;
         this.vocabularyNavigator = new TreeMap<String, ScoreMap<String>>();
         // prepare configured search navigation (plugins)
@@ -366,6 +381,14 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         		nav.setUpdatesListener(this);
         	}
         }
+        final Set<String> rwiFields = new HashSet<String>();
+        if (this.navigatorPlugins != null) {
+            for (final Navigator nav : this.navigatorPlugins.values()) {
+                if (nav.getIndexFieldName() != null) rwiFields.add(nav.getIndexFieldName());
+            }
+        }
+        this.rwiMetadataFromCache = MetadataCache.covers(rwiFields) && (this.query.metatags == null || this.query.metatags.isEmpty()) &&
+                LibraryProvider.autotagging.getVocabularies().isEmpty() && ProbabilisticClassifier.getContextNames().isEmpty();
 
         this.snippets = new ConcurrentHashMap<String, LinkedHashSet<String>>(); 
         this.secondarySearchSuperviser = (this.query.getQueryGoal().getIncludeHashes().size() > 1) ? new SecondarySearchSuperviser(this) : null; // generate abstracts only for combined searches
@@ -401,7 +424,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         // attention: if minEntries is too high, this method will not terminate within the maxTime
         // sortorder: 0 = hash, 1 = url, 2 = ranking
         this.localSearchInclusion = null;
-        this.ref = new ConcurrentScoreMap<String>(this);
+        this.ref = new IntScoreMap<String>(this);
         this.maxtime = query.maxtime;
         this.rwiStack = new WeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
         this.doubleDomCache = new ConcurrentHashMap<String, WeakPriorityBlockingQueue<WordReferenceVars>>();
@@ -421,14 +444,17 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             this.taggingPredicates.put(t.getName(), t.getPredicate());
         }
 
-        // start a local solr search
+        // start a local solr search; when local and remote results are mixed, the next pages are fetched with the same request
+        this.localSolrPages = null;
+        this.localSolrPagesClosed = false;
+        final int localSolrCount = this.remote ? local_solr_prefetch_pages * this.query.itemsPerPage : this.query.itemsPerPage;
         if (!Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
         	final boolean useSolrFacets = true;
 			this.localsolrsearch = RemoteSearch.solrRemoteSearch(this,
 					this.query.solrQuery(this.query.contentdom, this.query.isStrictContentDom(), useSolrFacets, this.excludeintext_image), this.query.offset,
-					this.query.itemsPerPage, null /* this peer */, 0, Switchboard.urlBlacklist, useSolrFacets, true);
+					localSolrCount, null /* this peer */, 0, Switchboard.urlBlacklist, useSolrFacets, true);
         }
-        this.localsolroffset = this.query.offset + this.query.itemsPerPage;
+        this.localsolroffset = this.query.offset + localSolrCount;
         
         // start a local RWI search concurrently
         this.rwiProcess = null;
@@ -446,8 +472,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                 this.primarySearchThreadsL = null;
                 this.nodeSearchThreads = null;
             } else {
-                this.primarySearchThreadsL = new ArrayList<RemoteSearch>();
-                this.nodeSearchThreads = new ArrayList<Thread>();
+                // the remote search adds hedged requests while other threads iterate over these lists
+                this.primarySearchThreadsL = new CopyOnWriteArrayList<RemoteSearch>();
+                this.nodeSearchThreads = new CopyOnWriteArrayList<Thread>();
                 // start this concurrently because the remote search needs an enumeration
                 // of the remote peers which may block in some cases when i.e. DHT is active
                 // at the same time.
@@ -830,6 +857,12 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         if (this.localsolrsearch != null) {
             if (localsolrsearch.isAlive()) synchronized (this.localsolrsearch) {this.localsolrsearch.interrupt();}
         }
+        synchronized (this) {
+            // forget the cursor of the local paged query
+            if (this.localSolrPages != null) this.localSolrPages.close();
+            this.localSolrPages = null;
+            this.localSolrPagesClosed = true;
+        }
         if (this.nodeSearchThreads != null) {
             for (final Thread search : this.nodeSearchThreads) {
                 if (search != null) {
@@ -886,6 +919,21 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         return this.IAneardhthash;
     }
 
+    /**
+     * get the paged query of this event on the local embedded Solr index, which continues the result pages with a cursor
+     * @return the paged query or null if the local index is not an embedded Solr index or this event is cleaned up
+     */
+    public synchronized EmbeddedSolrConnector.PagedQuery localSolrPages() {
+        if (this.localSolrPages == null && !this.localSolrPagesClosed) {
+            final Fulltext fulltext = this.query.getSegment().fulltext();
+            if (fulltext.connectedRemoteSolr()) return null;
+            final EmbeddedSolrConnector connector = fulltext.getDefaultEmbeddedConnector();
+            if (connector == null || connector.isClosed()) return null;
+            this.localSolrPages = connector.pagedQuery();
+        }
+        return this.localSolrPages;
+    }
+
     public List<RemoteSearch> getPrimarySearchThreads() {
         return this.primarySearchThreadsL;
     }
@@ -1162,7 +1210,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 					if (fcts != null) {
 						ScoreMap<String> vocNav = this.vocabularyNavigator.get(vocName);
 						if (vocNav == null) {
-							vocNav = new ConcurrentScoreMap<String>();
+							vocNav = new IntScoreMap<String>();
 							this.vocabularyNavigator.put(vocName, vocNav);
 						}
 						vocNav.inc(fcts);
@@ -1240,7 +1288,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 		if(docValue instanceof String) {
 			ScoreMap<String> vocNav = this.vocabularyNavigator.get(vocName);
 			if (vocNav == null) {
-				vocNav = new ConcurrentScoreMap<String>();
+				vocNav = new IntScoreMap<String>();
 				this.vocabularyNavigator.put(vocName, vocNav);
 			}
 			vocNav.inc((String)docValue);
@@ -1248,7 +1296,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 			if (!((Collection<?>) docValue).isEmpty()) {
 				ScoreMap<String> vocNav = this.vocabularyNavigator.get(vocName);
 				if (vocNav == null) {
-					vocNav = new ConcurrentScoreMap<String>();
+					vocNav = new IntScoreMap<String>();
 					this.vocabularyNavigator.put(vocName, vocNav);
 				}
 				for (final Object singleDocValue : (Collection<?>) docValue) {
@@ -1267,6 +1315,16 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.expectedRemoteReferences.addAndGet(x);
     }
 
+    /**
+     * get the metadata of a RWI result, from the metadata cache if the search does not need other fields
+     * @param element the RWI result
+     * @return the metadata or null if the document does not exist
+     */
+    private URIMetadataNode getRWIMetadata(final WeakPriorityBlockingQueue.Element<WordReferenceVars> element) {
+        final Fulltext fulltext = this.query.getSegment().fulltext();
+        return this.rwiMetadataFromCache ? fulltext.getCachedMetadata(element) : fulltext.getMetadata(element);
+    }
+
     /**
      * Take one best entry from the rwiStack and create a node entry out of it.
      * There is no waiting or blocking; if no entry is available this just returns null
@@ -1287,7 +1345,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                 rwi = this.rwiStack.poll();
                 if (rwi == null) return null;
                 if (!skipDoubleDom) {
-                    URIMetadataNode node = this.query.getSegment().fulltext().getMetadata(rwi);
+                    URIMetadataNode node = getRWIMetadata(rwi);
                     if (node == null) {
                     	decrementCounts(rwi.getElement());
                     	continue pollloop;
@@ -1305,7 +1363,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                             // first appearance of dom. we create an entry to signal that one of that domain was already returned
                             m = new WeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
                             this.doubleDomCache.put(hosthash, m);
-                            URIMetadataNode node = this.query.getSegment().fulltext().getMetadata(rwi);
+                            URIMetadataNode node = getRWIMetadata(rwi);
                             if (node == null) {
                             	decrementCounts(rwi.getElement());
                             	continue pollloop;
@@ -1370,7 +1428,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             }
             URIMetadataNode node = null;
             try {
-                node = this.query.getSegment().fulltext().getMetadata(bestEntry);
+                node = getRWIMetadata(bestEntry);
             } catch (Throwable e) {
                 ConcurrentLog.logException(e);
             }
@@ -1796,10 +1854,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                 if (this.ref.size() <= ic) { // size matches return map directly
                     result = this.getTopics(/*ic, 500*/);
                 } else { // collect top most count topics
-                    result = new ConcurrentScoreMap<String>();
-                    Iterator<String> it = this.getTopics(/*ic, 500*/).keys(false);
-                    while (ic-- > 0 && it.hasNext()) {
-                        String word = it.next();
+                    result = new IntScoreMap<String>();
+                    for (final String word: this.ref.topKeys(ic)) {
                         result.set(word, this.ref.get(word));
                     }
                 }
@@ -2000,6 +2056,15 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     
     public URIMetadataNode getSnippet(URIMetadataNode page, final CacheStrategy cacheStrategy) {
         if (page == null) return null;
+        if (MetadataCache.isPartial(page)) {
+            // a document from the metadata cache has no text and no display fields
+            final WordReferenceVars word = page.word();
+            page = this.query.getSegment().fulltext().completeMetadata(page);
+            if (page == null) {
+                decrementCounts(word);
+                return null;
+            }
+        }
 
         if (cacheStrategy == null) {
             final TextSnippet snippet = new TextSnippet(
@@ -31,9 +31,11 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.SortedSet;
 
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.data.WorkTables;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
 import net.yacy.peers.SeedDB;
 import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.Switchboard;
@@ -50,12 +52,40 @@ public class SearchEventCache {
     public volatile static String lastEventID = "";
     public static long cacheInsert = 0, cacheHit = 0, cacheMiss = 0, cacheDelete = 0;
 
+    static {
+        Metrics.register("yacy_search_event_cache_hits", "search requests answered with a cached search event", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cacheHit;
+            }
+        });
+        Metrics.register("yacy_search_event_cache_misses", "search requests which needed a new search event", Metrics.Type.COUNTER, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return cacheMiss;
+            }
+        });
+        Metrics.register("yacy_search_event_cache_size", "number of cached search events", Metrics.Type.GAUGE, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return size();
+            }
+        });
+        // under memory pressure release the oldest events; the events are the largest cached objects
+        MemoryGovernor.register("SearchEventCache", 100, new MemoryGovernor.Reclaimable() {
+            @Override
+            public int reclaim(final double fraction) {
+                return cleanupEvents(fraction);
+            }
+        });
+    }
+
     public static int size() {
         return lastEvents.size();
     }
 
     protected static void put(final String eventID, final SearchEvent event) {
-        if (MemoryControl.shortStatus()) cleanupEvents(false);
+        if (MemoryControl.shortStatus()) cleanupEvents(false); // removes only outdated events, memory pressure is handled by the MemoryGovernor
         lastEventID = eventID;
         synchronized (lastEvents) {
             final SearchEvent oldEvent = lastEvents.put(eventID, event);
@@ -74,7 +104,6 @@ public class SearchEventCache {
 
     public static void cleanupEvents(boolean all) {
         // remove old events in the event cache
-        if (MemoryControl.shortStatus()) all = true;
         // the less memory is there, the less time is acceptable for elements in the cache
         final long memx = MemoryControl.available();
         final long acceptTime = memx > memlimitHigh ? eventLifetimeBigMem : memx > memlimitMedium ? eventLifetimeMediumMem : eventLifetimeShortMem;
@@ -97,7 +126,6 @@ public class SearchEventCache {
     
     public static void cleanupEvents(int maxsize) {
         // remove old events in the event cache
-        if (MemoryControl.shortStatus()) {cleanupEvents(true); return;}
         Map.Entry<String, SearchEvent> eventEntry;
         synchronized (lastEvents) {
             final Iterator<Map.Entry<String, SearchEvent>> i = lastEvents.entrySet().iterator(); // iterates in order of entry
@@ -117,6 +145,27 @@ public class SearchEventCache {
         }
     }
 
+    /**
+     * remove the oldest events from the cache
+     * @param fraction the fraction of the events to remove
+     * @return the number of removed events
+     */
+    private static int cleanupEvents(final double fraction) {
+        int removed = 0;
+        synchronized (lastEvents) {
+            int dc = (int) Math.ceil(lastEvents.size() * fraction);
+            final Iterator<Map.Entry<String, SearchEvent>> i = lastEvents.entrySet().iterator(); // iterates in order of entry
+            while (dc-- > 0 && i.hasNext()) {
+                final SearchEvent event = i.next().getValue();
+                if (event != null) event.cleanup();
+                i.remove();
+                cacheDelete++;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
     public static SearchEvent getEvent(final String eventID) {
         SearchEvent event = lastEvents.get(eventID);
         if (event == null) {
@@ -141,7 +190,7 @@ public class SearchEventCache {
             final int remote_maxcount,
             final long remote_maxtime) {
 
-        if (MemoryControl.shortStatus()) cleanupEvents(true);
+        if (MemoryControl.shortStatus()) cleanupEvents(false); // removes only outdated events, memory pressure is handled by the MemoryGovernor
         final String id = query.id(false);
         SearchEvent event = getEvent(id);
         if (Switchboard.getSwitchboard() != null && !Switchboard.getSwitchboard().crawlQueues.noticeURL.isEmpty() && event != null && System.currentTimeMillis() - event.getEventTime() > 60000) {
@@ -36,7 +36,7 @@ import java.util.concurrent.Semaphore;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
-import net.yacy.cora.sorting.ConcurrentScoreMap;
+import net.yacy.cora.sorting.IntScoreMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.document.LargeNumberCache;
 import net.yacy.document.Tokenizer;
@@ -54,7 +54,7 @@ public class ReferenceOrder {
 
     private       int maxdomcount;
     private       WordReferenceVars min, max;
-    private final ConcurrentScoreMap<String> doms; // collected for "authority" heuristic
+    private final IntScoreMap<String> doms; // collected for "authority" heuristic
     private final RankingProfile ranking;
     private final String language;
 
@@ -62,7 +62,7 @@ public class ReferenceOrder {
         this.min = null;
         this.max = null;
         this.ranking = profile;
-        this.doms = new ConcurrentScoreMap<String>();
+        this.doms = new IntScoreMap<String>();
         this.maxdomcount = 0;
         this.language = language;
     }
@@ -33,6 +33,7 @@ import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -102,6 +103,8 @@ import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.Bitfield;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
+import net.yacy.search.index.PostprocessingJournal;
 import net.yacy.search.index.Segment;
 import net.yacy.search.index.Segment.ReferenceReport;
 import net.yacy.search.index.Segment.ReferenceReportCache;
@@ -1219,6 +1222,8 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
     public static int   postprocessingCollection1Count = 0; // number of documents to be processed
     public static int   postprocessingWebgraphCount = 0; // number of documents to be processed
 
+    private static final int JOURNAL_CHUNK_SIZE = 1000; // number of documents which are selected by their id with one query in postprocessingByJournal
+
     public static final String collection1query(final Segment segment, final String harvestkey) {
         return (harvestkey == null || !segment.fulltext().getDefaultConfiguration().contains(CollectionSchema.harvestkey_s) ?
                        "" : CollectionSchema.harvestkey_s.getSolrFieldName() + ":\"" + harvestkey + "\" AND ") +
@@ -1231,7 +1236,9 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
     }
     
     /**
-     * Performs post-processing steps for all entries that have a process tag assigned
+     * Performs post-processing steps for all entries that have a process tag assigned.
+     * If the segment has a postprocessing journal, the entries are taken from the journal, otherwise they are
+     * searched in the index by their process tag.
      * @param segment Solr segment. Must not be null.
      * @param rrCache reference report cache for the segment.
      * @param harvestkey key from a harvest process, used to mark documents needing post-processing
@@ -1241,6 +1248,8 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
     public int postprocessing(final Segment segment, final ReferenceReportCache rrCache, final String harvestkey, final boolean byPartialUpdate) {
         if (!this.contains(CollectionSchema.process_sxt)) return 0;
         if (!segment.connectedCitation() && !segment.fulltext().useWebgraph()) return 0;
+        final PostprocessingJournal journal = segment.postprocessingJournal();
+        if (journal != null && !journal.scanRequired()) return postprocessingByJournal(segment, rrCache, journal, harvestkey, byPartialUpdate);
         final SolrConnector collectionConnector = segment.fulltext().getDefaultConnector();
         collectionConnector.commit(false); // make sure that we have latest information that can be found
         if (segment.fulltext().useWebgraph()) segment.fulltext().getWebgraphConnector().commit(false);
@@ -1264,12 +1273,7 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
 
         postprocessingActivity = "create ranking map";
         ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
-        boolean shallComputeCR = (segment.fulltext().useWebgraph() &&
-                ((webgraph.contains(WebgraphSchema.source_id_s) && webgraph.contains(WebgraphSchema.source_cr_host_norm_i)) ||
-                        (webgraph.contains(WebgraphSchema.target_id_s) && webgraph.contains(WebgraphSchema.target_cr_host_norm_i))) ||
-                      (collection.contains(CollectionSchema.cr_host_count_i) &&
-                       collection.contains(CollectionSchema.cr_host_chance_d) &&
-                       collection.contains(CollectionSchema.cr_host_norm_i)));
+        final boolean shallComputeCR = shallComputeCR(segment, collection, webgraph);
         // create the ranking map
         final Map<String, CRV> rankings;
         if(shallComputeCR) {
@@ -1293,13 +1297,29 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
         // process all documents at the webgraph for the outgoing links of this document
         final AtomicInteger allcount = new AtomicInteger(0);
         if (segment.fulltext().useWebgraph() && shallComputeCR) {
-            postprocessWebgraph(segment, webgraph, webgraphquery, rankings, allcount);
+            postprocessingActivity = "collecting host facets for webgraph cr calculation";
+            ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
+            ReversibleScoreMap<String> webgraphhosts;
+            try {
+                Map<String, ReversibleScoreMap<String>> hostfacet = segment.fulltext().getWebgraphConnector().getFacets(webgraphquery, 10000000, WebgraphSchema.source_host_s.getSolrFieldName());
+                webgraphhosts = hostfacet.get(WebgraphSchema.source_host_s.getSolrFieldName());
+            } catch (final IOException e2) {
+                ConcurrentLog.logException(e2);
+                webgraphhosts = new ClusteredScoreMap<String>(true);
+            }
+            postprocessWebgraph(segment, webgraph, webgraphhosts, rankings, allcount);
         }
         
         // process all documents in collection
         postprocessDocuments(segment, rrCache, harvestkey, byPartialUpdate, collectionConnector, collection,
 				collection1query, rankings, allcount);
         
+        // from now on the journal knows all documents which need postprocessing
+        if (journal != null && harvestkey == null) try {
+            if (collectionConnector.getCountByQuery("{!cache=false}" + collection1query) == 0) journal.scanCompleted();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
         
         postprocessingCollection1Count = 0;
         postprocessingWebgraphCount = 0;
@@ -1309,6 +1329,117 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
         return allcount.get();
     }
 
+    /**
+     * Performs post-processing steps for the entries which are recorded in the postprocessing journal.
+     * Only the hosts of these entries take part in the citation rank computation, and the documents are
+     * loaded by their id in chunks; after each chunk a checkpoint is written, so an interrupted postprocessing
+     * is continued with the next chunk.
+     * @param segment Solr segment. Must not be null.
+     * @param rrCache reference report cache for the segment.
+     * @param journal the postprocessing journal of the segment
+     * @param harvestkey key from a harvest process, the entries of other harvest processes stay in the journal
+     * @param byPartialUpdate when true, perform partial updates on documents
+     * @return the number of post processed documents
+     */
+    private int postprocessingByJournal(final Segment segment, final ReferenceReportCache rrCache, final PostprocessingJournal journal, final String harvestkey, final boolean byPartialUpdate) {
+        final PostprocessingJournal.Work work;
+        try {
+            work = journal.take(harvestkey);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("CollectionConfiguration", "cannot read the postprocessing journal: " + e.getMessage(), e);
+            return 0;
+        }
+        if (work == null) return 0;
+        final SolrConnector collectionConnector = segment.fulltext().getDefaultConnector();
+        collectionConnector.commit(false); // make sure that the journaled documents can be found
+        if (segment.fulltext().useWebgraph()) segment.fulltext().getWebgraphConnector().commit(false);
+        final CollectionConfiguration collection = segment.fulltext().getDefaultConfiguration();
+        final WebgraphConfiguration webgraph = segment.fulltext().getWebgraphConfiguration();
+        postprocessingRunning = true;
+        postprocessingStartTime = System.currentTimeMillis();
+        postprocessingCollection1Count = work.size();
+        postprocessingWebgraphCount = 0;
+        final AtomicInteger allcount = new AtomicInteger(0);
+        try {
+            // create the ranking map for the hosts of the journaled documents
+            final Map<String, CRV> rankings;
+            final boolean shallComputeCR = shallComputeCR(segment, collection, webgraph);
+            if (shallComputeCR) {
+                postprocessingActivity = "create ranking map for " + work.hosts().size() + " hosts from the postprocessing journal";
+                ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
+                rankings = createRankingMap(segment, rrCache, collectionConnector, work.hosts());
+            } else {
+                rankings = new ConcurrentHashMap<String, CRV>();
+            }
+            if (segment.fulltext().useWebgraph() && shallComputeCR) {
+                postprocessWebgraph(segment, webgraph, work.hosts(), rankings, allcount);
+            }
+
+            // process the journaled documents; documents which do not have a process tag any more are not selected
+            final PostprocessingRun run = new PostprocessingRun(work.size());
+            postprocessingActivity = "collecting " + work.size() + " documents from the postprocessing journal for harvestkey " + harvestkey;
+            ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
+            List<String> ids;
+            while (!(ids = work.next(JOURNAL_CHUNK_SIZE)).isEmpty()) {
+                final StringBuilder query = new StringBuilder(ids.size() * 13 + 100);
+                query.append("{!cache=false}").append(CollectionSchema.process_sxt.getSolrFieldName()).append(AbstractSolrConnector.CATCHALL_DTERM);
+                query.append(" AND _query_:\"{!terms f=").append(CollectionSchema.id.getSolrFieldName()).append('}');
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i > 0) query.append(',');
+                    query.append(ids.get(i));
+                }
+                query.append('"');
+                rewriteDocuments(segment, rrCache, byPartialUpdate, collectionConnector, collection, Collections.singletonList(query.toString()), rankings, allcount, run);
+                collectionConnector.commit(true);
+                work.checkpoint();
+            }
+            work.finish();
+            ConcurrentLog.info("CollectionConfiguration", "cleanup_processing: re-calculated " + run.proccount + " new documents, " +
+                    run.proccount_referencechange + " reference-count changes, " +
+                    run.proccount_citationchange + " citation ranking changes.");
+        } catch (final InterruptedException e) {
+            ConcurrentLog.warn("CollectionConfiguration", e.getMessage(), e);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("CollectionConfiguration", e.getMessage(), e);
+        } finally {
+            work.close();
+            postprocessingCollection1Count = 0;
+            postprocessingWebgraphCount = 0;
+            postprocessingActivity = "postprocessing terminated";
+            ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
+            postprocessingRunning = false;
+        }
+        return allcount.get();
+    }
+
+    /**
+     * @return true if the citation rank shall be computed for the collection or the webgraph
+     */
+    private static boolean shallComputeCR(final Segment segment, final CollectionConfiguration collection, final WebgraphConfiguration webgraph) {
+        return (segment.fulltext().useWebgraph() &&
+                ((webgraph.contains(WebgraphSchema.source_id_s) && webgraph.contains(WebgraphSchema.source_cr_host_norm_i)) ||
+                        (webgraph.contains(WebgraphSchema.target_id_s) && webgraph.contains(WebgraphSchema.target_cr_host_norm_i))) ||
+                      (collection.contains(CollectionSchema.cr_host_count_i) &&
+                       collection.contains(CollectionSchema.cr_host_chance_d) &&
+                       collection.contains(CollectionSchema.cr_host_norm_i)));
+    }
+
+    /**
+     * The state of the rewrite of the collection documents, shared by all queries of one postprocessing.
+     */
+    private static class PostprocessingRun {
+        private final Map<String, Long> hostExtentCache = new HashMap<String, Long>(); // a mapping from the host id to the number of documents which contain this host-id
+        private final Set<String> uniqueURLs = ConcurrentHashMap.newKeySet(); // will be used in a concurrent environment
+        private final AtomicInteger proccount = new AtomicInteger();
+        private final AtomicInteger proccount_referencechange = new AtomicInteger();
+        private final AtomicInteger proccount_citationchange = new AtomicInteger();
+        private final long count; // the expected number of documents
+        private final long start = System.currentTimeMillis();
+        private PostprocessingRun(final long count) {
+            this.count = count;
+        }
+    }
+
     /**
      * Performs postprocessing steps on the main documents dollection.
      * @param segment Solr segment.
@@ -1325,16 +1456,6 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
 			final String harvestkey, final boolean byPartialUpdate, final SolrConnector collectionConnector,
 			final CollectionConfiguration collection, final String collection1query, final Map<String, CRV> rankings,
 			final AtomicInteger allcount) {
-		final Map<String, Long> hostExtentCache = new HashMap<String, Long>(); // a mapping from the host id to the number of documents which contain this host-id
-        final Set<String> uniqueURLs = ConcurrentHashMap.newKeySet(); // will be used in a concurrent environment
-        final Set<String> localOmitFields = new HashSet<String>();
-        localOmitFields.add(CollectionSchema.process_sxt.getSolrFieldName());
-        localOmitFields.add(CollectionSchema.harvestkey_s.getSolrFieldName());
-        final Collection<String> failids = ConcurrentHashMap.newKeySet();
-        final AtomicInteger countcheck = new AtomicInteger(0);
-        final AtomicInteger proccount = new AtomicInteger();
-        final AtomicInteger proccount_referencechange = new AtomicInteger();
-        final AtomicInteger proccount_citationchange = new AtomicInteger();
         try {
             // partitioning of the index, get a facet for a partitioning key
             final long count = collectionConnector.getCountByQuery("{!cache=false}" + collection1query);
@@ -1345,7 +1466,6 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 ReversibleScoreMap<String> partitioning = partitioningFacet.get(partitioningKey);
                 long emptyCount = collectionConnector.getCountByQuery("{!cache=false}" + "-" + partitioningKey + AbstractSolrConnector.CATCHALL_DTERM + " AND (" + collection1query + ")");
                 if (emptyCount > 0) partitioning.inc("", (int) emptyCount);
-                final long start = System.currentTimeMillis();
                 List<String> querystrings = new ArrayList<>(partitioning.size());
                 for (String partitioningValue: partitioning) {
                     String partitioningQuery = "{!cache=false}" + ((partitioningValue.length() == 0) ?
@@ -1353,190 +1473,209 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                             partitioningKey + ":" + partitioningValue + " AND (" + collection1query + ")");
                     querystrings.add(partitioningQuery);
                 }
-                // start collection of documents 
-                final int concurrency = Math.max(1, Math.min((int) (MemoryControl.available() / (100L * 1024L * 1024L)), Runtime.getRuntime().availableProcessors()));
-                //final int concurrency = 1;
-                final boolean reference_computation = this.contains(CollectionSchema.references_i) &&
-                        this.contains(CollectionSchema.references_internal_i) &&
-                        this.contains(CollectionSchema.references_external_i) &&
-                        this.contains(CollectionSchema.references_exthosts_i);
                 ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
-                final BlockingQueue<SolrDocument> docs = collectionConnector.concurrentDocumentsByQueries(
-                        querystrings,
-                        (this.contains(CollectionSchema.http_unique_b) || this.contains(CollectionSchema.www_unique_b)) ?
-                        CollectionSchema.host_subdomain_s.getSolrFieldName() + " asc," + // sort on subdomain to get hosts without subdomain first; that gives an opportunity to set www_unique_b flag to false
-                        CollectionSchema.url_protocol_s.getSolrFieldName() + " asc" // sort on protocol to get http before https; that gives an opportunity to set http_unique_b flag to false
-                        : null, // null sort is faster!
-                        0, 100000000, Long.MAX_VALUE, concurrency + 1, concurrency, true,
-                        byPartialUpdate ? 
-                        new String[]{
-                        // the following fields are needed to perform the postprocessing
-                        // and should only be used for partial updates; for full updates use a
-                        // full list of fields to avoid LazyInstantiation which has poor performace
-                        CollectionSchema.id.getSolrFieldName(),
-                        CollectionSchema.sku.getSolrFieldName(),
-                        CollectionSchema.harvestkey_s.getSolrFieldName(),
-                        CollectionSchema.process_sxt.getSolrFieldName(),
-                        CollectionSchema.canonical_equal_sku_b.getSolrFieldName(),
-                        CollectionSchema.canonical_s.getSolrFieldName(),
-                        CollectionSchema.exact_signature_l.getSolrFieldName(),
-                        CollectionSchema.fuzzy_signature_l.getSolrFieldName(),
-                        CollectionSchema.title_exact_signature_l.getSolrFieldName(),
-                        CollectionSchema.description_exact_signature_l.getSolrFieldName(),
-                        CollectionSchema.host_id_s.getSolrFieldName(),
-                        CollectionSchema.host_s.getSolrFieldName(),
-                        CollectionSchema.host_subdomain_s.getSolrFieldName(),
-                        CollectionSchema.url_chars_i.getSolrFieldName(),
-                        CollectionSchema.url_protocol_s.getSolrFieldName(),
-                        CollectionSchema.httpstatus_i.getSolrFieldName(),
-                        CollectionSchema.inboundlinkscount_i.getSolrFieldName(),
-                        CollectionSchema.robots_i.getSolrFieldName()} :
-                        this.allFields());
-                final Thread rewriteThread[] = new Thread[concurrency];
-                for (int rewrite_start = 0; rewrite_start < concurrency; rewrite_start++) {
-                    rewriteThread[rewrite_start] = new Thread("CollectionConfiguration.postprocessing.rewriteThread-" + rewrite_start) {
-                        @Override
-                        public void run() {
-                            SolrDocument doc;
+                final PostprocessingRun run = new PostprocessingRun(count);
+                final int countcheck = rewriteDocuments(segment, rrCache, byPartialUpdate, collectionConnector, collection, querystrings, rankings, allcount, run);
+                if (count != countcheck) ConcurrentLog.warn("CollectionConfiguration", "ambiguous collection document count for harvestkey " + harvestkey + ": expected=" + count + ", counted=" + countcheck + "; countquery=" + collection1query); // big gap for harvestkey = null
+                ConcurrentLog.info("CollectionConfiguration", "cleanup_processing: re-calculated " + run.proccount + " new documents, " +
+                            run.proccount_referencechange + " reference-count changes, " +
+                            run.proccount_citationchange + " citation ranking changes.");
+            }
+
+        } catch (final InterruptedException e2) {
+            ConcurrentLog.warn("CollectionConfiguration", e2.getMessage(), e2);
+        } catch (IOException e3) {
+            ConcurrentLog.warn("CollectionConfiguration", e3.getMessage(), e3);
+        }
+        collectionConnector.commit(true); // make changes available directly to prevent that the process repeats again
+	}
+
+	/**
+	 * Rewrites the documents of the main collection which are found by the given queries with the postprocessing
+	 * results and removes their process tags.
+	 * @param segment Solr segment.
+	 * @param rrCache reference report cache for the segment.
+	 * @param byPartialUpdate when true, perform partial updates on documents
+	 * @param collectionConnector connector to the main Solr collection
+	 * @param collection schema configuration for the collection
+	 * @param querystrings queries selecting the documents to postprocess
+	 * @param rankings postprocessed rankings
+	 * @param allcount global postprocessed documents count
+	 * @param run state of the postprocessing which is shared by subsequent calls
+	 * @return the number of documents found by the queries
+	 * @throws InterruptedException when the rewrite was interrupted
+	 * @throws IOException when the documents with permanent execution fails could not be deleted
+	 */
+	private int rewriteDocuments(final Segment segment, final ReferenceReportCache rrCache, final boolean byPartialUpdate,
+			final SolrConnector collectionConnector, final CollectionConfiguration collection, final List<String> querystrings,
+			final Map<String, CRV> rankings, final AtomicInteger allcount, final PostprocessingRun run) throws InterruptedException, IOException {
+        final Set<String> localOmitFields = new HashSet<String>();
+        localOmitFields.add(CollectionSchema.process_sxt.getSolrFieldName());
+        localOmitFields.add(CollectionSchema.harvestkey_s.getSolrFieldName());
+        final Collection<String> failids = ConcurrentHashMap.newKeySet();
+        final AtomicInteger countcheck = new AtomicInteger(0);
+        // start collection of documents 
+        final int concurrency = Math.max(1, Math.min((int) (MemoryControl.available() / (100L * 1024L * 1024L)), Runtime.getRuntime().availableProcessors()));
+        //final int concurrency = 1;
+        final boolean reference_computation = this.contains(CollectionSchema.references_i) &&
+                this.contains(CollectionSchema.references_internal_i) &&
+                this.contains(CollectionSchema.references_external_i) &&
+                this.contains(CollectionSchema.references_exthosts_i);
+        final BlockingQueue<SolrDocument> docs = collectionConnector.concurrentDocumentsByQueries(
+                querystrings,
+                (this.contains(CollectionSchema.http_unique_b) || this.contains(CollectionSchema.www_unique_b)) ?
+                CollectionSchema.host_subdomain_s.getSolrFieldName() + " asc," + // sort on subdomain to get hosts without subdomain first; that gives an opportunity to set www_unique_b flag to false
+                CollectionSchema.url_protocol_s.getSolrFieldName() + " asc" // sort on protocol to get http before https; that gives an opportunity to set http_unique_b flag to false
+                : null, // null sort is faster!
+                0, 100000000, Long.MAX_VALUE, concurrency + 1, concurrency, true,
+                byPartialUpdate ? 
+                new String[]{
+                // the following fields are needed to perform the postprocessing
+                // and should only be used for partial updates; for full updates use a
+                // full list of fields to avoid LazyInstantiation which has poor performace
+                CollectionSchema.id.getSolrFieldName(),
+                CollectionSchema.sku.getSolrFieldName(),
+                CollectionSchema.harvestkey_s.getSolrFieldName(),
+                CollectionSchema.process_sxt.getSolrFieldName(),
+                CollectionSchema.canonical_equal_sku_b.getSolrFieldName(),
+                CollectionSchema.canonical_s.getSolrFieldName(),
+                CollectionSchema.exact_signature_l.getSolrFieldName(),
+                CollectionSchema.fuzzy_signature_l.getSolrFieldName(),
+                CollectionSchema.title_exact_signature_l.getSolrFieldName(),
+                CollectionSchema.description_exact_signature_l.getSolrFieldName(),
+                CollectionSchema.host_id_s.getSolrFieldName(),
+                CollectionSchema.host_s.getSolrFieldName(),
+                CollectionSchema.host_subdomain_s.getSolrFieldName(),
+                CollectionSchema.url_chars_i.getSolrFieldName(),
+                CollectionSchema.url_protocol_s.getSolrFieldName(),
+                CollectionSchema.httpstatus_i.getSolrFieldName(),
+                CollectionSchema.inboundlinkscount_i.getSolrFieldName(),
+                CollectionSchema.robots_i.getSolrFieldName()} :
+                this.allFields());
+        final Thread rewriteThread[] = new Thread[concurrency];
+        for (int rewrite_start = 0; rewrite_start < concurrency; rewrite_start++) {
+            rewriteThread[rewrite_start] = new Thread("CollectionConfiguration.postprocessing.rewriteThread-" + rewrite_start) {
+                @Override
+                public void run() {
+                    SolrDocument doc;
+                    try {
+                        while ((doc = docs.take()) != AbstractSolrConnector.POISON_DOCUMENT) {
+                            // for each to-be-processed entry work on the process tag
+                            Collection<Object> proctags = doc.getFieldValues(CollectionSchema.process_sxt.getSolrFieldName());
+                            final String u = (String) doc.getFieldValue(CollectionSchema.sku.getSolrFieldName());
+                            final String i = (String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+                            if (proctags == null || proctags.size() == 0) {
+                                // this should not happen since we collected the documents using a process_sxt:[* TO *] term
+                                ConcurrentLog.warn("CollectionConfiguration", "no process_sxt entry for url " + u + ", id=" + i);
+                                continue;
+                            }
                             try {
-                                while ((doc = docs.take()) != AbstractSolrConnector.POISON_DOCUMENT) {
-                                    // for each to-be-processed entry work on the process tag
-                                    Collection<Object> proctags = doc.getFieldValues(CollectionSchema.process_sxt.getSolrFieldName());
-                                    final String u = (String) doc.getFieldValue(CollectionSchema.sku.getSolrFieldName());
-                                    final String i = (String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName());
-                                    if (proctags == null || proctags.size() == 0) {
-                                        // this should not happen since we collected the documents using a process_sxt:[* TO *] term
-                                        ConcurrentLog.warn("CollectionConfiguration", "no process_sxt entry for url " + u + ", id=" + i);
-                                        continue;
-                                    }
-                                    try {
-                                        DigestURL url = new DigestURL(u, ASCII.getBytes(i));
-                                        byte[] id = url.hash();
-                                        SolrInputDocument sid = byPartialUpdate ? new SolrInputDocument() : collection.toSolrInputDocument(doc, localOmitFields);
-                                        sid.setField(CollectionSchema.id.getSolrFieldName(), i);
-                                        for (Object tag: proctags) try {
-                                            
-                                            // switch over tag types
-                                            ProcessType tagtype = ProcessType.valueOf((String) tag);
-        
-                                            if (tagtype == ProcessType.CITATION &&
-                                                collection.contains(CollectionSchema.cr_host_count_i) &&
-                                                collection.contains(CollectionSchema.cr_host_chance_d) &&
-                                                collection.contains(CollectionSchema.cr_host_norm_i)) {
-                                                CRV crv = rankings.remove(ASCII.String(id)); // instead of 'get'ting the CRV, we also remove it because we will not need it again and free some memory here
-                                                if (crv != null) {
-                                                    sid.setField(CollectionSchema.cr_host_count_i.getSolrFieldName(), crv.count);
-                                                    sid.setField(CollectionSchema.cr_host_chance_d.getSolrFieldName(), crv.cr);
-                                                    sid.setField(CollectionSchema.cr_host_norm_i.getSolrFieldName(), crv.crn);
-                                                    proccount_citationchange.incrementAndGet();
-                                                }
-                                            }
-        
-                                            if (tagtype == ProcessType.UNIQUE) {
-                                                postprocessing_http_unique(segment, doc, sid, url);
-                                                postprocessing_www_unique(segment, doc, sid, url);
-                                                postprocessing_doublecontent(segment, uniqueURLs, doc, sid, url);
-                                            }
-                                            
-                                        } catch (IllegalArgumentException e) {}
-                                        
-                                        // compute references
-                                        if (reference_computation) {
-                                            String hosthash = url.hosthash();
-                                            if (!hostExtentCache.containsKey(hosthash)) {
-                                                StringBuilder q = new StringBuilder();
-                                                q.append(CollectionSchema.host_id_s.getSolrFieldName()).append(":\"").append(hosthash).append("\" AND ").append(CollectionSchema.httpstatus_i.getSolrFieldName()).append(":200");
-                                                long hostExtentCount = segment.fulltext().getDefaultConnector().getCountByQuery(q.toString());
-                                                hostExtentCache.put(hosthash, hostExtentCount);
-                                            }
-                                            if (postprocessing_references(rrCache, sid, url, hostExtentCache)) proccount_referencechange.incrementAndGet();
-                                        }
-                                        
-                                        // all processing steps checked, remove the processing and harvesting key
-                                        if (byPartialUpdate) {
-                                            sid.setField(CollectionSchema.process_sxt.getSolrFieldName(), null); // setting this to null will cause a removal when doing a partial update
-                                            sid.setField(CollectionSchema.harvestkey_s.getSolrFieldName(), null);
-                                        } /*else { // fields are omitted on sid creation
-                                            sid.removeField(CollectionSchema.process_sxt.getSolrFieldName());
-                                            sid.removeField(CollectionSchema.harvestkey_s.getSolrFieldName());
-                                        }*/
-                                        // with standard solr fields selected, the sid now contains the fields
-                                        // id, http_unique_b, www_unique_b, references_i, references_internal_i, references_external_i, references_exthosts_i, host_extent_i
-                                        // and the value for host_extent_i is by default 2147483647
-                                        
-                                        // send back to index
-                                        //collectionConnector.deleteById(i);
-                                        if (byPartialUpdate) {
-                                            collectionConnector.update(sid);
-                                        } else {
-                                            collectionConnector.add(sid);
+                                DigestURL url = new DigestURL(u, ASCII.getBytes(i));
+                                byte[] id = url.hash();
+                                SolrInputDocument sid = byPartialUpdate ? new SolrInputDocument() : collection.toSolrInputDocument(doc, localOmitFields);
+                                sid.setField(CollectionSchema.id.getSolrFieldName(), i);
+                                for (Object tag: proctags) try {
+                                    
+                                    // switch over tag types
+                                    ProcessType tagtype = ProcessType.valueOf((String) tag);
+
+                                    if (tagtype == ProcessType.CITATION &&
+                                        collection.contains(CollectionSchema.cr_host_count_i) &&
+                                        collection.contains(CollectionSchema.cr_host_chance_d) &&
+                                        collection.contains(CollectionSchema.cr_host_norm_i)) {
+                                        CRV crv = rankings.remove(ASCII.String(id)); // instead of 'get'ting the CRV, we also remove it because we will not need it again and free some memory here
+                                        if (crv != null) {
+                                            sid.setField(CollectionSchema.cr_host_count_i.getSolrFieldName(), crv.count);
+                                            sid.setField(CollectionSchema.cr_host_chance_d.getSolrFieldName(), crv.cr);
+                                            sid.setField(CollectionSchema.cr_host_norm_i.getSolrFieldName(), crv.crn);
+                                            run.proccount_citationchange.incrementAndGet();
                                         }
-                                        long thiscount = proccount.incrementAndGet(); allcount.incrementAndGet();
-                                        if (thiscount % 100 == 0) {
-                                            postprocessingActivity = "postprocessed " + thiscount + " from " + count + " collection documents; " +
-                                                (thiscount * 60000L / (System.currentTimeMillis() - start)) + " ppm; " +
-                                                ((System.currentTimeMillis() - start) * (count - thiscount) / thiscount / 60000) + " minutes remaining";
-                                            ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
-                                        }
-                                    } catch (final Throwable e1) {
-                                        ConcurrentLog.logException(e1);
-                                        failids.add(i);
                                     }
-                                    countcheck.incrementAndGet();
+
+                                    if (tagtype == ProcessType.UNIQUE) {
+                                        postprocessing_http_unique(segment, doc, sid, url);
+                                        postprocessing_www_unique(segment, doc, sid, url);
+                                        postprocessing_doublecontent(segment, run.uniqueURLs, doc, sid, url);
+                                    }
+                                    
+                                } catch (IllegalArgumentException e) {}
+                                
+                                // compute references
+                                if (reference_computation) {
+                                    String hosthash = url.hosthash();
+                                    if (!run.hostExtentCache.containsKey(hosthash)) {
+                                        StringBuilder q = new StringBuilder();
+                                        q.append(CollectionSchema.host_id_s.getSolrFieldName()).append(":\"").append(hosthash).append("\" AND ").append(CollectionSchema.httpstatus_i.getSolrFieldName()).append(":200");
+                                        long hostExtentCount = segment.fulltext().getDefaultConnector().getCountByQuery(q.toString());
+                                        run.hostExtentCache.put(hosthash, hostExtentCount);
+                                    }
+                                    if (postprocessing_references(rrCache, sid, url, run.hostExtentCache)) run.proccount_referencechange.incrementAndGet();
                                 }
-                            } catch (InterruptedException e) {
-                                ConcurrentLog.logException(e);
+                                
+                                // all processing steps checked, remove the processing and harvesting key
+                                if (byPartialUpdate) {
+                                    sid.setField(CollectionSchema.process_sxt.getSolrFieldName(), null); // setting this to null will cause a removal when doing a partial update
+                                    sid.setField(CollectionSchema.harvestkey_s.getSolrFieldName(), null);
+                                } /*else { // fields are omitted on sid creation
+                                    sid.removeField(CollectionSchema.process_sxt.getSolrFieldName());
+                                    sid.removeField(CollectionSchema.harvestkey_s.getSolrFieldName());
+                                }*/
+                                // with standard solr fields selected, the sid now contains the fields
+                                // id, http_unique_b, www_unique_b, references_i, references_internal_i, references_external_i, references_exthosts_i, host_extent_i
+                                // and the value for host_extent_i is by default 2147483647
+                                
+                                // send back to index
+                                //collectionConnector.deleteById(i);
+                                if (byPartialUpdate) {
+                                    collectionConnector.update(sid);
+                                } else {
+                                    collectionConnector.add(sid);
+                                }
+                                segment.fulltext().invalidateCachedMetadata(id); // the references changed
+                                long thiscount = run.proccount.incrementAndGet(); allcount.incrementAndGet();
+                                if (thiscount % 100 == 0) {
+                                    postprocessingActivity = "postprocessed " + thiscount + " from " + run.count + " collection documents; " +
+                                        (thiscount * 60000L / (System.currentTimeMillis() - run.start)) + " ppm; " +
+                                        ((System.currentTimeMillis() - run.start) * (run.count - thiscount) / thiscount / 60000) + " minutes remaining";
+                                    ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
+                                }
+                            } catch (final Throwable e1) {
+                                ConcurrentLog.logException(e1);
+                                failids.add(i);
                             }
+                            countcheck.incrementAndGet();
                         }
-                    };
-                    rewriteThread[rewrite_start].start();
-                }
-                // wait for termination
-                for (int rewrite_start = 0; rewrite_start < concurrency; rewrite_start++) rewriteThread[rewrite_start].join();
-                
-                if (failids.size() > 0) {
-                    ConcurrentLog.info("CollectionConfiguration", "cleanup_processing: deleting " + failids.size() + " documents which have permanent execution fails");
-                    collectionConnector.deleteByIds(failids);
+                    } catch (InterruptedException e) {
+                        ConcurrentLog.logException(e);
+                    }
                 }
-                if (count != countcheck.get()) ConcurrentLog.warn("CollectionConfiguration", "ambiguous collection document count for harvestkey " + harvestkey + ": expected=" + count + ", counted=" + countcheck + "; countquery=" + collection1query); // big gap for harvestkey = null
-                ConcurrentLog.info("CollectionConfiguration", "cleanup_processing: re-calculated " + proccount + " new documents, " +
-                            proccount_referencechange + " reference-count changes, " +
-                            proccount_citationchange + " citation ranking changes.");
-            }
-            
-        } catch (final InterruptedException e2) {
-            ConcurrentLog.warn("CollectionConfiguration", e2.getMessage(), e2);
-        } catch (IOException e3) {
-            ConcurrentLog.warn("CollectionConfiguration", e3.getMessage(), e3);
+            };
+            rewriteThread[rewrite_start].start();
         }
-        collectionConnector.commit(true); // make changes available directly to prevent that the process repeats again
+        // wait for termination
+        for (int rewrite_start = 0; rewrite_start < concurrency; rewrite_start++) rewriteThread[rewrite_start].join();
+        
+        if (failids.size() > 0) {
+            ConcurrentLog.info("CollectionConfiguration", "cleanup_processing: deleting " + failids.size() + " documents which have permanent execution fails");
+            collectionConnector.deleteByIds(failids);
+        }
+        return countcheck.get();
 	}
 
 	/**
 	 * Perform postprocessing steps on the webgraph core.
 	 * @param segment Solr segment.
 	 * @param webgraph webgraph schema configuration
-	 * @param webgraphquery query used to harvest items to postprocess in the webgraph collection
+	 * @param webgraphhosts source hosts of the edges to postprocess in the webgraph collection
 	 * @param rankings postprocessed rankings
 	 * @param allcount global postprocessed documents count
 	 */
-	private void postprocessWebgraph(final Segment segment, final WebgraphConfiguration webgraph, String webgraphquery,
+	private void postprocessWebgraph(final Segment segment, final WebgraphConfiguration webgraph, final ReversibleScoreMap<String> webgraphhosts,
 			final Map<String, CRV> rankings, final AtomicInteger allcount) {
-		postprocessingActivity = "collecting host facets for webgraph cr calculation";
-		ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
 		final Set<String> omitFields = new HashSet<String>();
 		omitFields.add(WebgraphSchema.process_sxt.getSolrFieldName());
 		omitFields.add(WebgraphSchema.harvestkey_s.getSolrFieldName());
 		
-		// collect hosts from index which shall take part in citation computation
-		ReversibleScoreMap<String> webgraphhosts;
-		try {
-		    Map<String, ReversibleScoreMap<String>> hostfacet = segment.fulltext().getWebgraphConnector().getFacets(webgraphquery, 10000000, WebgraphSchema.source_host_s.getSolrFieldName());
-		    webgraphhosts = hostfacet.get(WebgraphSchema.source_host_s.getSolrFieldName());
-		} catch (final IOException e2) {
-		    ConcurrentLog.logException(e2);
-		    webgraphhosts = new ClusteredScoreMap<String>(true);
-		}
 		try {
 		    final long start = System.currentTimeMillis();
 		    for (String host: webgraphhosts.keyList(true)) {
@@ -1684,7 +1823,7 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                             }
                         }
                         patchquerycountcheck++;
-                        if (MemoryControl.shortStatus()) {
+                        if (MemoryGovernor.exhausted()) {
                             ConcurrentLog.warn("CollectionConfiguration", "terminated canonical collection during postprocessing because of short memory");
                             break;
                         }
@@ -1704,7 +1843,7 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 while (convergence_attempts++ < 30) {
                     ConcurrentLog.info("CollectionConfiguration", "convergence step " + convergence_attempts + " for host " + host + " ...");
                     if (crh.convergenceStep()) break;
-                    if (MemoryControl.shortStatus()) {
+                    if (MemoryGovernor.exhausted()) {
                         ConcurrentLog.warn("CollectionConfiguration", "terminated convergenceStep during postprocessing because of short memory");
                         break;
                     }
@@ -1714,7 +1853,7 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 Map<String, CRV> crn = crh.normalize();
                 //crh.log(crn);
                 rankings.putAll(crn); // accumulate this here for usage in document update later
-                if (MemoryControl.shortStatus()) {
+                if (MemoryGovernor.exhausted()) {
                     ConcurrentLog.warn("CollectionConfiguration", "terminated crn akkumulation during postprocessing because of short memory");
                     break;
                 }
@@ -1975,7 +2114,7 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 String id;
                 while ((id = ids.take()) != AbstractSolrConnector.POISON_ID) {
                     this.crt.put(id, new double[]{0.0d,0.0d}); //{old value, new value}
-                    if (MemoryControl.shortStatus()) {
+                    if (MemoryGovernor.exhausted()) {
                         ConcurrentLog.warn("CollectionConfiguration", "terminated CRHost collection during postprocessing because of short memory");
                         break;
                     }
@@ -767,7 +767,7 @@ public final class HTTPDProxyHandler {
      */
     private static HTTPClient setupHttpClient(final RequestHeader requestHeader, final ClientIdentification.Agent agent) {
         // setup HTTP-client
-    	final HTTPClient client = new HTTPClient(agent, timeout);
+    	final HTTPClient client = new HTTPClient(agent, timeout, HTTPClient.Pool.PROXY);
     	client.setHeader(requestHeader.entrySet());
     	client.setRedirecting(false);
         return client;
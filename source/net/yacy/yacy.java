@@ -77,6 +77,7 @@ import net.yacy.http.YaCyHttpServer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
 import net.yacy.kelondro.util.OS;
 import net.yacy.peers.Seed;
 import net.yacy.peers.operation.yacyBuildProperties;
@@ -220,6 +221,7 @@ public final class yacy {
 
             // switch the memory strategy
             MemoryControl.setStandardStrategy(sb.getConfigBool("memory.standardStrategy", true));
+            MemoryGovernor.setThreshold(sb.getConfigInt("memory.governor.threshold", MemoryGovernor.DEFAULT_THRESHOLD));
 
             // save information about available memory at startup time
             sb.setConfig("memoryFreeAfterStartup", startupMemFree);
@@ -25,8 +25,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -42,10 +45,19 @@ import net.yacy.kelondro.util.FileUtils;
  */
 public class DigestURLHashPerfTest {
 
+	/** Default number of warmup rounds, not measured, letting the JIT compiler optimize the hashing code */
+	private static final int DEFAULT_WARMUP_ROUNDS = 5;
+
+	/** Default number of measured rounds */
+	private static final int DEFAULT_MEASURED_ROUNDS = 10;
+
 	/**
 	 * Run and measure the {@link DigestURL#hash()} method on a list of urls
 	 * provided in a given file (one URL per line). When an output file path is
-	 * provided, generated hashes are written to it.
+	 * provided, generated hashes are written to it. The hashing of all urls is
+	 * then repeated in warmup rounds and measured rounds, reporting the
+	 * throughput, the mean time and, when supported by the JVM, the heap
+	 * allocated per hash.
 	 *
 	 * @param args
 	 *            parameters
@@ -53,9 +65,11 @@ public class DigestURLHashPerfTest {
 	 */
 	public static void main(final String[] args) throws IOException {
 		if (args.length < 1) {
-			System.out.println("Usage : java DigestURLHashPerfTest <urlsFilePath> [outputFilePath]");
+			System.out.println("Usage : java DigestURLHashPerfTest <urlsFilePath> [outputFilePath] [measuredRounds] [warmupRounds]");
 			return;
 		}
+		final int measuredRounds = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_MEASURED_ROUNDS;
+		final int warmupRounds = args.length >= 4 ? Integer.parseInt(args[3]) : DEFAULT_WARMUP_ROUNDS;
 
 		final File inFile = new File(args[0]);
 		final List<String> urls = FileUtils.getListArray(inFile);
@@ -101,6 +115,8 @@ public class DigestURLHashPerfTest {
 			System.out.println("Render mean time (ms) : " + TimeUnit.NANOSECONDS.toMillis(meanTime));
 			System.out.println("Render min time (ms) : " + TimeUnit.NANOSECONDS.toMillis(minTime));
 			System.out.println("Render max time (ms) : " + TimeUnit.NANOSECONDS.toMillis(maxTime));
+
+			benchmark(urls, warmupRounds, measuredRounds);
 		} finally {
 			try {
 				Domains.close();
@@ -111,4 +127,84 @@ public class DigestURLHashPerfTest {
 
 	}
 
+	/**
+	 * Hash all the urls in warmup rounds then in measured rounds. The urls are
+	 * parsed again before each round, out of the measured time, as the hash is
+	 * cached in each {@link DigestURL} instance.
+	 *
+	 * @param urls
+	 *            the urls to hash
+	 * @param warmupRounds
+	 *            the number of rounds run before measuring
+	 * @param measuredRounds
+	 *            the number of measured rounds
+	 */
+	private static void benchmark(final List<String> urls, final int warmupRounds, final int measuredRounds) {
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		final com.sun.management.ThreadMXBean allocationBean = threadBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+						? (com.sun.management.ThreadMXBean) threadBean
+						: null;
+		if (allocationBean != null) {
+			allocationBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		final long threadId = Thread.currentThread().getId();
+
+		long blackhole = 0;
+		for (int round = 0; round < warmupRounds; round++) {
+			for (final DigestURL url : parse(urls)) {
+				blackhole += url.hash()[0];
+			}
+		}
+
+		long totalTime = 0, totalAllocated = 0, hashes = 0, minRoundTime = Long.MAX_VALUE;
+		for (int round = 0; round < measuredRounds; round++) {
+			final List<DigestURL> parsed = parse(urls);
+			final long allocatedBefore = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+			final long beginTime = System.nanoTime();
+			for (final DigestURL url : parsed) {
+				blackhole += url.hash()[0];
+			}
+			final long time = System.nanoTime() - beginTime;
+			if (allocationBean != null) {
+				totalAllocated += allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+			}
+			totalTime += time;
+			minRoundTime = Math.min(minRoundTime, time);
+			hashes += parsed.size();
+		}
+
+		if (hashes == 0) {
+			System.out.println("No hash measured.");
+			return;
+		}
+		System.out.println("Benchmark : " + warmupRounds + " warmup rounds, " + measuredRounds + " measured rounds of "
+				+ (hashes / measuredRounds) + " urls (" + (blackhole & 1) + ")");
+		System.out.println("Throughput (hashes/s) : " + (hashes * TimeUnit.SECONDS.toNanos(1) / Math.max(1, totalTime)));
+		System.out.println("Mean time per hash (ns) : " + (totalTime / hashes));
+		System.out.println("Best round time (ms) : " + TimeUnit.NANOSECONDS.toMillis(minRoundTime));
+		if (allocationBean != null) {
+			System.out.println("Allocated per hash (bytes) : " + (totalAllocated / hashes));
+		} else {
+			System.out.println("Allocated per hash (bytes) : not supported by this JVM");
+		}
+	}
+
+	/**
+	 * @param urls
+	 *            urls as strings
+	 * @return new DigestURL instances, without computed hashes
+	 */
+	private static List<DigestURL> parse(final List<String> urls) {
+		final List<DigestURL> parsed = new ArrayList<>(urls.size());
+		for (final String urlStr : urls) {
+			try {
+				parsed.add(new DigestURL(urlStr));
+			} catch (final MalformedURLException e) {
+				// already reported on first run
+			}
+		}
+		return parsed;
+	}
+
 }
@@ -0,0 +1,308 @@
+package net.yacy.cora.federate.solr.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * Unit tests for the {@link ConcurrentUpdateSolrConnector} class, using an in-memory connector.
+ */
+public class ConcurrentUpdateSolrConnectorTest {
+
+    /**
+     * Minimal in-memory connector counting its write requests
+     */
+    private static class MemorySolrConnector extends AbstractSolrConnector implements SolrConnector {
+
+        final Map<String, SolrInputDocument> docs = new LinkedHashMap<String, SolrInputDocument>();
+        int addRequests = 0;
+        int updateRequests = 0;
+        int softCommits = 0;
+
+        @Override
+        public synchronized void add(final SolrInputDocument solrdoc) {
+            this.addRequests++;
+            this.docs.put((String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName()), solrdoc);
+        }
+
+        @Override
+        public synchronized void add(final Collection<SolrInputDocument> solrdocs) {
+            this.addRequests++;
+            for (final SolrInputDocument solrdoc: solrdocs) this.docs.put((String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName()), solrdoc);
+        }
+
+        @Override
+        public synchronized void update(final SolrInputDocument solrdoc) {
+            this.updateRequests++;
+            final SolrInputDocument doc = this.docs.get(solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
+            if (doc != null) for (final SolrInputField field: solrdoc) doc.setField(field.getName(), field.getValue());
+        }
+
+        @Override
+        public synchronized void update(final Collection<SolrInputDocument> solrdocs) {
+            this.updateRequests++;
+            for (final SolrInputDocument solrdoc: solrdocs) {
+                final SolrInputDocument doc = this.docs.get(solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
+                if (doc != null) for (final SolrInputField field: solrdoc) doc.setField(field.getName(), field.getValue());
+            }
+        }
+
+        @Override
+        public synchronized SolrDocument getDocumentById(final String id, final String ... fields) {
+            final SolrInputDocument doc = this.docs.get(id);
+            if (doc == null) return null;
+            final SolrDocument result = new SolrDocument();
+            for (final SolrInputField field: doc) result.setField(field.getName(), field.getValue());
+            return result;
+        }
+
+        @Override
+        public synchronized void deleteById(final String id) {
+            this.docs.remove(id);
+        }
+
+        @Override
+        public synchronized void deleteByIds(final Collection<String> ids) {
+            for (final String id: ids) this.docs.remove(id);
+        }
+
+        @Override
+        public synchronized void deleteByQuery(final String querystring) {
+            this.docs.clear();
+        }
+
+        @Override
+        public synchronized void clear() {
+            this.docs.clear();
+        }
+
+        @Override
+        public synchronized void commit(final boolean softCommit) {
+            if (softCommit) this.softCommits++;
+        }
+
+        @Override
+        public synchronized long getSize() {
+            return this.docs.size();
+        }
+
+        @Override
+        public void clearCaches() {}
+
+        @Override
+        public int bufferSize() {
+            return 0;
+        }
+
+        @Override
+        public void optimize(final int maxSegments) {}
+
+        @Override
+        public int getSegmentCount() {
+            return 1;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public QueryResponse getResponseByParams(final ModifiableSolrParams query) throws IOException, SolrException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SolrDocumentList getDocumentListByParams(final ModifiableSolrParams params) throws IOException, SolrException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BlockingQueue<String> concurrentIDsByQuery(final String querystring, final String sort, final int offset, final int maxcount, final long maxtime, final int buffersize, final int concurrency) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private MemorySolrConnector memory;
+    private ConcurrentUpdateSolrConnector connector;
+
+    @Before
+    public void setUp() {
+        this.memory = new MemorySolrConnector();
+        this.connector = new ConcurrentUpdateSolrConnector(this.memory, 10, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        this.connector.close();
+    }
+
+    private static SolrInputDocument doc(final String id, final String title) {
+        final SolrInputDocument doc = new SolrInputDocument();
+        doc.setField(CollectionSchema.id.getSolrFieldName(), id);
+        doc.setField(CollectionSchema.title.getSolrFieldName(), title);
+        return doc;
+    }
+
+    /**
+     * Documents must be written in batches of the buffer size, and buffered documents must be readable by id.
+     */
+    @Test
+    public void testBatchWrite() throws IOException {
+        for (int i = 0; i < 25; i++) this.connector.add(doc("id" + i, "title" + i));
+        final SolrDocument buffered = this.connector.getDocumentById("id24", CollectionSchema.title.getSolrFieldName());
+        assertNotNull(buffered);
+        assertEquals("title24", buffered.getFieldValue(CollectionSchema.title.getSolrFieldName()));
+        assertNull(buffered.getFieldValue(CollectionSchema.id.getSolrFieldName()));
+
+        this.connector.flush();
+        assertEquals(25, this.memory.getSize());
+        assertEquals(0, this.connector.bufferSize());
+        assertTrue("expected batched requests, got " + this.memory.addRequests, this.memory.addRequests <= 5);
+    }
+
+    /**
+     * Additions and partial updates of a same document must be merged in the buffer.
+     */
+    @Test
+    public void testMerge() throws IOException {
+        this.connector.add(doc("id0", "first"));
+        this.connector.add(doc("id0", "second"));
+        final SolrInputDocument update = new SolrInputDocument();
+        update.setField(CollectionSchema.id.getSolrFieldName(), "id0");
+        update.setField(CollectionSchema.host_s.getSolrFieldName(), "yacy.net");
+        this.connector.update(update);
+        assertEquals(1, this.connector.bufferSize());
+
+        this.connector.flush();
+        assertEquals(1, this.memory.addRequests);
+        assertEquals(0, this.memory.updateRequests);
+        final SolrDocument written = this.memory.getDocumentById("id0");
+        assertEquals("second", written.getFieldValue(CollectionSchema.title.getSolrFieldName()));
+        assertEquals("yacy.net", written.getFieldValue(CollectionSchema.host_s.getSolrFieldName()));
+    }
+
+    /**
+     * A buffered partial update must be applied to a written document when it is read, without writing it.
+     */
+    @Test
+    public void testReadBufferedUpdate() throws IOException {
+        this.connector.add(doc("id0", "title0"));
+        this.connector.flush();
+        final SolrInputDocument update = new SolrInputDocument();
+        update.setField(CollectionSchema.id.getSolrFieldName(), "id0");
+        update.setField(CollectionSchema.title.getSolrFieldName(), "updated");
+        this.connector.update(update);
+
+        final SolrDocument read = this.connector.getDocumentById("id0");
+        assertEquals("updated", read.getFieldValue(CollectionSchema.title.getSolrFieldName()));
+        assertEquals(0, this.memory.updateRequests);
+        assertEquals(1, this.connector.bufferSize());
+    }
+
+    /**
+     * The buffer must not share the documents of the caller, which may be modified after the call.
+     */
+    @Test
+    public void testBufferCopies() throws IOException {
+        final SolrInputDocument doc = doc("id0", "title0");
+        this.connector.add(doc);
+        final SolrInputDocument update = new SolrInputDocument();
+        update.setField(CollectionSchema.id.getSolrFieldName(), "id0");
+        update.setField(CollectionSchema.host_s.getSolrFieldName(), "yacy.net");
+        this.connector.update(update);
+        doc.setField(CollectionSchema.title.getSolrFieldName(), "modified");
+        update.setField(CollectionSchema.host_s.getSolrFieldName(), "modified");
+        assertNull(doc.getFieldValue(CollectionSchema.host_s.getSolrFieldName()));
+
+        this.connector.flush();
+        final SolrDocument written = this.memory.getDocumentById("id0");
+        assertEquals("title0", written.getFieldValue(CollectionSchema.title.getSolrFieldName()));
+        assertEquals("yacy.net", written.getFieldValue(CollectionSchema.host_s.getSolrFieldName()));
+    }
+
+    /**
+     * A flush must only wait for the documents buffered at the time of the call, not for documents added meanwhile.
+     */
+    @Test(timeout = 10000)
+    public void testFlushUnderContinuousAdds() throws Exception {
+        final Thread indexer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; !isInterrupted(); i++) ConcurrentUpdateSolrConnectorTest.this.connector.add(doc("id" + i, "title" + i));
+                } catch (final IOException e) {}
+            }
+        };
+        indexer.start();
+        try {
+            Thread.sleep(50);
+            assertTrue(this.connector.flush());
+        } finally {
+            indexer.interrupt();
+            indexer.join();
+        }
+    }
+
+    /**
+     * A buffered document deleted before being written must not be written.
+     */
+    @Test
+    public void testDeleteBuffered() throws IOException {
+        this.connector.add(doc("id0", "title0"));
+        this.connector.add(doc("id1", "title1"));
+        this.connector.deleteById("id0");
+        this.connector.flush();
+        assertNull(this.memory.getDocumentById("id0"));
+        assertNotNull(this.memory.getDocumentById("id1"));
+    }
+
+    /**
+     * Close must write the buffered documents.
+     */
+    @Test
+    public void testCloseWritesBuffer() throws IOException {
+        this.connector.add(doc("id0", "title0"));
+        this.connector.close();
+        assertNotNull(this.memory.getDocumentById("id0"));
+    }
+
+    /**
+     * Soft commits requested in a burst must be coalesced.
+     */
+    @Test
+    public void testSoftCommitCoalescing() throws IOException, InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            this.connector.add(doc("id" + i, "title" + i));
+            this.connector.commit(true);
+        }
+        assertEquals(1, this.memory.softCommits);
+        Thread.sleep(ConcurrentUpdateSolrConnector.SOFT_COMMIT_MIN_INTERVAL * 2);
+        assertEquals(2, this.memory.softCommits);
+        assertEquals(20, this.memory.getSize());
+    }
+
+}
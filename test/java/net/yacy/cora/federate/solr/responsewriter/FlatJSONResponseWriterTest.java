@@ -0,0 +1,55 @@
+package net.yacy.cora.federate.solr.responsewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.solr.common.SolrDocument;
+import org.junit.Test;
+
+import net.yacy.cora.util.JSONArray;
+import net.yacy.cora.util.JSONObject;
+
+/**
+ * Unit tests for the {@link FlatJSONResponseWriter} class.
+ */
+public class FlatJSONResponseWriterTest {
+
+    /**
+     * A document is written as one line which parses as JSON, also with multi-valued dates and special characters.
+     */
+    @Test
+    public void testWriteDoc() throws Exception {
+        final Date d1 = new Date(1000000000000L);
+        final Date d2 = new Date(1500000000000L);
+        final SolrDocument doc = new SolrDocument();
+        doc.setField("id", "abc\"def");
+        doc.setField("title", Arrays.asList("line\none", "two\\"));
+        doc.setField("size_i", 42);
+        doc.setField("flag_b", true);
+        doc.setField("dates_dts", Arrays.asList(d1, d2));
+        doc.setField("load_date_dt", d1);
+
+        final StringWriter writer = new StringWriter();
+        FlatJSONResponseWriter.writeDoc(writer, doc);
+        final String s = writer.toString();
+        assertTrue(s.endsWith("\n"));
+        assertFalse(s.substring(0, s.length() - 1).contains("\n"));
+
+        final JSONObject json = new JSONObject(s);
+        assertEquals("abc\"def", json.getString("id"));
+        assertEquals("line\none", json.getJSONArray("title").getString(0));
+        assertEquals("two\\", json.getJSONArray("title").getString(1));
+        assertEquals(42, json.getInt("size_i"));
+        assertTrue(json.getBoolean("flag_b"));
+        final JSONArray dates = json.getJSONArray("dates_dts");
+        assertEquals(2, dates.length());
+        assertEquals(d1.toInstant().toString(), dates.getString(0));
+        assertEquals(d2.toInstant().toString(), dates.getString(1));
+        assertEquals(d1.toInstant().toString(), json.getString("load_date_dt"));
+    }
+}
@@ -0,0 +1,90 @@
+package net.yacy.cora.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link Metrics} registry and its metric types.
+ */
+public class MetricsTest {
+
+    /**
+     * Counters and gauges must be written in the exposition format, with escaped label values.
+     */
+    @Test
+    public void testWriteCounterAndGauge() throws IOException {
+        final Counter counter = Metrics.counter("test_requests", "test requests", "path", "/a\"b");
+        counter.inc();
+        counter.add(4);
+        assertEquals(5, counter.get());
+        assertTrue(counter == Metrics.counter("test_requests", "test requests", "path", "/a\"b"));
+        Metrics.register("test_level", "test level", Metrics.Type.GAUGE, new Metrics.LongValue() {
+            @Override
+            public long get() {
+                return 42;
+            }
+        });
+
+        StringWriter writer = new StringWriter();
+        Metrics.write(writer, true);
+        String text = writer.toString();
+        assertTrue(text.contains("# TYPE test_requests counter\n"));
+        assertTrue(text.contains("test_requests_total{path=\"/a\\\"b\"} 5\n"));
+        assertTrue(text.contains("# TYPE test_level gauge\n"));
+        assertTrue(text.contains("test_level 42\n"));
+        assertTrue(text.endsWith("# EOF\n"));
+
+        writer = new StringWriter();
+        Metrics.write(writer, false);
+        text = writer.toString();
+        assertTrue(text.contains("# TYPE test_requests_total counter\n"));
+        assertTrue(!text.contains("# EOF"));
+
+        Metrics.remove("test_level");
+        writer = new StringWriter();
+        Metrics.write(writer, true);
+        assertTrue(!writer.toString().contains("test_level"));
+    }
+
+    /**
+     * A name must not be registered with two different types.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        Metrics.counter("test_conflict", "test conflict");
+        Metrics.histogram("test_conflict", "test conflict", 1.0d, 100);
+    }
+
+    /**
+     * Histogram buckets must be cumulative and exact at the exported bounds.
+     */
+    @Test
+    public void testHistogram() throws IOException {
+        final Histogram histogram = Metrics.histogram("test_duration_seconds", "test duration", 0.001d, 1000);
+        for (long v = 0; v < 1000; v++) histogram.record(v);
+        histogram.record(5000);
+        assertEquals(1001, histogram.count());
+        assertEquals((499500 + 5000) * 0.001d, histogram.sum(), 1e-9);
+        assertEquals(0.499d, histogram.quantile(0.5d), 0.499d * 0.07d);
+
+        final long[][] buckets = histogram.cumulativeBuckets();
+        for (int i = 0; i < buckets[0].length - 1; i++) {
+            assertEquals(Math.min(1000, buckets[0][i] + 1), buckets[1][i]);
+        }
+        assertEquals(1001, buckets[1][buckets[1].length - 1]);
+
+        final StringWriter writer = new StringWriter();
+        Metrics.write(writer, true);
+        final String text = writer.toString();
+        assertTrue(text.contains("test_duration_seconds_bucket{le=\"0\"} 1\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{le=\"0.007\"} 8\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{le=\"1.023\"} 1000\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{le=\"+Inf\"} 1001\n"));
+        assertTrue(text.contains("test_duration_seconds_count 1001\n"));
+    }
+}
@@ -1,5 +1,6 @@
 package net.yacy.cora.protocol;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
@@ -134,4 +135,26 @@ public class ResponseHeaderTest {
 
     }
 
+    /**
+     * Test of retryAfter method, of class ResponseHeader.
+     */
+    @Test
+    public void testRetryAfter() {
+        ResponseHeader testhdr = new ResponseHeader(503);
+        assertEquals(-1, testhdr.retryAfter());
+
+        testhdr.put(HeaderFramework.RETRY_AFTER, "120");
+        assertEquals(120000, testhdr.retryAfter());
+
+        testhdr.put(HeaderFramework.RETRY_AFTER, "not a delay");
+        assertEquals(-1, testhdr.retryAfter());
+
+        testhdr.put(HeaderFramework.RETRY_AFTER, HeaderFramework.formatRFC1123(new Date(System.currentTimeMillis() + 3600000)));
+        long delay = testhdr.retryAfter();
+        assertTrue("delay=" + delay, delay > 3500000 && delay <= 3600000);
+
+        testhdr.put(HeaderFramework.RETRY_AFTER, HeaderFramework.formatRFC1123(new Date(System.currentTimeMillis() - 3600000)));
+        assertEquals(0, testhdr.retryAfter());
+    }
+
 }
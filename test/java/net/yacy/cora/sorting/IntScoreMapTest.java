@@ -0,0 +1,170 @@
+package net.yacy.cora.sorting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link IntScoreMap} class.
+ */
+public class IntScoreMapTest {
+
+    /**
+     * Basic operations and the total count.
+     */
+    @Test
+    public void testBasicOperations() {
+        final IntScoreMap<String> map = new IntScoreMap<String>();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.getMaxScore());
+        assertNull(map.getMaxKey());
+
+        map.set("first", 10);
+        map.set("second", 5);
+        map.inc("third");
+        map.inc("third", 12);
+        map.set("first", 100);
+        map.dec("second", 2);
+
+        assertEquals(3, map.size());
+        assertEquals(100, map.get("first"));
+        assertEquals(3, map.get("second"));
+        assertEquals(13, map.get("third"));
+        assertEquals(0, map.get("missing"));
+        assertEquals(116, map.totalCount());
+
+        assertEquals(3, map.delete("second"));
+        assertFalse(map.containsKey("second"));
+        assertEquals(113, map.totalCount());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.totalCount());
+    }
+
+    /**
+     * Keys must be ordered by score, and the order must follow later modifications.
+     */
+    @Test
+    public void testOrder() {
+        final IntScoreMap<String> map = new IntScoreMap<String>();
+        map.set("a", 55);
+        map.set("b", 3);
+        map.set("c", 80);
+        map.set("d", -4);
+        assertEquals("[d, b, a, c]", map.keyList(true).toString());
+        assertEquals("[c, a, b, d]", map.keyList(false).toString());
+        assertEquals(80, map.getMaxScore());
+        assertEquals("c", map.getMaxKey());
+        assertEquals(-4, map.getMinScore());
+        assertEquals("d", map.getMinKey());
+
+        map.inc("b", 100);
+        assertEquals("b", map.getMaxKey());
+        assertEquals("[b, c]", map.topKeys(2).toString());
+    }
+
+    /**
+     * Shrinking must remove the same entries as ConcurrentScoreMap does.
+     */
+    @Test
+    public void testShrink() {
+        final IntScoreMap<String> map = new IntScoreMap<String>();
+        final ConcurrentScoreMap<String> reference = new ConcurrentScoreMap<String>();
+        for (int i = 0; i < 100; i++) {
+            map.set("k" + i, i % 17);
+            reference.set("k" + i, i % 17);
+        }
+        assertEquals(reference.shrinkToMaxSize(30), map.shrinkToMaxSize(30));
+        assertEquals(reference.size(), map.size());
+        for (final String key: reference) assertEquals(reference.get(key), map.get(key));
+
+        assertEquals(reference.shrinkToMinScore(15), map.shrinkToMinScore(15));
+        assertEquals(reference.size(), map.size());
+        long sum = 0;
+        for (final String key: map) sum += map.get(key);
+        assertEquals(sum, map.totalCount());
+    }
+
+    /**
+     * Random operations on many keys, checked against a HashMap.
+     */
+    @Test
+    public void testRandomOperations() {
+        final IntScoreMap<Integer> map = new IntScoreMap<Integer>(4, null);
+        final Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final Integer key = random.nextInt(5000);
+            final int op = random.nextInt(10);
+            if (op < 6) {
+                map.inc(key);
+                reference.put(key, reference.containsKey(key) ? reference.get(key) + 1 : 1);
+            } else if (op < 8) {
+                final Integer old = reference.remove(key);
+                assertEquals(old == null ? 0 : old.intValue(), map.delete(key));
+            } else {
+                final int score = random.nextInt(1000);
+                map.set(key, score);
+                reference.put(key, score);
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        long sum = 0;
+        for (final Map.Entry<Integer, Integer> entry: reference.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+            sum += entry.getValue();
+        }
+        assertEquals(sum, map.totalCount());
+        int count = 0;
+        for (final Iterator<Integer> i = map.iterator(); i.hasNext(); i.next()) count++;
+        assertEquals(reference.size(), count);
+    }
+
+    /**
+     * The top keys selected without a sorted view must have the highest scores.
+     */
+    @Test
+    public void testTopKeys() {
+        final IntScoreMap<String> map = new IntScoreMap<String>();
+        for (int i = 0; i < 1000; i++) map.set("k" + i, (i * 7919) % 1000);
+        final List<String> top = map.topKeys(10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < 10; i++) assertEquals(999 - i, map.get(top.get(i)));
+        assertEquals(top, new ArrayList<String>(map.keyList(false)).subList(0, 10));
+        assertEquals(top, map.topKeys(10)); // from the sorted view
+        assertEquals(1000, map.topKeys(2000).size());
+    }
+
+    /**
+     * Concurrent increments must not be lost.
+     */
+    @Test
+    public void testConcurrentIncrements() throws InterruptedException {
+        final IntScoreMap<String> map = new IntScoreMap<String>();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) map.inc("k" + (i % 100));
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread: threads) thread.join();
+        assertEquals(100, map.size());
+        for (int i = 0; i < 100; i++) assertEquals(threads.length * 200, map.get("k" + i));
+        assertEquals(threads.length * 20000, map.totalCount());
+    }
+}
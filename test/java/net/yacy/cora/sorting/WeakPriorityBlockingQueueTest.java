@@ -0,0 +1,120 @@
+package net.yacy.cora.sorting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.Element;
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.ReverseElement;
+
+/**
+ * Unit tests for the {@link WeakPriorityBlockingQueue} class.
+ */
+public class WeakPriorityBlockingQueueTest {
+
+    /**
+     * Elements must be taken by weight and the worst elements must be removed when the queue is full.
+     */
+    @Test
+    public void testPutAndPoll() {
+        final WeakPriorityBlockingQueue<String> queue = new WeakPriorityBlockingQueue<String>(3, false);
+        queue.put(new ReverseElement<String>("a", 1));
+        queue.put(new ReverseElement<String>("b", 5));
+        queue.put(new ReverseElement<String>("c", 3));
+        queue.put(new ReverseElement<String>("d", 0)); // rejected, worse than the tail of a full queue
+        queue.put(new ReverseElement<String>("e", 4)); // evicts "a"
+        assertEquals(3, queue.sizeQueue());
+        assertEquals("b", queue.peek().getElement());
+        assertEquals("c", queue.getLastInQueue().getElement());
+        assertEquals("b", queue.poll().getElement());
+        assertEquals("e", queue.poll().getElement());
+        assertEquals("c", queue.poll().getElement());
+        assertNull(queue.poll());
+        assertEquals(0, queue.sizeQueue());
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * The drained list must keep the order of removal and must prevent that drained elements are put again.
+     */
+    @Test
+    public void testDrained() {
+        final WeakPriorityBlockingQueue<String> queue = new WeakPriorityBlockingQueue<String>(10, true);
+        final ArrayList<Element<String>> elements = new ArrayList<Element<String>>();
+        for (int i = 0; i < 5; i++) {
+            final Element<String> element = new ReverseElement<String>("e" + i, i);
+            elements.add(element);
+            queue.put(element);
+        }
+        assertEquals("e4", queue.element(0).getElement());
+        assertEquals("e2", queue.element(2).getElement());
+        assertEquals(3, queue.sizeDrained());
+        assertEquals(5, queue.sizeAvailable());
+        assertNull(queue.element(5));
+
+        queue.put(elements.get(4)); // already drained
+        assertEquals(2, queue.sizeQueue());
+
+        assertEquals(4, queue.list(4).size());
+        queue.requeueDrainedElements();
+        assertEquals(0, queue.sizeDrained());
+        assertEquals(5, queue.sizeQueue());
+
+        final Iterator<Element<String>> i = queue.iterator();
+        assertEquals("e4", i.next().getElement());
+        i.remove();
+        assertEquals(4, queue.sizeDrained());
+        queue.put(elements.get(4)); // no longer drained
+        assertEquals(1, queue.sizeQueue());
+
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Concurrent feeders and consumers must keep the best elements and must not take any element twice.
+     */
+    @Test
+    public void testConcurrentPut() throws InterruptedException {
+        final int maxsize = 100;
+        final WeakPriorityBlockingQueue<Integer> queue = new WeakPriorityBlockingQueue<Integer>(maxsize, true);
+        final Thread[] feeders = new Thread[4];
+        for (int t = 0; t < feeders.length; t++) {
+            final int offset = t;
+            feeders[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < 10000; i += feeders.length) queue.put(new ReverseElement<Integer>(i, i));
+                }
+            };
+            feeders[t].start();
+        }
+        for (final Thread feeder: feeders) feeder.join();
+        assertEquals(maxsize, queue.sizeQueue());
+
+        final Set<Integer> taken = Collections.synchronizedSet(new HashSet<Integer>());
+        final Thread[] consumers = new Thread[4];
+        for (int t = 0; t < consumers.length; t++) {
+            consumers[t] = new Thread() {
+                @Override
+                public void run() {
+                    Element<Integer> element;
+                    while ((element = queue.poll()) != null) assertTrue(taken.add(element.getElement()));
+                }
+            };
+            consumers[t].start();
+        }
+        for (final Thread consumer: consumers) consumer.join();
+        assertEquals(maxsize, taken.size());
+        final ArrayList<Element<Integer>> drained = queue.list(maxsize);
+        for (int i = 0; i < maxsize; i++) assertEquals(9999 - i, drained.get(i).getElement().intValue());
+    }
+}
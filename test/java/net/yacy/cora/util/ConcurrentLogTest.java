@@ -0,0 +1,82 @@
+package net.yacy.cora.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ConcurrentLog} message queue.
+ */
+public class ConcurrentLogTest {
+
+    private static class CollectingHandler extends Handler {
+        private final List<String> messages = new ArrayList<String>();
+        private final SimpleFormatter formatter = new SimpleFormatter();
+
+        @Override
+        public synchronized void publish(final LogRecord record) {
+            this.messages.add(this.formatter.formatMessage(record));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private synchronized int size() {
+            return this.messages.size();
+        }
+    }
+
+    /**
+     * Messages of many producer threads must all be delivered, with parameters formatted by the handler,
+     * and filtered messages must not be delivered.
+     */
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final Logger logger = Logger.getLogger("ConcurrentLogTest");
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        final CollectingHandler handler = new CollectingHandler();
+        logger.addHandler(handler);
+        final ConcurrentLog log = new ConcurrentLog("ConcurrentLogTest");
+
+        final int threads = 8, perThread = 2000;
+        final Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        log.log(Level.INFO, "message {0} {1}", id, i);
+                        log.log(Level.FINE, "filtered {0}", i);
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        for (final Thread producer: producers) producer.join();
+
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (handler.size() < threads * perThread && System.currentTimeMillis() < timeout) Thread.sleep(10);
+        assertEquals(threads * perThread, handler.size());
+        synchronized (handler) {
+            assertEquals(threads * perThread, new HashSet<String>(handler.messages).size());
+            for (final String message: handler.messages) assertEquals(0, message.indexOf("message "));
+        }
+        logger.removeHandler(handler);
+    }
+}
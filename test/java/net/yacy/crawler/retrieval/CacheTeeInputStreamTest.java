@@ -0,0 +1,134 @@
+// CacheTeeInputStreamTest.java
+// ---------------------------
+// part of YaCy
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.retrieval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.crawler.data.Cache;
+
+/**
+ * Unit tests for the {@link CacheTeeInputStream} class.
+ */
+public class CacheTeeInputStreamTest {
+
+	/** Cache backend buffer size used in the tests (the Cache default is not visible from this package) */
+	private static final int BACKEND_BUFFER_SIZE = 1024 * 1024 * 2;
+
+	/**
+	 * Run before each unit test
+	 */
+	@Before
+	public void setUp() {
+		Cache.init(new File(System.getProperty("java.io.tmpdir") + File.separator + "testCacheTee"), "peerSalt",
+				BACKEND_BUFFER_SIZE * 4, 2000, Deflater.BEST_COMPRESSION);
+		Cache.clear();
+	}
+
+	/**
+	 * Run after each unit test
+	 */
+	@After
+	public void tearDown() {
+		Cache.clear();
+		Cache.close();
+	}
+
+	/**
+	 * @param size the content size
+	 * @return random content bytes
+	 */
+	private static byte[] generateContent(final int size) {
+		final byte[] content = new byte[size];
+		new Random().nextBytes(content);
+		return content;
+	}
+
+	/**
+	 * Content partially read by the consumer must be completed and stored when
+	 * the stream is closed, whether the copy stayed in memory or was spilled
+	 * to disk.
+	 */
+	@Test
+	public void testPartialReadThenClose() throws IOException {
+		final int[] memoryThresholds = { 1024 * 1024, 16 };
+		for (final int memoryThreshold : memoryThresholds) {
+			final DigestURL url = new DigestURL("http://yacy.net/tee" + memoryThreshold);
+			final byte[] content = generateContent(4096);
+
+			final CacheTeeInputStream teeStream = new CacheTeeInputStream(new ByteArrayInputStream(content), url,
+					new ResponseHeader(HttpStatus.SC_OK), memoryThreshold, 10 * 1024);
+			try {
+				final byte[] buffer = new byte[100];
+				assertEquals(100, teeStream.read(buffer));
+				assertEquals(content[100], (byte) teeStream.read());
+				assertEquals(1000, teeStream.skip(1000));
+				assertTrue(teeStream.isCopyComplete());
+			} finally {
+				teeStream.close();
+			}
+
+			assertArrayEquals(content, Cache.getContent(url.hash()));
+		}
+	}
+
+	/**
+	 * Content larger than the maximum cacheable size must be passed to the
+	 * consumer but not stored in the cache.
+	 */
+	@Test
+	public void testContentOverMaxCacheSize() throws IOException {
+		final DigestURL url = new DigestURL("http://yacy.net/large");
+		final byte[] content = generateContent(4096);
+
+		final CacheTeeInputStream teeStream = new CacheTeeInputStream(new ByteArrayInputStream(content), url,
+				new ResponseHeader(HttpStatus.SC_OK), 16, 1024);
+		try {
+			final byte[] read = new byte[content.length];
+			int offset = 0, nb;
+			while (offset < read.length && (nb = teeStream.read(read, offset, read.length - offset)) >= 0) {
+				offset += nb;
+			}
+			assertArrayEquals(content, read);
+			assertFalse(teeStream.isCopyComplete());
+			assertFalse(teeStream.markSupported());
+		} finally {
+			teeStream.close();
+		}
+
+		assertNull(Cache.getContent(url.hash()));
+	}
+
+}
@@ -0,0 +1,122 @@
+package net.yacy.document.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.document.id.AnchorURL;
+import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.document.Document;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the direct import of the {@link MediawikiImporter} class.
+ */
+public class MediawikiImporterTest {
+
+    private static final int PAGES = 200;
+
+    private File dir;
+    private File dump;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("MediawikiImporterTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.dump = new File(this.dir, "test-pages-articles.xml");
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<mediawiki>\n<siteinfo>\n<sitename>Test</sitename>\n<base>http://wiki.example.org/wiki/Main_Page</base>\n</siteinfo>\n");
+        for (int i = 0; i < PAGES; i++) {
+            sb.append("<page>\n<title>Page").append(i).append("</title>\n<revision>\n<text xml:space=\"preserve\">");
+            sb.append("This is the '''content''' of page ").append(i).append(".</text>\n</revision>\n</page>\n");
+        }
+        sb.append("</mediawiki>\n");
+        FileUtils.copy(UTF8.getBytes(sb.toString()), this.dump);
+    }
+
+    @After
+    public void tearDown() {
+        for (final File f: this.dir.listFiles()) f.delete();
+        this.dir.delete();
+    }
+
+    /**
+     * an importer recording the titles of the indexed documents instead of indexing them
+     */
+    private static class RecordingImporter extends MediawikiImporter {
+
+        final Set<String> titles = ConcurrentHashMap.newKeySet();
+        final String stopTitle;
+        final boolean failWorker;
+
+        RecordingImporter(final File dump, final int concurrency, final String stopTitle, final boolean failWorker) throws IOException {
+            super(new MultiProtocolURL(dump), concurrency);
+            this.stopTitle = stopTitle;
+            this.failWorker = failWorker;
+        }
+
+        @Override
+        String indexDocument(final AnchorURL url, final Document document) {
+            if (this.failWorker) {
+                Thread.currentThread().interrupt(); // the worker stops when taking the next page
+                return "failed";
+            }
+            this.titles.add(document.dc_title());
+            if (document.dc_title().equals(this.stopTitle)) quit();
+            return null;
+        }
+    }
+
+    /**
+     * All pages are indexed by the worker pool and the checkpoint is removed at the end of the import.
+     */
+    @Test
+    public void testParallelImport() throws Exception {
+        final RecordingImporter importer = new RecordingImporter(this.dump, 4, null, false);
+        importer.run();
+        assertEquals(PAGES, importer.titles.size());
+        assertEquals(PAGES, importer.count());
+        assertFalse(new File(this.dump.getPath() + MediawikiImporter.CHECKPOINT_SUFFIX).exists());
+    }
+
+    /**
+     * A stopped import writes a checkpoint from which a second import indexes exactly the remaining pages.
+     */
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        final RecordingImporter first = new RecordingImporter(this.dump, 2, "Page20", false);
+        first.run();
+        assertTrue(first.count() < PAGES);
+        assertTrue(MediawikiImporter.readCheckpoint(this.dump) > 0);
+        assertEquals(first.checkpoint(), MediawikiImporter.readCheckpoint(this.dump));
+
+        final RecordingImporter second = new RecordingImporter(this.dump, 2, null, false);
+        second.run();
+        for (final String title: second.titles) assertFalse(title, first.titles.contains(title));
+        assertEquals(PAGES, first.titles.size() + second.titles.size());
+        assertFalse(new File(this.dump.getPath() + MediawikiImporter.CHECKPOINT_SUFFIX).exists());
+    }
+
+    /**
+     * The reader stops instead of waiting forever when all workers have stopped, and the import stays resumable.
+     */
+    @Test(timeout = 30000)
+    public void testWorkersStopped() throws Exception {
+        final RecordingImporter importer = new RecordingImporter(this.dump, 1, null, true);
+        importer.run();
+        assertEquals(0, importer.count());
+        assertTrue(new File(this.dump.getPath() + MediawikiImporter.CHECKPOINT_SUFFIX).exists());
+        assertEquals(0, importer.titles.size());
+    }
+}
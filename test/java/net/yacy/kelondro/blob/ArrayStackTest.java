@@ -0,0 +1,63 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.date.GenericFormatter;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the {@link ArrayStack} class.
+ */
+public class ArrayStackTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("ArrayStackTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for (final File f: this.dir.listFiles()) f.delete();
+        this.dir.delete();
+    }
+
+    private File blobFile(final long time) {
+        return new File(this.dir, "test." + GenericFormatter.SHORT_MILSEC_FORMATTER.format(new Date(time)) + ".blob");
+    }
+
+    /**
+     * A recent BLOB file which cannot be mounted in the background stays in the stack if deleteonfail is not set.
+     */
+    @Test(timeout = 10000)
+    public void testKeepUnreadableWithoutDeleteOnFail() throws Exception {
+        final long now = System.currentTimeMillis();
+        final File unreadable = blobFile(now - 60000);
+        unreadable.mkdirs(); // a directory cannot be opened as heap file
+        final Heap heap = new Heap(blobFile(now), 8, NaturalOrder.naturalOrder, 1024);
+        heap.insert(ASCII.getBytes("k0000001"), ASCII.getBytes("value"));
+        heap.close(true);
+
+        final ArrayStack stack = new ArrayStack(this.dir, "test", NaturalOrder.naturalOrder, 8, 1024, false, false);
+        while (!stack.ready()) Thread.sleep(10);
+        assertEquals(2, stack.entries());
+        assertTrue(unreadable.exists());
+        assertArrayEquals(ASCII.getBytes("value"), stack.get(ASCII.getBytes("k0000001")));
+        stack.close(false);
+        unreadable.delete();
+    }
+}
@@ -0,0 +1,61 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the {@link Compressor} class.
+ */
+public class CompressorTest {
+
+    private File dir;
+    private Heap heap;
+    private Compressor compressor;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("CompressorTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.heap = new Heap(new File(this.dir, "test.blob"), 8, NaturalOrder.naturalOrder, 1024);
+        this.compressor = new Compressor(this.heap, 1024 * 1024, 1000, Deflater.BEST_SPEED);
+    }
+
+    @After
+    public void tearDown() {
+        this.compressor.close(true);
+        for (final File f: this.dir.listFiles()) f.delete();
+        this.dir.delete();
+    }
+
+    /**
+     * Content inserted from a stream is written compressed to the backend and replaces a buffered entry.
+     */
+    @Test
+    public void testInsertStream() throws Exception {
+        final byte[] key = ASCII.getBytes("k0000001");
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) sb.append("content line ").append(i).append('\n');
+        final byte[] content = ASCII.getBytes(sb.toString());
+
+        this.compressor.insert(key, ASCII.getBytes("buffered"));
+        this.compressor.insert(key, new ByteArrayInputStream(content));
+        assertEquals(1, this.compressor.size());
+        assertTrue(this.heap.containsKey(key));
+        assertTrue(this.heap.length(key) < content.length);
+        assertArrayEquals(content, this.compressor.get(key));
+    }
+}
@@ -0,0 +1,77 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the {@link LazyBLOB} class.
+ */
+public class LazyBLOBTest {
+
+    private File dir;
+    private File heapfile;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("LazyBLOBTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.heapfile = new File(this.dir, "test.blob");
+    }
+
+    @After
+    public void tearDown() {
+        for (final File f: this.dir.listFiles()) f.delete();
+        this.dir.delete();
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%07d", i));
+    }
+
+    /**
+     * The size is known from the index dump without mounting, the content is mounted with the first access.
+     */
+    @Test
+    public void testMountOnAccess() throws Exception {
+        final Heap heap = new Heap(this.heapfile, 8, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < 100; i++) heap.insert(key(i), ASCII.getBytes("value" + i));
+        heap.close(true);
+
+        final LazyBLOB blob = new LazyBLOB(this.heapfile, 8, NaturalOrder.naturalOrder, false);
+        assertEquals(100, blob.size());
+        assertFalse(blob.isEmpty());
+        assertFalse(blob.isMounted());
+        assertArrayEquals(ASCII.getBytes("value42"), blob.get(key(42)));
+        assertTrue(blob.isMounted());
+        assertNull(blob.get(key(100)));
+        blob.close(true);
+    }
+
+    /**
+     * A heap file which cannot be read is deleted if deleteonfail is set and the BLOB is empty.
+     */
+    @Test
+    public void testDeleteOnFail() throws Exception {
+        this.heapfile.mkdirs(); // a directory cannot be opened as heap file
+        final LazyBLOB blob = new LazyBLOB(this.heapfile, 8, NaturalOrder.naturalOrder, true);
+        assertFalse(blob.mount());
+        assertFalse(blob.containsKey(key(1)));
+        assertFalse(blob.keys(true, false).hasNext());
+        blob.close(false);
+        this.heapfile.delete();
+    }
+}
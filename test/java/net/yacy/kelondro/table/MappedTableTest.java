@@ -0,0 +1,114 @@
+package net.yacy.kelondro.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.kelondro.index.Row;
+
+/**
+ * Unit tests for the {@link MappedTable} class.
+ */
+public class MappedTableTest {
+
+    private File dir;
+    private File tablefile;
+    private Row row;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("MappedTableTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.tablefile = new File(this.dir, "test.index");
+        this.row = new Row("byte[] key-12, long num-8 {b256}", NaturalOrder.naturalOrder);
+    }
+
+    @After
+    public void tearDown() {
+        for (final File f: this.dir.listFiles()) f.delete();
+        this.dir.delete();
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private Row.Entry entry(final int i, final long value) {
+        final Row.Entry entry = this.row.newEntry();
+        entry.setCol(0, key(i));
+        entry.setCol(1, value);
+        return entry;
+    }
+
+    /**
+     * Rows must be found after growth of the hash index, after removals and after reopening.
+     */
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final int n = 5000;
+        MappedTable table = new MappedTable(this.tablefile, this.row);
+        for (int i = 0; i < n; i++) assertNull(table.replace(entry(i, i)));
+        assertEquals(n, table.size());
+        assertEquals(3L, table.replace(entry(3, 33)).getColLong(1));
+        for (int i = 0; i < n; i += 2) assertEquals(i == 0 ? 0L : i, table.remove(key(i)).getColLong(1));
+        assertFalse(table.has(key(0)));
+        assertEquals(n / 2, table.size());
+        table.close();
+        assertEquals((long) (n / 2) * this.row.objectsize, this.tablefile.length());
+
+        table = new MappedTable(this.tablefile, this.row);
+        assertEquals(n / 2, table.size());
+        for (int i = 0; i < n; i++) {
+            final Row.Entry entry = table.get(key(i), false);
+            if (i % 2 == 0) {
+                assertNull(entry);
+            } else {
+                assertEquals(i == 3 ? 33L : i, entry.getColLong(1));
+            }
+        }
+        table.close();
+    }
+
+    /**
+     * A table file written by Table must be readable, the hash index is built on the first opening.
+     */
+    @Test
+    public void testTableCompatibility() throws Exception {
+        final IndexTable table = new IndexTable(this.tablefile, 12, 8, false, false, false);
+        for (int i = 0; i < 100; i++) table.put(key(i), i * 10L);
+        table.close();
+
+        IndexTable mapped = new IndexTable(this.tablefile, 12, 8, false, false, true);
+        assertTrue(new File(this.dir, this.tablefile.getName() + MappedTable.INDEX_EXTENSION).exists());
+        for (int i = 0; i < 100; i++) assertEquals(i * 10L, mapped.get(key(i)));
+        assertEquals(-1, mapped.get(key(100)));
+        mapped.put(key(100), 1000L);
+        mapped.close();
+        Thread.sleep(20); // the change by Table is detected by the modification time of the file
+
+        final IndexTable back = new IndexTable(this.tablefile, 12, 8, false, false, false);
+        assertEquals(1000L, back.get(key(100)));
+        assertEquals(990L, back.get(key(99)));
+        back.remove(key(5));
+        back.put(key(101), 1010L);
+        back.close();
+
+        // the table was changed with Table, the hash index must be rebuilt
+        mapped = new IndexTable(this.tablefile, 12, 8, false, false, true);
+        assertFalse(mapped.has(key(5)));
+        assertEquals(1010L, mapped.get(key(101)));
+        assertEquals(40L, mapped.get(key(4)));
+        mapped.close();
+    }
+}
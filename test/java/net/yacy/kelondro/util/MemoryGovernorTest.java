@@ -0,0 +1,44 @@
+package net.yacy.kelondro.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link MemoryGovernor} class.
+ */
+public class MemoryGovernorTest {
+
+    private static class TestCache implements MemoryGovernor.Reclaimable {
+        private double fraction = 0.0d;
+
+        @Override
+        public int reclaim(final double f) {
+            this.fraction = f;
+            return 1;
+        }
+    }
+
+    /**
+     * Caches must release a fraction of their content proportional to the pressure and to their weight.
+     */
+    @Test
+    public void testProportionalReclaim() {
+        final TestCache heavy = new TestCache();
+        final TestCache light = new TestCache();
+        MemoryGovernor.register("heavy", 100, heavy);
+        MemoryGovernor.register("light", 25, light);
+        try {
+            MemoryGovernor.reclaim(0.4d);
+            assertEquals(0.4d, heavy.fraction, 1e-9);
+            assertEquals(0.1d, light.fraction, 1e-9);
+
+            MemoryGovernor.reclaim(1.0d);
+            assertEquals(1.0d, heavy.fraction, 1e-9);
+            assertEquals(0.25d, light.fraction, 1e-9);
+        } finally {
+            MemoryGovernor.unregister(heavy);
+            MemoryGovernor.unregister(light);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.yacy.peers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * Unit tests for the {@link PeerLatency} statistics.
+ */
+public class PeerLatencyTest {
+
+    private static Seed seed(final String name) {
+        return new Seed(ASCII.String(Word.word2hash(name)), new ConcurrentHashMap<String, String>());
+    }
+
+    /**
+     * The median of a peer is known only after enough answers, and failures reduce the weight of a peer.
+     */
+    @Test
+    public void testQuantileAndWeight() {
+        final Seed peer = seed("PeerLatencyTest.quantile");
+        for (int i = 0; i < PeerLatency.MIN_SAMPLES - 1; i++) PeerLatency.record(peer, PeerLatency.RWI, 200, true);
+        assertEquals(-1, PeerLatency.quantile(peer.hash, 0.5d));
+        PeerLatency.record(peer, PeerLatency.RWI, 200, true);
+        assertEquals(200, PeerLatency.quantile(peer.hash, 0.5d), 200 * 0.07d);
+
+        final double weight = PeerLatency.weight(peer.hash);
+        assertTrue(weight > PeerLatency.weight(seed("PeerLatencyTest.unknown").hash));
+        PeerLatency.record(peer, PeerLatency.RWI, 3000, false);
+        assertEquals(weight / 2.0d, PeerLatency.weight(peer.hash), 1e-12);
+    }
+
+    /**
+     * The weighted sample must contain distinct peers and prefer fast peers.
+     */
+    @Test
+    public void testSample() {
+        final Seed fast = seed("PeerLatencyTest.fast");
+        final Seed slow = seed("PeerLatencyTest.slow");
+        for (int i = 0; i < 10; i++) {
+            PeerLatency.record(fast, PeerLatency.RWI, 50, true);
+            PeerLatency.record(slow, PeerLatency.RWI, 5000, true);
+        }
+        final List<Seed> peers = new ArrayList<Seed>();
+        peers.add(slow);
+        peers.add(fast);
+        assertEquals(2, PeerLatency.sample(peers, 5, new Random(0)).size());
+
+        final Random random = new Random(1);
+        int fastFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            final List<Seed> sample = PeerLatency.sample(peers, 1, random);
+            assertEquals(1, sample.size());
+            if (sample.get(0) == fast) fastFirst++;
+        }
+        assertTrue(fastFirst > 900);
+    }
+}
@@ -0,0 +1,64 @@
+package net.yacy.search.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the export helpers of the {@link Fulltext} class.
+ */
+public class FulltextTest {
+
+    /**
+     * Control characters are removed by all write methods, other characters are kept.
+     */
+    @Test
+    public void testControlCharacterFilterWriter() throws Exception {
+        final StringWriter out = new StringWriter();
+        final Writer writer = new Fulltext.ControlCharacterFilterWriter(out);
+        writer.write("a\nb\tc\r");
+        writer.write('\n');
+        writer.write('d');
+        writer.write("\u0001xy\u001fz".toCharArray(), 1, 4);
+        writer.write("12\n34", 1, 3);
+        writer.write("\u00e4\u00f6\u00fc \u20ac");
+        writer.close();
+        assertEquals("abcdxyz23\u00e4\u00f6\u00fc \u20ac", out.toString());
+    }
+
+    /**
+     * The id ranges of the shards of a parallel export cover the whole id order without gaps or overlaps.
+     */
+    @Test
+    public void testExportShardBounds() {
+        for (int parts = 1; parts <= Fulltext.EXPORT_ID_ORDER.length(); parts++) {
+            String previousUpper = null;
+            for (int shard = 0; shard < parts; shard++) {
+                final String[] bounds = Fulltext.exportShardBounds(shard, parts);
+                if (shard == 0) {
+                    assertNull(bounds[0]);
+                } else {
+                    assertEquals(previousUpper, bounds[0]);
+                    assertTrue(Fulltext.EXPORT_ID_ORDER.contains(bounds[0]));
+                }
+                if (shard == parts - 1) {
+                    assertNull(bounds[1]);
+                } else {
+                    assertTrue(Fulltext.EXPORT_ID_ORDER.contains(bounds[1]));
+                    // the ranges are not empty and follow the id order
+                    if (bounds[0] != null) assertTrue(bounds[0].compareTo(bounds[1]) < 0);
+                }
+                previousUpper = bounds[1];
+            }
+        }
+        // the order of the characters is the order of the ids in the index
+        for (int i = 1; i < Fulltext.EXPORT_ID_ORDER.length(); i++) {
+            assertTrue(Fulltext.EXPORT_ID_ORDER.charAt(i - 1) < Fulltext.EXPORT_ID_ORDER.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.yacy.search.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * Unit tests for the {@link MetadataCache} class.
+ */
+public class MetadataCacheTest {
+
+    private static SolrDocument doc(final int i) throws Exception {
+        final DigestURL url = new DigestURL("http://example" + i + ".org/page.html");
+        final SolrDocument doc = new SolrDocument();
+        doc.setField(CollectionSchema.id.getSolrFieldName(), ASCII.String(url.hash()));
+        doc.setField(CollectionSchema.sku.getSolrFieldName(), url.toNormalform(true));
+        doc.setField(CollectionSchema.title.getSolrFieldName(), Arrays.asList("Title " + i));
+        doc.setField(CollectionSchema.language_s.getSolrFieldName(), "en");
+        doc.setField(CollectionSchema.load_date_dt.getSolrFieldName(), new Date(1000000L * i));
+        doc.setField(CollectionSchema.size_i.getSolrFieldName(), i);
+        return doc;
+    }
+
+    private static byte[] hash(final SolrDocument doc) {
+        return ASCII.getBytes((String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
+    }
+
+    /**
+     * A cached document must return the stored fields and must be marked as partial.
+     */
+    @Test
+    public void testPutGet() throws Exception {
+        final MetadataCache cache = new MetadataCache(16);
+        final SolrDocument doc = doc(7);
+        assertNull(cache.get(hash(doc), null, 0));
+        cache.put(doc);
+        final URIMetadataNode node = cache.get(hash(doc), null, 42);
+        assertNotNull(node);
+        assertTrue(MetadataCache.isPartial(node));
+        assertEquals("http://example7.org/page.html", node.url().toNormalform(true));
+        assertEquals("Title 7", node.dc_title());
+        assertEquals("en", node.language());
+        assertEquals(7, node.filesize());
+        assertEquals(42, node.score());
+        assertEquals(0, node.wordCount());
+
+        cache.remove(hash(doc));
+        assertNull(cache.get(hash(doc), null, 0));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * The cache must not grow beyond its capacity and recently accessed entries must survive the eviction.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        final MetadataCache cache = new MetadataCache(8);
+        final SolrDocument hot = doc(0);
+        cache.put(hot);
+        for (int i = 1; i < 40; i++) {
+            assertNotNull(cache.get(hash(hot), null, 0));
+            cache.put(doc(i));
+        }
+        assertEquals(8, cache.size());
+        assertNotNull(cache.get(hash(hot), null, 0));
+        assertNotNull(cache.get(hash(doc(39)), null, 0));
+        assertNull(cache.get(hash(doc(1)), null, 0));
+    }
+
+    /**
+     * Atomic updates and documents with too large fields remove the cached document.
+     */
+    @Test
+    public void testUncacheable() throws Exception {
+        final MetadataCache cache = new MetadataCache(8);
+        final SolrDocument doc = doc(3);
+        cache.put(doc);
+
+        final SolrInputDocument update = new SolrInputDocument();
+        update.setField(CollectionSchema.id.getSolrFieldName(), doc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
+        update.setField(CollectionSchema.title.getSolrFieldName(), Collections.singletonMap("set", "new title"));
+        cache.put(update);
+        assertNull(cache.get(hash(doc), null, 0));
+
+        final char[] longTitle = new char[2000];
+        Arrays.fill(longTitle, 'x');
+        doc.setField(CollectionSchema.title.getSolrFieldName(), Arrays.asList(new String(longTitle)));
+        cache.put(doc);
+        assertNull(cache.get(hash(doc), null, 0));
+        assertFalse(MetadataCache.covers(Arrays.asList(CollectionSchema.text_t.getSolrFieldName())));
+        assertTrue(MetadataCache.covers(Arrays.asList(CollectionSchema.host_s.getSolrFieldName(), CollectionSchema.language_s.getSolrFieldName())));
+    }
+}
@@ -0,0 +1,146 @@
+package net.yacy.search.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * Unit tests for the {@link PostprocessingJournal} class.
+ */
+public class PostprocessingJournalTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("PostprocessingJournalTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for (final File f: this.dir.listFiles()) f.delete();
+        this.dir.delete();
+    }
+
+    private static SolrInputDocument doc(final String id, final String host, final String harvestkey, final String... proctags) {
+        final SolrInputDocument doc = new SolrInputDocument();
+        doc.setField(CollectionSchema.id.getSolrFieldName(), id);
+        doc.setField(CollectionSchema.host_s.getSolrFieldName(), host);
+        doc.setField(CollectionSchema.harvestkey_s.getSolrFieldName(), harvestkey);
+        if (proctags.length > 0) doc.setField(CollectionSchema.process_sxt.getSolrFieldName(), Arrays.asList(proctags));
+        return doc;
+    }
+
+    /**
+     * Only documents with a process tag are recorded, and the records of other harvest keys stay in the journal.
+     */
+    @Test
+    public void testTakeByHarvestkey() throws Exception {
+        final PostprocessingJournal journal = new PostprocessingJournal(this.dir);
+        assertTrue(journal.scanRequired());
+        journal.scanCompleted();
+        assertFalse(journal.scanRequired());
+
+        journal.append(doc("id1", "a.org", "k1", "CITATION"));
+        journal.append(doc("id2", "b.org", "k2", "CITATION"));
+        journal.append(doc("id3", "a.org", "k1", "CITATION", "UNIQUE"));
+        journal.append(doc("id4", "a.org", "k1"));
+        assertNull(journal.take("k3"));
+
+        PostprocessingJournal.Work work = journal.take("k1");
+        assertEquals(2, work.size());
+        assertEquals(2, work.hosts().get("a.org"));
+        assertNull(journal.take(null)); // the work is not finished
+        assertEquals(Arrays.asList("id1", "id3"), work.next(10));
+        assertTrue(work.next(10).isEmpty());
+        work.finish();
+
+        work = journal.take(null);
+        assertEquals(Arrays.asList("id2"), work.next(10));
+        work.finish();
+        assertNull(journal.take(null));
+        journal.close();
+
+        assertFalse(new PostprocessingJournal(this.dir).scanRequired());
+    }
+
+    /**
+     * An interrupted work is continued after the last checkpoint when the journal is opened again.
+     */
+    @Test
+    public void testCheckpoint() throws Exception {
+        PostprocessingJournal journal = new PostprocessingJournal(this.dir);
+        for (int i = 0; i < 10; i++) journal.append("id" + i, "h" + (i % 3) + ".org", "");
+        PostprocessingJournal.Work work = journal.take(null);
+        assertEquals(10, work.size());
+        assertEquals(3, work.hosts().size());
+        assertEquals(Arrays.asList("id0", "id1", "id2", "id3"), work.next(4));
+        work.checkpoint();
+        assertEquals(Arrays.asList("id4", "id5", "id6", "id7"), work.next(4));
+        work.close(); // interrupted before the checkpoint
+        journal.append("id10", "h0.org", "");
+        journal.close();
+
+        journal = new PostprocessingJournal(this.dir);
+        work = journal.take(null);
+        assertEquals(6, work.size());
+        assertEquals(Arrays.asList("id4", "id5", "id6", "id7", "id8", "id9"), work.next(100));
+        work.finish();
+        work = journal.take(null);
+        assertEquals(Arrays.asList("id10"), work.next(100));
+        work.finish();
+        journal.close();
+    }
+
+    /**
+     * Records which are appended while a work is taken go to the next take.
+     */
+    @Test
+    public void testAppendAfterTake() throws Exception {
+        final PostprocessingJournal journal = new PostprocessingJournal(this.dir);
+        journal.append("id1", "a.org", "k1");
+        journal.append("id2", "b.org", "k2");
+        PostprocessingJournal.Work work = journal.take("k1");
+        journal.append("id3", "a.org", "k1");
+        assertEquals(Arrays.asList("id1"), work.next(10));
+        work.finish();
+
+        work = journal.take("k1");
+        assertEquals(Arrays.asList("id3"), work.next(10));
+        work.finish();
+        work = journal.take(null);
+        assertEquals(Arrays.asList("id2"), work.next(10));
+        work.finish();
+        assertNull(journal.take(null));
+        journal.close();
+    }
+
+    /**
+     * A scan is required again after the journal was switched off.
+     */
+    @Test
+    public void testRequireScan() throws Exception {
+        PostprocessingJournal journal = new PostprocessingJournal(this.dir);
+        journal.scanCompleted();
+        journal.close();
+        PostprocessingJournal.requireScan(this.dir);
+
+        journal = new PostprocessingJournal(this.dir);
+        assertTrue(journal.scanRequired());
+        journal.close();
+    }
+}
@@ -0,0 +1,65 @@
+package net.yacy.search.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.junit.Test;
+
+import net.yacy.cora.sorting.ClusteredScoreMap;
+import net.yacy.cora.sorting.ReversibleScoreMap;
+
+/**
+ * Unit tests for the {@link FacetCache} class.
+ */
+public class FacetCacheTest {
+
+    private static SolrQuery query(final int start, final String... fqs) {
+        final SolrQuery query = new SolrQuery("text_t:yacy");
+        query.setStart(start);
+        query.setRows(10);
+        query.setFilterQueries(fqs);
+        query.setFacet(true);
+        query.addFacetField("host_s");
+        query.setHighlight(true);
+        return query;
+    }
+
+    /**
+     * The fingerprint must ignore the result window and the order of filter queries, but not the filters themselves.
+     */
+    @Test
+    public void testFingerprint() {
+        final String fingerprint = FacetCache.fingerprint(query(0, "a:1", "b:2"));
+        assertEquals(fingerprint, FacetCache.fingerprint(query(20, "b:2", "a:1")));
+        assertNotEquals(fingerprint, FacetCache.fingerprint(query(0, "a:1")));
+    }
+
+    /**
+     * Cached facets are valid only for the same index version and are returned as copies.
+     */
+    @Test
+    public void testIndexVersion() {
+        final ReversibleScoreMap<String> hosts = new ClusteredScoreMap<String>(true);
+        hosts.set("yacy.net", 3);
+        hosts.set("example.org", 1);
+        final Map<String, ReversibleScoreMap<String>> facets = new HashMap<String, ReversibleScoreMap<String>>();
+        facets.put("host_s", hosts);
+        final String fingerprint = FacetCache.fingerprint(query(0, "c:3"));
+        FacetCache.put(fingerprint, 7, facets);
+
+        Map<String, ReversibleScoreMap<String>> cached = FacetCache.get(fingerprint, 7);
+        assertEquals(3, cached.get("host_s").get("yacy.net"));
+        assertEquals(1, cached.get("host_s").get("example.org"));
+        cached.get("host_s").delete("yacy.net");
+        cached = FacetCache.get(fingerprint, 7);
+        assertEquals(3, cached.get("host_s").get("yacy.net"));
+
+        assertNull(FacetCache.get(fingerprint, 8));
+        assertNull(FacetCache.get(fingerprint, 7));
+    }
+}